@@ -83,6 +83,134 @@ public class Constants {
      */
     public static final String BCRYPT_WORK_ENV = "DOCS_BCRYPT_WORK";
 
+    /**
+     * Maximum delay in milliseconds before an indexed change becomes visible to searches (0 to refresh after each write).
+     */
+    public static final String LUCENE_REFRESH_INTERVAL_ENV = "DOCS_LUCENE_REFRESH_INTERVAL";
+    public static final int DEFAULT_LUCENE_REFRESH_INTERVAL = 1000;
+
+    /**
+     * Delay in seconds between two durable commits of the Lucene index.
+     */
+    public static final String LUCENE_COMMIT_INTERVAL_ENV = "DOCS_LUCENE_COMMIT_INTERVAL";
+    public static final int DEFAULT_LUCENE_COMMIT_INTERVAL = 60;
+
+    /**
+     * Number of indexing operations after which the Lucene index is committed regardless of the commit interval.
+     */
+    public static final String LUCENE_COMMIT_OPERATIONS_ENV = "DOCS_LUCENE_COMMIT_OPERATIONS";
+    public static final int DEFAULT_LUCENE_COMMIT_OPERATIONS = 1000;
+
+    /**
+     * Number of threads generating the thumbnails of the processed files.
+     */
+    public static final String FILE_PROCESSING_THREADS_ENV = "DOCS_FILE_PROCESSING_THREADS";
+
+    /**
+     * Number of threads extracting the content of the processed files, including OCR.
+     */
+    public static final String OCR_THREADS_ENV = "DOCS_OCR_THREADS";
+
+    /**
+     * Maximum number of images and pages of scanned PDFs OCR-ized in parallel, by all the files.
+     */
+    public static final String OCR_PAGE_THREADS_ENV = "DOCS_OCR_PAGE_THREADS";
+
+    /**
+     * Number of interactive files waiting to be processed above which new uploads are refused.
+     */
+    public static final String FILE_PROCESSING_QUEUE_SIZE_ENV = "DOCS_FILE_PROCESSING_QUEUE_SIZE";
+    public static final int DEFAULT_FILE_PROCESSING_QUEUE_SIZE = 100;
+
+    /**
+     * Number of bulk files (inbox, reprocessing) waiting to be processed above which their producers wait.
+     */
+    public static final String FILE_PROCESSING_BULK_QUEUE_SIZE_ENV = "DOCS_FILE_PROCESSING_BULK_QUEUE_SIZE";
+    public static final int DEFAULT_FILE_PROCESSING_BULK_QUEUE_SIZE = 1000;
+
+    /**
+     * Minimum number of threads delivering the webhooks.
+     * The pool grows so that each webhook URL can make its concurrent calls, up to the maximum number of threads.
+     */
+    public static final String WEBHOOK_THREADS_ENV = "DOCS_WEBHOOK_THREADS";
+    public static final int DEFAULT_WEBHOOK_THREADS = 4;
+
+    /**
+     * Maximum number of threads delivering the webhooks.
+     */
+    public static final String WEBHOOK_MAX_THREADS_ENV = "DOCS_WEBHOOK_MAX_THREADS";
+    public static final int DEFAULT_WEBHOOK_MAX_THREADS = 32;
+
+    /**
+     * Maximum number of concurrent deliveries to the same webhook URL.
+     */
+    public static final String WEBHOOK_CONCURRENCY_ENV = "DOCS_WEBHOOK_CONCURRENCY";
+    public static final int DEFAULT_WEBHOOK_CONCURRENCY = 2;
+
+    /**
+     * Maximum number of deliveries waiting in memory for the same webhook URL.
+     */
+    public static final String WEBHOOK_QUEUE_SIZE_ENV = "DOCS_WEBHOOK_QUEUE_SIZE";
+    public static final int DEFAULT_WEBHOOK_QUEUE_SIZE = 1000;
+
+    /**
+     * Maximum number of events sent in the same webhook call, events are sent one by one if 1.
+     */
+    public static final String WEBHOOK_BATCH_SIZE_ENV = "DOCS_WEBHOOK_BATCH_SIZE";
+    public static final int DEFAULT_WEBHOOK_BATCH_SIZE = 1;
+
+    /**
+     * Maximum number of attempts to deliver a webhook event.
+     */
+    public static final String WEBHOOK_MAX_ATTEMPTS_ENV = "DOCS_WEBHOOK_MAX_ATTEMPTS";
+    public static final int DEFAULT_WEBHOOK_MAX_ATTEMPTS = 10;
+
+    /**
+     * Number of threads decrypting the files of the ZIP exports ahead of the file being written, shared by all the exports.
+     */
+    public static final String ZIP_THREADS_ENV = "DOCS_ZIP_THREADS";
+    public static final int DEFAULT_ZIP_THREADS = 2;
+
+    /**
+     * Number of threads generating the PDF exports.
+     */
+    public static final String PDF_EXPORT_THREADS_ENV = "DOCS_PDF_EXPORT_THREADS";
+    public static final int DEFAULT_PDF_EXPORT_THREADS = 2;
+
+    /**
+     * Maximum size of the PDF export cache in megabytes, the least recently used exports are evicted first.
+     */
+    public static final String PDF_CACHE_SIZE_ENV = "DOCS_PDF_CACHE_SIZE";
+    public static final int DEFAULT_PDF_CACHE_SIZE = 512;
+
+    /**
+     * Maximum size of the extracted content cache in megabytes, the least recently used contents are evicted first.
+     */
+    public static final String CONTENT_CACHE_SIZE_ENV = "DOCS_CONTENT_CACHE_SIZE";
+    public static final int DEFAULT_CONTENT_CACHE_SIZE = 512;
+
+    /**
+     * Number of threads decrypting the legacy files to store their size and hash.
+     */
+    public static final String FILE_BACKFILL_THREADS_ENV = "DOCS_FILE_BACKFILL_THREADS";
+    public static final int DEFAULT_FILE_BACKFILL_THREADS = 4;
+
+    /**
+     * Store the new files once per content instead of once per upload.
+     */
+    public static final String STORAGE_DEDUPLICATION_ENV = "DOCS_STORAGE_DEDUPLICATION";
+
+    /**
+     * Time in seconds before the signing keys of a JWT issuer are refreshed in the background.
+     */
+    public static final String JWKS_CACHE_TTL_ENV = "DOCS_JWKS_CACHE_TTL";
+    public static final int DEFAULT_JWKS_CACHE_TTL = 3600;
+
+    /**
+     * Issuers of the accepted JWT, separated by commas. The tokens of the other issuers are rejected.
+     */
+    public static final String JWT_ISSUERS_ENV = "DOCS_JWT_ISSUERS";
+
     /**
      * Expiration time of the password recovery in hours.
      */
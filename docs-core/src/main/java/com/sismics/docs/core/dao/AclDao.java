@@ -7,14 +7,22 @@ import com.sismics.docs.core.constant.PermType;
 import com.sismics.docs.core.dao.dto.AclDto;
 import com.sismics.docs.core.model.jpa.Acl;
 import com.sismics.docs.core.util.AuditLogUtil;
+import com.sismics.docs.core.util.DocumentCacheUtil;
 import com.sismics.docs.core.util.SecurityUtil;
 import com.sismics.util.context.ThreadLocalContext;
 
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.Query;
+import jakarta.persistence.TypedQuery;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 
 /**
@@ -37,6 +45,7 @@ public class AclDao {
         // Create the ACL
         EntityManager em = ThreadLocalContext.get().getEntityManager();
         em.persist(acl);
+        DocumentCacheUtil.invalidate(acl.getSourceId());
 
         // Create audit log
         AuditLogUtil.create(acl, AuditLogType.CREATE, userId);
@@ -63,38 +72,57 @@ public class AclDao {
      * Search ACLs by source ID.
      *
      * @param sourceId Source ID
+     * @param type ACL type, null for all types
      * @return ACL DTO list
      */
-    @SuppressWarnings("unchecked")
     public List<AclDto> getBySourceId(String sourceId, AclType type) {
+        return getBySourceIdList(Collections.singleton(sourceId), type)
+                .getOrDefault(sourceId, new ArrayList<>());
+    }
+
+    /**
+     * Search ACLs of several sources in one query.
+     *
+     * @param sourceIdList Source IDs
+     * @param type ACL type, null for all types
+     * @return ACL DTO list by source ID
+     */
+    @SuppressWarnings("unchecked")
+    public Map<String, List<AclDto>> getBySourceIdList(Collection<String> sourceIdList, AclType type) {
+        Map<String, List<AclDto>> aclDtoMap = new HashMap<>();
+        if (sourceIdList.isEmpty()) {
+            return aclDtoMap;
+        }
+
         EntityManager em = ThreadLocalContext.get().getEntityManager();
-        StringBuilder sb = new StringBuilder("select a.ACL_ID_C, a.ACL_PERM_C, a.ACL_TARGETID_C, ")
+        StringBuilder sb = new StringBuilder("select a.ACL_ID_C, a.ACL_SOURCEID_C, a.ACL_PERM_C, a.ACL_TARGETID_C, a.ACL_TYPE_C, ")
                 .append(" u.USE_USERNAME_C, s.SHA_ID_C, s.SHA_NAME_C, g.GRP_NAME_C ")
                 .append(" from T_ACL a ")
                 .append(" left join T_USER u on u.USE_ID_C = a.ACL_TARGETID_C ")
                 .append(" left join T_SHARE s on s.SHA_ID_C = a.ACL_TARGETID_C ")
                 .append(" left join T_GROUP g on g.GRP_ID_C = a.ACL_TARGETID_C ")
-                .append(" where a.ACL_DELETEDATE_D is null and a.ACL_SOURCEID_C = :sourceId ");
+                .append(" where a.ACL_DELETEDATE_D is null and a.ACL_SOURCEID_C in (:sourceIdList) ");
         if (type != null) {
             sb.append(" and a.ACL_TYPE_C = :type");
         }
 
         // Perform the query
         Query q = em.createNativeQuery(sb.toString());
-        q.setParameter("sourceId", sourceId);
+        q.setParameter("sourceIdList", sourceIdList);
         if (type != null) {
             q.setParameter("type", type.name());
         }
         List<Object[]> l = q.getResultList();
 
         // Assemble results
-        List<AclDto> aclDtoList = new ArrayList<>();
         for (Object[] o : l) {
             int i = 0;
             AclDto aclDto = new AclDto();
             aclDto.setId((String) o[i++]);
+            aclDto.setSourceId((String) o[i++]);
             aclDto.setPerm(PermType.valueOf((String) o[i++]));
             aclDto.setTargetId((String) o[i++]);
+            aclDto.setType(AclType.valueOf((String) o[i++]));
             String userName = (String) o[i++];
             String shareId = (String) o[i++];
             String shareName = (String) o[i++];
@@ -111,9 +139,9 @@ public class AclDao {
                 aclDto.setTargetName(groupName);
                 aclDto.setTargetType(AclTargetType.GROUP.name());
             }
-            aclDtoList.add(aclDto);
+            aclDtoMap.computeIfAbsent(aclDto.getSourceId(), k -> new ArrayList<>()).add(aclDto);
         }
-        return aclDtoList;
+        return aclDtoMap;
     }
 
     /**
@@ -149,6 +177,69 @@ public class AclDao {
         return q.getResultList().size() > 0;
     }
 
+    /**
+     * Returns the sources accessible to a target, checked for all the sources at once.
+     *
+     * @param sourceIdList ACL source entity IDs
+     * @param perm Necessary permission
+     * @param targetIdList List of targets
+     * @return Accessible source IDs
+     */
+    @SuppressWarnings("unchecked")
+    public Set<String> getAccessibleSourceIdSet(Collection<String> sourceIdList, PermType perm, List<String> targetIdList) {
+        if (SecurityUtil.skipAclCheck(targetIdList)) {
+            return new HashSet<>(sourceIdList);
+        }
+        if (targetIdList.isEmpty() || sourceIdList.isEmpty()) {
+            return new HashSet<>();
+        }
+
+        EntityManager em = ThreadLocalContext.get().getEntityManager();
+        StringBuilder sb = new StringBuilder("select a.ACL_SOURCEID_C from T_ACL a ");
+        sb.append(" where a.ACL_TARGETID_C in (:targetIdList) and a.ACL_SOURCEID_C in (:sourceIdList) and a.ACL_PERM_C = :perm and a.ACL_DELETEDATE_D is null ");
+        sb.append(" union ");
+        sb.append(" select d.DOC_ID_C from T_ACL a, T_DOCUMENT_TAG dt, T_DOCUMENT d ");
+        sb.append(" where a.ACL_SOURCEID_C = dt.DOT_IDTAG_C and dt.DOT_IDDOCUMENT_C = d.DOC_ID_C and dt.DOT_DELETEDATE_D is null ");
+        sb.append(" and d.DOC_ID_C in (:sourceIdList) and d.DOC_DELETEDATE_D is null ");
+        sb.append(" and a.ACL_TARGETID_C in (:targetIdList) and a.ACL_PERM_C = :perm and a.ACL_DELETEDATE_D is null ");
+        Query q = em.createNativeQuery(sb.toString());
+        q.setParameter("sourceIdList", sourceIdList);
+        q.setParameter("perm", perm.name());
+        q.setParameter("targetIdList", targetIdList);
+        return new HashSet<>((List<String>) q.getResultList());
+    }
+
+    /**
+     * Returns the targets having a permission on documents, directly or through their tags.
+     *
+     * @param documentIdList List of document IDs
+     * @param perm Permission
+     * @return Target IDs by document ID
+     */
+    @SuppressWarnings("unchecked")
+    public Map<String, Set<String>> getTargetIdByDocumentId(Collection<String> documentIdList, PermType perm) {
+        Map<String, Set<String>> targetIdMap = new HashMap<>();
+        if (documentIdList.isEmpty()) {
+            return targetIdMap;
+        }
+
+        EntityManager em = ThreadLocalContext.get().getEntityManager();
+        StringBuilder sb = new StringBuilder("select a.ACL_SOURCEID_C, a.ACL_TARGETID_C from T_ACL a ");
+        sb.append(" where a.ACL_SOURCEID_C in (:documentIdList) and a.ACL_PERM_C = :perm and a.ACL_DELETEDATE_D is null ");
+        sb.append(" union ");
+        sb.append(" select dt.DOT_IDDOCUMENT_C, a.ACL_TARGETID_C from T_ACL a, T_DOCUMENT_TAG dt ");
+        sb.append(" where a.ACL_SOURCEID_C = dt.DOT_IDTAG_C and dt.DOT_DELETEDATE_D is null ");
+        sb.append(" and dt.DOT_IDDOCUMENT_C in (:documentIdList) and a.ACL_PERM_C = :perm and a.ACL_DELETEDATE_D is null ");
+        Query q = em.createNativeQuery(sb.toString());
+        q.setParameter("documentIdList", documentIdList);
+        q.setParameter("perm", perm.name());
+        List<Object[]> l = q.getResultList();
+        for (Object[] o : l) {
+            targetIdMap.computeIfAbsent((String) o[0], k -> new HashSet<>()).add((String) o[1]);
+        }
+        return targetIdMap;
+    }
+
     /**
      * Delete an ACL.
      *
@@ -181,5 +272,98 @@ public class AclDao {
         q.setParameter("type", type);
         q.setParameter("dateNow", new Date());
         q.executeUpdate();
+        DocumentCacheUtil.invalidate(sourceId);
+    }
+
+    /**
+     * Creates the same ACL on several sources, the existing ACLs are kept.
+     *
+     * @param sourceIdList Source IDs
+     * @param perm Permission
+     * @param targetId Target ID
+     * @param type Type
+     * @param userId User ID
+     * @return Source IDs on which an ACL has been created
+     */
+    @SuppressWarnings("unchecked")
+    public List<String> create(Collection<String> sourceIdList, PermType perm, String targetId, AclType type, String userId) {
+        List<String> createdSourceIdList = new ArrayList<>();
+        if (sourceIdList.isEmpty()) {
+            return createdSourceIdList;
+        }
+        EntityManager em = ThreadLocalContext.get().getEntityManager();
+
+        // Get the existing ACLs in one query
+        Query q = em.createQuery("select a.sourceId from Acl a where a.sourceId in (:sourceIdList) and a.perm = :perm and a.targetId = :targetId and a.type = :type and a.deleteDate is null");
+        q.setParameter("sourceIdList", sourceIdList);
+        q.setParameter("perm", perm);
+        q.setParameter("targetId", targetId);
+        q.setParameter("type", type);
+        Set<String> existingSourceIdSet = new HashSet<>((List<String>) q.getResultList());
+
+        // Create the missing ACLs, inserted in batches
+        List<Acl> aclList = new ArrayList<>();
+        for (String sourceId : sourceIdList) {
+            if (existingSourceIdSet.contains(sourceId)) {
+                continue;
+            }
+            Acl acl = new Acl();
+            acl.setId(UUID.randomUUID().toString());
+            acl.setSourceId(sourceId);
+            acl.setPerm(perm);
+            acl.setTargetId(targetId);
+            acl.setType(type);
+            em.persist(acl);
+            aclList.add(acl);
+            createdSourceIdList.add(sourceId);
+        }
+        DocumentCacheUtil.invalidate(createdSourceIdList);
+
+        // Create audit logs
+        AuditLogUtil.create(aclList, AuditLogType.CREATE, userId);
+
+        return createdSourceIdList;
+    }
+
+    /**
+     * Delete the same ACL on several sources.
+     *
+     * @param sourceIdList Source IDs
+     * @param perm Permission
+     * @param targetId Target ID
+     * @param userId User ID
+     * @param type Type
+     * @return Source IDs on which an ACL has been deleted
+     */
+    public List<String> delete(Collection<String> sourceIdList, PermType perm, String targetId, String userId, AclType type) {
+        List<String> deletedSourceIdList = new ArrayList<>();
+        if (sourceIdList.isEmpty()) {
+            return deletedSourceIdList;
+        }
+        EntityManager em = ThreadLocalContext.get().getEntityManager();
+
+        // Create audit logs
+        TypedQuery<Acl> aq = em.createQuery("select a from Acl a where a.sourceId in (:sourceIdList) and a.perm = :perm and a.targetId = :targetId and a.type = :type and a.deleteDate is null", Acl.class);
+        aq.setParameter("sourceIdList", sourceIdList);
+        aq.setParameter("perm", perm);
+        aq.setParameter("targetId", targetId);
+        aq.setParameter("type", type);
+        List<Acl> aclList = aq.getResultList();
+        for (Acl acl : aclList) {
+            deletedSourceIdList.add(acl.getSourceId());
+        }
+        DocumentCacheUtil.invalidate(deletedSourceIdList);
+        AuditLogUtil.create(aclList, AuditLogType.DELETE, userId);
+
+        // Soft delete the ACLs
+        Query q = em.createQuery("update Acl a set a.deleteDate = :dateNow where a.sourceId in (:sourceIdList) and a.perm = :perm and a.targetId = :targetId and a.type = :type and a.deleteDate is null");
+        q.setParameter("sourceIdList", sourceIdList);
+        q.setParameter("perm", perm);
+        q.setParameter("targetId", targetId);
+        q.setParameter("type", type);
+        q.setParameter("dateNow", new Date());
+        q.executeUpdate();
+
+        return deletedSourceIdList;
     }
-}
\ No newline at end of file
+}
@@ -1,6 +1,7 @@
 package com.sismics.docs.core.dao;
 
 import com.sismics.docs.core.model.jpa.AuthenticationToken;
+import com.sismics.docs.core.util.PrincipalCacheUtil;
 import com.sismics.util.context.ThreadLocalContext;
 import org.joda.time.DateTime;
 
@@ -39,6 +40,9 @@ public class AuthenticationTokenDao {
         authenticationToken.setId(UUID.randomUUID().toString());
         authenticationToken.setCreationDate(new Date());
         em.persist(authenticationToken);
+
+        // The token may have been looked up as unknown before being committed
+        PrincipalCacheUtil.invalidateToken(authenticationToken.getId());
         
         return authenticationToken.getId();
     }
@@ -54,6 +58,7 @@ public class AuthenticationTokenDao {
         AuthenticationToken authenticationToken = em.find(AuthenticationToken.class, authenticationTokenId);
         if (authenticationToken != null) {
             em.remove(authenticationToken);
+            PrincipalCacheUtil.invalidateToken(authenticationTokenId);
         } else {
             throw new Exception("Token not found: " + authenticationTokenId);
         }
@@ -76,6 +81,7 @@ public class AuthenticationTokenDao {
         q.setParameter("longLasted", false);
         q.setParameter("minDate", DateTime.now().minusDays(1).toDate());
         q.executeUpdate();
+        PrincipalCacheUtil.invalidateUser(userId);
     }
 
     /**
@@ -94,6 +100,7 @@ public class AuthenticationTokenDao {
         q.setParameter("currentDate", new Date());
         q.setParameter("id", id);
         q.executeUpdate();
+        PrincipalCacheUtil.invalidateToken(id);
     }
     
     /**
@@ -121,5 +128,6 @@ public class AuthenticationTokenDao {
         q.setParameter("userId", userId);
         q.setParameter("id", id);
         q.executeUpdate();
+        PrincipalCacheUtil.invalidateUser(userId);
     }
 }
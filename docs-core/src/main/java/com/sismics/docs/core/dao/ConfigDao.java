@@ -1,11 +1,18 @@
 package com.sismics.docs.core.dao;
 
+import com.google.common.base.Enums;
+import com.google.common.base.Optional;
 import com.sismics.docs.core.constant.ConfigType;
 import com.sismics.docs.core.model.jpa.Config;
+import com.sismics.docs.core.util.ConfigUtil;
 import com.sismics.util.context.ThreadLocalContext;
 
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.NoResultException;
+import jakarta.persistence.Query;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
 
 /**
  * Configuration parameter DAO.
@@ -34,8 +41,33 @@ public class ConfigDao {
         }
     }
 
+    /**
+     * Returns the values of all the configuration parameters.
+     * The parameters not known by this version are ignored.
+     *
+     * @return Values by configuration parameter ID, null outside of a transactional context
+     */
+    @SuppressWarnings("unchecked")
+    public Map<ConfigType, String> getValueMap() {
+        EntityManager em = ThreadLocalContext.get().getEntityManager();
+        if (em == null) {
+            return null;
+        }
+
+        Query q = em.createNativeQuery("select c.CFG_ID_C, c.CFG_VALUE_C from T_CONFIG c");
+        Map<ConfigType, String> valueMap = new EnumMap<>(ConfigType.class);
+        for (Object[] o : (List<Object[]>) q.getResultList()) {
+            Optional<ConfigType> configType = Enums.getIfPresent(ConfigType.class, (String) o[0]);
+            if (configType.isPresent() && o[1] != null) {
+                valueMap.put(configType.get(), (String) o[1]);
+            }
+        }
+        return valueMap;
+    }
+
     /**
      * Updates a configuration parameter.
+     * The configuration cache is updated by the committing thread once the transaction is committed.
      *
      * @param id Configuration parameter ID
      * @param value Configuration parameter value
@@ -51,5 +83,6 @@ public class ConfigDao {
         } else {
             config.setValue(value);
         }
+        ThreadLocalContext.get().addPostCommitTask(() -> ConfigUtil.reload(id));
     }
 }
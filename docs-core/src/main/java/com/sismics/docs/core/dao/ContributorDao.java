@@ -2,12 +2,16 @@ package com.sismics.docs.core.dao;
 
 import com.sismics.docs.core.dao.dto.ContributorDto;
 import com.sismics.docs.core.model.jpa.Contributor;
+import com.sismics.docs.core.util.DocumentCacheUtil;
 import com.sismics.util.context.ThreadLocalContext;
 
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.Query;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.UUID;
 
 /**
@@ -29,6 +33,7 @@ public class ContributorDao {
         // Create the contributor
         EntityManager em = ThreadLocalContext.get().getEntityManager();
         em.persist(contributor);
+        DocumentCacheUtil.invalidate(contributor.getDocumentId());
         
         return contributor.getId();
     }
@@ -47,6 +52,25 @@ public class ContributorDao {
         return q.getResultList();
     }
     
+    /**
+     * Returns the documents to which a user has contributed, among a list of documents.
+     *
+     * @param documentIdList Document IDs
+     * @param userId User ID
+     * @return Document IDs
+     */
+    @SuppressWarnings("unchecked")
+    public Set<String> findDocumentIdSet(Collection<String> documentIdList, String userId) {
+        if (documentIdList.isEmpty()) {
+            return new HashSet<>();
+        }
+        EntityManager em = ThreadLocalContext.get().getEntityManager();
+        Query q = em.createQuery("select c.documentId from Contributor c where c.documentId in (:documentIdList) and c.userId = :userId");
+        q.setParameter("documentIdList", documentIdList);
+        q.setParameter("userId", userId);
+        return new HashSet<>((List<String>) q.getResultList());
+    }
+    
     /**
      * Returns the list of all contributors by document.
      * 
@@ -5,6 +5,7 @@ import com.sismics.docs.core.constant.PermType;
 import com.sismics.docs.core.dao.dto.DocumentDto;
 import com.sismics.docs.core.model.jpa.Document;
 import com.sismics.docs.core.util.AuditLogUtil;
+import com.sismics.docs.core.util.DocumentCacheUtil;
 import com.sismics.util.context.ThreadLocalContext;
 
 import jakarta.persistence.EntityManager;
@@ -12,6 +13,8 @@ import jakarta.persistence.NoResultException;
 import jakarta.persistence.Query;
 import jakarta.persistence.TypedQuery;
 import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Date;
 import java.util.List;
 import java.util.UUID;
@@ -59,6 +62,21 @@ public class DocumentDao {
         return q.getResultList();
     }
 
+    /**
+     * Returns a page of active documents ordered by ID, starting after an ID.
+     *
+     * @param lastId Last ID of the previous page, null for the first page
+     * @param limit Limit
+     * @return List of documents
+     */
+    public List<Document> findAllAfterId(String lastId, int limit) {
+        EntityManager em = ThreadLocalContext.get().getEntityManager();
+        TypedQuery<Document> q = em.createQuery("select d from Document d where d.deleteDate is null and d.id > :lastId order by d.id", Document.class);
+        q.setParameter("lastId", lastId == null ? "" : lastId);
+        q.setMaxResults(limit);
+        return q.getResultList();
+    }
+
     /**
      * Returns the list of all active documents from a user.
      * 
@@ -72,6 +90,20 @@ public class DocumentDao {
         return q.getResultList();
     }
     
+    /**
+     * Returns the list of active documents whose permissions depend on an ACL source.
+     *
+     * @param sourceId ACL source ID, a document or a tag
+     * @return List of documents
+     */
+    public List<Document> findByAclSourceId(String sourceId) {
+        EntityManager em = ThreadLocalContext.get().getEntityManager();
+        TypedQuery<Document> q = em.createQuery("select d from Document d where d.deleteDate is null and (d.id = :sourceId" +
+                " or d.id in (select dt.documentId from DocumentTag dt where dt.tagId = :sourceId and dt.deleteDate is null))", Document.class);
+        q.setParameter("sourceId", sourceId);
+        return q.getResultList();
+    }
+
     /**
      * Returns an active document with permission checking.
      * 
@@ -85,7 +117,16 @@ public class DocumentDao {
         if (!aclDao.checkPermission(id, perm, targetIdList)) {
             return null;
         }
+        return getDocument(id);
+    }
 
+    /**
+     * Returns an active document without permission checking.
+     *
+     * @param id Document ID
+     * @return Document
+     */
+    public DocumentDto getDocument(String id) {
         EntityManager em = ThreadLocalContext.get().getEntityManager();
         StringBuilder sb = new StringBuilder("select distinct d.DOC_ID_C, d.DOC_TITLE_C, d.DOC_DESCRIPTION_C, d.DOC_SUBJECT_C, d.DOC_IDENTIFIER_C, d.DOC_PUBLISHER_C, d.DOC_FORMAT_C, d.DOC_SOURCE_C, d.DOC_TYPE_C, d.DOC_COVERAGE_C, d.DOC_RIGHTS_C, d.DOC_CREATEDATE_D, d.DOC_UPDATEDATE_D, d.DOC_LANGUAGE_C, d.DOC_IDFILE_C,");
         sb.append(" (select count(s.SHA_ID_C) from T_SHARE s, T_ACL ac where ac.ACL_SOURCEID_C = d.DOC_ID_C and ac.ACL_TARGETID_C = s.SHA_ID_C and ac.ACL_DELETEDATE_D is null and s.SHA_DELETEDATE_D is null) shareCount, ");
@@ -145,6 +186,7 @@ public class DocumentDao {
         // Delete the document
         Date dateNow = new Date();
         documentDb.setDeleteDate(dateNow);
+        DocumentCacheUtil.invalidate(id);
 
         // Delete linked data
         Query q = em.createQuery("update File f set f.deleteDate = :dateNow where f.documentId = :documentId and f.deleteDate is null");
@@ -171,6 +213,67 @@ public class DocumentDao {
         AuditLogUtil.create(documentDb, AuditLogType.DELETE, userId);
     }
     
+    /**
+     * Deletes documents in bulk.
+     *
+     * @param idList Document IDs
+     * @param userId User ID
+     */
+    public void delete(Collection<String> idList, String userId) {
+        if (idList.isEmpty()) {
+            return;
+        }
+        EntityManager em = ThreadLocalContext.get().getEntityManager();
+
+        // Delete the documents
+        List<Document> documentList = getByIdList(idList);
+        Date dateNow = new Date();
+        for (Document documentDb : documentList) {
+            documentDb.setDeleteDate(dateNow);
+        }
+        DocumentCacheUtil.invalidate(idList);
+
+        // Delete linked data
+        Query q = em.createQuery("update File f set f.deleteDate = :dateNow where f.documentId in (:documentIdList) and f.deleteDate is null");
+        q.setParameter("documentIdList", idList);
+        q.setParameter("dateNow", dateNow);
+        q.executeUpdate();
+
+        q = em.createQuery("update Acl a set a.deleteDate = :dateNow where a.sourceId in (:documentIdList) and a.deleteDate is null");
+        q.setParameter("documentIdList", idList);
+        q.setParameter("dateNow", dateNow);
+        q.executeUpdate();
+
+        q = em.createQuery("update DocumentTag dt set dt.deleteDate = :dateNow where dt.documentId in (:documentIdList) and dt.deleteDate is null");
+        q.setParameter("documentIdList", idList);
+        q.setParameter("dateNow", dateNow);
+        q.executeUpdate();
+
+        q = em.createQuery("update Relation r set r.deleteDate = :dateNow where (r.fromDocumentId in (:documentIdList) or r.toDocumentId in (:documentIdList)) and r.deleteDate is null");
+        q.setParameter("documentIdList", idList);
+        q.setParameter("dateNow", dateNow);
+        q.executeUpdate();
+
+        // Create audit logs
+        AuditLogUtil.create(documentList, AuditLogType.DELETE, userId);
+    }
+
+    /**
+     * Gets active documents by their IDs.
+     *
+     * @param idList Document IDs
+     * @return List of documents
+     */
+    public List<Document> getByIdList(Collection<String> idList) {
+        if (idList.isEmpty()) {
+            return new ArrayList<>();
+        }
+        EntityManager em = ThreadLocalContext.get().getEntityManager();
+        TypedQuery<Document> q = em.createQuery("select d from Document d where d.id in (:idList) and d.deleteDate is null", Document.class);
+        q.setParameter("idList", idList);
+        return q.getResultList();
+    }
+
     /**
      * Gets an active document by its ID.
      * 
@@ -218,6 +321,7 @@ public class DocumentDao {
         documentDb.setLanguage(document.getLanguage());
         documentDb.setFileId(document.getFileId());
         documentDb.setUpdateDate(new Date());
+        DocumentCacheUtil.invalidate(documentDb.getId());
         
         // Create audit log
         AuditLogUtil.create(documentDb, AuditLogType.UPDATE, userId);
@@ -231,12 +335,16 @@ public class DocumentDao {
      * @param document Document
      */
     public void updateFileId(Document document) {
+        // Keep the entity in sync, it is indexed right after
+        document.setUpdateDate(new Date());
+
         EntityManager em = ThreadLocalContext.get().getEntityManager();
         Query query = em.createNativeQuery("update T_DOCUMENT d set DOC_IDFILE_C = :fileId, DOC_UPDATEDATE_D = :updateDate where d.DOC_ID_C = :id");
-        query.setParameter("updateDate", new Date());
+        query.setParameter("updateDate", document.getUpdateDate());
         query.setParameter("fileId", document.getFileId());
         query.setParameter("id", document.getId());
         query.executeUpdate();
+        DocumentCacheUtil.invalidate(document.getId());
     }
 
     /**
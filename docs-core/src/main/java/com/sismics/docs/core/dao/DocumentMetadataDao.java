@@ -3,6 +3,7 @@ package com.sismics.docs.core.dao;
 import com.sismics.docs.core.constant.MetadataType;
 import com.sismics.docs.core.dao.dto.DocumentMetadataDto;
 import com.sismics.docs.core.model.jpa.DocumentMetadata;
+import com.sismics.docs.core.util.DocumentCacheUtil;
 import com.sismics.util.context.ThreadLocalContext;
 
 import jakarta.persistence.EntityManager;
@@ -30,6 +31,7 @@ public class DocumentMetadataDao {
         // Create the document metadata
         EntityManager em = ThreadLocalContext.get().getEntityManager();
         em.persist(documentMetadata);
+        DocumentCacheUtil.invalidate(documentMetadata.getDocumentId());
 
         return documentMetadata.getId();
     }
@@ -50,6 +52,7 @@ public class DocumentMetadataDao {
 
         // Update the document metadata
         documentMetadataDb.setValue(documentMetadata.getValue());
+        DocumentCacheUtil.invalidate(documentMetadataDb.getDocumentId());
 
         return documentMetadata;
     }
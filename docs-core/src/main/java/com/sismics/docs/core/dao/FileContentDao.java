@@ -0,0 +1,67 @@
+package com.sismics.docs.core.dao;
+
+import com.sismics.docs.core.model.jpa.FileContent;
+import com.sismics.util.context.ThreadLocalContext;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.TypedQuery;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * File content DAO.
+ */
+public class FileContentDao {
+    /**
+     * Returns the content of a file.
+     * 
+     * @param fileId File ID
+     * @return Content or null if none
+     */
+    public String getContent(String fileId) {
+        EntityManager em = ThreadLocalContext.get().getEntityManager();
+        FileContent fileContent = em.find(FileContent.class, fileId);
+        return fileContent == null ? null : fileContent.getContent();
+    }
+
+    /**
+     * Returns the content of some files.
+     * 
+     * @param fileIdList File IDs
+     * @return Content by file ID, files without content are missing
+     */
+    public Map<String, String> getContentMap(Collection<String> fileIdList) {
+        Map<String, String> contentMap = new HashMap<>();
+        if (fileIdList.isEmpty()) {
+            return contentMap;
+        }
+        EntityManager em = ThreadLocalContext.get().getEntityManager();
+        TypedQuery<FileContent> q = em.createQuery("select c from FileContent c where c.fileId in :fileIdList", FileContent.class);
+        q.setParameter("fileIdList", fileIdList);
+        for (FileContent fileContent : q.getResultList()) {
+            contentMap.put(fileContent.getFileId(), fileContent.getContent());
+        }
+        return contentMap;
+    }
+
+    /**
+     * Creates or replaces the content of a file.
+     * 
+     * @param fileId File ID
+     * @param content Content, null to remove it
+     */
+    public void update(String fileId, String content) {
+        EntityManager em = ThreadLocalContext.get().getEntityManager();
+        FileContent fileContent = em.find(FileContent.class, fileId);
+        if (content == null) {
+            if (fileContent != null) {
+                em.remove(fileContent);
+            }
+        } else if (fileContent == null) {
+            em.persist(new FileContent().setFileId(fileId).setContent(content));
+        } else {
+            fileContent.setContent(content);
+        }
+    }
+}
@@ -3,6 +3,7 @@ package com.sismics.docs.core.dao;
 import com.sismics.docs.core.constant.AuditLogType;
 import com.sismics.docs.core.model.jpa.File;
 import com.sismics.docs.core.util.AuditLogUtil;
+import com.sismics.docs.core.util.DocumentCacheUtil;
 import com.sismics.util.context.ThreadLocalContext;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.NoResultException;
@@ -37,6 +38,9 @@ public class FileDao {
         EntityManager em = ThreadLocalContext.get().getEntityManager();
         file.setCreateDate(new Date());
         em.persist(file);
+        if (file.getDocumentId() != null) {
+            DocumentCacheUtil.invalidate(file.getDocumentId());
+        }
         
         // Create audit log
         AuditLogUtil.create(file, AuditLogType.CREATE, userId);
@@ -58,6 +62,32 @@ public class FileDao {
         q.setMaxResults(limit);
         return q.getResultList();
     }
+
+    /**
+     * Returns a page of active files ordered by ID, starting after an ID.
+     *
+     * @param lastId Last ID of the previous page, null for the first page
+     * @param limit Limit
+     * @return List of files
+     */
+    public List<File> findAllAfterId(String lastId, int limit) {
+        EntityManager em = ThreadLocalContext.get().getEntityManager();
+        TypedQuery<File> q = em.createQuery("select f from File f where f.deleteDate is null and f.id > :lastId order by f.id", File.class);
+        q.setParameter("lastId", lastId == null ? "" : lastId);
+        q.setMaxResults(limit);
+        return q.getResultList();
+    }
+
+    /**
+     * Returns the number of active files.
+     *
+     * @return Number of files
+     */
+    public long getFileCount() {
+        EntityManager em = ThreadLocalContext.get().getEntityManager();
+        Query query = em.createNativeQuery("select count(f.FIL_ID_C) from T_FILE f where f.FIL_DELETEDATE_D is null");
+        return ((Number) query.getSingleResult()).longValue();
+    }
     
     /**
      * Returns the list of all files from a user.
@@ -136,6 +166,7 @@ public class FileDao {
         // Delete the file
         Date dateNow = new Date();
         fileDb.setDeleteDate(dateNow);
+        DocumentCacheUtil.invalidate(id);
         
         // Create audit log
         AuditLogUtil.create(fileDb, AuditLogType.DELETE, userId);
@@ -158,12 +189,16 @@ public class FileDao {
         // Update the file
         fileDb.setDocumentId(file.getDocumentId());
         fileDb.setName(file.getName());
-        fileDb.setContent(file.getContent());
         fileDb.setOrder(file.getOrder());
         fileDb.setMimeType(file.getMimeType());
         fileDb.setVersionId(file.getVersionId());
         fileDb.setLatestVersion(file.isLatestVersion());
         fileDb.setSize(file.getSize());
+        fileDb.setHash(file.getHash());
+        DocumentCacheUtil.invalidate(file.getId());
+        if (file.getDocumentId() != null) {
+            DocumentCacheUtil.invalidate(file.getDocumentId());
+        }
 
         return file;
     }
@@ -247,11 +282,88 @@ public class FileDao {
         return q.getResultList();
     }
 
-    public List<File> getFilesWithUnknownSize(int limit) {
+    /**
+     * Get active files by content hash.
+     *
+     * @param hash Content hash
+     * @return List of files
+     */
+    public List<File> getByHash(String hash) {
         EntityManager em = ThreadLocalContext.get().getEntityManager();
-        TypedQuery<File> q = em.createQuery("select f from File f where f.size = :size and f.deleteDate is null order by f.order asc", File.class);
+        TypedQuery<File> q = em.createQuery("select f from File f where f.hash = :hash and f.deleteDate is null order by f.createDate asc", File.class);
+        q.setParameter("hash", hash);
+        return q.getResultList();
+    }
+
+    /**
+     * Get the files without a stored size or hash, by ID.
+     *
+     * @param afterId Return the files after this ID, null to start from the first
+     * @param limit Maximum number of files
+     * @return List of files
+     */
+    public List<File> getFilesWithoutSizeOrHash(String afterId, int limit) {
+        EntityManager em = ThreadLocalContext.get().getEntityManager();
+        TypedQuery<File> q = em.createQuery("select f from File f where (f.size = :size or f.hash is null) and f.id > :afterId and f.deleteDate is null order by f.id asc", File.class);
         q.setParameter("size", File.UNKNOWN_SIZE);
+        q.setParameter("afterId", afterId == null ? "" : afterId);
         q.setMaxResults(limit);
         return q.getResultList();
     }
+
+    /**
+     * Count the files without a stored size or hash.
+     *
+     * @return Number of files
+     */
+    public long getFilesWithoutSizeOrHashCount() {
+        EntityManager em = ThreadLocalContext.get().getEntityManager();
+        TypedQuery<Long> q = em.createQuery("select count(f) from File f where (f.size = :size or f.hash is null) and f.deleteDate is null", Long.class);
+        q.setParameter("size", File.UNKNOWN_SIZE);
+        return q.getSingleResult();
+    }
+
+    /**
+     * Returns the number of active files referencing each blob.
+     *
+     * @return Reference count by blob ID
+     */
+    public Map<String, Long> getBlobReferenceCountMap() {
+        EntityManager em = ThreadLocalContext.get().getEntityManager();
+        TypedQuery<Object[]> q = em.createQuery("select f.blobId, count(f) from File f where f.blobId is not null and f.deleteDate is null group by f.blobId", Object[].class);
+        Map<String, Long> referenceCountMap = new HashMap<>();
+        for (Object[] o : q.getResultList()) {
+            referenceCountMap.put((String) o[0], (Long) o[1]);
+        }
+        return referenceCountMap;
+    }
+
+    /**
+     * Returns the content hash of each blob referenced by an active file.
+     *
+     * @return Content hash by blob ID
+     */
+    public Map<String, String> getBlobHashMap() {
+        EntityManager em = ThreadLocalContext.get().getEntityManager();
+        TypedQuery<Object[]> q = em.createQuery("select distinct f.blobId, f.hash from File f where f.blobId is not null and f.deleteDate is null", Object[].class);
+        Map<String, String> hashMap = new HashMap<>();
+        for (Object[] o : q.getResultList()) {
+            hashMap.put((String) o[0], (String) o[1]);
+        }
+        return hashMap;
+    }
+
+    /**
+     * Move the files referencing a blob to another blob.
+     *
+     * @param blobId Blob ID
+     * @param newBlobId New blob ID
+     */
+    public void updateBlobId(String blobId, String newBlobId) {
+        EntityManager em = ThreadLocalContext.get().getEntityManager();
+        em.createQuery("update File f set f.blobId = :newBlobId where f.blobId = :blobId")
+                .setParameter("newBlobId", newBlobId)
+                .setParameter("blobId", blobId)
+                .executeUpdate();
+    }
 }
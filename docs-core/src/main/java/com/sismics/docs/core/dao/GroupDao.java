@@ -7,6 +7,8 @@ import com.sismics.docs.core.dao.dto.GroupDto;
 import com.sismics.docs.core.model.jpa.Group;
 import com.sismics.docs.core.model.jpa.UserGroup;
 import com.sismics.docs.core.util.AuditLogUtil;
+import com.sismics.docs.core.util.DocumentCacheUtil;
+import com.sismics.docs.core.util.PrincipalCacheUtil;
 import com.sismics.docs.core.util.jpa.QueryParam;
 import com.sismics.docs.core.util.jpa.QueryUtil;
 import com.sismics.docs.core.util.jpa.SortCriteria;
@@ -71,6 +73,12 @@ public class GroupDao {
         // Create the group
         EntityManager em = ThreadLocalContext.get().getEntityManager();
         em.persist(group);
+
+        // Add the group to the hierarchy
+        Query q = em.createNativeQuery("insert into T_GROUP_CLOSURE (GCL_IDANCESTOR_C, GCL_IDDESCENDANT_C, GCL_DEPTH_N) values (:groupId, :groupId, 0)");
+        q.setParameter("groupId", group.getId());
+        q.executeUpdate();
+        attachToParent(group.getId(), group.getParentId());
         
         // Create audit log
         AuditLogUtil.create(group, AuditLogType.CREATE, userId);
@@ -111,6 +119,18 @@ public class GroupDao {
         q.setParameter("groupId", groupDb.getId());
         q.executeUpdate();
 
+        // Remove the group from the hierarchy, its children become root groups
+        List<String> ancestorIdList = getAncestorIdList(groupId);
+        List<String> descendantIdList = getDescendantIdList(groupId);
+        q = em.createNativeQuery("delete from T_GROUP_CLOSURE where GCL_IDANCESTOR_C in (:ancestorIdList) and GCL_IDDESCENDANT_C in (:descendantIdList)");
+        q.setParameter("ancestorIdList", ancestorIdList);
+        q.setParameter("descendantIdList", descendantIdList);
+        q.executeUpdate();
+
+        // The group hierarchy changed
+        PrincipalCacheUtil.invalidateAll();
+        DocumentCacheUtil.invalidateAll();
+
         // Create audit log
         AuditLogUtil.create(groupDb, AuditLogType.DELETE, userId);
     }
@@ -128,6 +148,7 @@ public class GroupDao {
         // Create the user group
         EntityManager em = ThreadLocalContext.get().getEntityManager();
         em.persist(userGroup);
+        PrincipalCacheUtil.invalidateUser(userGroup.getUserId());
         
         return userGroup.getId();
     }
@@ -150,6 +171,7 @@ public class GroupDao {
         // Delete the user group
         Date dateNow = new Date();
         userGroupDb.setDeleteDate(dateNow);
+        PrincipalCacheUtil.invalidateUser(userId);
     }
     
     /**
@@ -164,9 +186,6 @@ public class GroupDao {
         List<String> criteriaList = new ArrayList<>();
         
         StringBuilder sb = new StringBuilder("select g.GRP_ID_C as c0, g.GRP_NAME_C as c1, g.GRP_IDPARENT_C as c2, gp.GRP_NAME_C as c3, g.GRP_IDROLE_C ");
-        if (criteria.getUserId() != null) {
-            sb.append(" , ug.UGP_ID_C ");
-        }
         sb.append(" from T_GROUP g ");
         sb.append(" left join T_GROUP gp on g.GRP_IDPARENT_C = gp.GRP_ID_C ");
         
@@ -176,9 +195,14 @@ public class GroupDao {
             parameterMap.put("search", "%" + criteria.getSearch() + "%");
         }
         if (criteria.getUserId() != null) {
-            // Left join and post-filtering for recursive groups
-            sb.append(criteria.isRecursive() ? " left " : "");
-            sb.append(" join T_USER_GROUP ug on ug.UGP_IDGROUP_C = g.GRP_ID_C and ug.UGP_IDUSER_C = :userId and ug.UGP_DELETEDATE_D is null ");
+            if (criteria.isRecursive()) {
+                // Direct groups and all their ancestors
+                criteriaList.add("g.GRP_ID_C in (select gc.GCL_IDANCESTOR_C from T_GROUP_CLOSURE gc"
+                        + " join T_USER_GROUP ug on ug.UGP_IDGROUP_C = gc.GCL_IDDESCENDANT_C"
+                        + " where ug.UGP_IDUSER_C = :userId and ug.UGP_DELETEDATE_D is null)");
+            } else {
+                sb.append(" join T_USER_GROUP ug on ug.UGP_IDGROUP_C = g.GRP_ID_C and ug.UGP_IDUSER_C = :userId and ug.UGP_DELETEDATE_D is null ");
+            }
             parameterMap.put("userId", criteria.getUserId());
         }
         
@@ -194,7 +218,6 @@ public class GroupDao {
         
         // Assemble results
         List<GroupDto> groupDtoList = new ArrayList<>();
-        List<GroupDto> userGroupDtoList = new ArrayList<>();
         for (Object[] o : l) {
             int i = 0;
             GroupDto groupDto = new GroupDto()
@@ -202,45 +225,83 @@ public class GroupDao {
                 .setName((String) o[i++])
                 .setParentId((String) o[i++])
                 .setParentName((String) o[i++])
-                .setRoleId((String) o[i++]);
+                .setRoleId((String) o[i]);
             groupDtoList.add(groupDto);
-            if (criteria.getUserId() != null && o[i] != null) {
-                userGroupDtoList.add(groupDto);
-            }
-        }
-        
-        // Post-query filtering for recursive groups
-        if (criteria.getUserId() != null && criteria.isRecursive()) {
-            Set<GroupDto> filteredGroupDtoSet = new HashSet<>();
-            for (GroupDto userGroupDto : userGroupDtoList) {
-                filteredGroupDtoSet.add(userGroupDto); // Direct group
-                findGroupParentHierarchy(filteredGroupDtoSet, groupDtoList, userGroupDto, 0); // Indirect groups
-            }
-            groupDtoList = new ArrayList<>(filteredGroupDtoSet);
         }
         
         return groupDtoList;
     }
-    
+
     /**
-     * Recursively search group's parents.
-     * 
-     * @param parentGroupDtoSet Resulting parents
-     * @param groupDtoList All groups
-     * @param userGroupDto Reference group to search from
-     * @param depth Depth
+     * Returns the IDs of a group and all its ancestors.
+     *
+     * @param groupId Group ID
+     * @return List of group IDs
      */
-    private void findGroupParentHierarchy(Set<GroupDto> parentGroupDtoSet, List<GroupDto> groupDtoList, GroupDto userGroupDto, int depth) {
-        if (userGroupDto.getParentId() == null || depth == 10) { // Max depth 10 to avoid infinite loop
+    @SuppressWarnings("unchecked")
+    public List<String> getAncestorIdList(String groupId) {
+        EntityManager em = ThreadLocalContext.get().getEntityManager();
+        Query q = em.createNativeQuery("select GCL_IDANCESTOR_C from T_GROUP_CLOSURE where GCL_IDDESCENDANT_C = :groupId");
+        q.setParameter("groupId", groupId);
+        return q.getResultList();
+    }
+
+    /**
+     * Returns the IDs of a group and all its descendants.
+     *
+     * @param groupId Group ID
+     * @return List of group IDs
+     */
+    @SuppressWarnings("unchecked")
+    public List<String> getDescendantIdList(String groupId) {
+        EntityManager em = ThreadLocalContext.get().getEntityManager();
+        Query q = em.createNativeQuery("select GCL_IDDESCENDANT_C from T_GROUP_CLOSURE where GCL_IDANCESTOR_C = :groupId");
+        q.setParameter("groupId", groupId);
+        return q.getResultList();
+    }
+
+    /**
+     * Attach a group and its descendants under a new parent in the hierarchy.
+     *
+     * @param groupId Group ID
+     * @param parentId Parent group ID, can be null
+     */
+    private void attachToParent(String groupId, String parentId) {
+        if (parentId == null) {
             return;
         }
-        
-        for (GroupDto groupDto : groupDtoList) {
-            if (groupDto.getId().equals(userGroupDto.getParentId())) {
-                parentGroupDtoSet.add(groupDto); // Add parent
-                findGroupParentHierarchy(parentGroupDtoSet, groupDtoList, groupDto, depth + 1); // Find parent's parents
-            }
+        if (getDescendantIdList(groupId).contains(parentId)) {
+            // A group cannot be its own ancestor
+            return;
+        }
+
+        EntityManager em = ThreadLocalContext.get().getEntityManager();
+        Query q = em.createNativeQuery("insert into T_GROUP_CLOSURE (GCL_IDANCESTOR_C, GCL_IDDESCENDANT_C, GCL_DEPTH_N) "
+                + " select p.GCL_IDANCESTOR_C, c.GCL_IDDESCENDANT_C, p.GCL_DEPTH_N + c.GCL_DEPTH_N + 1 "
+                + " from T_GROUP_CLOSURE p, T_GROUP_CLOSURE c "
+                + " where p.GCL_IDDESCENDANT_C = :parentId and c.GCL_IDANCESTOR_C = :groupId");
+        q.setParameter("parentId", parentId);
+        q.setParameter("groupId", groupId);
+        q.executeUpdate();
+    }
+
+    /**
+     * Detach a group and its descendants from the ancestors of the group in the hierarchy.
+     *
+     * @param groupId Group ID
+     */
+    private void detachFromParent(String groupId) {
+        List<String> ancestorIdList = new ArrayList<>(getAncestorIdList(groupId));
+        ancestorIdList.remove(groupId);
+        if (ancestorIdList.isEmpty()) {
+            return;
         }
+
+        EntityManager em = ThreadLocalContext.get().getEntityManager();
+        Query q = em.createNativeQuery("delete from T_GROUP_CLOSURE where GCL_IDANCESTOR_C in (:ancestorIdList) and GCL_IDDESCENDANT_C in (:descendantIdList)");
+        q.setParameter("ancestorIdList", ancestorIdList);
+        q.setParameter("descendantIdList", getDescendantIdList(groupId));
+        q.executeUpdate();
     }
     
     /**
@@ -261,6 +322,23 @@ public class GroupDao {
         // Update the group
         groupDb.setName(group.getName());
         groupDb.setParentId(group.getParentId());
+
+        // Move the group in the hierarchy (the entity may already hold the new parent, compare with the hierarchy)
+        q = em.createNativeQuery("select GCL_IDANCESTOR_C from T_GROUP_CLOSURE where GCL_IDDESCENDANT_C = :groupId and GCL_DEPTH_N = 1");
+        q.setParameter("groupId", groupDb.getId());
+        @SuppressWarnings("unchecked")
+        List<String> parentIdList = q.getResultList();
+        String currentParentId = parentIdList.isEmpty() ? null : parentIdList.get(0);
+        if (!Objects.equals(currentParentId, groupDb.getParentId())) {
+            detachFromParent(groupDb.getId());
+            attachToParent(groupDb.getId(), groupDb.getParentId());
+        }
+
+        // The group hierarchy may have changed
+        PrincipalCacheUtil.invalidateAll();
+
+        // The group name is displayed in the ACLs of the documents
+        DocumentCacheUtil.invalidateAll();
         
         // Create audit log
         AuditLogUtil.create(groupDb, AuditLogType.UPDATE, userId);
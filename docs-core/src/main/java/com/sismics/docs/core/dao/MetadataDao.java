@@ -7,6 +7,7 @@ import com.sismics.docs.core.dao.criteria.MetadataCriteria;
 import com.sismics.docs.core.dao.dto.MetadataDto;
 import com.sismics.docs.core.model.jpa.Metadata;
 import com.sismics.docs.core.util.AuditLogUtil;
+import com.sismics.docs.core.util.DocumentCacheUtil;
 import com.sismics.docs.core.util.jpa.QueryParam;
 import com.sismics.docs.core.util.jpa.QueryUtil;
 import com.sismics.docs.core.util.jpa.SortCriteria;
@@ -38,6 +39,9 @@ public class MetadataDao {
         EntityManager em = ThreadLocalContext.get().getEntityManager();
         em.persist(metadata);
 
+        // All the documents display all the metadata
+        DocumentCacheUtil.invalidateAll();
+
         // Create audit log
         AuditLogUtil.create(metadata, AuditLogType.CREATE, userId);
 
@@ -61,6 +65,7 @@ public class MetadataDao {
 
         // Update the metadata
         metadataDb.setName(metadata.getName());
+        DocumentCacheUtil.invalidateAll();
 
         // Create audit log
         AuditLogUtil.create(metadataDb, AuditLogType.UPDATE, userId);
@@ -102,6 +107,7 @@ public class MetadataDao {
         // Delete the metadata
         Date dateNow = new Date();
         metadataDb.setDeleteDate(dateNow);
+        DocumentCacheUtil.invalidateAll();
 
         // Create audit log
         AuditLogUtil.create(metadataDb, AuditLogType.DELETE, userId);
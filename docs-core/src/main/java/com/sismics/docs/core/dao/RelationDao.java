@@ -2,6 +2,7 @@ package com.sismics.docs.core.dao;
 
 import com.sismics.docs.core.dao.dto.RelationDto;
 import com.sismics.docs.core.model.jpa.Relation;
+import com.sismics.docs.core.util.DocumentCacheUtil;
 import com.sismics.util.context.ThreadLocalContext;
 
 import jakarta.persistence.EntityManager;
@@ -57,6 +58,11 @@ public class RelationDao {
      */
     public void updateRelationList(String documentId, Set<String> documentIdSet) {
         EntityManager em = ThreadLocalContext.get().getEntityManager();
+
+        // The previously related documents reference this document, the new ones don't yet
+        Set<String> invalidatedIdSet = new HashSet<>(documentIdSet);
+        invalidatedIdSet.add(documentId);
+        DocumentCacheUtil.invalidate(invalidatedIdSet);
         
         // Get current relations from this document
         Query q = em.createQuery("select r from Relation r where r.fromDocumentId = :documentId and r.deleteDate is null");
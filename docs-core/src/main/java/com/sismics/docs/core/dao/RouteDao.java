@@ -6,6 +6,7 @@ import com.sismics.docs.core.dao.criteria.RouteCriteria;
 import com.sismics.docs.core.dao.dto.RouteDto;
 import com.sismics.docs.core.model.jpa.Route;
 import com.sismics.docs.core.util.AuditLogUtil;
+import com.sismics.docs.core.util.DocumentCacheUtil;
 import com.sismics.docs.core.util.jpa.QueryParam;
 import com.sismics.docs.core.util.jpa.QueryUtil;
 import com.sismics.docs.core.util.jpa.SortCriteria;
@@ -36,6 +37,7 @@ public class RouteDao {
         EntityManager em = ThreadLocalContext.get().getEntityManager();
         route.setCreateDate(new Date());
         em.persist(route);
+        DocumentCacheUtil.invalidate(route.getDocumentId());
 
         // Create audit log
         AuditLogUtil.create(route, AuditLogType.CREATE, userId);
@@ -97,6 +99,7 @@ public class RouteDao {
         // Create audit log
         Route route = em.find(Route.class, routeId);
         AuditLogUtil.create(route, AuditLogType.DELETE, userId);
+        DocumentCacheUtil.invalidate(route.getDocumentId());
 
         em.createNativeQuery("update T_ROUTE_STEP rs set RTP_DELETEDATE_D = :dateNow where rs.RTP_IDROUTE_C = :routeId and rs.RTP_DELETEDATE_D is null")
                 .setParameter("routeId", routeId)
@@ -7,6 +7,7 @@ import com.sismics.docs.core.constant.RouteStepType;
 import com.sismics.docs.core.dao.criteria.RouteStepCriteria;
 import com.sismics.docs.core.dao.dto.RouteStepDto;
 import com.sismics.docs.core.model.jpa.RouteStep;
+import com.sismics.docs.core.util.DocumentCacheUtil;
 import com.sismics.docs.core.util.jpa.QueryParam;
 import com.sismics.docs.core.util.jpa.QueryUtil;
 import com.sismics.docs.core.util.jpa.SortCriteria;
@@ -150,5 +151,6 @@ public class RouteStepDao {
         q.setParameter("validatorUserId", validatorUserId);
         q.setParameter("id", id);
         q.executeUpdate();
+        DocumentCacheUtil.invalidate(id);
     }
 }
@@ -7,6 +7,7 @@ import com.sismics.docs.core.dao.dto.TagDto;
 import com.sismics.docs.core.model.jpa.DocumentTag;
 import com.sismics.docs.core.model.jpa.Tag;
 import com.sismics.docs.core.util.AuditLogUtil;
+import com.sismics.docs.core.util.DocumentCacheUtil;
 import com.sismics.docs.core.util.SecurityUtil;
 import com.sismics.docs.core.util.jpa.QueryParam;
 import com.sismics.docs.core.util.jpa.QueryUtil;
@@ -47,6 +48,7 @@ public class TagDao {
      */
     public void updateTagList(String documentId, Set<String> tagIdSet) {
         EntityManager em = ThreadLocalContext.get().getEntityManager();
+        DocumentCacheUtil.invalidate(documentId);
         
         // Get current tag links
         Query q = em.createQuery("select dt from DocumentTag dt where dt.documentId = :documentId and dt.deleteDate is null");
@@ -55,23 +57,18 @@ public class TagDao {
         List<DocumentTag> documentTagList = q.getResultList();
         
         // Deleting tags no longer linked
+        Set<String> linkedTagIdSet = new HashSet<>();
         for (DocumentTag documentTag : documentTagList) {
-            if (!tagIdSet.contains(documentTag.getTagId())) {
+            if (tagIdSet.contains(documentTag.getTagId())) {
+                linkedTagIdSet.add(documentTag.getTagId());
+            } else {
                 documentTag.setDeleteDate(new Date());
             }
         }
         
         // Adding new tag links
         for (String tagId : tagIdSet) {
-            boolean found = false;
-            for (DocumentTag documentTag : documentTagList) {
-                if (documentTag.getTagId().equals(tagId)) {
-                    found = true;
-                    break;
-                }
-            }
-            
-            if (!found) {
+            if (!linkedTagIdSet.contains(tagId)) {
                 DocumentTag documentTag = new DocumentTag();
                 documentTag.setId(UUID.randomUUID().toString());
                 documentTag.setDocumentId(documentId);
@@ -80,6 +77,63 @@ public class TagDao {
             }
         }
     }
+
+    /**
+     * Add tags to documents, the existing links are kept.
+     *
+     * @param documentIdList Document IDs
+     * @param tagIdList Tag IDs
+     */
+    @SuppressWarnings("unchecked")
+    public void addTagList(Collection<String> documentIdList, Collection<String> tagIdList) {
+        if (documentIdList.isEmpty() || tagIdList.isEmpty()) {
+            return;
+        }
+        EntityManager em = ThreadLocalContext.get().getEntityManager();
+        DocumentCacheUtil.invalidate(documentIdList);
+
+        // Get the existing links in one query
+        Query q = em.createNativeQuery("select dt.DOT_IDDOCUMENT_C, dt.DOT_IDTAG_C from T_DOCUMENT_TAG dt " +
+                " where dt.DOT_IDDOCUMENT_C in (:documentIdList) and dt.DOT_IDTAG_C in (:tagIdList) and dt.DOT_DELETEDATE_D is null");
+        q.setParameter("documentIdList", documentIdList);
+        q.setParameter("tagIdList", tagIdList);
+        Set<String> linkSet = new HashSet<>();
+        for (Object[] o : (List<Object[]>) q.getResultList()) {
+            linkSet.add(o[0] + "/" + o[1]);
+        }
+
+        // Adding new tag links, inserted in batches
+        for (String documentId : documentIdList) {
+            for (String tagId : tagIdList) {
+                if (!linkSet.contains(documentId + "/" + tagId)) {
+                    DocumentTag documentTag = new DocumentTag();
+                    documentTag.setId(UUID.randomUUID().toString());
+                    documentTag.setDocumentId(documentId);
+                    documentTag.setTagId(tagId);
+                    em.persist(documentTag);
+                }
+            }
+        }
+    }
+
+    /**
+     * Remove tags from documents.
+     *
+     * @param documentIdList Document IDs
+     * @param tagIdList Tag IDs
+     */
+    public void removeTagList(Collection<String> documentIdList, Collection<String> tagIdList) {
+        if (documentIdList.isEmpty() || tagIdList.isEmpty()) {
+            return;
+        }
+        EntityManager em = ThreadLocalContext.get().getEntityManager();
+        Query q = em.createQuery("update DocumentTag dt set dt.deleteDate = :dateNow where dt.documentId in (:documentIdList) and dt.tagId in (:tagIdList) and dt.deleteDate is null");
+        q.setParameter("dateNow", new Date());
+        q.setParameter("documentIdList", documentIdList);
+        q.setParameter("tagIdList", tagIdList);
+        q.executeUpdate();
+        DocumentCacheUtil.invalidate(documentIdList);
+    }
     
     /**
      * Creates a new tag.
@@ -120,6 +174,7 @@ public class TagDao {
         // Delete the tag
         Date dateNow = new Date();
         tagDb.setDeleteDate(dateNow);
+        DocumentCacheUtil.invalidate(tagId);
 
         // Delete linked data
         q = em.createQuery("update DocumentTag dt set dt.deleteDate = :dateNow where dt.tagId = :tagId and dt.deleteDate is not null");
@@ -159,6 +214,7 @@ public class TagDao {
         tagDb.setName(tag.getName());
         tagDb.setColor(tag.getColor());
         tagDb.setParentId(tag.getParentId());
+        DocumentCacheUtil.invalidate(tagDb.getId());
         
         // Create audit log
         AuditLogUtil.create(tagDb, AuditLogType.UPDATE, userId);
@@ -222,5 +278,47 @@ public class TagDao {
 
         return tagDtoList;
     }
-}
 
+    /**
+     * Returns the tags of several documents accessible by some targets, in one query.
+     *
+     * @param documentIdList Document IDs
+     * @param targetIdList Targets reading the tags, null for all tags
+     * @return Tags sorted by name, by document ID
+     */
+    public Map<String, List<TagDto>> getByDocumentIdList(Collection<String> documentIdList, List<String> targetIdList) {
+        Map<String, List<TagDto>> tagDtoMap = new HashMap<>();
+        if (documentIdList.isEmpty()) {
+            return tagDtoMap;
+        }
+
+        Map<String, Object> parameterMap = new HashMap<>();
+        StringBuilder sb = new StringBuilder("select distinct dt.DOT_IDDOCUMENT_C as c0, t.TAG_ID_C as c1, t.TAG_NAME_C as c2, t.TAG_COLOR_C as c3, t.TAG_IDPARENT_C as c4, u.USE_USERNAME_C as c5 ");
+        sb.append(" from T_TAG t ");
+        sb.append(" join T_USER u on t.TAG_IDUSER_C = u.USE_ID_C ");
+        sb.append(" join T_DOCUMENT_TAG dt on dt.DOT_IDTAG_C = t.TAG_ID_C and dt.DOT_DELETEDATE_D is null ");
+        if (targetIdList != null && !SecurityUtil.skipAclCheck(targetIdList)) {
+            sb.append(" join T_ACL a on a.ACL_TARGETID_C in (:targetIdList) and a.ACL_SOURCEID_C = t.TAG_ID_C and a.ACL_PERM_C = 'READ' and a.ACL_DELETEDATE_D is null ");
+            parameterMap.put("targetIdList", targetIdList);
+        }
+        sb.append(" where dt.DOT_IDDOCUMENT_C in (:documentIdList) and t.TAG_DELETEDATE_D is null ");
+        sb.append(" order by c2 asc ");
+        parameterMap.put("documentIdList", documentIdList);
+
+        @SuppressWarnings("unchecked")
+        List<Object[]> l = QueryUtil.getNativeQuery(new QueryParam(sb.toString(), parameterMap)).getResultList();
+        for (Object[] o : l) {
+            int i = 0;
+            String documentId = (String) o[i++];
+            TagDto tagDto = new TagDto()
+                    .setId((String) o[i++])
+                    .setName((String) o[i++])
+                    .setColor((String) o[i++])
+                    .setParentId((String) o[i++])
+                    .setCreator((String) o[i]);
+            tagDtoMap.computeIfAbsent(documentId, k -> new ArrayList<>()).add(tagDto);
+        }
+
+        return tagDtoMap;
+    }
+}
@@ -13,6 +13,8 @@ import com.sismics.docs.core.dao.criteria.UserCriteria;
 import com.sismics.docs.core.dao.dto.UserDto;
 import com.sismics.docs.core.model.jpa.User;
 import com.sismics.docs.core.util.AuditLogUtil;
+import com.sismics.docs.core.util.DocumentCacheUtil;
+import com.sismics.docs.core.util.PrincipalCacheUtil;
 import com.sismics.docs.core.util.EncryptionUtil;
 import com.sismics.docs.core.util.jpa.QueryParam;
 import com.sismics.docs.core.util.jpa.QueryUtil;
@@ -114,6 +116,10 @@ public class UserDao {
         userDb.setStorageCurrent(user.getStorageCurrent());
         userDb.setTotpKey(user.getTotpKey());
         userDb.setDisableDate(user.getDisableDate());
+        PrincipalCacheUtil.invalidateUser(userDb.getId());
+
+        // The email is displayed with the documents the user contributed to
+        DocumentCacheUtil.invalidateAll();
 
         // Create audit log
         AuditLogUtil.create(userDb, AuditLogType.UPDATE, userId);
@@ -256,6 +262,8 @@ public class UserDao {
         q = em.createQuery("delete from AuthenticationToken at where at.userId = :userId");
         q.setParameter("userId", userDb.getId());
         q.executeUpdate();
+        PrincipalCacheUtil.invalidateUser(userDb.getId());
+        DocumentCacheUtil.invalidateAll();
         
         q = em.createQuery("update Document d set d.deleteDate = :dateNow where d.userId = :userId and d.deleteDate is null");
         q.setParameter("userId", userDb.getId());
@@ -4,6 +4,7 @@ import com.google.common.base.Joiner;
 import com.sismics.docs.core.dao.criteria.WebhookCriteria;
 import com.sismics.docs.core.dao.dto.WebhookDto;
 import com.sismics.docs.core.model.jpa.Webhook;
+import com.sismics.docs.core.util.WebhookUtil;
 import com.sismics.docs.core.util.jpa.QueryParam;
 import com.sismics.docs.core.util.jpa.QueryUtil;
 import com.sismics.docs.core.util.jpa.SortCriteria;
@@ -97,6 +98,9 @@ public class WebhookDao {
         webhook.setCreateDate(new Date());
         em.persist(webhook);
 
+        // The subscriptions changed
+        WebhookUtil.invalidate();
+
         return webhook.getId();
     }
 
@@ -116,6 +120,9 @@ public class WebhookDao {
         // Delete the group
         Date dateNow = new Date();
         webhookDb.setDeleteDate(dateNow);
+
+        // The subscriptions changed
+        WebhookUtil.invalidate();
     }
 }
 
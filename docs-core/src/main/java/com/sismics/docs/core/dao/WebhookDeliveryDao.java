@@ -0,0 +1,153 @@
+package com.sismics.docs.core.dao;
+
+import com.sismics.docs.core.model.jpa.WebhookDelivery;
+import com.sismics.util.context.ThreadLocalContext;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.Query;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Webhook delivery DAO.
+ */
+public class WebhookDeliveryDao {
+    /**
+     * Creates a new webhook delivery.
+     *
+     * @param webhookDelivery Webhook delivery
+     * @return New ID
+     */
+    public String create(WebhookDelivery webhookDelivery) {
+        // Create the UUID
+        webhookDelivery.setId(UUID.randomUUID().toString());
+
+        // Create the webhook delivery
+        EntityManager em = ThreadLocalContext.get().getEntityManager();
+        webhookDelivery.setCreateDate(new Date());
+        em.persist(webhookDelivery);
+
+        return webhookDelivery.getId();
+    }
+
+    /**
+     * Returns the URLs having webhook deliveries due for an attempt.
+     *
+     * @param date Current date
+     * @return List of URLs
+     */
+    @SuppressWarnings("unchecked")
+    public List<String> findDueUrl(Date date) {
+        EntityManager em = ThreadLocalContext.get().getEntityManager();
+        Query q = em.createQuery("select distinct d.url from WebhookDelivery d where d.nextAttemptDate <= :date");
+        q.setParameter("date", date);
+        return q.getResultList();
+    }
+
+    /**
+     * Returns the webhook deliveries to a URL due for an attempt, the oldest first.
+     *
+     * @param url Webhook URL
+     * @param date Current date
+     * @param excludedIdList IDs of the deliveries already in progress
+     * @param limit Maximum number of deliveries
+     * @return List of webhook deliveries
+     */
+    @SuppressWarnings("unchecked")
+    public List<WebhookDelivery> findDue(String url, Date date, Collection<String> excludedIdList, int limit) {
+        EntityManager em = ThreadLocalContext.get().getEntityManager();
+        StringBuilder sb = new StringBuilder("select d from WebhookDelivery d where d.url = :url and d.nextAttemptDate <= :date");
+        if (!excludedIdList.isEmpty()) {
+            sb.append(" and d.id not in (:excludedIdList)");
+        }
+        sb.append(" order by d.nextAttemptDate asc");
+        Query q = em.createQuery(sb.toString());
+        q.setParameter("url", url);
+        q.setParameter("date", date);
+        if (!excludedIdList.isEmpty()) {
+            q.setParameter("excludedIdList", excludedIdList);
+        }
+        q.setMaxResults(limit);
+        return q.getResultList();
+    }
+
+    /**
+     * Returns the number of webhook deliveries waiting.
+     *
+     * @return Number of webhook deliveries
+     */
+    public long getCount() {
+        EntityManager em = ThreadLocalContext.get().getEntityManager();
+        Query q = em.createQuery("select count(d) from WebhookDelivery d");
+        return (long) q.getSingleResult();
+    }
+
+    /**
+     * Schedules the next attempt of a webhook delivery.
+     *
+     * @param id Webhook delivery ID
+     * @param attempt Number of failed attempts
+     * @param nextAttemptDate Date of the next attempt
+     */
+    public void updateAttempt(String id, int attempt, Date nextAttemptDate) {
+        EntityManager em = ThreadLocalContext.get().getEntityManager();
+        Query q = em.createQuery("update WebhookDelivery d set d.attempt = :attempt, d.nextAttemptDate = :nextAttemptDate where d.id = :id");
+        q.setParameter("attempt", attempt);
+        q.setParameter("nextAttemptDate", nextAttemptDate);
+        q.setParameter("id", id);
+        q.executeUpdate();
+    }
+
+    /**
+     * Postpones webhook deliveries, without counting an attempt.
+     *
+     * @param idList Webhook delivery IDs
+     * @param nextAttemptDate Date of the next attempt
+     */
+    public void postpone(Collection<String> idList, Date nextAttemptDate) {
+        if (idList.isEmpty()) {
+            return;
+        }
+        EntityManager em = ThreadLocalContext.get().getEntityManager();
+        Query q = em.createQuery("update WebhookDelivery d set d.nextAttemptDate = :nextAttemptDate where d.id in (:idList)");
+        q.setParameter("nextAttemptDate", nextAttemptDate);
+        q.setParameter("idList", idList);
+        q.executeUpdate();
+    }
+
+    /**
+     * Deletes the webhook deliveries to the URLs not listed, the URLs of the deleted webhooks.
+     *
+     * @param urlList URLs of the active webhooks
+     * @return Number of deleted webhook deliveries
+     */
+    public int deleteOtherUrl(Collection<String> urlList) {
+        EntityManager em = ThreadLocalContext.get().getEntityManager();
+        Query q;
+        if (urlList.isEmpty()) {
+            q = em.createQuery("delete from WebhookDelivery d");
+        } else {
+            q = em.createQuery("delete from WebhookDelivery d where d.url not in (:urlList)");
+            q.setParameter("urlList", urlList);
+        }
+        return q.executeUpdate();
+    }
+
+    /**
+     * Deletes webhook deliveries.
+     *
+     * @param idList Webhook delivery IDs
+     * @return Number of deleted deliveries
+     */
+    public int delete(Collection<String> idList) {
+        if (idList.isEmpty()) {
+            return 0;
+        }
+        EntityManager em = ThreadLocalContext.get().getEntityManager();
+        Query q = em.createQuery("delete from WebhookDelivery d where d.id in (:idList)");
+        q.setParameter("idList", idList);
+        return q.executeUpdate();
+    }
+}
@@ -1,5 +1,6 @@
 package com.sismics.docs.core.dao.dto;
 
+import com.sismics.docs.core.constant.AclType;
 import com.sismics.docs.core.constant.PermType;
 
 /**
@@ -38,6 +39,11 @@ public class AclDto {
      */
     private String targetType;
 
+    /**
+     * ACL type.
+     */
+    private AclType type;
+
     public String getId() {
         return id;
     }
@@ -85,4 +91,12 @@ public class AclDto {
     public void setTargetType(String targetType) {
         this.targetType = targetType;
     }
+
+    public AclType getType() {
+        return type;
+    }
+
+    public void setType(AclType type) {
+        this.type = type;
+    }
 }
@@ -0,0 +1,31 @@
+package com.sismics.docs.core.event;
+
+import com.google.common.base.MoreObjects;
+
+import java.util.Collection;
+
+/**
+ * Document cache invalidated event, raised when data displayed with documents change.
+ */
+public class DocumentCacheInvalidatedAsyncEvent {
+    /**
+     * IDs referenced by the changed documents (document, tag, file, route...), null if all documents are concerned.
+     */
+    private Collection<String> idList;
+
+    public Collection<String> getIdList() {
+        return idList;
+    }
+
+    public DocumentCacheInvalidatedAsyncEvent setIdList(Collection<String> idList) {
+        this.idList = idList;
+        return this;
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("idList", idList)
+                .toString();
+    }
+}
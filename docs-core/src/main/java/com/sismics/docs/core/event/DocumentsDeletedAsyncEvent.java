@@ -0,0 +1,31 @@
+package com.sismics.docs.core.event;
+
+import com.google.common.base.MoreObjects;
+
+import java.util.List;
+
+/**
+ * Documents deleted in bulk event.
+ * A single event is fired for all the documents of a bulk operation.
+ */
+public class DocumentsDeletedAsyncEvent extends UserEvent {
+    /**
+     * Document IDs.
+     */
+    private List<String> documentIdList;
+
+    public List<String> getDocumentIdList() {
+        return documentIdList;
+    }
+
+    public void setDocumentIdList(List<String> documentIdList) {
+        this.documentIdList = documentIdList;
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+            .add("documentCount", documentIdList.size())
+            .toString();
+    }
+}
@@ -15,6 +15,11 @@ public class FileDeletedAsyncEvent extends UserEvent {
 
     private Long fileSize;
 
+    /**
+     * Content hash of the file, null if not computed.
+     */
+    private String fileHash;
+
     public String getFileId() {
         return fileId;
     }
@@ -31,11 +36,20 @@ public class FileDeletedAsyncEvent extends UserEvent {
         this.fileSize = fileSize;
     }
 
+    public String getFileHash() {
+        return fileHash;
+    }
+
+    public void setFileHash(String fileHash) {
+        this.fileHash = fileHash;
+    }
+
     @Override
     public String toString() {
         return MoreObjects.toStringHelper(this)
             .add("fileId", fileId)
             .add("fileSize", fileSize)
+            .add("fileHash", fileHash)
             .toString();
     }
 }
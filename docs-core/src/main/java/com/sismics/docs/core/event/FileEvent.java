@@ -25,6 +25,11 @@ public abstract class FileEvent extends UserEvent {
      */
     private Path unencryptedFile;
 
+    /**
+     * True if the file is part of a bulk operation (import, reprocessing), processed after the interactive uploads.
+     */
+    private boolean bulk;
+
     public String getFileId() {
         return fileId;
     }
@@ -50,11 +55,21 @@ public abstract class FileEvent extends UserEvent {
         return this;
     }
 
+    public boolean isBulk() {
+        return bulk;
+    }
+
+    public FileEvent setBulk(boolean bulk) {
+        this.bulk = bulk;
+        return this;
+    }
+
     @Override
     public String toString() {
         return MoreObjects.toStringHelper(this)
             .add("fileId", fileId)
             .add("language", language)
+            .add("bulk", bulk)
             .toString();
     }
 }
\ No newline at end of file
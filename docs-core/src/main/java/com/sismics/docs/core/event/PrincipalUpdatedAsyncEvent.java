@@ -0,0 +1,44 @@
+package com.sismics.docs.core.event;
+
+import com.google.common.base.MoreObjects;
+
+/**
+ * Principal updated event, raised when the authentication or the permissions of users change.
+ */
+public class PrincipalUpdatedAsyncEvent {
+    /**
+     * ID of the updated user, null if all users are concerned.
+     */
+    private String userId;
+
+    /**
+     * ID of the updated authentication token, null if all tokens of the user are concerned.
+     */
+    private String tokenId;
+
+    public String getUserId() {
+        return userId;
+    }
+
+    public PrincipalUpdatedAsyncEvent setUserId(String userId) {
+        this.userId = userId;
+        return this;
+    }
+
+    public String getTokenId() {
+        return tokenId;
+    }
+
+    public PrincipalUpdatedAsyncEvent setTokenId(String tokenId) {
+        this.tokenId = tokenId;
+        return this;
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("userId", userId)
+                .add("tokenId", tokenId)
+                .toString();
+    }
+}
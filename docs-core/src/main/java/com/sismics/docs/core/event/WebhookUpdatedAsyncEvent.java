@@ -0,0 +1,14 @@
+package com.sismics.docs.core.event;
+
+import com.google.common.base.MoreObjects;
+
+/**
+ * Webhook updated event, raised when a webhook is created or deleted.
+ */
+public class WebhookUpdatedAsyncEvent {
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .toString();
+    }
+}
@@ -0,0 +1,120 @@
+package com.sismics.docs.core.listener.async;
+
+import com.google.common.eventbus.AllowConcurrentEvents;
+import com.google.common.eventbus.Subscribe;
+import com.sismics.docs.core.event.AclCreatedAsyncEvent;
+import com.sismics.docs.core.event.AclDeletedAsyncEvent;
+import com.sismics.docs.core.event.DocumentCacheInvalidatedAsyncEvent;
+import com.sismics.docs.core.event.DocumentDeletedAsyncEvent;
+import com.sismics.docs.core.event.DocumentUpdatedAsyncEvent;
+import com.sismics.docs.core.event.DocumentsDeletedAsyncEvent;
+import com.sismics.docs.core.event.DocumentsUpdatedAsyncEvent;
+import com.sismics.docs.core.event.FileDeletedAsyncEvent;
+import com.sismics.docs.core.event.FileUpdatedAsyncEvent;
+import com.sismics.docs.core.util.DocumentCacheUtil;
+
+/**
+ * Listener evicting the cached documents once the changes are committed.
+ * The documents have already been evicted when the changes were made,
+ * they are evicted again in case a concurrent request cached the old state.
+ */
+public class DocumentCacheAsyncListener {
+    /**
+     * Document cache invalidated.
+     *
+     * @param event Document cache invalidated event
+     */
+    @Subscribe
+    @AllowConcurrentEvents
+    public void on(final DocumentCacheInvalidatedAsyncEvent event) {
+        DocumentCacheUtil.evict(event.getIdList());
+    }
+
+    /**
+     * Document updated.
+     *
+     * @param event Document updated event
+     */
+    @Subscribe
+    @AllowConcurrentEvents
+    public void on(final DocumentUpdatedAsyncEvent event) {
+        DocumentCacheUtil.evict(event.getDocumentId());
+    }
+
+    /**
+     * Document deleted.
+     *
+     * @param event Document deleted event
+     */
+    @Subscribe
+    @AllowConcurrentEvents
+    public void on(final DocumentDeletedAsyncEvent event) {
+        DocumentCacheUtil.evict(event.getDocumentId());
+    }
+
+    /**
+     * Documents updated in bulk.
+     *
+     * @param event Documents updated event
+     */
+    @Subscribe
+    @AllowConcurrentEvents
+    public void on(final DocumentsUpdatedAsyncEvent event) {
+        DocumentCacheUtil.evict(event.getDocumentIdList());
+    }
+
+    /**
+     * Documents deleted in bulk.
+     *
+     * @param event Documents deleted event
+     */
+    @Subscribe
+    @AllowConcurrentEvents
+    public void on(final DocumentsDeletedAsyncEvent event) {
+        DocumentCacheUtil.evict(event.getDocumentIdList());
+    }
+
+    /**
+     * File updated.
+     *
+     * @param event File updated event
+     */
+    @Subscribe
+    @AllowConcurrentEvents
+    public void on(final FileUpdatedAsyncEvent event) {
+        DocumentCacheUtil.evict(event.getFileId());
+    }
+
+    /**
+     * File deleted.
+     *
+     * @param event File deleted event
+     */
+    @Subscribe
+    @AllowConcurrentEvents
+    public void on(final FileDeletedAsyncEvent event) {
+        DocumentCacheUtil.evict(event.getFileId());
+    }
+
+    /**
+     * ACL created.
+     *
+     * @param event ACL created event
+     */
+    @Subscribe
+    @AllowConcurrentEvents
+    public void on(final AclCreatedAsyncEvent event) {
+        DocumentCacheUtil.evict(event.getSourceId());
+    }
+
+    /**
+     * ACL deleted.
+     *
+     * @param event ACL deleted event
+     */
+    @Subscribe
+    @AllowConcurrentEvents
+    public void on(final AclDeletedAsyncEvent event) {
+        DocumentCacheUtil.evict(event.getSourceId());
+    }
+}
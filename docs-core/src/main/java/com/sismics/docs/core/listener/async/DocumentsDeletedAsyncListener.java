@@ -0,0 +1,37 @@
+package com.sismics.docs.core.listener.async;
+
+import com.google.common.eventbus.AllowConcurrentEvents;
+import com.google.common.eventbus.Subscribe;
+import com.sismics.docs.core.event.DocumentsDeletedAsyncEvent;
+import com.sismics.docs.core.model.context.AppContext;
+import com.sismics.docs.core.util.TransactionUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Listener on documents deleted in bulk.
+ */
+public class DocumentsDeletedAsyncListener {
+    /**
+     * Logger.
+     */
+    private static final Logger log = LoggerFactory.getLogger(DocumentsDeletedAsyncListener.class);
+
+    /**
+     * Documents deleted in bulk.
+     * 
+     * @param event Documents deleted event
+     */
+    @Subscribe
+    @AllowConcurrentEvents
+    public void on(final DocumentsDeletedAsyncEvent event) {
+        if (log.isInfoEnabled()) {
+            log.info("Documents deleted event: " + event.toString());
+        }
+
+        TransactionUtil.handle(() -> {
+            // Update index
+            AppContext.getInstance().getIndexingHandler().deleteDocuments(event.getDocumentIdList());
+        });
+    }
+}
@@ -0,0 +1,68 @@
+package com.sismics.docs.core.listener.async;
+
+import com.google.common.collect.Lists;
+import com.google.common.eventbus.AllowConcurrentEvents;
+import com.google.common.eventbus.Subscribe;
+import com.sismics.docs.core.dao.ContributorDao;
+import com.sismics.docs.core.dao.DocumentDao;
+import com.sismics.docs.core.event.DocumentsUpdatedAsyncEvent;
+import com.sismics.docs.core.model.context.AppContext;
+import com.sismics.docs.core.model.jpa.Contributor;
+import com.sismics.docs.core.model.jpa.Document;
+import com.sismics.docs.core.util.TransactionUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Listener on documents updated in bulk.
+ */
+public class DocumentsUpdatedAsyncListener {
+    /**
+     * Logger.
+     */
+    private static final Logger log = LoggerFactory.getLogger(DocumentsUpdatedAsyncListener.class);
+
+    /**
+     * Number of documents reindexed at once.
+     */
+    private static final int BATCH_SIZE = 100;
+
+    /**
+     * Documents updated in bulk.
+     * 
+     * @param event Documents updated event
+     */
+    @Subscribe
+    @AllowConcurrentEvents
+    public void on(final DocumentsUpdatedAsyncEvent event) {
+        if (log.isInfoEnabled()) {
+            log.info("Documents updated event: " + event.toString());
+        }
+
+        for (List<String> documentIdList : Lists.partition(event.getDocumentIdList(), BATCH_SIZE)) {
+            TransactionUtil.handle(() -> {
+                // Update the index, documents deleted since the event fired are ignored
+                List<Document> documentList = new DocumentDao().getByIdList(documentIdList);
+                if (documentList.isEmpty()) {
+                    return;
+                }
+                AppContext.getInstance().getIndexingHandler().updateDocuments(documentList);
+
+                // Add the user firing this event to the contributors
+                ContributorDao contributorDao = new ContributorDao();
+                Set<String> contributedDocumentIdSet = contributorDao.findDocumentIdSet(documentIdList, event.getUserId());
+                for (Document document : documentList) {
+                    if (!contributedDocumentIdSet.contains(document.getId())) {
+                        Contributor contributor = new Contributor();
+                        contributor.setDocumentId(document.getId());
+                        contributor.setUserId(event.getUserId());
+                        contributorDao.create(contributor);
+                    }
+                }
+            });
+        }
+    }
+}
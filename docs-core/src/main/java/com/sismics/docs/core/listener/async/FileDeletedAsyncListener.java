@@ -2,11 +2,13 @@ package com.sismics.docs.core.listener.async;
 
 import com.google.common.eventbus.AllowConcurrentEvents;
 import com.google.common.eventbus.Subscribe;
+import com.sismics.docs.core.dao.FileDao;
 import com.sismics.docs.core.dao.UserDao;
 import com.sismics.docs.core.event.FileDeletedAsyncEvent;
 import com.sismics.docs.core.model.context.AppContext;
 import com.sismics.docs.core.model.jpa.File;
 import com.sismics.docs.core.model.jpa.User;
+import com.sismics.docs.core.util.ContentCacheUtil;
 import com.sismics.docs.core.util.FileUtil;
 import com.sismics.docs.core.util.TransactionUtil;
 import org.slf4j.Logger;
@@ -44,7 +46,14 @@ public class FileDeletedAsyncListener {
 
                 if (fileSize.equals(File.UNKNOWN_SIZE)) {
                     // The file size was not in the database, in this case we need to get from the unencrypted size.
-                    fileSize = FileUtil.getFileSize(event.getFileId(), user);
+                    File file = new File();
+                    file.setId(event.getFileId());
+                    try {
+                        FileUtil.computeSizeAndHash(file, user.getPrivateKey());
+                        fileSize = file.getSize();
+                    } catch (Exception e) {
+                        log.debug("Can't find size of file " + event.getFileId(), e);
+                    }
                 }
 
                 if (! fileSize.equals(File.UNKNOWN_SIZE)) {
@@ -57,6 +66,15 @@ public class FileDeletedAsyncListener {
         // Delete the file from storage
         FileUtil.delete(event.getFileId());
 
+        // Purge the extracted content if no other file has the same content
+        if (event.getFileHash() != null) {
+            TransactionUtil.handle(() -> {
+                if (new FileDao().getByHash(event.getFileHash()).isEmpty()) {
+                    ContentCacheUtil.purge(event.getFileHash());
+                }
+            });
+        }
+
         TransactionUtil.handle(() -> {
             // Update index
             AppContext.getInstance().getIndexingHandler().deleteDocument(event.getFileId());
@@ -0,0 +1,59 @@
+package com.sismics.docs.core.listener.async;
+
+import com.google.common.eventbus.AllowConcurrentEvents;
+import com.google.common.eventbus.Subscribe;
+import com.sismics.docs.core.event.DocumentDeletedAsyncEvent;
+import com.sismics.docs.core.event.DocumentUpdatedAsyncEvent;
+import com.sismics.docs.core.event.DocumentsDeletedAsyncEvent;
+import com.sismics.docs.core.event.DocumentsUpdatedAsyncEvent;
+import com.sismics.docs.core.util.PdfCacheUtil;
+
+/**
+ * Listener evicting the PDF exports of the changed documents.
+ * Stale exports are never served anyway, they are evicted to free the cache.
+ */
+public class PdfCacheAsyncListener {
+    /**
+     * Document updated.
+     * 
+     * @param event Document updated event
+     */
+    @Subscribe
+    @AllowConcurrentEvents
+    public void on(final DocumentUpdatedAsyncEvent event) {
+        PdfCacheUtil.evict(event.getDocumentId());
+    }
+
+    /**
+     * Document deleted.
+     * 
+     * @param event Document deleted event
+     */
+    @Subscribe
+    @AllowConcurrentEvents
+    public void on(final DocumentDeletedAsyncEvent event) {
+        PdfCacheUtil.evict(event.getDocumentId());
+    }
+
+    /**
+     * Documents updated in bulk.
+     * 
+     * @param event Documents updated event
+     */
+    @Subscribe
+    @AllowConcurrentEvents
+    public void on(final DocumentsUpdatedAsyncEvent event) {
+        event.getDocumentIdList().forEach(PdfCacheUtil::evict);
+    }
+
+    /**
+     * Documents deleted in bulk.
+     * 
+     * @param event Documents deleted event
+     */
+    @Subscribe
+    @AllowConcurrentEvents
+    public void on(final DocumentsDeletedAsyncEvent event) {
+        event.getDocumentIdList().forEach(PdfCacheUtil::evict);
+    }
+}
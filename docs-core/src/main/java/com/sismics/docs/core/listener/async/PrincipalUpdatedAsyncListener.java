@@ -0,0 +1,35 @@
+package com.sismics.docs.core.listener.async;
+
+import com.google.common.eventbus.AllowConcurrentEvents;
+import com.google.common.eventbus.Subscribe;
+import com.sismics.docs.core.event.PrincipalUpdatedAsyncEvent;
+import com.sismics.docs.core.util.PrincipalCacheUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Listener on principal updated.
+ */
+public class PrincipalUpdatedAsyncListener {
+    /**
+     * Logger.
+     */
+    private static final Logger log = LoggerFactory.getLogger(PrincipalUpdatedAsyncListener.class);
+
+    /**
+     * Principal updated.
+     * The cached principals have already been evicted when the change was made,
+     * they are evicted again now that it is committed in case a concurrent request cached the old state.
+     *
+     * @param event Principal updated event
+     */
+    @Subscribe
+    @AllowConcurrentEvents
+    public void on(final PrincipalUpdatedAsyncEvent event) {
+        if (log.isInfoEnabled()) {
+            log.info("Principal updated event: " + event.toString());
+        }
+
+        PrincipalCacheUtil.evict(event.getUserId(), event.getTokenId());
+    }
+}
@@ -1,23 +1,19 @@
 package com.sismics.docs.core.listener.async;
 
-import com.google.common.collect.Lists;
 import com.google.common.eventbus.AllowConcurrentEvents;
 import com.google.common.eventbus.Subscribe;
 import com.sismics.docs.core.constant.WebhookEvent;
-import com.sismics.docs.core.dao.WebhookDao;
-import com.sismics.docs.core.dao.criteria.WebhookCriteria;
-import com.sismics.docs.core.dao.dto.WebhookDto;
 import com.sismics.docs.core.event.*;
-import com.sismics.docs.core.util.TransactionUtil;
-import okhttp3.*;
+import com.sismics.docs.core.model.context.AppContext;
+import com.sismics.docs.core.service.WebhookService;
+import com.sismics.docs.core.util.WebhookUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.IOException;
-import java.util.List;
-
 /**
  * Listener for triggering webhooks.
+ * The deliveries are already saved in the outbox by the transaction raising the event,
+ * they are delivered as soon as it is committed.
  * 
  * @author bgamard
  */
@@ -27,77 +23,88 @@ public class WebhookAsyncListener {
      */
     private static final Logger log = LoggerFactory.getLogger(WebhookAsyncListener.class);
 
-    /**
-     * OkHttp client.
-     */
-    private static final OkHttpClient client = new OkHttpClient();
-    public static final MediaType JSON = MediaType.parse("application/json; charset=utf-8");
-
     @Subscribe
     @AllowConcurrentEvents
     public void on(final DocumentCreatedAsyncEvent event) {
-        triggerWebhook(WebhookEvent.DOCUMENT_CREATED, event.getDocumentId());
+        triggerWebhook(WebhookEvent.DOCUMENT_CREATED);
     }
 
     @Subscribe
     @AllowConcurrentEvents
     public void on(final DocumentUpdatedAsyncEvent event) {
-        triggerWebhook(WebhookEvent.DOCUMENT_UPDATED, event.getDocumentId());
+        triggerWebhook(WebhookEvent.DOCUMENT_UPDATED);
     }
 
     @Subscribe
     @AllowConcurrentEvents
     public void on(final DocumentDeletedAsyncEvent event) {
-        triggerWebhook(WebhookEvent.DOCUMENT_DELETED, event.getDocumentId());
+        triggerWebhook(WebhookEvent.DOCUMENT_DELETED);
+    }
+
+    @Subscribe
+    @AllowConcurrentEvents
+    public void on(final DocumentsUpdatedAsyncEvent event) {
+        triggerWebhook(WebhookEvent.DOCUMENT_UPDATED);
+    }
+
+    @Subscribe
+    @AllowConcurrentEvents
+    public void on(final DocumentsDeletedAsyncEvent event) {
+        triggerWebhook(WebhookEvent.DOCUMENT_DELETED);
     }
 
     @Subscribe
     @AllowConcurrentEvents
     public void on(final FileCreatedAsyncEvent event) {
-        triggerWebhook(WebhookEvent.FILE_CREATED, event.getFileId());
+        triggerWebhook(WebhookEvent.FILE_CREATED);
     }
 
     @Subscribe
     @AllowConcurrentEvents
     public void on(final FileUpdatedAsyncEvent event) {
-        triggerWebhook(WebhookEvent.FILE_UPDATED, event.getFileId());
+        triggerWebhook(WebhookEvent.FILE_UPDATED);
     }
 
     @Subscribe
     @AllowConcurrentEvents
     public void on(final FileDeletedAsyncEvent event) {
-        triggerWebhook(WebhookEvent.FILE_DELETED, event.getFileId());
+        triggerWebhook(WebhookEvent.FILE_DELETED);
     }
 
     /**
-     * Trigger the webhooks for the specified event.
+     * Webhook created or deleted.
+     * The subscriptions have already been evicted when the change was made,
+     * they are evicted again now that it is committed in case a concurrent event cached the old state.
+     * The pending deliveries to the deleted webhooks are dropped.
      *
-     * @param event Event
-     * @param id ID
+     * @param event Webhook updated event
      */
-    private void triggerWebhook(WebhookEvent event, String id) {
-        List<String> webhookUrlList = Lists.newArrayList();
-
-        TransactionUtil.handle(() -> {
-            WebhookDao webhookDao = new WebhookDao();
-            List<WebhookDto> webhookDtoList = webhookDao.findByCriteria(new WebhookCriteria().setEvent(event), null);
-            for (WebhookDto webhookDto : webhookDtoList) {
-                webhookUrlList.add(webhookDto.getUrl());
-            }
-        });
+    @Subscribe
+    @AllowConcurrentEvents
+    public void on(final WebhookUpdatedAsyncEvent event) {
+        WebhookUtil.evict();
 
-        RequestBody body = RequestBody.create("{\"event\": \"" + event.name() + "\", \"id\": \"" + id + "\"}", JSON);
+        WebhookService webhookService = AppContext.getInstance().getWebhookService();
+        if (webhookService != null) {
+            webhookService.dropUnsubscribed();
+        }
+    }
 
-        for (String webhookUrl : webhookUrlList) {
-            Request request = new Request.Builder()
-                    .url(webhookUrl)
-                    .post(body)
-                    .build();
-            try (Response response = client.newCall(request).execute()) {
-                log.info("Successfully called the webhook at: " + webhookUrl + " - " + response.code());
-            } catch (IOException e) {
-                log.error("Error calling the webhook at: " + webhookUrl, e);
-            }
+    /**
+     * Trigger the webhooks for the specified event.
+     * The calls are made by the webhook service, they don't delay the other asynchronous events.
+     *
+     * @param event Event
+     */
+    private void triggerWebhook(WebhookEvent event) {
+        if (WebhookUtil.getUrlList(event).isEmpty()) {
+            return;
+        }
+        WebhookService webhookService = AppContext.getInstance().getWebhookService();
+        if (webhookService == null) {
+            log.warn("Webhook service not started, event left in the outbox: " + event);
+            return;
         }
+        webhookService.poll();
     }
 }
@@ -8,9 +8,13 @@ import com.sismics.docs.core.constant.Constants;
 import com.sismics.docs.core.dao.UserDao;
 import com.sismics.docs.core.listener.async.*;
 import com.sismics.docs.core.model.jpa.User;
+import com.sismics.docs.core.service.FileProcessingService;
+import com.sismics.docs.core.service.WebhookService;
 import com.sismics.docs.core.service.FileService;
 import com.sismics.docs.core.service.FileSizeService;
 import com.sismics.docs.core.service.InboxService;
+import com.sismics.docs.core.util.BlobUtil;
+import com.sismics.docs.core.util.ConfigUtil;
 import com.sismics.docs.core.util.PdfUtil;
 import com.sismics.docs.core.util.indexing.IndexingHandler;
 import com.sismics.util.ClasspathScanner;
@@ -71,6 +75,16 @@ public class AppContext {
      */
     private FileSizeService fileSizeService;
 
+    /**
+     * File processing service.
+     */
+    private FileProcessingService fileProcessingService;
+
+    /**
+     * Webhook service.
+     */
+    private WebhookService webhookService;
+
     /**
      * Asynchronous executors.
      */
@@ -82,6 +96,9 @@ public class AppContext {
     private void startUp() {
         resetEventBus();
 
+        // Load the configuration
+        ConfigUtil.load();
+
         // Start indexing handler
         try {
             List<Class<? extends IndexingHandler>> indexingHandlerList = Lists.newArrayList(
@@ -103,6 +120,23 @@ public class AppContext {
         fileService.startAsync();
         fileService.awaitRunning();
 
+        // Generate the secret of the deduplicated storage
+        try {
+            BlobUtil.createSecret();
+        } catch (Exception e) {
+            log.error("Error generating the storage secret", e);
+        }
+
+        // Start file processing service
+        fileProcessingService = new FileProcessingService();
+        fileProcessingService.startAsync();
+        fileProcessingService.awaitRunning();
+
+        // Start webhook service
+        webhookService = new WebhookService();
+        webhookService.startAsync();
+        webhookService.awaitRunning();
+
         // Start inbox service
         inboxService = new InboxService();
         inboxService.startAsync();
@@ -151,10 +185,15 @@ public class AppContext {
         asyncEventBus.register(new DocumentCreatedAsyncListener());
         asyncEventBus.register(new DocumentUpdatedAsyncListener());
         asyncEventBus.register(new DocumentDeletedAsyncListener());
+        asyncEventBus.register(new DocumentsUpdatedAsyncListener());
+        asyncEventBus.register(new DocumentsDeletedAsyncListener());
         asyncEventBus.register(new RebuildIndexAsyncListener());
         asyncEventBus.register(new AclCreatedAsyncListener());
         asyncEventBus.register(new AclDeletedAsyncListener());
         asyncEventBus.register(new WebhookAsyncListener());
+        asyncEventBus.register(new PrincipalUpdatedAsyncListener());
+        asyncEventBus.register(new PdfCacheAsyncListener());
+        asyncEventBus.register(new DocumentCacheAsyncListener());
 
         mailEventBus = newAsyncEventBus();
         mailEventBus.register(new PasswordLostAsyncListener());
@@ -202,6 +241,9 @@ public class AppContext {
         for (ThreadPoolExecutor executor : asyncExecutorList) {
             queueSize += executor.getTaskCount() - executor.getCompletedTaskCount();
         }
+        if (fileProcessingService != null) {
+            queueSize += fileProcessingService.getPendingCount();
+        }
         return queueSize;
     }
 
@@ -225,6 +267,18 @@ public class AppContext {
         return fileService;
     }
 
+    public FileProcessingService getFileProcessingService() {
+        return fileProcessingService;
+    }
+
+    public WebhookService getWebhookService() {
+        return webhookService;
+    }
+
+    public FileSizeService getFileSizeService() {
+        return fileSizeService;
+    }
+
     public void shutDown() {
         for (ExecutorService executor : asyncExecutorList) {
             // Shutdown executor, don't accept any more tasks (can cause error with nested events)
@@ -236,6 +290,16 @@ public class AppContext {
             }
         }
 
+        if (fileProcessingService != null) {
+            fileProcessingService.stopAsync();
+            fileProcessingService.awaitTerminated();
+        }
+
+        if (webhookService != null) {
+            webhookService.stopAsync();
+            webhookService.awaitTerminated();
+        }
+
         if (indexingHandler != null) {
             indexingHandler.shutDown();
         }
@@ -47,9 +47,10 @@ public class File implements Loggable {
     private String mimeType;
 
     /**
-     * OCR-ized content.
+     * OCR-ized content, stored separately in T_FILE_CONTENT.
+     * Only loaded when the file is indexed.
      */
-    @Column(name = "FIL_CONTENT_C")
+    @Transient
     private String content;
     
     /**
@@ -96,6 +97,18 @@ public class File implements Loggable {
     @Column(name = "FIL_SIZE_N", nullable = false)
     private Long size;
 
+    /**
+     * SHA-256 hash of the unencrypted content, null if not computed yet.
+     */
+    @Column(name = "FIL_HASH_C", length = 64)
+    private String hash;
+
+    /**
+     * Shared content-addressed blob storing the file, null if stored under the file ID.
+     */
+    @Column(name = "FIL_BLOBID_C", length = 64)
+    private String blobId;
+
     /**
      * Private key to decrypt the file.
      * Not saved to database, of course.
@@ -224,6 +237,24 @@ public class File implements Loggable {
         return this;
     }
 
+    public String getHash() {
+        return hash;
+    }
+
+    public File setHash(String hash) {
+        this.hash = hash;
+        return this;
+    }
+
+    public String getBlobId() {
+        return blobId;
+    }
+
+    public File setBlobId(String blobId) {
+        this.blobId = blobId;
+        return this;
+    }
+
     @Override
     public String toString() {
         return MoreObjects.toStringHelper(this)
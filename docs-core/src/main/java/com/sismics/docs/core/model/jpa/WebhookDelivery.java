@@ -0,0 +1,116 @@
+package com.sismics.docs.core.model.jpa;
+
+import com.google.common.base.MoreObjects;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import java.util.Date;
+
+/**
+ * Webhook delivery entity, an event waiting to be delivered to a webhook URL.
+ */
+@Entity
+@Table(name = "T_WEBHOOK_DELIVERY")
+public class WebhookDelivery {
+    /**
+     * Webhook delivery ID.
+     */
+    @Id
+    @Column(name = "WHD_ID_C", nullable = false, length = 36)
+    private String id;
+
+    /**
+     * URL.
+     */
+    @Column(name = "WHD_URL_C", nullable = false, length = 1024)
+    private String url;
+
+    /**
+     * JSON payload.
+     */
+    @Column(name = "WHD_PAYLOAD_C", nullable = false, length = 4000)
+    private String payload;
+
+    /**
+     * Number of failed attempts.
+     */
+    @Column(name = "WHD_ATTEMPT_N", nullable = false)
+    private int attempt;
+
+    /**
+     * Date of the next attempt.
+     */
+    @Column(name = "WHD_NEXTATTEMPTDATE_D", nullable = false)
+    private Date nextAttemptDate;
+
+    /**
+     * Creation date.
+     */
+    @Column(name = "WHD_CREATEDATE_D", nullable = false)
+    private Date createDate;
+
+    public String getId() {
+        return id;
+    }
+
+    public WebhookDelivery setId(String id) {
+        this.id = id;
+        return this;
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    public WebhookDelivery setUrl(String url) {
+        this.url = url;
+        return this;
+    }
+
+    public String getPayload() {
+        return payload;
+    }
+
+    public WebhookDelivery setPayload(String payload) {
+        this.payload = payload;
+        return this;
+    }
+
+    public int getAttempt() {
+        return attempt;
+    }
+
+    public WebhookDelivery setAttempt(int attempt) {
+        this.attempt = attempt;
+        return this;
+    }
+
+    public Date getNextAttemptDate() {
+        return nextAttemptDate;
+    }
+
+    public WebhookDelivery setNextAttemptDate(Date nextAttemptDate) {
+        this.nextAttemptDate = nextAttemptDate;
+        return this;
+    }
+
+    public Date getCreateDate() {
+        return createDate;
+    }
+
+    public WebhookDelivery setCreateDate(Date createDate) {
+        this.createDate = createDate;
+        return this;
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("id", id)
+                .add("url", url)
+                .add("attempt", attempt)
+                .toString();
+    }
+}
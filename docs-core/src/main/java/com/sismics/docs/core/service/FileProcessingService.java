@@ -0,0 +1,534 @@
+package com.sismics.docs.core.service;
+
+import com.google.common.io.ByteStreams;
+import com.google.common.util.concurrent.AbstractIdleService;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.sismics.docs.core.constant.ConfigType;
+import com.sismics.docs.core.constant.Constants;
+import com.sismics.docs.core.dao.FileContentDao;
+import com.sismics.docs.core.dao.FileDao;
+import com.sismics.docs.core.dao.UserDao;
+import com.sismics.docs.core.event.FileEvent;
+import com.sismics.docs.core.model.context.AppContext;
+import com.sismics.docs.core.model.jpa.File;
+import com.sismics.docs.core.model.jpa.User;
+import com.sismics.docs.core.util.ConfigUtil;
+import com.sismics.docs.core.util.ContentCacheUtil;
+import com.sismics.docs.core.util.DirectoryUtil;
+import com.sismics.docs.core.util.EncryptionUtil;
+import com.sismics.docs.core.util.FileUtil;
+import com.sismics.docs.core.util.TransactionUtil;
+import com.sismics.docs.core.util.format.FormatHandler;
+import com.sismics.docs.core.util.format.FormatHandlerUtil;
+import com.sismics.util.EnvironmentUtil;
+import com.sismics.util.ImageUtil;
+import com.sismics.util.Scalr;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.crypto.Cipher;
+import javax.crypto.CipherOutputStream;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.MessageFormat;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * File processing pipeline.
+ * Files go through a thumbnail stage, then through a content extraction stage (including OCR),
+ * each stage having its own threads so that long extractions do not delay the thumbnails.
+ * Small interactive uploads are processed before bulk imports and reprocessing.
+ * Interactive and bulk files are bounded separately, so that a bulk backlog never refuses interactive uploads.
+ */
+public class FileProcessingService extends AbstractIdleService {
+    /**
+     * Logger.
+     */
+    private static final Logger log = LoggerFactory.getLogger(FileProcessingService.class);
+
+    /**
+     * Maximum size of a file processed in priority (in bytes).
+     */
+    private static final long PRIORITY_FILE_SIZE = 10_000_000L;
+
+    /**
+     * Executor generating the thumbnails.
+     */
+    private ExecutorService thumbnailExecutor;
+
+    /**
+     * Executor extracting the content.
+     */
+    private ExecutorService contentExecutor;
+
+    /**
+     * Maximum number of interactive files waiting to be processed.
+     */
+    private int queueSize;
+
+    /**
+     * Number of interactive files waiting to be processed or being processed.
+     */
+    private final AtomicInteger interactivePendingCount = new AtomicInteger();
+
+    /**
+     * Slots of the bulk files waiting to be processed or being processed.
+     */
+    private Semaphore bulkSlots;
+
+    /**
+     * Maximum number of bulk files waiting to be processed.
+     */
+    private int bulkQueueSize;
+
+    /**
+     * Sequence of the submitted tasks, to process the tasks of the same priority in order.
+     */
+    private final AtomicLong sequence = new AtomicLong();
+
+    /**
+     * Statistics of the thumbnail stage.
+     */
+    private final StageStats thumbnailStats = new StageStats();
+
+    /**
+     * Statistics of the content extraction stage.
+     */
+    private final StageStats contentStats = new StageStats();
+
+    @Override
+    protected void startUp() {
+        int thumbnailThreads = Math.max(EnvironmentUtil.getIntegerEnv(Constants.FILE_PROCESSING_THREADS_ENV,
+                Math.max(Runtime.getRuntime().availableProcessors() / 2, 1)), 1);
+        int contentThreads = Math.max(EnvironmentUtil.getIntegerEnv(Constants.OCR_THREADS_ENV,
+                Math.max(Runtime.getRuntime().availableProcessors() / 2, 1)), 1);
+        queueSize = Math.max(EnvironmentUtil.getIntegerEnv(Constants.FILE_PROCESSING_QUEUE_SIZE_ENV, Constants.DEFAULT_FILE_PROCESSING_QUEUE_SIZE), 1);
+        bulkQueueSize = Math.max(EnvironmentUtil.getIntegerEnv(Constants.FILE_PROCESSING_BULK_QUEUE_SIZE_ENV, Constants.DEFAULT_FILE_PROCESSING_BULK_QUEUE_SIZE), 1);
+        bulkSlots = new Semaphore(bulkQueueSize);
+
+        if (EnvironmentUtil.isUnitTest()) {
+            // Unit tests expect the files to be processed synchronously
+            thumbnailExecutor = MoreExecutors.newDirectExecutorService();
+            contentExecutor = MoreExecutors.newDirectExecutorService();
+        } else {
+            thumbnailExecutor = newStageExecutor(thumbnailThreads, "file-thumbnail-%d");
+            contentExecutor = newStageExecutor(contentThreads, "file-content-%d");
+        }
+        log.info("File processing service starting up with {} thumbnail threads, {} content threads, {} queued interactive files and {} queued bulk files",
+                thumbnailThreads, contentThreads, queueSize, bulkQueueSize);
+    }
+
+    @Override
+    protected void shutDown() {
+        log.info("File processing service shutting down");
+        thumbnailExecutor.shutdown();
+        try {
+            thumbnailExecutor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            // NOP
+        }
+        contentExecutor.shutdown();
+        try {
+            contentExecutor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            // NOP
+        }
+    }
+
+    /**
+     * Create the executor of a stage, running the tasks by priority.
+     *
+     * @param threadCount Number of threads
+     * @param nameFormat Thread name format
+     * @return Executor
+     */
+    private ExecutorService newStageExecutor(int threadCount, String nameFormat) {
+        return new ThreadPoolExecutor(threadCount, threadCount,
+                1L, TimeUnit.MINUTES,
+                new PriorityBlockingQueue<>(),
+                new ThreadFactoryBuilder().setNameFormat(nameFormat).setDaemon(true).build());
+    }
+
+    /**
+     * Returns true if too many interactive files are waiting to be processed to accept new uploads.
+     * The bulk files are not counted.
+     *
+     * @return True if the interactive queue is full
+     */
+    public boolean isFull() {
+        return interactivePendingCount.get() >= queueSize;
+    }
+
+    /**
+     * Returns the number of files waiting to be processed or being processed.
+     *
+     * @return Number of files
+     */
+    public int getPendingCount() {
+        return interactivePendingCount.get() + bulkQueueSize - bulkSlots.availablePermits();
+    }
+
+    public StageStats getThumbnailStats() {
+        return thumbnailStats;
+    }
+
+    public StageStats getContentStats() {
+        return contentStats;
+    }
+
+    /**
+     * Queue a file for processing:
+     * Generate thumbnails
+     * Extract and save text content
+     *
+     * @param event File event
+     * @param isFileCreated True if the file was just created
+     */
+    public void processFile(FileEvent event, boolean isFileCreated) {
+        AtomicReference<File> file = new AtomicReference<>();
+        AtomicReference<User> user = new AtomicReference<>();
+        AtomicReference<File> thumbnailSource = new AtomicReference<>();
+        AtomicBoolean ocrEnabled = new AtomicBoolean();
+
+        // Open a first transaction to get what we need to start the processing
+        TransactionUtil.handle(() -> {
+            FileDao fileDao = new FileDao();
+            file.set(fileDao.getActiveById(event.getFileId()));
+            if (file.get() == null) {
+                // The file has been deleted since
+                return;
+            }
+
+            // Get the creating user from the database for its private key
+            UserDao userDao = new UserDao();
+            user.set(userDao.getById(file.get().getUserId()));
+            ocrEnabled.set(ConfigUtil.getConfigBooleanValue(ConfigType.OCR_ENABLED, true));
+
+            // Find an identical file having thumbnails
+            if (file.get().getHash() != null) {
+                for (File sameFile : fileDao.getByHash(file.get().getHash())) {
+                    if (!sameFile.getId().equals(file.get().getId()) && hasThumbnails(sameFile.getId())) {
+                        User sameFileUser = userDao.getById(sameFile.getUserId());
+                        if (sameFileUser != null) {
+                            sameFile.setPrivateKey(sameFileUser.getPrivateKey());
+                            thumbnailSource.set(sameFile);
+                            break;
+                        }
+                    }
+                }
+            }
+        });
+
+        // Process the file outside of a transaction
+        if (user.get() == null || file.get() == null) {
+            // The user or file has been deleted
+            FileUtil.endProcessingFile(event.getFileId());
+            return;
+        }
+
+        // Bulk producers wait while their queue is full, interactive uploads are refused before
+        if (event.isBulk()) {
+            try {
+                bulkSlots.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                FileUtil.endProcessingFile(event.getFileId());
+                return;
+            }
+        } else {
+            interactivePendingCount.incrementAndGet();
+        }
+
+        Long fileSize = file.get().getSize();
+        boolean priority = !event.isBulk() && (fileSize == null || fileSize <= PRIORITY_FILE_SIZE);
+        long taskSequence = sequence.incrementAndGet();
+        try {
+            thumbnailExecutor.execute(new StageTask(priority, taskSequence, () -> {
+                if (isFileCreated || !hasThumbnails(file.get().getId())) {
+                    generateThumbnails(event, user.get(), file.get(), thumbnailSource.get());
+                }
+                try {
+                    contentExecutor.execute(new StageTask(priority, taskSequence, () -> {
+                        try {
+                            String content = extractContent(event, file.get(), ocrEnabled.get());
+                            saveContent(event, file.get(), content, isFileCreated);
+                        } finally {
+                            endProcessingFile(event);
+                        }
+                    }));
+                } catch (RejectedExecutionException e) {
+                    log.error("Unable to queue the content extraction: " + file.get(), e);
+                    endProcessingFile(event);
+                }
+            }));
+        } catch (RejectedExecutionException e) {
+            log.error("Unable to queue the file processing: " + file.get(), e);
+            endProcessingFile(event);
+        }
+    }
+
+    /**
+     * End processing a file.
+     *
+     * @param event File event
+     */
+    private void endProcessingFile(FileEvent event) {
+        if (event.isBulk()) {
+            bulkSlots.release();
+        } else {
+            interactivePendingCount.decrementAndGet();
+        }
+        FileUtil.endProcessingFile(event.getFileId());
+    }
+
+    /**
+     * Returns true if the thumbnails of a file have been generated.
+     *
+     * @param fileId File ID
+     * @return True if the thumbnails exist
+     */
+    private boolean hasThumbnails(String fileId) {
+        Path storageDirectory = DirectoryUtil.getStorageDirectory();
+        return Files.exists(storageDirectory.resolve(fileId + "_web"))
+                && Files.exists(storageDirectory.resolve(fileId + "_thumb"));
+    }
+
+    /**
+     * Generate the thumbnails of a file.
+     * This is executed outside of a transaction.
+     *
+     * @param event File event
+     * @param user User whom created the file
+     * @param file Fresh file
+     * @param thumbnailSource Identical file to copy the thumbnails from, can be null
+     */
+    private void generateThumbnails(FileEvent event, User user, File file, File thumbnailSource) {
+        FormatHandler formatHandler = FormatHandlerUtil.find(file.getMimeType());
+        if (formatHandler == null) {
+            return;
+        }
+
+        long startTime = System.currentTimeMillis();
+        try {
+            Cipher cipher = EncryptionUtil.getEncryptionCipher(user.getPrivateKey());
+            if (thumbnailSource != null) {
+                // Re-encrypt the thumbnails of the identical file
+                for (String suffix : new String[] { "_web", "_thumb" }) {
+                    Path inputFile = DirectoryUtil.getStorageDirectory().resolve(thumbnailSource.getId() + suffix);
+                    Path outputFile = DirectoryUtil.getStorageDirectory().resolve(file.getId() + suffix);
+                    try (InputStream inputStream = EncryptionUtil.decryptInputStream(Files.newInputStream(inputFile), thumbnailSource.getPrivateKey());
+                         OutputStream outputStream = new CipherOutputStream(Files.newOutputStream(outputFile), cipher)) {
+                        ByteStreams.copy(inputStream, outputStream);
+                    }
+                }
+                return;
+            }
+
+            BufferedImage image = formatHandler.generateThumbnail(event.getUnencryptedFile());
+            if (image != null) {
+                // Generate thumbnails from image
+                BufferedImage web = Scalr.resize(image, Scalr.Method.ULTRA_QUALITY, Scalr.Mode.AUTOMATIC, 1280);
+                BufferedImage thumbnail = Scalr.resize(image, Scalr.Method.ULTRA_QUALITY, Scalr.Mode.AUTOMATIC, 256);
+                image.flush();
+
+                // Write "web" encrypted image
+                Path outputFile = DirectoryUtil.getStorageDirectory().resolve(file.getId() + "_web");
+                try (OutputStream outputStream = new CipherOutputStream(Files.newOutputStream(outputFile), cipher)) {
+                    ImageUtil.writeJpeg(web, outputStream);
+                }
+
+                // Write "thumb" encrypted image
+                outputFile = DirectoryUtil.getStorageDirectory().resolve(file.getId() + "_thumb");
+                try (OutputStream outputStream = new CipherOutputStream(Files.newOutputStream(outputFile), cipher)) {
+                    ImageUtil.writeJpeg(thumbnail, outputStream);
+                }
+            }
+        } catch (Throwable e) {
+            log.error("Unable to generate thumbnails for: " + file, e);
+        } finally {
+            thumbnailStats.add(System.currentTimeMillis() - startTime);
+        }
+    }
+
+    /**
+     * Extract text content from a file, or get it from the content cache.
+     * This is executed outside of a transaction.
+     *
+     * @param event File event
+     * @param file Fresh file, its hash is computed if missing
+     * @param ocrEnabled True if OCR is enabled
+     * @return Text content
+     */
+    private String extractContent(FileEvent event, File file, boolean ocrEnabled) {
+        // Find a format handler
+        FormatHandler formatHandler = FormatHandlerUtil.find(file.getMimeType());
+        if (formatHandler == null) {
+            log.info("Format unhandled: " + file.getMimeType());
+            return null;
+        }
+
+        // Files uploaded before the content hashes were stored have no hash yet
+        if (file.getHash() == null) {
+            try {
+                file.setHash(FileUtil.computeHash(event.getUnencryptedFile()));
+            } catch (IOException e) {
+                log.error("Unable to compute the hash of: " + file, e);
+            }
+        }
+
+        // Get the content extracted from an identical file
+        if (file.getHash() != null) {
+            String content = ContentCacheUtil.getContent(file.getHash(), event.getLanguage(), ocrEnabled, formatHandler);
+            if (content != null) {
+                log.info("File content found in cache: " + file.getId());
+                return content;
+            }
+        }
+
+        // Extract text content from the file
+        long startTime = System.currentTimeMillis();
+        String content = null;
+        log.info("Start extracting content from: " + file);
+        try {
+            content = formatHandler.extractContent(event.getLanguage(), event.getUnencryptedFile());
+        } catch (Throwable e) {
+            log.error("Error extracting content from: " + file, e);
+        }
+        long duration = System.currentTimeMillis() - startTime;
+        contentStats.add(duration);
+        log.info(MessageFormat.format("File content extracted in {0}ms: " + file.getId(), duration));
+
+        // Blank contents are not cached, they may come from a failed OCR
+        if (content != null && !content.isBlank() && file.getHash() != null) {
+            ContentCacheUtil.putContent(file.getHash(), event.getLanguage(), ocrEnabled, formatHandler, content);
+        }
+
+        return content;
+    }
+
+    /**
+     * Save the content of a file and index it.
+     *
+     * @param event File event
+     * @param file Processed file
+     * @param content Text content
+     * @param isFileCreated True if the file was just created
+     */
+    private void saveContent(FileEvent event, File file, String content, boolean isFileCreated) {
+        TransactionUtil.handle(() -> {
+            // Save the file to database
+            FileDao fileDao = new FileDao();
+            File freshFile = fileDao.getActiveById(event.getFileId());
+            if (freshFile == null) {
+                // The file has been deleted since the text extraction started, ignore the result
+                return;
+            }
+
+            if (freshFile.getHash() == null) {
+                freshFile.setHash(file.getHash());
+                fileDao.update(freshFile);
+            }
+            new FileContentDao().update(freshFile.getId(), content);
+            freshFile.setContent(content);
+
+            // Update index with the updated file
+            if (isFileCreated) {
+                AppContext.getInstance().getIndexingHandler().createFile(freshFile);
+            } else {
+                AppContext.getInstance().getIndexingHandler().updateFile(freshFile);
+            }
+        });
+    }
+
+    /**
+     * Task of a stage, ordered by priority then by submission.
+     */
+    private static class StageTask implements Runnable, Comparable<StageTask> {
+        /**
+         * True if the task is processed in priority.
+         */
+        private final boolean priority;
+
+        /**
+         * Submission sequence.
+         */
+        private final long sequence;
+
+        /**
+         * Task to run.
+         */
+        private final Runnable runnable;
+
+        StageTask(boolean priority, long sequence, Runnable runnable) {
+            this.priority = priority;
+            this.sequence = sequence;
+            this.runnable = runnable;
+        }
+
+        @Override
+        public void run() {
+            runnable.run();
+        }
+
+        @Override
+        public int compareTo(StageTask o) {
+            if (priority != o.priority) {
+                return priority ? -1 : 1;
+            }
+            return Long.compare(sequence, o.sequence);
+        }
+    }
+
+    /**
+     * Timings of a stage.
+     */
+    public static class StageStats {
+        /**
+         * Number of processed files.
+         */
+        private final AtomicLong count = new AtomicLong();
+
+        /**
+         * Total processing time (in milliseconds).
+         */
+        private final AtomicLong totalTime = new AtomicLong();
+
+        /**
+         * Add a processed file.
+         *
+         * @param time Processing time (in milliseconds)
+         */
+        void add(long time) {
+            count.incrementAndGet();
+            totalTime.addAndGet(time);
+        }
+
+        public long getCount() {
+            return count.get();
+        }
+
+        /**
+         * Returns the average processing time.
+         *
+         * @return Average processing time (in milliseconds)
+         */
+        public long getAverageTime() {
+            long count = this.count.get();
+            return count == 0 ? 0 : totalTime.get() / count;
+        }
+    }
+}
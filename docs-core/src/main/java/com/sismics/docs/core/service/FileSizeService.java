@@ -1,20 +1,33 @@
 package com.sismics.docs.core.service;
 
 import com.google.common.util.concurrent.AbstractScheduledService;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.sismics.docs.core.constant.Constants;
 import com.sismics.docs.core.dao.FileDao;
 import com.sismics.docs.core.dao.UserDao;
 import com.sismics.docs.core.model.jpa.File;
 import com.sismics.docs.core.model.jpa.User;
 import com.sismics.docs.core.util.FileUtil;
 import com.sismics.docs.core.util.TransactionUtil;
+import com.sismics.util.EnvironmentUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
- * Service that retrieve files sizes when they are not in the database.
+ * Service that stores the size and hash of the files when they are not in the database.
+ * Files uploaded before the size and hash were computed at creation are decrypted once, in parallel.
  */
 public class FileSizeService extends AbstractScheduledService {
     /**
@@ -22,55 +35,175 @@ public class FileSizeService extends AbstractScheduledService {
      */
     private static final Logger log = LoggerFactory.getLogger(FileSizeService.class);
 
+    /**
+     * Number of files processed per transaction.
+     */
+    private static final int BATCH_SIZE = 500;
+
+    /**
+     * Executor decrypting the files.
+     */
+    private ExecutorService executor;
+
+    /**
+     * ID of the last file processed, the next batch starts after it.
+     */
+    private String lastFileId;
+
+    /**
+     * Number of files to process, -1 until counted.
+     */
+    private final AtomicLong totalCount = new AtomicLong(-1);
+
+    /**
+     * Number of files processed.
+     */
+    private final AtomicLong processedCount = new AtomicLong();
+
     public FileSizeService() {
     }
 
     @Override
     protected void startUp() {
         log.info("File size service starting up");
+        int threads = Math.max(EnvironmentUtil.getIntegerEnv(Constants.FILE_BACKFILL_THREADS_ENV, Constants.DEFAULT_FILE_BACKFILL_THREADS), 1);
+        executor = Executors.newFixedThreadPool(threads,
+                new ThreadFactoryBuilder().setNameFormat("file-size-%d").setDaemon(true).build());
     }
 
     @Override
     protected void shutDown() {
         log.info("File size service shutting down");
+        executor.shutdownNow();
     }
 
-    private static final int BATCH_SIZE = 30;
-    
     @Override
     protected void runOneIteration() {
         try {
-            TransactionUtil.handle(() -> {
-                FileDao fileDao = new FileDao();
-                List<File> files = fileDao.getFilesWithUnknownSize(BATCH_SIZE);
-                for(File file : files) {
-                    processFile(file);
-                }
-                if(files.size() < BATCH_SIZE) {
-                    log.info("No more file to process, stopping the service");
-                    stopAsync();
+            if (totalCount.get() < 0) {
+                TransactionUtil.handle(() -> totalCount.set(new FileDao().getFilesWithoutSizeOrHashCount()));
+                log.info(totalCount.get() + " files without size or hash to process");
+            }
+
+            // Process all the files in batches, files which can't be read are skipped
+            while (isRunning()) {
+                String previousFileId = lastFileId;
+                TransactionUtil.handle(() -> {
+                    FileDao fileDao = new FileDao();
+                    List<File> files = fileDao.getFilesWithoutSizeOrHash(lastFileId, BATCH_SIZE);
+                    processFiles(files);
+                    if (!files.isEmpty()) {
+                        lastFileId = files.get(files.size() - 1).getId();
+                    }
+                    log.info("File size progress: " + processedCount.get() + "/" + totalCount.get() + " files processed");
+                    if (files.size() < BATCH_SIZE) {
+                        log.info("No more file to process, stopping the service");
+                        stopAsync();
+                    }
+                });
+                if (isRunning() && Objects.equals(previousFileId, lastFileId)) {
+                    // The batch failed, retry at the next iteration
+                    break;
                 }
-            });
+            }
         } catch (Throwable e) {
             log.error("Exception during file service iteration", e);
         }
     }
 
+    /**
+     * Decrypt files in parallel and store their size and hash.
+     *
+     * @param files Files
+     */
+    private void processFiles(List<File> files) {
+        UserDao userDao = new UserDao();
+        Map<String, String> privateKeyMap = new HashMap<>();
+        List<Future<File>> futureList = new ArrayList<>();
+        for (File file : files) {
+            String privateKey = privateKeyMap.computeIfAbsent(file.getUserId(), userId -> {
+                User user = userDao.getById(userId);
+                return user == null ? null : user.getPrivateKey();
+            });
+            String fileId = file.getId();
+            futureList.add(executor.submit(() -> computeSizeAndHash(fileId, privateKey)));
+        }
+
+        // The managed files are only updated from this thread
+        FileDao fileDao = new FileDao();
+        for (int i = 0; i < files.size(); i++) {
+            File computedFile = Futures.getUnchecked(futureList.get(i));
+            if (computedFile != null) {
+                File file = files.get(i);
+                file.setSize(computedFile.getSize());
+                file.setHash(computedFile.getHash());
+                fileDao.update(file);
+            }
+            processedCount.incrementAndGet();
+        }
+    }
+
+    /**
+     * Store the size and hash of a file.
+     *
+     * @param file File
+     */
     void processFile(File file) {
         UserDao userDao = new UserDao();
         User user = userDao.getById(file.getUserId());
-        if(user == null) {
+        if (user == null) {
             return;
         }
 
-        long fileSize = FileUtil.getFileSize(file.getId(), user);
-        if(fileSize != File.UNKNOWN_SIZE){
+        File computedFile = computeSizeAndHash(file.getId(), user.getPrivateKey());
+        if (computedFile != null) {
             FileDao fileDao = new FileDao();
-            file.setSize(fileSize);
+            file.setSize(computedFile.getSize());
+            file.setHash(computedFile.getHash());
             fileDao.update(file);
         }
     }
 
+    /**
+     * Compute the size and hash of a stored file.
+     *
+     * @param fileId File ID
+     * @param privateKey Private key of the file owner, can be null
+     * @return Detached file holding the size and hash, null if the file can't be read
+     */
+    private static File computeSizeAndHash(String fileId, String privateKey) {
+        if (privateKey == null) {
+            return null;
+        }
+        File file = new File();
+        file.setId(fileId);
+        try {
+            FileUtil.computeSizeAndHash(file, privateKey);
+            return file;
+        } catch (Exception e) {
+            log.debug("Can't compute the size and hash of file " + fileId, e);
+            return null;
+        }
+    }
+
+    /**
+     * Returns the number of files to process.
+     *
+     * @return Number of files, -1 until counted
+     */
+    public long getTotalCount() {
+        return totalCount.get();
+    }
+
+    /**
+     * Returns the number of files processed.
+     *
+     * @return Number of files
+     */
+    public long getProcessedCount() {
+        return processedCount.get();
+    }
+
     @Override
     protected Scheduler scheduler() {
         return Scheduler.newFixedDelaySchedule(0, 1, TimeUnit.MINUTES);
@@ -0,0 +1,488 @@
+package com.sismics.docs.core.service;
+
+import com.google.common.base.Joiner;
+import com.google.common.util.concurrent.AbstractScheduledService;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.sismics.docs.core.constant.Constants;
+import com.sismics.docs.core.constant.WebhookEvent;
+import com.sismics.docs.core.dao.WebhookDeliveryDao;
+import com.sismics.docs.core.model.jpa.WebhookDelivery;
+import com.sismics.docs.core.util.TransactionUtil;
+import com.sismics.docs.core.util.WebhookUtil;
+import com.sismics.util.EnvironmentUtil;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * Webhook delivery service.
+ * Events are saved in an outbox by the transaction raising them (see WebhookUtil), so that they are never lost,
+ * then polled from it and delivered by dedicated threads.
+ * Each webhook URL has its own bounded queue and a maximum number of concurrent calls, and the pool grows
+ * up to a maximum so that every URL can make its concurrent calls: a slow or dead receiver only delays its own deliveries.
+ * Failed deliveries are retried with an exponential backoff.
+ */
+public class WebhookService extends AbstractScheduledService {
+    /**
+     * Logger.
+     */
+    private static final Logger log = LoggerFactory.getLogger(WebhookService.class);
+
+    /**
+     * JSON media type.
+     */
+    private static final MediaType JSON = MediaType.parse("application/json; charset=utf-8");
+
+    /**
+     * Delay before the first retry (in seconds), doubled on each attempt.
+     */
+    private static final long RETRY_DELAY = 10;
+
+    /**
+     * Maximum delay between two retries (in seconds).
+     */
+    private static final long MAX_RETRY_DELAY = 3600;
+
+    /**
+     * Delay before the next attempt of a delivery postponed because its URL queue is full (in seconds).
+     */
+    private static final long POSTPONE_DELAY = 60;
+
+    /**
+     * Maximum number of deliveries to the same URL loaded from the outbox on each iteration.
+     */
+    private static final int OUTBOX_BATCH_SIZE = 100;
+
+    /**
+     * OkHttp client.
+     */
+    private final OkHttpClient client = new OkHttpClient.Builder()
+            .connectTimeout(10, TimeUnit.SECONDS)
+            .readTimeout(30, TimeUnit.SECONDS)
+            .build();
+
+    /**
+     * Executor delivering the webhooks.
+     */
+    private ExecutorService deliveryExecutor;
+
+    /**
+     * Minimum number of threads delivering the webhooks.
+     */
+    private int threads;
+
+    /**
+     * Maximum number of threads delivering the webhooks.
+     */
+    private int maxThreads;
+
+    /**
+     * Maximum number of concurrent deliveries to the same URL.
+     */
+    private int concurrency;
+
+    /**
+     * Maximum number of deliveries waiting in memory for the same URL.
+     */
+    private int queueSize;
+
+    /**
+     * Maximum number of events sent in the same call.
+     */
+    private int batchSize;
+
+    /**
+     * Maximum number of attempts to deliver an event.
+     */
+    private int maxAttempts;
+
+    /**
+     * Endpoints by URL.
+     */
+    private final Map<String, Endpoint> endpointMap = new ConcurrentHashMap<>();
+
+    /**
+     * Statistics of the successful deliveries.
+     */
+    private final FileProcessingService.StageStats deliveryStats = new FileProcessingService.StageStats();
+
+    /**
+     * Number of failed delivery attempts.
+     */
+    private final AtomicLong failureCount = new AtomicLong();
+
+    /**
+     * Number of deliveries in the outbox, counted on each poll and maintained in between.
+     */
+    private final AtomicLong pendingCount = new AtomicLong();
+
+    @Override
+    protected void startUp() {
+        threads = Math.max(EnvironmentUtil.getIntegerEnv(Constants.WEBHOOK_THREADS_ENV, Constants.DEFAULT_WEBHOOK_THREADS), 1);
+        maxThreads = Math.max(EnvironmentUtil.getIntegerEnv(Constants.WEBHOOK_MAX_THREADS_ENV, Constants.DEFAULT_WEBHOOK_MAX_THREADS), threads);
+        concurrency = Math.max(EnvironmentUtil.getIntegerEnv(Constants.WEBHOOK_CONCURRENCY_ENV, Constants.DEFAULT_WEBHOOK_CONCURRENCY), 1);
+        queueSize = Math.max(EnvironmentUtil.getIntegerEnv(Constants.WEBHOOK_QUEUE_SIZE_ENV, Constants.DEFAULT_WEBHOOK_QUEUE_SIZE), 1);
+        batchSize = Math.max(EnvironmentUtil.getIntegerEnv(Constants.WEBHOOK_BATCH_SIZE_ENV, Constants.DEFAULT_WEBHOOK_BATCH_SIZE), 1);
+        maxAttempts = Math.max(EnvironmentUtil.getIntegerEnv(Constants.WEBHOOK_MAX_ATTEMPTS_ENV, Constants.DEFAULT_WEBHOOK_MAX_ATTEMPTS), 1);
+
+        if (EnvironmentUtil.isUnitTest()) {
+            // Unit tests expect the webhooks to be delivered synchronously
+            deliveryExecutor = MoreExecutors.newDirectExecutorService();
+        } else {
+            deliveryExecutor = new ThreadPoolExecutor(threads, threads,
+                    1L, TimeUnit.MINUTES,
+                    new LinkedBlockingQueue<>(),
+                    new ThreadFactoryBuilder().setNameFormat("webhook-%d").setDaemon(true).build());
+        }
+        log.info("Webhook service starting up with {} to {} threads, {} concurrent calls per URL and {} events per call",
+                threads, maxThreads, concurrency, batchSize);
+    }
+
+    @Override
+    protected void shutDown() {
+        log.info("Webhook service shutting down");
+        deliveryExecutor.shutdown();
+        try {
+            deliveryExecutor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            // NOP
+        }
+    }
+
+    @Override
+    protected void runOneIteration() {
+        try {
+            poll();
+        } catch (Throwable e) {
+            log.error("Exception during webhook service iteration", e);
+        }
+    }
+
+    @Override
+    protected Scheduler scheduler() {
+        return Scheduler.newFixedDelaySchedule(0, 30, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Queue the deliveries due in the outbox.
+     * Called periodically for the retries and the deliveries of a previous run,
+     * and once a transaction saving deliveries is committed.
+     */
+    public void poll() {
+        pruneEndpoints();
+
+        // Deliveries loaded by URL so that a busy URL doesn't hide the others
+        List<WebhookDelivery> webhookDeliveryList = new ArrayList<>();
+        TransactionUtil.handle(() -> {
+            WebhookDeliveryDao webhookDeliveryDao = new WebhookDeliveryDao();
+            pendingCount.set(webhookDeliveryDao.getCount());
+            Date now = new Date();
+            for (String url : webhookDeliveryDao.findDueUrl(now)) {
+                Endpoint endpoint = endpointMap.get(url);
+                int capacity = endpoint == null ? queueSize : endpoint.queue.remainingCapacity();
+                if (capacity == 0) {
+                    continue;
+                }
+                Set<String> inFlightIdSet = endpoint == null ? new HashSet<>() : new HashSet<>(endpoint.inFlightIdSet);
+                webhookDeliveryList.addAll(webhookDeliveryDao.findDue(url, now, inFlightIdSet, Math.min(capacity, OUTBOX_BATCH_SIZE)));
+            }
+        });
+        enqueue(webhookDeliveryList);
+    }
+
+    /**
+     * Drop the deliveries to the URLs no longer used by a webhook, from memory and from the outbox.
+     * Called once the deletion of a webhook is committed.
+     */
+    public void dropUnsubscribed() {
+        Set<String> urlSet = new HashSet<>();
+        for (WebhookEvent event : WebhookEvent.values()) {
+            urlSet.addAll(WebhookUtil.getUrlList(event));
+        }
+
+        for (Endpoint endpoint : endpointMap.values()) {
+            if (!urlSet.contains(endpoint.url)) {
+                List<WebhookDelivery> droppedList = new ArrayList<>();
+                endpoint.queue.drainTo(droppedList);
+                for (WebhookDelivery webhookDelivery : droppedList) {
+                    endpoint.inFlightIdSet.remove(webhookDelivery.getId());
+                }
+            }
+        }
+
+        TransactionUtil.handle(() -> {
+            int count = new WebhookDeliveryDao().deleteOtherUrl(urlSet);
+            pendingCount.addAndGet(-count);
+            if (count > 0) {
+                log.info("Dropped " + count + " deliveries to deleted webhooks");
+            }
+        });
+    }
+
+    /**
+     * Queue deliveries on their endpoints.
+     * The deliveries not queued stay in the outbox and are postponed.
+     *
+     * @param webhookDeliveryList Webhook deliveries
+     */
+    private void enqueue(List<WebhookDelivery> webhookDeliveryList) {
+        List<String> postponedIdList = new ArrayList<>();
+        for (WebhookDelivery webhookDelivery : webhookDeliveryList) {
+            if (!enqueue(webhookDelivery)) {
+                postponedIdList.add(webhookDelivery.getId());
+            }
+        }
+
+        if (!postponedIdList.isEmpty()) {
+            TransactionUtil.handle(() -> new WebhookDeliveryDao().postpone(postponedIdList,
+                    new Date(System.currentTimeMillis() + POSTPONE_DELAY * 1000)));
+        }
+    }
+
+    /**
+     * Queue a delivery on its endpoint.
+     *
+     * @param webhookDelivery Webhook delivery
+     * @return False if the endpoint queue is full
+     */
+    private boolean enqueue(WebhookDelivery webhookDelivery) {
+        // The delivery is registered while the endpoint can't be pruned
+        AtomicBoolean added = new AtomicBoolean();
+        Endpoint endpoint = endpointMap.compute(webhookDelivery.getUrl(), (url, existingEndpoint) -> {
+            Endpoint newEndpoint = existingEndpoint == null ? new Endpoint(url) : existingEndpoint;
+            added.set(newEndpoint.inFlightIdSet.add(webhookDelivery.getId()));
+            return newEndpoint;
+        });
+        if (!added.get()) {
+            // Already queued
+            return true;
+        }
+
+        if (!endpoint.queue.offer(webhookDelivery)) {
+            endpoint.inFlightIdSet.remove(webhookDelivery.getId());
+            log.warn("Too many events waiting for the webhook at: " + webhookDelivery.getUrl() + ", delivery postponed");
+            return false;
+        }
+        resizePool();
+        startDelivery(endpoint);
+        return true;
+    }
+
+    /**
+     * Remove the endpoints having nothing to deliver.
+     */
+    private void pruneEndpoints() {
+        for (String url : endpointMap.keySet()) {
+            endpointMap.computeIfPresent(url, (key, endpoint) -> endpoint.inFlightIdSet.isEmpty() ? null : endpoint);
+        }
+        resizePool();
+    }
+
+    /**
+     * Resize the pool so that every endpoint can make its concurrent calls, up to the maximum number of threads.
+     * Above it, the deliveries wait in the pool queue.
+     */
+    private synchronized void resizePool() {
+        if (!(deliveryExecutor instanceof ThreadPoolExecutor)) {
+            return;
+        }
+        ThreadPoolExecutor executor = (ThreadPoolExecutor) deliveryExecutor;
+        int size = Math.min(Math.max(threads, concurrency * endpointMap.size()), maxThreads);
+        if (size > executor.getMaximumPoolSize()) {
+            executor.setMaximumPoolSize(size);
+            executor.setCorePoolSize(size);
+        } else if (size < executor.getCorePoolSize()) {
+            executor.setCorePoolSize(size);
+            executor.setMaximumPoolSize(size);
+        }
+    }
+
+    /**
+     * Start delivering the queued events of an endpoint, if its concurrency limit allows it.
+     *
+     * @param endpoint Endpoint
+     */
+    private void startDelivery(Endpoint endpoint) {
+        while (!endpoint.queue.isEmpty()) {
+            int running = endpoint.running.get();
+            if (running >= concurrency) {
+                return;
+            }
+            if (endpoint.running.compareAndSet(running, running + 1)) {
+                try {
+                    deliveryExecutor.execute(() -> deliver(endpoint));
+                } catch (RejectedExecutionException e) {
+                    // Shutting down, the deliveries stay in the outbox
+                    endpoint.running.decrementAndGet();
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Deliver the queued events of an endpoint until its queue is empty.
+     *
+     * @param endpoint Endpoint
+     */
+    private void deliver(Endpoint endpoint) {
+        try {
+            List<WebhookDelivery> batch = new ArrayList<>();
+            while (endpoint.queue.drainTo(batch, batchSize) > 0) {
+                deliver(endpoint, batch);
+                batch.clear();
+            }
+        } finally {
+            endpoint.running.decrementAndGet();
+        }
+
+        // Events queued while this delivery was finishing
+        startDelivery(endpoint);
+    }
+
+    /**
+     * Deliver a batch of events to a webhook URL and update the outbox.
+     *
+     * @param endpoint Endpoint
+     * @param batch Webhook deliveries
+     */
+    private void deliver(Endpoint endpoint, List<WebhookDelivery> batch) {
+        String url = endpoint.url;
+        String payload;
+        if (batchSize > 1) {
+            payload = "[" + Joiner.on(", ").join(batch.stream().map(WebhookDelivery::getPayload).collect(Collectors.toList())) + "]";
+        } else {
+            payload = batch.get(0).getPayload();
+        }
+
+        boolean success = false;
+        long startTime = System.currentTimeMillis();
+        Request request = new Request.Builder()
+                .url(url)
+                .post(RequestBody.create(payload, JSON))
+                .build();
+        try (Response response = client.newCall(request).execute()) {
+            success = response.isSuccessful();
+            if (success) {
+                log.info("Successfully called the webhook at: " + url + " - " + response.code());
+            } else {
+                log.error("Error calling the webhook at: " + url + " - " + response.code());
+            }
+        } catch (Exception e) {
+            log.error("Error calling the webhook at: " + url, e);
+        }
+
+        if (success) {
+            deliveryStats.add(System.currentTimeMillis() - startTime);
+        } else {
+            failureCount.incrementAndGet();
+        }
+
+        // Update the outbox
+        final boolean delivered = success;
+        try {
+            TransactionUtil.handle(() -> {
+                WebhookDeliveryDao webhookDeliveryDao = new WebhookDeliveryDao();
+                List<String> deleteIdList = new ArrayList<>();
+                for (WebhookDelivery webhookDelivery : batch) {
+                    int attempt = webhookDelivery.getAttempt() + 1;
+                    if (delivered) {
+                        deleteIdList.add(webhookDelivery.getId());
+                    } else if (attempt >= maxAttempts) {
+                        log.error("Giving up calling the webhook at: " + url + " after " + attempt + " attempts");
+                        deleteIdList.add(webhookDelivery.getId());
+                    } else {
+                        long delay = Math.min(RETRY_DELAY << Math.min(attempt - 1, 20), MAX_RETRY_DELAY);
+                        webhookDeliveryDao.updateAttempt(webhookDelivery.getId(), attempt,
+                                new Date(System.currentTimeMillis() + delay * 1000));
+                    }
+                }
+                pendingCount.addAndGet(-webhookDeliveryDao.delete(deleteIdList));
+            });
+        } finally {
+            for (WebhookDelivery webhookDelivery : batch) {
+                endpoint.inFlightIdSet.remove(webhookDelivery.getId());
+            }
+        }
+    }
+
+    /**
+     * Returns the statistics of the successful deliveries.
+     *
+     * @return Delivery statistics
+     */
+    public FileProcessingService.StageStats getDeliveryStats() {
+        return deliveryStats;
+    }
+
+    /**
+     * Returns the number of failed delivery attempts.
+     *
+     * @return Number of failures
+     */
+    public long getFailureCount() {
+        return failureCount.get();
+    }
+
+    /**
+     * Returns the number of deliveries waiting in the outbox.
+     *
+     * @return Number of pending deliveries
+     */
+    public long getPendingCount() {
+        return pendingCount.get();
+    }
+
+    /**
+     * A webhook URL and its deliveries waiting in memory.
+     */
+    private class Endpoint {
+        /**
+         * Webhook URL.
+         */
+        private final String url;
+
+        /**
+         * Deliveries waiting.
+         */
+        private final BlockingQueue<WebhookDelivery> queue;
+
+        /**
+         * Number of deliveries running.
+         */
+        private final AtomicInteger running = new AtomicInteger();
+
+        /**
+         * IDs of the deliveries queued or being delivered.
+         */
+        private final Set<String> inFlightIdSet = ConcurrentHashMap.newKeySet();
+
+        Endpoint(String url) {
+            this.url = url;
+            this.queue = new LinkedBlockingQueue<>(queueSize);
+        }
+    }
+}
@@ -7,6 +7,8 @@ import com.sismics.docs.core.model.jpa.Loggable;
 import com.sismics.util.context.ThreadLocalContext;
 
 import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceUnitUtil;
+import java.util.Collection;
 
 /**
  * Audit log utilities.
@@ -40,4 +42,31 @@ public class AuditLogUtil {
         auditLog.setMessage(loggable.toMessage());
         auditLogDao.create(auditLog);
     }
+
+    /**
+     * Create audit logs for a bulk operation.
+     * The audit logs are inserted in JDBC batches when the transaction is flushed.
+     *
+     * @param loggableList Loggables
+     * @param type Audit log type
+     * @param userId User ID
+     */
+    public static void create(Collection<? extends Loggable> loggableList, AuditLogType type, String userId) {
+        if (userId == null) {
+            userId = "admin";
+        }
+
+        EntityManager em = ThreadLocalContext.get().getEntityManager();
+        PersistenceUnitUtil persistenceUnitUtil = em.getEntityManagerFactory().getPersistenceUnitUtil();
+        AuditLogDao auditLogDao = new AuditLogDao();
+        for (Loggable loggable : loggableList) {
+            AuditLog auditLog = new AuditLog();
+            auditLog.setUserId(userId);
+            auditLog.setEntityId((String) persistenceUnitUtil.getIdentifier(loggable));
+            auditLog.setEntityClass(loggable.getClass().getSimpleName());
+            auditLog.setType(type);
+            auditLog.setMessage(loggable.toMessage());
+            auditLogDao.create(auditLog);
+        }
+    }
 }
@@ -0,0 +1,193 @@
+package com.sismics.docs.core.util;
+
+import com.google.common.hash.Hashing;
+import com.sismics.docs.core.constant.ConfigType;
+import com.sismics.docs.core.dao.ConfigDao;
+import com.sismics.docs.core.dao.FileDao;
+import com.sismics.docs.core.model.jpa.Config;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.crypto.Cipher;
+import javax.crypto.CipherInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Content-addressed storage of the files.
+ * Identical files share the same blob, referenced by the files having its ID in T_FILE.
+ * A blob is named and encrypted with HMACs of the content hash under a secret generated once
+ * and stored in the database, so neither the storage nor the hash returned by the API give the key
+ * or confirm the content of a blob.
+ */
+public class BlobUtil {
+    /**
+     * Logger.
+     */
+    private static final Logger log = LoggerFactory.getLogger(BlobUtil.class);
+
+    /**
+     * Minimum age of an unreferenced blob before deletion.
+     * Blobs are written or reused before the file referencing them is committed.
+     */
+    private static final long GRACE_PERIOD = TimeUnit.HOURS.toMillis(1);
+
+    /**
+     * Store a file in a blob, or reuse the blob of an identical file.
+     *
+     * @param unencryptedFile Unencrypted file
+     * @param hash SHA-256 hash of the unencrypted file
+     * @return Blob ID
+     * @throws Exception e
+     */
+    public static String store(Path unencryptedFile, String hash) throws Exception {
+        String blobId = getBlobId(hash);
+        Path blobFile = getBlobFile(blobId);
+        try {
+            // Already stored, mark it as used so it isn't collected before being referenced
+            Files.setLastModifiedTime(blobFile, FileTime.fromMillis(System.currentTimeMillis()));
+            return blobId;
+        } catch (IOException e) {
+            // Not stored yet
+        }
+
+        // Write to a temporary file first, concurrent readers must never see a partial blob
+        Path tmpFile = Files.createTempFile(blobFile.getParent(), "blob", ".tmp");
+        try {
+            Cipher cipher = EncryptionUtil.getEncryptionCipher(getKey(hash));
+            try (InputStream inputStream = new CipherInputStream(Files.newInputStream(unencryptedFile), cipher)) {
+                Files.copy(inputStream, tmpFile, StandardCopyOption.REPLACE_EXISTING);
+            }
+            Files.move(tmpFile, blobFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmpFile);
+        }
+        return blobId;
+    }
+
+    /**
+     * Returns the stored file of a blob.
+     *
+     * @param blobId Blob ID
+     * @return Blob file
+     */
+    public static Path getBlobFile(String blobId) {
+        return DirectoryUtil.getBlobDirectory().resolve(blobId);
+    }
+
+    /**
+     * Delete the blobs not referenced by any file.
+     * Recent blobs are kept, they may be referenced by a file not committed yet.
+     *
+     * @param referencedBlobIdSet IDs of the referenced blobs
+     * @return Number of blobs deleted
+     * @throws IOException e
+     */
+    public static int clean(Set<String> referencedBlobIdSet) throws IOException {
+        long maxDate = System.currentTimeMillis() - GRACE_PERIOD;
+        int count = 0;
+        try (DirectoryStream<Path> blobFileList = Files.newDirectoryStream(DirectoryUtil.getBlobDirectory())) {
+            for (Path blobFile : blobFileList) {
+                if (!referencedBlobIdSet.contains(blobFile.getFileName().toString())
+                        && Files.getLastModifiedTime(blobFile).toMillis() < maxDate) {
+                    log.info("Deleting orphan blob: {}", blobFile);
+                    Files.deleteIfExists(blobFile);
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Returns the key encrypting the blob of a content.
+     *
+     * @param hash SHA-256 hash of the content
+     * @return Key
+     */
+    public static String getKey(String hash) {
+        return hmac("key:" + hash);
+    }
+
+    /**
+     * Generate the storage secret if needed.
+     * The blobs written before the secret existed were named and encrypted with the content hash only,
+     * they are moved to the new naming and key. The cached contents written before are deleted.
+     *
+     * @throws Exception e
+     */
+    public static void createSecret() throws Exception {
+        ConfigDao configDao = new ConfigDao();
+        if (configDao.getById(ConfigType.STORAGE_SECRET) != null) {
+            return;
+        }
+        configDao.update(ConfigType.STORAGE_SECRET, EncryptionUtil.generatePrivateKey());
+
+        FileDao fileDao = new FileDao();
+        for (Map.Entry<String, String> entry : fileDao.getBlobHashMap().entrySet()) {
+            Path blobFile = getBlobFile(entry.getKey());
+            if (!Files.exists(blobFile)) {
+                continue;
+            }
+            Path unencryptedFile = EncryptionUtil.decryptFile(blobFile, entry.getValue());
+            try {
+                fileDao.updateBlobId(entry.getKey(), store(unencryptedFile, entry.getValue()));
+            } finally {
+                Files.deleteIfExists(unencryptedFile);
+            }
+            log.info("Blob {} moved to the secret naming and key", entry.getKey());
+        }
+
+        // The cached contents were written in plain text under the content hash
+        log.info("Deleting {} unencrypted extracted contents", ContentCacheUtil.clean(Collections.emptySet()));
+    }
+
+    /**
+     * Returns the blob ID of a content.
+     *
+     * @param hash SHA-256 hash of the content
+     * @return Blob ID
+     */
+    private static String getBlobId(String hash) {
+        return hmac("id:" + hash);
+    }
+
+    /**
+     * Returns the HMAC of a value under the storage secret.
+     *
+     * @param value Value
+     * @return HMAC-SHA256 in hexadecimal
+     */
+    static String hmac(String value) {
+        return Hashing.hmacSha256(getSecret().getBytes(StandardCharsets.UTF_8))
+                .hashString(value, StandardCharsets.UTF_8).toString();
+    }
+
+    /**
+     * Returns the storage secret.
+     * The secret may not be in the configuration cache yet if it was generated in the current transaction.
+     *
+     * @return Storage secret
+     */
+    private static String getSecret() {
+        String secret = ConfigUtil.getConfigValue(ConfigType.STORAGE_SECRET);
+        if (secret == null) {
+            Config config = new ConfigDao().getById(ConfigType.STORAGE_SECRET);
+            if (config == null) {
+                throw new IllegalStateException("The storage secret is not generated");
+            }
+            secret = config.getValue();
+        }
+        return secret;
+    }
+}
@@ -3,14 +3,137 @@ package com.sismics.docs.core.util;
 import com.sismics.docs.core.constant.ConfigType;
 import com.sismics.docs.core.dao.ConfigDao;
 import com.sismics.docs.core.model.jpa.Config;
+import com.sismics.util.jpa.EMF;
+import jakarta.persistence.EntityManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.ResourceBundle;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
 
 /**
  * Configuration parameter utilities.
+ * The configuration parameters are loaded once and kept in memory, they are updated once the changes made by ConfigDao.update are committed.
  *
  */
 public class ConfigUtil {
+    /**
+     * Logger.
+     */
+    private static final Logger log = LoggerFactory.getLogger(ConfigUtil.class);
+
+    /**
+     * Values of the configuration parameters.
+     */
+    private static final Map<ConfigType, String> valueMap = new ConcurrentHashMap<>();
+
+    /**
+     * True if the configuration parameters are loaded.
+     */
+    private static volatile boolean loaded;
+
+    /**
+     * Listeners of the configuration changes.
+     */
+    private static final Map<ConfigType, List<Consumer<String>>> listenerMap = new ConcurrentHashMap<>();
+
+    /**
+     * Load the configuration parameters from the database.
+     * Does nothing outside of a transactional context, or if already loaded.
+     */
+    public static synchronized void load() {
+        if (loaded) {
+            return;
+        }
+        Map<ConfigType, String> databaseValueMap = new ConfigDao().getValueMap();
+        if (databaseValueMap == null) {
+            return;
+        }
+
+        // Values updated meanwhile are more recent than the database
+        databaseValueMap.forEach(valueMap::putIfAbsent);
+        loaded = true;
+    }
+
+    /**
+     * Reload a configuration parameter from the database, update it in memory and notify the listeners.
+     * Called by the thread committing ConfigDao.update, the reloads are not concurrent
+     * so that the last committed value is the last one cached.
+     *
+     * @param configType Type of the configuration parameter
+     */
+    public static synchronized void reload(ConfigType configType) {
+        EntityManager em = EMF.get().createEntityManager();
+        try {
+            Config config = em.find(Config.class, configType);
+            updateCache(configType, config == null ? null : config.getValue());
+        } finally {
+            em.close();
+        }
+    }
+
+    /**
+     * Update a configuration parameter in memory and notify the listeners.
+     *
+     * @param configType Type of the configuration parameter
+     * @param value New value, null if removed
+     */
+    private static void updateCache(ConfigType configType, String value) {
+        String oldValue = value == null ? valueMap.remove(configType) : valueMap.put(configType, value);
+        if (Objects.equals(oldValue, value)) {
+            return;
+        }
+        for (Consumer<String> listener : listenerMap.getOrDefault(configType, List.of())) {
+            try {
+                listener.accept(value);
+            } catch (Exception e) {
+                log.error("Error notifying the change of the configuration parameter: " + configType, e);
+            }
+        }
+    }
+
+    /**
+     * Add a listener called when a configuration parameter changes.
+     * The listener is called by the thread updating the parameter, with the new value.
+     *
+     * @param configType Type of the configuration parameter
+     * @param listener Listener
+     */
+    public static void addListener(ConfigType configType, Consumer<String> listener) {
+        listenerMap.computeIfAbsent(configType, k -> new CopyOnWriteArrayList<>()).add(listener);
+    }
+
+    /**
+     * Remove a listener of a configuration parameter.
+     *
+     * @param configType Type of the configuration parameter
+     * @param listener Listener
+     */
+    public static void removeListener(ConfigType configType, Consumer<String> listener) {
+        List<Consumer<String>> listenerList = listenerMap.get(configType);
+        if (listenerList != null) {
+            listenerList.remove(listener);
+        }
+    }
+
+    /**
+     * Returns the textual value of a configuration parameter, or null if undefined.
+     *
+     * @param configType Type of the configuration parameter
+     * @return Textual value of the configuration parameter
+     */
+    public static String getConfigValue(ConfigType configType) {
+        if (!loaded) {
+            load();
+        }
+        return valueMap.get(configType);
+    }
+
     /**
      * Returns the textual value of a configuration parameter.
      *
@@ -19,12 +142,11 @@ public class ConfigUtil {
      * @throws IllegalStateException Configuration parameter undefined
      */
     public static String getConfigStringValue(ConfigType configType) {
-        ConfigDao configDao = new ConfigDao();
-        Config config = configDao.getById(configType);
-        if (config == null) {
+        String value = getConfigValue(configType);
+        if (value == null) {
             throw new IllegalStateException("Config parameter not found: " + configType);
         }
-        return config.getValue();
+        return value;
     }
 
     /**
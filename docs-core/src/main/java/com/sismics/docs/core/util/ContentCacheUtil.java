@@ -0,0 +1,256 @@
+package com.sismics.docs.core.util;
+
+import com.sismics.docs.core.constant.Constants;
+import com.sismics.docs.core.util.format.FormatHandler;
+import com.sismics.util.EnvironmentUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.crypto.CipherOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * Cache of the content extracted from files, by content hash.
+ * Identical files and reprocessed files don't go through the content extraction again.
+ * Cached contents are encrypted with the key of the blob of this content, and named after an HMAC of the content hash
+ * so they are purged with the last file of this content.
+ * The least recently used are evicted above the maximum size.
+ */
+public class ContentCacheUtil {
+    /**
+     * Logger.
+     */
+    private static final Logger log = LoggerFactory.getLogger(ContentCacheUtil.class);
+
+    /**
+     * Size of the cache in bytes, -1 until measured.
+     */
+    private static final AtomicLong cacheSize = new AtomicLong(-1);
+
+    /**
+     * Returns the cached content of a file.
+     *
+     * @param hash Content hash of the file
+     * @param language Language of the extraction
+     * @param ocrEnabled True if OCR is enabled
+     * @param formatHandler Format handler extracting the content
+     * @return Cached content or null if not cached
+     */
+    public static String getContent(String hash, String language, boolean ocrEnabled, FormatHandler formatHandler) {
+        Path cacheFile = getCacheFile(hash, language, ocrEnabled, formatHandler);
+        if (!Files.exists(cacheFile)) {
+            return null;
+        }
+
+        String content;
+        try (InputStream inputStream = EncryptionUtil.decryptInputStream(Files.newInputStream(cacheFile), BlobUtil.getKey(hash))) {
+            content = new String(inputStream.readAllBytes(), StandardCharsets.UTF_8);
+        } catch (NoSuchFileException e) {
+            // Evicted since checked
+            return null;
+        } catch (Exception e) {
+            log.error("Unable to read the cached content: " + cacheFile, e);
+            return null;
+        }
+        try {
+            Files.setLastModifiedTime(cacheFile, FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (IOException e) {
+            // Evicted since read
+        }
+        return content;
+    }
+
+    /**
+     * Put the content of a file in the cache.
+     *
+     * @param hash Content hash of the file
+     * @param language Language of the extraction
+     * @param ocrEnabled True if OCR is enabled
+     * @param formatHandler Format handler which extracted the content
+     * @param content Extracted content
+     */
+    public static void putContent(String hash, String language, boolean ocrEnabled, FormatHandler formatHandler, String content) {
+        Path cacheFile = getCacheFile(hash, language, ocrEnabled, formatHandler);
+        try {
+            // Write to a temporary file first, concurrent readers must never see a partial content
+            Path tmpFile = Files.createTempFile(cacheFile.getParent(), getCacheId(hash) + "-", ".tmp");
+            try (OutputStream outputStream = new CipherOutputStream(Files.newOutputStream(tmpFile), EncryptionUtil.getEncryptionCipher(BlobUtil.getKey(hash)))) {
+                outputStream.write(content.getBytes(StandardCharsets.UTF_8));
+            }
+            long size = Files.size(tmpFile);
+            Files.move(tmpFile, cacheFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            if (cacheSize.get() < 0 || cacheSize.addAndGet(size) > getMaxSize()) {
+                evictLeastRecentlyUsed(cacheFile);
+            }
+        } catch (Exception e) {
+            log.error("Unable to cache the content: " + cacheFile, e);
+        }
+    }
+
+    /**
+     * Purge the cached contents of a content hash.
+     *
+     * @param hash Content hash
+     */
+    public static void purge(String hash) {
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(DirectoryUtil.getContentCacheDirectory(), getCacheId(hash) + "-*")) {
+            for (Path cacheFile : stream) {
+                delete(cacheFile);
+            }
+        } catch (IOException e) {
+            log.error("Unable to purge the cached contents of: " + hash, e);
+        }
+    }
+
+    /**
+     * Purge the cached contents of the hashes no longer used by any file.
+     *
+     * @param hashSet Content hashes of the active files
+     * @return Number of purged contents
+     */
+    public static int clean(Set<String> hashSet) {
+        Set<String> cacheIdSet = hashSet.stream()
+                .map(ContentCacheUtil::getCacheId)
+                .collect(Collectors.toSet());
+        int count = 0;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(DirectoryUtil.getContentCacheDirectory())) {
+            for (Path cacheFile : stream) {
+                String fileName = cacheFile.getFileName().toString();
+                int index = fileName.lastIndexOf('-');
+                if (index == -1 || !cacheIdSet.contains(fileName.substring(0, index))) {
+                    delete(cacheFile);
+                    count++;
+                }
+            }
+        } catch (IOException e) {
+            log.error("Unable to clean the content cache", e);
+        }
+        return count;
+    }
+
+    /**
+     * Evict the least recently used contents above the maximum cache size.
+     *
+     * @param keptFile Content just cached, never evicted
+     */
+    private static synchronized void evictLeastRecentlyUsed(Path keptFile) {
+        long maxSize = getMaxSize();
+        List<Path> cacheFileList = new ArrayList<>();
+        long size = 0;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(DirectoryUtil.getContentCacheDirectory(), "*-*")) {
+            for (Path cacheFile : stream) {
+                if (!cacheFile.getFileName().toString().endsWith(".tmp")) {
+                    cacheFileList.add(cacheFile);
+                    size += getSize(cacheFile);
+                }
+            }
+
+            // Evict down to 90% of the maximum size, the directory is not listed again for each new content
+            if (size > maxSize) {
+                cacheFileList.sort(Comparator.comparing(ContentCacheUtil::getLastModifiedTime));
+                for (Path cacheFile : cacheFileList) {
+                    if (size <= maxSize * 9 / 10) {
+                        break;
+                    }
+                    if (!cacheFile.equals(keptFile)) {
+                        size -= getSize(cacheFile);
+                        Files.deleteIfExists(cacheFile);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            log.error("Unable to evict the cached contents", e);
+        }
+        cacheSize.set(size);
+    }
+
+    /**
+     * Delete a cached content.
+     *
+     * @param cacheFile Cache file
+     * @throws IOException e
+     */
+    private static void delete(Path cacheFile) throws IOException {
+        long size = getSize(cacheFile);
+        if (Files.deleteIfExists(cacheFile) && cacheSize.get() >= 0) {
+            cacheSize.addAndGet(-size);
+        }
+    }
+
+    /**
+     * Returns the maximum size of the cache.
+     *
+     * @return Maximum size in bytes
+     */
+    private static long getMaxSize() {
+        return EnvironmentUtil.getIntegerEnv(Constants.CONTENT_CACHE_SIZE_ENV, Constants.DEFAULT_CONTENT_CACHE_SIZE) * 1024L * 1024L;
+    }
+
+    /**
+     * Returns the size of a cached content.
+     *
+     * @param cacheFile Cache file
+     * @return Size in bytes, 0 if evicted meanwhile
+     */
+    private static long getSize(Path cacheFile) {
+        try {
+            return Files.size(cacheFile);
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Returns the last access time of a cached content.
+     *
+     * @param cacheFile Cache file
+     * @return Last access time
+     */
+    private static FileTime getLastModifiedTime(Path cacheFile) {
+        try {
+            return Files.getLastModifiedTime(cacheFile);
+        } catch (IOException e) {
+            return FileTime.fromMillis(0);
+        }
+    }
+
+    /**
+     * Returns the cache file of an extraction.
+     *
+     * @param hash Content hash of the file
+     * @param language Language of the extraction
+     * @param ocrEnabled True if OCR is enabled
+     * @param formatHandler Format handler
+     * @return Cache file
+     */
+    private static Path getCacheFile(String hash, String language, boolean ocrEnabled, FormatHandler formatHandler) {
+        String key = BlobUtil.hmac("content:" + hash + ":" + language + ":" + ocrEnabled + ":"
+                + formatHandler.getClass().getName() + ":" + formatHandler.getVersion());
+        return DirectoryUtil.getContentCacheDirectory().resolve(getCacheId(hash) + "-" + key);
+    }
+
+    /**
+     * Returns the prefix of the cache files of a content hash.
+     *
+     * @param hash Content hash
+     * @return Prefix
+     */
+    private static String getCacheId(String hash) {
+        return BlobUtil.hmac("content:" + hash);
+    }
+}
@@ -68,6 +68,52 @@ public class DirectoryUtil {
         return getDataSubDirectory("lucene");
     }
     
+    /**
+     * Returns the directory of the Lucene index being rebuilt.
+     *
+     * @return Lucene index rebuild directory.
+     */
+    public static Path getLuceneRebuildDirectory() {
+        return getDataSubDirectory("lucene-rebuild");
+    }
+
+    /**
+     * Returns the file naming the directory of the current Lucene index.
+     * The index alternates between the Lucene directory and the rebuild directory at each rebuild.
+     *
+     * @return Current Lucene index file.
+     */
+    public static Path getLuceneActiveFile() {
+        return getBaseDataDirectory().resolve("lucene-active");
+    }
+
+    /**
+     * Returns the search suggester directory.
+     *
+     * @return Search suggester directory.
+     */
+    public static Path getSuggesterDirectory() {
+        return getDataSubDirectory("suggester");
+    }
+
+    /**
+     * Returns the extracted content cache directory.
+     *
+     * @return Content cache directory.
+     */
+    public static Path getContentCacheDirectory() {
+        return getDataSubDirectory("content-cache");
+    }
+
+    /**
+     * Returns the PDF export cache directory.
+     *
+     * @return PDF cache directory.
+     */
+    public static Path getPdfCacheDirectory() {
+        return getDataSubDirectory("pdf-cache");
+    }
+
     /**
      * Returns the storage directory.
      * 
@@ -76,6 +122,15 @@ public class DirectoryUtil {
     public static Path getStorageDirectory() {
         return getDataSubDirectory("storage");
     }
+
+    /**
+     * Returns the content-addressed storage directory.
+     *
+     * @return Blob directory.
+     */
+    public static Path getBlobDirectory() {
+        return getDataSubDirectory("blob");
+    }
     
     /**
      * Returns the log directory.
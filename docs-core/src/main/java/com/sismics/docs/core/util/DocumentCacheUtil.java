@@ -0,0 +1,464 @@
+package com.sismics.docs.core.util;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.RemovalListener;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.sismics.docs.core.constant.AclType;
+import com.sismics.docs.core.constant.PermType;
+import com.sismics.docs.core.dao.AclDao;
+import com.sismics.docs.core.dao.ContributorDao;
+import com.sismics.docs.core.dao.DocumentDao;
+import com.sismics.docs.core.dao.RelationDao;
+import com.sismics.docs.core.dao.RouteStepDao;
+import com.sismics.docs.core.dao.dto.AclDto;
+import com.sismics.docs.core.dao.dto.ContributorDto;
+import com.sismics.docs.core.dao.dto.DocumentDto;
+import com.sismics.docs.core.dao.dto.RelationDto;
+import com.sismics.docs.core.dao.dto.RouteStepDto;
+import com.sismics.docs.core.dao.dto.TagDto;
+import com.sismics.docs.core.event.DocumentCacheInvalidatedAsyncEvent;
+import com.sismics.docs.core.model.jpa.File;
+import com.sismics.util.context.ThreadLocalContext;
+
+import jakarta.json.JsonArray;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * Cache of the data displayed with a document, independent of the user reading it.
+ * The permissions are checked on each request against the cached ACLs.
+ * Entries are evicted when the documents, or the tags, files, ACLs, relations and routes referenced by them change.
+ */
+public class DocumentCacheUtil {
+    /**
+     * Maximum number of cached documents.
+     */
+    private static final int CACHE_SIZE = 1000;
+
+    /**
+     * Expiration of the cache entries in minutes, as a safety net for the changes made outside of the DAOs.
+     */
+    private static final int CACHE_EXPIRATION = 10;
+
+    /**
+     * Cached documents by referenced ID, to evict the documents referencing an ID without scanning the cache.
+     */
+    private static final Map<String, Set<CachedDocument>> referenceIndex = new ConcurrentHashMap<>();
+
+    /**
+     * Documents by ID.
+     */
+    private static final Cache<String, CachedDocument> documentCache = CacheBuilder.newBuilder()
+            .maximumSize(CACHE_SIZE)
+            .expireAfterWrite(CACHE_EXPIRATION, TimeUnit.MINUTES)
+            .recordStats()
+            .removalListener((RemovalListener<String, CachedDocument>) notification -> unindex(notification.getValue()))
+            .build();
+
+    /**
+     * Incremented on each eviction, a document loaded during an eviction is not cached.
+     */
+    private static final AtomicLong generation = new AtomicLong();
+
+    /**
+     * Incremented on each load, versions the data of the cached documents.
+     */
+    private static final AtomicLong version = new AtomicLong();
+
+    /**
+     * Prefix of the versions, different on each startup.
+     */
+    private static final String VERSION_PREFIX = Long.toString(System.currentTimeMillis(), 36) + "-";
+
+    /**
+     * Returns a document and its related data.
+     *
+     * @param documentId Document ID
+     * @return Cached document or null if not found
+     */
+    public static CachedDocument get(String documentId) {
+        CachedDocument cachedDocument = documentCache.getIfPresent(documentId);
+        if (cachedDocument != null) {
+            return cachedDocument;
+        }
+
+        long loadGeneration = generation.get();
+        cachedDocument = load(documentId);
+        if (cachedDocument != null) {
+            CachedDocument existingDocument = documentCache.asMap().putIfAbsent(documentId, cachedDocument);
+            if (existingDocument != null) {
+                // Loaded concurrently by another request, an entry is never replaced to keep the index consistent
+                return cachedDocument;
+            }
+            index(cachedDocument);
+            if (generation.get() != loadGeneration) {
+                // The document may have changed while it was loaded
+                documentCache.invalidate(documentId);
+            }
+            if (documentCache.asMap().get(documentId) != cachedDocument) {
+                // Removed before being indexed
+                unindex(cachedDocument);
+            }
+        }
+        return cachedDocument;
+    }
+
+    /**
+     * Evict the documents referencing an ID (document, tag, file, related document, route or route step).
+     *
+     * @param id Referenced ID
+     */
+    public static void invalidate(String id) {
+        invalidate(Collections.singletonList(id));
+    }
+
+    /**
+     * Evict the documents referencing some IDs, with a single event for bulk changes.
+     *
+     * @param idList Referenced IDs
+     */
+    public static void invalidate(Collection<String> idList) {
+        if (idList.isEmpty()) {
+            return;
+        }
+        invalidate(new DocumentCacheInvalidatedAsyncEvent().setIdList(new ArrayList<>(idList)));
+    }
+
+    /**
+     * Evict all the documents, for changes affecting an unknown number of documents (users, groups, metadata).
+     */
+    public static void invalidateAll() {
+        invalidate(new DocumentCacheInvalidatedAsyncEvent());
+    }
+
+    /**
+     * Evict immediately, then again after the current transaction is committed.
+     *
+     * @param event Document cache invalidated event
+     */
+    private static void invalidate(DocumentCacheInvalidatedAsyncEvent event) {
+        evict(event.getIdList());
+        ThreadLocalContext.get().addAsyncEvent(event);
+    }
+
+    /**
+     * Evict the documents referencing an ID.
+     *
+     * @param id Referenced ID
+     */
+    public static void evict(String id) {
+        evict(Collections.singletonList(id));
+    }
+
+    /**
+     * Evict cache entries.
+     *
+     * @param idList Referenced IDs, null for all documents
+     */
+    public static void evict(Collection<String> idList) {
+        generation.incrementAndGet();
+        if (idList == null) {
+            documentCache.invalidateAll();
+            return;
+        }
+
+        Set<String> documentIdSet = new HashSet<>();
+        for (String id : idList) {
+            documentIdSet.add(id);
+            Set<CachedDocument> cachedDocumentSet = referenceIndex.get(id);
+            if (cachedDocumentSet != null) {
+                for (CachedDocument cachedDocument : cachedDocumentSet) {
+                    documentIdSet.add(cachedDocument.getDocumentDto().getId());
+                }
+            }
+        }
+        documentCache.invalidateAll(documentIdSet);
+    }
+
+    /**
+     * Add a cached document to the reference index.
+     *
+     * @param cachedDocument Cached document
+     */
+    private static void index(CachedDocument cachedDocument) {
+        for (String id : cachedDocument.idSet) {
+            referenceIndex.computeIfAbsent(id, k -> ConcurrentHashMap.newKeySet()).add(cachedDocument);
+        }
+    }
+
+    /**
+     * Remove an evicted document from the reference index.
+     *
+     * @param cachedDocument Cached document
+     */
+    private static void unindex(CachedDocument cachedDocument) {
+        for (String id : cachedDocument.idSet) {
+            referenceIndex.computeIfPresent(id, (k, cachedDocumentSet) -> {
+                cachedDocumentSet.remove(cachedDocument);
+                return cachedDocumentSet.isEmpty() ? null : cachedDocumentSet;
+            });
+        }
+    }
+
+    /**
+     * Returns the statistics of the cache.
+     *
+     * @return Cache statistics
+     */
+    public static CacheStats getCacheStats() {
+        return documentCache.stats();
+    }
+
+    /**
+     * Load a document and its related data.
+     *
+     * @param documentId Document ID
+     * @return Cached document or null if not found
+     */
+    private static CachedDocument load(String documentId) {
+        DocumentDto documentDto = new DocumentDao().getDocument(documentId);
+        if (documentDto == null) {
+            return null;
+        }
+
+        // Tags and ACLs of the document and its tags
+        DocumentHydrator hydrator = new DocumentHydrator(Collections.singleton(documentId))
+                .fetchTags(null)
+                .fetchFiles();
+        List<TagDto> tagDtoList = hydrator.getTagList(documentId);
+        Set<String> sourceIdSet = tagDtoList.stream().map(TagDto::getId).collect(Collectors.toSet());
+        sourceIdSet.add(documentId);
+        Map<String, List<AclDto>> aclDtoMap = new AclDao().getBySourceIdList(sourceIdSet, null);
+
+        List<ContributorDto> contributorDtoList = new ContributorDao().getByDocumentId(documentId);
+        List<RelationDto> relationDtoList = new RelationDao().getByDocumentId(documentId);
+        RouteStepDto routeStepDto = new RouteStepDao().getCurrentStep(documentId);
+        JsonArray metadata = MetadataUtil.getMetadata(documentId);
+        List<File> fileList = hydrator.getFileList(documentId);
+
+        // IDs referenced by this document
+        Set<String> idSet = new HashSet<>(sourceIdSet);
+        relationDtoList.forEach(relationDto -> idSet.add(relationDto.getId()));
+        fileList.forEach(file -> idSet.add(file.getId()));
+        if (routeStepDto != null) {
+            idSet.add(routeStepDto.getId());
+            idSet.add(routeStepDto.getRouteId());
+        }
+
+        Map<String, List<AclDto>> tagAclMap = tagDtoList.stream().collect(Collectors.toMap(TagDto::getId,
+                tagDto -> ImmutableList.copyOf(aclDtoMap.getOrDefault(tagDto.getId(), new ArrayList<>()))));
+        return new CachedDocument(documentDto,
+                ImmutableList.copyOf(aclDtoMap.getOrDefault(documentId, new ArrayList<>())),
+                ImmutableList.copyOf(tagDtoList),
+                ImmutableMap.copyOf(tagAclMap),
+                ImmutableList.copyOf(contributorDtoList),
+                ImmutableList.copyOf(relationDtoList),
+                routeStepDto,
+                metadata,
+                ImmutableList.copyOf(fileList),
+                ImmutableSet.copyOf(idSet),
+                VERSION_PREFIX + version.incrementAndGet());
+    }
+
+    /**
+     * A document and its related data.
+     * The cached objects are shared between requests and must not be modified.
+     */
+    public static class CachedDocument {
+        /**
+         * Document.
+         */
+        private final DocumentDto documentDto;
+
+        /**
+         * ACLs of the document, of all types.
+         */
+        private final List<AclDto> aclDtoList;
+
+        /**
+         * All the tags of the document, sorted by name.
+         */
+        private final List<TagDto> tagDtoList;
+
+        /**
+         * ACLs of the tags, of all types, by tag ID.
+         */
+        private final Map<String, List<AclDto>> tagAclMap;
+
+        /**
+         * Contributors.
+         */
+        private final List<ContributorDto> contributorDtoList;
+
+        /**
+         * Relations.
+         */
+        private final List<RelationDto> relationDtoList;
+
+        /**
+         * Current route step, null if the document is not in a route.
+         */
+        private final RouteStepDto routeStepDto;
+
+        /**
+         * Custom metadata as JSON.
+         */
+        private final JsonArray metadata;
+
+        /**
+         * Latest version of the files, sorted by order.
+         */
+        private final List<File> fileList;
+
+        /**
+         * IDs referenced by the document, evicting it when they change.
+         */
+        private final Set<String> idSet;
+
+        /**
+         * Version of the cached data, changed each time the document is loaded.
+         */
+        private final String version;
+
+        CachedDocument(DocumentDto documentDto, List<AclDto> aclDtoList, List<TagDto> tagDtoList,
+                       Map<String, List<AclDto>> tagAclMap, List<ContributorDto> contributorDtoList,
+                       List<RelationDto> relationDtoList, RouteStepDto routeStepDto, JsonArray metadata,
+                       List<File> fileList, Set<String> idSet, String version) {
+            this.documentDto = documentDto;
+            this.aclDtoList = aclDtoList;
+            this.tagDtoList = tagDtoList;
+            this.tagAclMap = tagAclMap;
+            this.contributorDtoList = contributorDtoList;
+            this.relationDtoList = relationDtoList;
+            this.routeStepDto = routeStepDto;
+            this.metadata = metadata;
+            this.fileList = fileList;
+            this.idSet = idSet;
+            this.version = version;
+        }
+
+        /**
+         * Check if the document is accessible to a target, directly or through its tags.
+         *
+         * @param perm Necessary permission
+         * @param targetIdList List of targets
+         * @return True if the document is accessible
+         */
+        public boolean checkPermission(PermType perm, List<String> targetIdList) {
+            if (SecurityUtil.skipAclCheck(targetIdList)) {
+                return true;
+            }
+            if (hasPermission(aclDtoList, perm, targetIdList)) {
+                return true;
+            }
+            for (List<AclDto> tagAclDtoList : tagAclMap.values()) {
+                if (hasPermission(tagAclDtoList, perm, targetIdList)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Returns the tags readable by some targets.
+         *
+         * @param targetIdList Targets reading the tags
+         * @return Tags sorted by name
+         */
+        public List<TagDto> getTagList(List<String> targetIdList) {
+            if (SecurityUtil.skipAclCheck(targetIdList)) {
+                return tagDtoList;
+            }
+            return tagDtoList.stream()
+                    .filter(tagDto -> hasPermission(tagAclMap.get(tagDto.getId()), PermType.READ, targetIdList))
+                    .collect(Collectors.toList());
+        }
+
+        /**
+         * Returns the ACLs of the document.
+         *
+         * @param type ACL type
+         * @return ACLs
+         */
+        public List<AclDto> getAclList(AclType type) {
+            return filter(aclDtoList, type);
+        }
+
+        /**
+         * Returns the ACLs of a tag of the document.
+         *
+         * @param tagId Tag ID
+         * @param type ACL type
+         * @return ACLs
+         */
+        public List<AclDto> getTagAclList(String tagId, AclType type) {
+            return filter(tagAclMap.getOrDefault(tagId, Collections.emptyList()), type);
+        }
+
+        public DocumentDto getDocumentDto() {
+            return documentDto;
+        }
+
+        public List<ContributorDto> getContributorList() {
+            return contributorDtoList;
+        }
+
+        public List<RelationDto> getRelationList() {
+            return relationDtoList;
+        }
+
+        public RouteStepDto getRouteStep() {
+            return routeStepDto;
+        }
+
+        public JsonArray getMetadata() {
+            return metadata;
+        }
+
+        public List<File> getFileList() {
+            return fileList;
+        }
+
+        public String getVersion() {
+            return version;
+        }
+
+        /**
+         * Check if ACLs grant a permission to a target.
+         *
+         * @param aclDtoList ACLs
+         * @param perm Permission
+         * @param targetIdList List of targets
+         * @return True if the permission is granted
+         */
+        private static boolean hasPermission(List<AclDto> aclDtoList, PermType perm, List<String> targetIdList) {
+            return aclDtoList.stream().anyMatch(aclDto -> aclDto.getPerm() == perm && targetIdList.contains(aclDto.getTargetId()));
+        }
+
+        /**
+         * Keep the ACLs of a type.
+         *
+         * @param aclDtoList ACLs
+         * @param type ACL type
+         * @return ACLs
+         */
+        private static List<AclDto> filter(List<AclDto> aclDtoList, AclType type) {
+            return aclDtoList.stream()
+                    .filter(aclDto -> aclDto.getType() == type)
+                    .collect(Collectors.toList());
+        }
+    }
+}
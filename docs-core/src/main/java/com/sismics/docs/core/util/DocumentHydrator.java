@@ -0,0 +1,117 @@
+package com.sismics.docs.core.util;
+
+import com.sismics.docs.core.dao.FileDao;
+import com.sismics.docs.core.dao.TagDao;
+import com.sismics.docs.core.dao.dto.TagDto;
+import com.sismics.docs.core.model.jpa.File;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tags and files of a set of documents, fetched for all the documents at once.
+ * The number of queries doesn't depend on the number of documents.
+ */
+public class DocumentHydrator {
+    /**
+     * Document IDs.
+     */
+    private final Collection<String> documentIdList;
+
+    /**
+     * Tags by document ID, null if not fetched.
+     */
+    private Map<String, List<TagDto>> tagMap;
+
+    /**
+     * Latest version of the files by document ID, null if not fetched.
+     */
+    private Map<String, List<File>> fileMap;
+
+    /**
+     * Number of files by document ID, null if not fetched.
+     */
+    private Map<String, Long> fileCountMap;
+
+    /**
+     * Constructor.
+     *
+     * @param documentIdList Document IDs
+     */
+    public DocumentHydrator(Collection<String> documentIdList) {
+        this.documentIdList = documentIdList;
+    }
+
+    /**
+     * Fetch the tags of the documents readable by some targets.
+     *
+     * @param targetIdList Targets reading the tags
+     * @return Hydrator
+     */
+    public DocumentHydrator fetchTags(List<String> targetIdList) {
+        tagMap = new TagDao().getByDocumentIdList(documentIdList, targetIdList);
+        return this;
+    }
+
+    /**
+     * Fetch the files of the documents.
+     *
+     * @return Hydrator
+     */
+    public DocumentHydrator fetchFiles() {
+        fileMap = new HashMap<>();
+        if (!documentIdList.isEmpty()) {
+            for (File file : new FileDao().getByDocumentsIds(documentIdList)) {
+                fileMap.computeIfAbsent(file.getDocumentId(), k -> new ArrayList<>()).add(file);
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Fetch the number of files of the documents, without the files themselves.
+     *
+     * @return Hydrator
+     */
+    public DocumentHydrator fetchFileCounts() {
+        fileCountMap = documentIdList.isEmpty() ? new HashMap<>() : new FileDao().countByDocumentsIds(documentIdList);
+        return this;
+    }
+
+    /**
+     * Returns the tags of a document, sorted by name.
+     *
+     * @param documentId Document ID
+     * @return Tags
+     */
+    public List<TagDto> getTagList(String documentId) {
+        return tagMap.getOrDefault(documentId, Collections.emptyList());
+    }
+
+    /**
+     * Returns the files of a document, sorted by order.
+     *
+     * @param documentId Document ID
+     * @return Files
+     */
+    public List<File> getFileList(String documentId) {
+        return fileMap.getOrDefault(documentId, Collections.emptyList());
+    }
+
+    /**
+     * Returns the number of files of a document.
+     *
+     * @param documentId Document ID
+     * @return Number of files
+     */
+    public long getFileCount(String documentId) {
+        if (fileMap != null) {
+            return getFileList(documentId).size();
+        }
+        return fileCountMap.getOrDefault(documentId, 0L);
+    }
+}
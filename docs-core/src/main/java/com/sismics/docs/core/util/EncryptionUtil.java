@@ -1,6 +1,11 @@
 package com.sismics.docs.core.util;
 
 import com.google.common.base.Strings;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.LoadingCache;
+import com.google.common.io.ByteStreams;
 import com.sismics.docs.core.model.context.AppContext;
 import org.bouncycastle.jce.provider.BouncyCastleProvider;
 
@@ -8,15 +13,20 @@ import javax.crypto.Cipher;
 import javax.crypto.CipherInputStream;
 import javax.crypto.SecretKey;
 import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.IvParameterSpec;
 import javax.crypto.spec.PBEKeySpec;
 import java.io.InputStream;
 import java.math.BigInteger;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
 import java.security.Security;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Encryption utilities.
@@ -28,6 +38,38 @@ public class EncryptionUtil {
      * Salt.
      */
     private static final String SALT = "LEpxZmm2SMu2PeKzPNrar2rhVAS6LrrgvXKeL9uyXC4vgKHg";
+
+    /**
+     * AES block size in bytes.
+     */
+    private static final int AES_BLOCK_SIZE = 16;
+
+    /**
+     * Maximum number of derived keys kept in memory.
+     */
+    private static final int KEY_CACHE_SIZE = 1000;
+
+    /**
+     * Delay in minutes after which an unused derived key is evicted.
+     */
+    private static final int KEY_CACHE_EXPIRATION = 60;
+
+    /**
+     * Keys derived from the private keys.
+     * The key derivation is slow on purpose, it is done once per private key.
+     */
+    private static final LoadingCache<String, SecretKey> keyCache = CacheBuilder.newBuilder()
+            .maximumSize(KEY_CACHE_SIZE)
+            .expireAfterAccess(KEY_CACHE_EXPIRATION, TimeUnit.MINUTES)
+            .recordStats()
+            .build(new CacheLoader<>() {
+                @Override
+                public SecretKey load(String privateKey) throws Exception {
+                    PBEKeySpec keySpec = new PBEKeySpec(privateKey.toCharArray(), SALT.getBytes(), 2000, 256);
+                    SecretKeyFactory skf = SecretKeyFactory.getInstance("PBEWITHSHA256AND256BITAES-CBC-BC");
+                    return skf.generateSecret(keySpec);
+                }
+            });
     
     static {
         // Initialize Bouncy Castle provider
@@ -61,6 +103,31 @@ public class EncryptionUtil {
         return new CipherInputStream(is, getCipher(privateKey, Cipher.DECRYPT_MODE));
     }
 
+    /**
+     * Decrypt a file from an offset using the specified private key.
+     * The file is encrypted with AES/CTR, so the key stream is positioned at the offset
+     * and the data before it is not read.
+     *
+     * @param file Encrypted file
+     * @param privateKey Private key
+     * @param offset Offset of the first decrypted byte
+     * @return Decrypted stream
+     * @throws Exception e
+     */
+    public static InputStream decryptInputStream(Path file, String privateKey, long offset) throws Exception {
+        long blockIndex = offset / AES_BLOCK_SIZE;
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            channel.position(blockIndex * AES_BLOCK_SIZE);
+            InputStream is = new CipherInputStream(Channels.newInputStream(channel), getCipher(privateKey, Cipher.DECRYPT_MODE, blockIndex));
+            ByteStreams.skipFully(is, offset % AES_BLOCK_SIZE);
+            return is;
+        } catch (Exception e) {
+            channel.close();
+            throw e;
+        }
+    }
+
     /**
      * Decrypt a file to a temporary file using the specified private key.
      *
@@ -96,6 +163,15 @@ public class EncryptionUtil {
         return getCipher(privateKey, Cipher.ENCRYPT_MODE);
     }
     
+    /**
+     * Returns the statistics of the derived keys cache.
+     *
+     * @return Cache statistics
+     */
+    public static CacheStats getKeyCacheStats() {
+        return keyCache.stats();
+    }
+
     /**
      * Initialize a Cipher.
      * 
@@ -105,11 +181,37 @@ public class EncryptionUtil {
      * @throws Exception e
      */
     private static Cipher getCipher(String privateKey, int mode) throws Exception {
-        PBEKeySpec keySpec = new PBEKeySpec(privateKey.toCharArray(), SALT.getBytes(), 2000, 256);
-        SecretKeyFactory skf = SecretKeyFactory.getInstance("PBEWITHSHA256AND256BITAES-CBC-BC");
-        SecretKey desKey = skf.generateSecret(keySpec);
+        SecretKey desKey = keyCache.get(privateKey);
         Cipher cipher = Cipher.getInstance("AES/CTR/NOPADDING");
         cipher.init(mode, desKey);
         return cipher;
     }
+
+    /**
+     * Initialize a Cipher positioned at a block of the data.
+     *
+     * @param privateKey Private key
+     * @param mode Mode (encrypt or decrypt)
+     * @param blockIndex Index of the first block to process
+     * @return Cipher
+     * @throws Exception e
+     */
+    private static Cipher getCipher(String privateKey, int mode, long blockIndex) throws Exception {
+        Cipher cipher = getCipher(privateKey, mode);
+        if (blockIndex == 0) {
+            return cipher;
+        }
+
+        // The CTR counter starts at the IV and is incremented once per block
+        byte[] iv = cipher.getIV();
+        byte[] counter = new BigInteger(1, iv)
+                .add(BigInteger.valueOf(blockIndex))
+                .mod(BigInteger.ONE.shiftLeft(iv.length * 8))
+                .toByteArray();
+        byte[] counterIv = new byte[iv.length];
+        int length = Math.min(counter.length, iv.length);
+        System.arraycopy(counter, counter.length - length, counterIv, iv.length - length, length);
+        cipher.init(mode, keyCache.get(privateKey), new IvParameterSpec(counterIv));
+        return cipher;
+    }
 }
@@ -2,6 +2,9 @@ package com.sismics.docs.core.util;
 
 import com.google.common.base.Strings;
 import com.google.common.collect.Lists;
+import com.google.common.hash.Hashing;
+import com.google.common.hash.HashingInputStream;
+import com.google.common.io.ByteStreams;
 import com.google.common.io.CharStreams;
 import com.sismics.docs.core.constant.Constants;
 import com.sismics.docs.core.dao.FileDao;
@@ -11,14 +14,13 @@ import com.sismics.docs.core.event.FileCreatedAsyncEvent;
 import com.sismics.docs.core.model.context.AppContext;
 import com.sismics.docs.core.model.jpa.File;
 import com.sismics.docs.core.model.jpa.User;
+import com.sismics.util.EnvironmentUtil;
 import com.sismics.util.ImageDeskew;
 import com.sismics.util.Scalr;
 import com.sismics.util.context.ThreadLocalContext;
 import com.sismics.util.io.InputStreamReaderThread;
 import com.sismics.util.mime.MimeTypeUtil;
-import org.apache.commons.io.IOUtils;
 import org.apache.commons.io.input.CountingInputStream;
-import org.apache.commons.io.output.NullOutputStream;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -34,6 +36,7 @@ import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.Semaphore;
 
 /**
  * File entity utilities.
@@ -50,6 +53,18 @@ public class FileUtil {
      * File ID of files currently being processed.
      */
     private static final Set<String> processingFileSet = Collections.synchronizedSet(new HashSet<>());
+
+    /**
+     * Maximum number of images and pages OCR-ized in parallel, by all the files.
+     */
+    public static final int OCR_PAGE_THREADS = Math.max(EnvironmentUtil.getIntegerEnv(Constants.OCR_PAGE_THREADS_ENV,
+            Runtime.getRuntime().availableProcessors()), 1);
+
+    /**
+     * Permits to OCR an image, shared by all the files.
+     * Bounds the OCR processes running and the rendered images waiting in memory, whatever the number of files processed.
+     */
+    private static final Semaphore ocrSemaphore = new Semaphore(OCR_PAGE_THREADS, true);
     
     /**
      * Optical character recognition on an image.
@@ -83,6 +98,29 @@ public class FileUtil {
         }
     }
 
+    /**
+     * Returns the permits to OCR an image, to acquire before loading the image in memory.
+     *
+     * @return OCR semaphore
+     */
+    public static Semaphore getOcrSemaphore() {
+        return ocrSemaphore;
+    }
+
+    /**
+     * Compute the content hash of an unencrypted file.
+     *
+     * @param unencryptedFile Unencrypted file
+     * @return SHA-256 hash
+     * @throws IOException e
+     */
+    public static String computeHash(Path unencryptedFile) throws IOException {
+        try (HashingInputStream inputStream = new HashingInputStream(Hashing.sha256(), Files.newInputStream(unencryptedFile))) {
+            ByteStreams.exhaust(inputStream);
+            return inputStream.hash().toString();
+        }
+    }
+
     /**
      * Remove a file from the storage filesystem.
      * 
@@ -118,6 +156,24 @@ public class FileUtil {
      * @throws Exception e
      */
     public static String createFile(String name, String previousFileId, Path unencryptedFile, long fileSize, String language, String userId, String documentId) throws Exception {
+        return createFile(name, previousFileId, unencryptedFile, fileSize, language, userId, documentId, false);
+    }
+
+    /**
+     * Create a new file.
+     *
+     * @param name File name, can be null
+     * @param previousFileId ID of the previous version of the file, if the new file is a new version
+     * @param unencryptedFile Path to the unencrypted file
+     * @param fileSize File size
+     * @param language File language, can be null if associated to no document
+     * @param userId User ID creating the file
+     * @param documentId Associated document ID or null if no document
+     * @param bulk True if the file is part of a bulk import, processed after the interactive uploads
+     * @return File ID
+     * @throws Exception e
+     */
+    public static String createFile(String name, String previousFileId, Path unencryptedFile, long fileSize, String language, String userId, String documentId, boolean bulk) throws Exception {
         // Validate mime type
         String mimeType;
         try {
@@ -186,14 +242,25 @@ public class FileUtil {
         String fileId = fileDao.create(file, userId);
 
         // Save the file
-        Cipher cipher = EncryptionUtil.getEncryptionCipher(user.getPrivateKey());
-        Path path = DirectoryUtil.getStorageDirectory().resolve(file.getId());
-        try (InputStream inputStream = Files.newInputStream(unencryptedFile)) {
-            Files.copy(new CipherInputStream(inputStream, cipher), path);
+        if (EnvironmentUtil.getBooleanEnv(Constants.STORAGE_DEDUPLICATION_ENV, false)) {
+            // Identical files are stored once, the content hash is needed first
+            file.setHash(computeHash(unencryptedFile));
+            file.setSize(Files.size(unencryptedFile));
+            file.setBlobId(BlobUtil.store(unencryptedFile, file.getHash()));
+        } else {
+            Cipher cipher = EncryptionUtil.getEncryptionCipher(user.getPrivateKey());
+            Path path = DirectoryUtil.getStorageDirectory().resolve(file.getId());
+            // The size and hash are computed while encrypting, the file is read only once
+            try (HashingInputStream hashingInputStream = new HashingInputStream(Hashing.sha256(), Files.newInputStream(unencryptedFile));
+                 CountingInputStream countingInputStream = new CountingInputStream(hashingInputStream)) {
+                Files.copy(new CipherInputStream(countingInputStream, cipher), path);
+                file.setHash(hashingInputStream.hash().toString());
+                file.setSize(countingInputStream.getByteCount());
+            }
         }
 
         // Update the user quota
-        user.setStorageCurrent(user.getStorageCurrent() + fileSize);
+        user.setStorageCurrent(user.getStorageCurrent() + file.getSize());
         userDao.updateQuota(user);
 
         // Raise a new file created event and document updated event if we have a document
@@ -202,7 +269,8 @@ public class FileUtil {
         fileCreatedAsyncEvent.setUserId(userId);
         fileCreatedAsyncEvent.setLanguage(language);
         fileCreatedAsyncEvent.setFileId(file.getId());
-        fileCreatedAsyncEvent.setUnencryptedFile(unencryptedFile);
+        fileCreatedAsyncEvent.setUnencryptedFile(unencryptedFile)
+                .setBulk(bulk);
         ThreadLocalContext.get().addAsyncEvent(fileCreatedAsyncEvent);
 
         if (documentId != null) {
@@ -246,29 +314,45 @@ public class FileUtil {
     }
 
     /**
-     * Get the size of a file on disk.
+     * Returns the encrypted original of a file, in its blob if it shares one.
      *
-     * @param fileId the file id
-     * @param user   the file owner
-     * @return the size or -1 if something went wrong
+     * @param file File
+     * @return Stored file
      */
-    public static long getFileSize(String fileId, User user) {
-        // To get the size we copy the decrypted content into a null output stream
-        // and count the copied byte size.
-        Path storedFile = DirectoryUtil.getStorageDirectory().resolve(fileId);
-        if (! Files.exists(storedFile)) {
-            log.debug("File does not exist " + fileId);
-            return File.UNKNOWN_SIZE;
+    public static Path getStoredFile(File file) {
+        if (file.getBlobId() != null) {
+            return BlobUtil.getBlobFile(file.getBlobId());
         }
-        try (InputStream fileInputStream = Files.newInputStream(storedFile);
-             InputStream inputStream = EncryptionUtil.decryptInputStream(fileInputStream, user.getPrivateKey());
-             CountingInputStream countingInputStream = new CountingInputStream(inputStream);
-        ) {
-            IOUtils.copy(countingInputStream, NullOutputStream.NULL_OUTPUT_STREAM);
-            return countingInputStream.getByteCount();
-        } catch (Exception e) {
-            log.debug("Can't find size of file " + fileId, e);
-            return File.UNKNOWN_SIZE;
+        return DirectoryUtil.getStorageDirectory().resolve(file.getId());
+    }
+
+    /**
+     * Returns the key to decrypt the original of a file.
+     * A blob is encrypted with a key derived from the content hash, a file stored under its ID with the private key of its creator.
+     *
+     * @param file File
+     * @param privateKey Private key of the creator of the file
+     * @return Key
+     */
+    public static String getStoredFileKey(File file, String privateKey) {
+        return file.getBlobId() != null ? BlobUtil.getKey(file.getHash()) : privateKey;
+    }
+
+    /**
+     * Compute the size and hash of a stored file, decrypting it only once.
+     * The file is updated by side effect, not persisted.
+     *
+     * @param file File
+     * @param privateKey Private key of the file owner
+     * @throws Exception e
+     */
+    public static void computeSizeAndHash(File file, String privateKey) throws Exception {
+        Path storedFile = getStoredFile(file);
+        try (InputStream inputStream = EncryptionUtil.decryptInputStream(Files.newInputStream(storedFile), getStoredFileKey(file, privateKey));
+             HashingInputStream hashingInputStream = new HashingInputStream(Hashing.sha256(), inputStream)) {
+            long size = ByteStreams.exhaust(hashingInputStream);
+            file.setSize(size);
+            file.setHash(hashingInputStream.hash().toString());
         }
     }
 }
@@ -11,6 +11,7 @@ import com.sismics.docs.core.model.jpa.DocumentMetadata;
 import com.sismics.docs.core.util.jpa.SortCriteria;
 
 import jakarta.json.Json;
+import jakarta.json.JsonArray;
 import jakarta.json.JsonArrayBuilder;
 import jakarta.json.JsonObjectBuilder;
 import java.text.MessageFormat;
@@ -150,12 +151,12 @@ public class MetadataUtil {
     }
 
     /**
-     * Add custom metadata to a JSON response.
+     * Returns the custom metadata of a document, with all the metadata defined.
      *
-     * @param json JSON
      * @param documentId Document ID
+     * @return Metadata as JSON
      */
-    public static void addMetadata(JsonObjectBuilder json, String documentId) {
+    public static JsonArray getMetadata(String documentId) {
         DocumentMetadataDao documentMetadataDao = new DocumentMetadataDao();
         MetadataDao metadataDao = new MetadataDao();
         List<MetadataDto> metadataDtoList = metadataDao.findByCriteria(new MetadataCriteria(), new SortCriteria(1, true));
@@ -191,6 +192,6 @@ public class MetadataUtil {
             }
             metadata.add(meta);
         }
-        json.add("metadata", metadata);
+        return metadata.build();
     }
 }
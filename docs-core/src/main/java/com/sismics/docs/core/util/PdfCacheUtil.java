@@ -0,0 +1,282 @@
+package com.sismics.docs.core.util;
+
+import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.sismics.docs.core.constant.Constants;
+import com.sismics.docs.core.dao.dto.DocumentDto;
+import com.sismics.docs.core.model.jpa.File;
+import com.sismics.util.EnvironmentUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.crypto.CipherOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cache of the PDF exports of the documents.
+ * An export is identified by the document, its metadata, its files and the export options, so a changed document never hits a stale export.
+ * Exports are encrypted with the private key of the document creator, the least recently used are evicted above the maximum size.
+ * A missing export is generated in the background, concurrent requests of the same export wait for the same generation.
+ */
+public class PdfCacheUtil {
+    /**
+     * Logger.
+     */
+    private static final Logger log = LoggerFactory.getLogger(PdfCacheUtil.class);
+
+    /**
+     * Exports being generated, by cache key.
+     */
+    private static final Map<String, CompletableFuture<Path>> pendingMap = new ConcurrentHashMap<>();
+
+    /**
+     * Executor generating the exports.
+     */
+    private static final ExecutorService executor = Executors.newFixedThreadPool(
+            Math.max(EnvironmentUtil.getIntegerEnv(Constants.PDF_EXPORT_THREADS_ENV, Constants.DEFAULT_PDF_EXPORT_THREADS), 1),
+            new ThreadFactoryBuilder().setNameFormat("pdf-export-%d").setDaemon(true).build());
+
+    /**
+     * Number of exports served from the cache.
+     */
+    private static final AtomicLong hitCount = new AtomicLong();
+
+    /**
+     * Number of exports generated.
+     */
+    private static final AtomicLong missCount = new AtomicLong();
+
+    /**
+     * Returns a decrypted stream of the PDF export of a document, generated if it is not cached.
+     * The stream is opened before returning, the export can be evicted meanwhile.
+     *
+     * @param documentDto Document
+     * @param fileList Files of the document, with their private keys
+     * @param fitImageToPage Fit images to the page
+     * @param metadata Add a page with metadata
+     * @param margin Margins in millimeters
+     * @param privateKey Private key encrypting the export
+     * @return PDF stream
+     * @throws Exception e
+     */
+    public static InputStream getPdf(DocumentDto documentDto, List<File> fileList,
+                                     boolean fitImageToPage, boolean metadata, int margin, String privateKey) throws Exception {
+        String key = getCacheKey(documentDto, fileList, fitImageToPage, metadata, margin);
+        Path cacheFile = DirectoryUtil.getPdfCacheDirectory().resolve(documentDto.getId() + "-" + key + ".pdf");
+
+        InputStream inputStream = openCacheFile(cacheFile, privateKey);
+        if (inputStream != null) {
+            hitCount.incrementAndGet();
+            return inputStream;
+        }
+
+        // Generate the export in the background, the generation completes even if this request is aborted
+        CompletableFuture<Path> future = pendingMap.computeIfAbsent(key, k -> {
+            missCount.incrementAndGet();
+            return CompletableFuture.supplyAsync(() ->
+                    generate(documentDto, fileList, fitImageToPage, metadata, margin, privateKey, cacheFile), executor);
+        });
+        try {
+            future.get();
+        } catch (ExecutionException e) {
+            throw new IOException("Error generating the PDF export", e.getCause());
+        } finally {
+            pendingMap.remove(key, future);
+        }
+
+        inputStream = openCacheFile(cacheFile, privateKey);
+        if (inputStream == null) {
+            throw new IOException("PDF export evicted before being read: " + cacheFile);
+        }
+        return inputStream;
+    }
+
+    /**
+     * Evict all the exports of a document.
+     *
+     * @param documentId Document ID
+     */
+    public static void evict(String documentId) {
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(DirectoryUtil.getPdfCacheDirectory(), documentId + "-*.pdf")) {
+            for (Path cacheFile : stream) {
+                Files.deleteIfExists(cacheFile);
+            }
+        } catch (IOException e) {
+            log.error("Unable to evict the PDF exports of the document: " + documentId, e);
+        }
+    }
+
+    /**
+     * Returns the number of exports served from the cache.
+     *
+     * @return Hit count
+     */
+    public static long getHitCount() {
+        return hitCount.get();
+    }
+
+    /**
+     * Returns the number of exports generated.
+     *
+     * @return Miss count
+     */
+    public static long getMissCount() {
+        return missCount.get();
+    }
+
+    /**
+     * Open a cached export and mark it as recently used.
+     *
+     * @param cacheFile Cache file
+     * @param privateKey Private key
+     * @return Decrypted stream or null if not cached
+     * @throws Exception e
+     */
+    private static InputStream openCacheFile(Path cacheFile, String privateKey) throws Exception {
+        InputStream inputStream;
+        try {
+            inputStream = Files.newInputStream(cacheFile);
+        } catch (IOException e) {
+            return null;
+        }
+        try {
+            Files.setLastModifiedTime(cacheFile, FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (IOException e) {
+            // Evicted since opened, the stream is still readable
+        }
+        return EncryptionUtil.decryptInputStream(inputStream, privateKey);
+    }
+
+    /**
+     * Generate an export in the cache.
+     *
+     * @param documentDto Document
+     * @param fileList Files of the document
+     * @param fitImageToPage Fit images to the page
+     * @param metadata Add a page with metadata
+     * @param margin Margins in millimeters
+     * @param privateKey Private key encrypting the export
+     * @param cacheFile Cache file
+     * @return Cache file
+     */
+    private static Path generate(DocumentDto documentDto, List<File> fileList, boolean fitImageToPage, boolean metadata,
+                                 int margin, String privateKey, Path cacheFile) {
+        Path tmpFile = null;
+        try {
+            // Write to a temporary file first, concurrent readers must never see a partial export
+            tmpFile = Files.createTempFile(cacheFile.getParent(), "pdf", ".tmp");
+            try (OutputStream outputStream = new CipherOutputStream(Files.newOutputStream(tmpFile), EncryptionUtil.getEncryptionCipher(privateKey))) {
+                PdfUtil.convertToPdf(documentDto, fileList, fitImageToPage, metadata, margin, outputStream);
+            }
+            Files.move(tmpFile, cacheFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (Exception e) {
+            if (tmpFile != null) {
+                try {
+                    Files.deleteIfExists(tmpFile);
+                } catch (IOException de) {
+                    log.warn("Unable to delete the temporary PDF export: " + tmpFile, de);
+                }
+            }
+            throw new IllegalStateException(e);
+        }
+
+        evictLeastRecentlyUsed(cacheFile);
+        return cacheFile;
+    }
+
+    /**
+     * Evict the least recently used exports above the maximum cache size.
+     *
+     * @param keptFile Export just generated, never evicted
+     */
+    private static synchronized void evictLeastRecentlyUsed(Path keptFile) {
+        long maxSize = EnvironmentUtil.getIntegerEnv(Constants.PDF_CACHE_SIZE_ENV, Constants.DEFAULT_PDF_CACHE_SIZE) * 1024L * 1024L;
+        List<Path> cacheFileList = new ArrayList<>();
+        long size = 0;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(DirectoryUtil.getPdfCacheDirectory(), "*.pdf")) {
+            for (Path cacheFile : stream) {
+                cacheFileList.add(cacheFile);
+                size += Files.size(cacheFile);
+            }
+            if (size <= maxSize) {
+                return;
+            }
+
+            cacheFileList.sort(Comparator.comparing(PdfCacheUtil::getLastModifiedTime));
+            for (Path cacheFile : cacheFileList) {
+                if (size <= maxSize) {
+                    break;
+                }
+                if (!cacheFile.equals(keptFile)) {
+                    size -= Files.size(cacheFile);
+                    Files.deleteIfExists(cacheFile);
+                }
+            }
+        } catch (IOException e) {
+            log.error("Unable to evict the PDF exports", e);
+        }
+    }
+
+    /**
+     * Returns the last access time of an export.
+     *
+     * @param cacheFile Cache file
+     * @return Last access time
+     */
+    private static FileTime getLastModifiedTime(Path cacheFile) {
+        try {
+            return Files.getLastModifiedTime(cacheFile);
+        } catch (IOException e) {
+            return FileTime.fromMillis(0);
+        }
+    }
+
+    /**
+     * Returns the cache key of an export.
+     *
+     * @param documentDto Document
+     * @param fileList Files of the document
+     * @param fitImageToPage Fit images to the page
+     * @param metadata Add a page with metadata
+     * @param margin Margins in millimeters
+     * @return Cache key
+     */
+    private static String getCacheKey(DocumentDto documentDto, List<File> fileList, boolean fitImageToPage, boolean metadata, int margin) {
+        StringBuilder sb = new StringBuilder(documentDto.getId())
+                .append(':').append(documentDto.getUpdateTimestamp())
+                .append(':').append(fitImageToPage)
+                .append(':').append(metadata)
+                .append(':').append(margin);
+        if (metadata) {
+            // Everything written on the metadata page, some fields can change without updating the document date
+            for (Object value : new Object[] { documentDto.getTitle(), documentDto.getCreator(), documentDto.getCreateTimestamp(),
+                    documentDto.getDescription(), documentDto.getSubject(), documentDto.getIdentifier(), documentDto.getPublisher(),
+                    documentDto.getFormat(), documentDto.getSource(), documentDto.getType(), documentDto.getCoverage(),
+                    documentDto.getRights(), documentDto.getLanguage() }) {
+                sb.append(':').append(value == null ? "" : value.toString().length() + "/" + value);
+            }
+        }
+        for (File file : fileList) {
+            sb.append(':').append(file.getId()).append('/').append(file.getHash());
+        }
+        return Hashing.sha256().hashString(sb.toString(), StandardCharsets.UTF_8).toString();
+    }
+}
@@ -0,0 +1,264 @@
+package com.sismics.docs.core.util;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.LoadingCache;
+import com.google.common.collect.ImmutableSet;
+import com.sismics.docs.core.dao.AuthenticationTokenDao;
+import com.sismics.docs.core.dao.GroupDao;
+import com.sismics.docs.core.dao.RoleBaseFunctionDao;
+import com.sismics.docs.core.dao.UserDao;
+import com.sismics.docs.core.dao.criteria.GroupCriteria;
+import com.sismics.docs.core.dao.dto.GroupDto;
+import com.sismics.docs.core.event.PrincipalUpdatedAsyncEvent;
+import com.sismics.docs.core.model.jpa.AuthenticationToken;
+import com.sismics.docs.core.model.jpa.User;
+import com.sismics.util.context.ThreadLocalContext;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cache of the data needed to authenticate users on each request.
+ * Entries are evicted when the users, their groups or their authentication tokens change.
+ */
+public class PrincipalCacheUtil {
+    /**
+     * Maximum number of entries of each cache.
+     */
+    private static final int CACHE_SIZE = 10000;
+
+    /**
+     * Expiration of the cache entries in minutes, as a safety net for the changes made outside of the DAOs.
+     */
+    private static final int CACHE_EXPIRATION = 10;
+
+    /**
+     * Maximum number of unknown authentication tokens.
+     */
+    private static final int UNKNOWN_TOKEN_CACHE_SIZE = 1000;
+
+    /**
+     * Expiration of the unknown authentication tokens in seconds.
+     */
+    private static final int UNKNOWN_TOKEN_CACHE_EXPIRATION = 30;
+
+    /**
+     * Authentication tokens by ID, only the existing ones.
+     */
+    private static final Cache<String, AuthenticationToken> tokenCache = CacheBuilder.newBuilder()
+            .maximumSize(CACHE_SIZE)
+            .expireAfterWrite(CACHE_EXPIRATION, TimeUnit.MINUTES)
+            .recordStats()
+            .build();
+
+    /**
+     * Unknown authentication token IDs, kept apart so that invalid tokens never evict the valid ones.
+     */
+    private static final Cache<String, Boolean> unknownTokenCache = CacheBuilder.newBuilder()
+            .maximumSize(UNKNOWN_TOKEN_CACHE_SIZE)
+            .expireAfterWrite(UNKNOWN_TOKEN_CACHE_EXPIRATION, TimeUnit.SECONDS)
+            .build();
+
+    /**
+     * Users by ID.
+     */
+    private static final LoadingCache<String, Optional<User>> userCache = CacheBuilder.newBuilder()
+            .maximumSize(CACHE_SIZE)
+            .expireAfterWrite(CACHE_EXPIRATION, TimeUnit.MINUTES)
+            .recordStats()
+            .build(new CacheLoader<>() {
+                @Override
+                public Optional<User> load(String id) {
+                    return Optional.ofNullable(new UserDao().getById(id));
+                }
+            });
+
+    /**
+     * Groups and base functions by user ID.
+     */
+    private static final LoadingCache<String, Grants> grantsCache = CacheBuilder.newBuilder()
+            .maximumSize(CACHE_SIZE)
+            .expireAfterWrite(CACHE_EXPIRATION, TimeUnit.MINUTES)
+            .recordStats()
+            .build(new CacheLoader<>() {
+                @Override
+                public Grants load(String userId) {
+                    return loadGrants(userId);
+                }
+            });
+
+    /**
+     * Returns an authentication token.
+     *
+     * @param id Authentication token ID
+     * @return Authentication token or null if not found
+     */
+    public static AuthenticationToken getAuthenticationToken(String id) {
+        if (unknownTokenCache.getIfPresent(id) != null) {
+            return null;
+        }
+
+        AuthenticationToken authenticationToken = tokenCache.getIfPresent(id);
+        if (authenticationToken == null) {
+            authenticationToken = new AuthenticationTokenDao().get(id);
+            if (authenticationToken == null) {
+                unknownTokenCache.put(id, Boolean.TRUE);
+            } else {
+                tokenCache.put(id, authenticationToken);
+            }
+        }
+        return authenticationToken;
+    }
+
+    /**
+     * Returns a user.
+     *
+     * @param id User ID
+     * @return User or null if not found
+     */
+    public static User getUser(String id) {
+        return userCache.getUnchecked(id).orElse(null);
+    }
+
+    /**
+     * Returns the groups and base functions of a user.
+     *
+     * @param userId User ID
+     * @return Groups and base functions
+     */
+    public static Grants getGrants(String userId) {
+        return grantsCache.getUnchecked(userId);
+    }
+
+    /**
+     * Evict a user, its groups and its authentication tokens.
+     *
+     * @param userId User ID
+     */
+    public static void invalidateUser(String userId) {
+        invalidate(new PrincipalUpdatedAsyncEvent().setUserId(userId));
+    }
+
+    /**
+     * Evict an authentication token.
+     *
+     * @param tokenId Authentication token ID
+     */
+    public static void invalidateToken(String tokenId) {
+        invalidate(new PrincipalUpdatedAsyncEvent().setTokenId(tokenId));
+    }
+
+    /**
+     * Evict all the users, for changes affecting an unknown number of users (group hierarchy).
+     */
+    public static void invalidateAll() {
+        invalidate(new PrincipalUpdatedAsyncEvent());
+    }
+
+    /**
+     * Evict immediately, then again after the current transaction is committed.
+     *
+     * @param event Principal updated event
+     */
+    private static void invalidate(PrincipalUpdatedAsyncEvent event) {
+        evict(event.getUserId(), event.getTokenId());
+        ThreadLocalContext.get().addAsyncEvent(event);
+    }
+
+    /**
+     * Evict cache entries.
+     *
+     * @param userId User ID, null for all users
+     * @param tokenId Authentication token ID, null for all tokens of the user
+     */
+    public static void evict(String userId, String tokenId) {
+        if (tokenId != null) {
+            tokenCache.invalidate(tokenId);
+            unknownTokenCache.invalidate(tokenId);
+        } else if (userId != null) {
+            userCache.invalidate(userId);
+            grantsCache.invalidate(userId);
+            tokenCache.asMap().values().removeIf(token -> userId.equals(token.getUserId()));
+        } else {
+            userCache.invalidateAll();
+            grantsCache.invalidateAll();
+            tokenCache.invalidateAll();
+            unknownTokenCache.invalidateAll();
+        }
+    }
+
+    /**
+     * Returns the statistics of the caches.
+     *
+     * @return Cache statistics
+     */
+    public static CacheStats getCacheStats() {
+        return tokenCache.stats().plus(userCache.stats()).plus(grantsCache.stats());
+    }
+
+    /**
+     * Load the groups (including the parent groups) and base functions of a user.
+     *
+     * @param userId User ID
+     * @return Groups and base functions
+     */
+    private static Grants loadGrants(String userId) {
+        // Add groups
+        GroupDao groupDao = new GroupDao();
+        Set<String> groupRoleIdSet = new HashSet<>();
+        List<GroupDto> groupDtoList = groupDao.findByCriteria(new GroupCriteria()
+                .setUserId(userId)
+                .setRecursive(true), null);
+        Set<String> groupIdSet = new HashSet<>();
+        for (GroupDto groupDto : groupDtoList) {
+            groupIdSet.add(groupDto.getId());
+            if (groupDto.getRoleId() != null) {
+                groupRoleIdSet.add(groupDto.getRoleId());
+            }
+        }
+
+        // Add base functions
+        User user = new UserDao().getById(userId);
+        if (user != null) {
+            groupRoleIdSet.add(user.getRoleId());
+        }
+        RoleBaseFunctionDao roleBaseFunctionDao = new RoleBaseFunctionDao();
+        Set<String> baseFunctionSet = roleBaseFunctionDao.findByRoleId(groupRoleIdSet);
+
+        return new Grants(ImmutableSet.copyOf(groupIdSet), ImmutableSet.copyOf(baseFunctionSet));
+    }
+
+    /**
+     * Groups and base functions of a user.
+     */
+    public static class Grants {
+        /**
+         * Group IDs, including the parent groups.
+         */
+        private final Set<String> groupIdSet;
+
+        /**
+         * Base functions.
+         */
+        private final Set<String> baseFunctionSet;
+
+        Grants(Set<String> groupIdSet, Set<String> baseFunctionSet) {
+            this.groupIdSet = groupIdSet;
+            this.baseFunctionSet = baseFunctionSet;
+        }
+
+        public Set<String> getGroupIdSet() {
+            return groupIdSet;
+        }
+
+        public Set<String> getBaseFunctionSet() {
+            return baseFunctionSet;
+        }
+    }
+}
@@ -69,6 +69,7 @@ public class TransactionUtil {
         if (em.isOpen()) {
             if (em.getTransaction() != null && em.getTransaction().isActive()) {
                 em.getTransaction().commit();
+                context.runAllPostCommitTasks();
                 
                 try {
                     em.close();
@@ -89,8 +90,10 @@ public class TransactionUtil {
      * Commits the current transaction, and flushes the changes to the database.
      */
     public static void commit() {
-        EntityTransaction tx = ThreadLocalContext.get().getEntityManager().getTransaction();
+        ThreadLocalContext context = ThreadLocalContext.get();
+        EntityTransaction tx = context.getEntityManager().getTransaction();
         tx.commit();
+        context.runAllPostCommitTasks();
         tx.begin();
     }
 }
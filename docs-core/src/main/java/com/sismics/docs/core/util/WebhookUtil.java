@@ -0,0 +1,127 @@
+package com.sismics.docs.core.util;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.collect.ImmutableList;
+import com.sismics.docs.core.constant.WebhookEvent;
+import com.sismics.docs.core.dao.WebhookDao;
+import com.sismics.docs.core.dao.WebhookDeliveryDao;
+import com.sismics.docs.core.dao.criteria.WebhookCriteria;
+import com.sismics.docs.core.dao.dto.WebhookDto;
+import com.sismics.docs.core.event.*;
+import com.sismics.docs.core.model.jpa.WebhookDelivery;
+import com.sismics.util.context.ThreadLocalContext;
+
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Webhook utilities.
+ */
+public class WebhookUtil {
+    /**
+     * Expiration of the cached subscriptions in minutes, as a safety net for the changes made outside of the DAO.
+     */
+    private static final int CACHE_EXPIRATION = 10;
+
+    /**
+     * Webhook URLs by event.
+     */
+    private static final LoadingCache<WebhookEvent, List<String>> urlCache = CacheBuilder.newBuilder()
+            .expireAfterWrite(CACHE_EXPIRATION, TimeUnit.MINUTES)
+            .build(new CacheLoader<>() {
+                @Override
+                public List<String> load(WebhookEvent event) {
+                    ImmutableList.Builder<String> urlList = ImmutableList.builder();
+                    TransactionUtil.handle(() -> {
+                        WebhookDao webhookDao = new WebhookDao();
+                        List<WebhookDto> webhookDtoList = webhookDao.findByCriteria(new WebhookCriteria().setEvent(event), null);
+                        for (WebhookDto webhookDto : webhookDtoList) {
+                            urlList.add(webhookDto.getUrl());
+                        }
+                    });
+                    return urlList.build();
+                }
+            });
+
+    /**
+     * Returns the URLs of the webhooks subscribed to an event.
+     *
+     * @param event Event
+     * @return List of URLs
+     */
+    public static List<String> getUrlList(WebhookEvent event) {
+        return urlCache.getUnchecked(event);
+    }
+
+    /**
+     * Save the deliveries of an event to the subscribed webhooks in the outbox.
+     * Called in the transaction raising the event, so the deliveries are committed or rolled back with it.
+     *
+     * @param asyncEvent Async event
+     */
+    public static void createDeliveries(Object asyncEvent) {
+        if (asyncEvent instanceof DocumentCreatedAsyncEvent) {
+            createDeliveries(WebhookEvent.DOCUMENT_CREATED, ((DocumentCreatedAsyncEvent) asyncEvent).getDocumentId());
+        } else if (asyncEvent instanceof DocumentUpdatedAsyncEvent) {
+            createDeliveries(WebhookEvent.DOCUMENT_UPDATED, ((DocumentUpdatedAsyncEvent) asyncEvent).getDocumentId());
+        } else if (asyncEvent instanceof DocumentDeletedAsyncEvent) {
+            createDeliveries(WebhookEvent.DOCUMENT_DELETED, ((DocumentDeletedAsyncEvent) asyncEvent).getDocumentId());
+        } else if (asyncEvent instanceof DocumentsUpdatedAsyncEvent) {
+            for (String documentId : ((DocumentsUpdatedAsyncEvent) asyncEvent).getDocumentIdList()) {
+                createDeliveries(WebhookEvent.DOCUMENT_UPDATED, documentId);
+            }
+        } else if (asyncEvent instanceof DocumentsDeletedAsyncEvent) {
+            for (String documentId : ((DocumentsDeletedAsyncEvent) asyncEvent).getDocumentIdList()) {
+                createDeliveries(WebhookEvent.DOCUMENT_DELETED, documentId);
+            }
+        } else if (asyncEvent instanceof FileCreatedAsyncEvent) {
+            createDeliveries(WebhookEvent.FILE_CREATED, ((FileCreatedAsyncEvent) asyncEvent).getFileId());
+        } else if (asyncEvent instanceof FileUpdatedAsyncEvent) {
+            createDeliveries(WebhookEvent.FILE_UPDATED, ((FileUpdatedAsyncEvent) asyncEvent).getFileId());
+        } else if (asyncEvent instanceof FileDeletedAsyncEvent) {
+            createDeliveries(WebhookEvent.FILE_DELETED, ((FileDeletedAsyncEvent) asyncEvent).getFileId());
+        }
+    }
+
+    /**
+     * Save the deliveries of an event to the subscribed webhooks in the outbox.
+     *
+     * @param event Event
+     * @param id ID of the entity concerned
+     */
+    private static void createDeliveries(WebhookEvent event, String id) {
+        List<String> urlList = getUrlList(event);
+        if (urlList.isEmpty()) {
+            return;
+        }
+
+        String payload = "{\"event\": \"" + event.name() + "\", \"id\": \"" + id + "\"}";
+        WebhookDeliveryDao webhookDeliveryDao = new WebhookDeliveryDao();
+        Date now = new Date();
+        for (String url : urlList) {
+            webhookDeliveryDao.create(new WebhookDelivery()
+                    .setUrl(url)
+                    .setPayload(payload)
+                    .setAttempt(0)
+                    .setNextAttemptDate(now));
+        }
+    }
+
+    /**
+     * Evict the subscriptions immediately, then again after the current transaction is committed.
+     */
+    public static void invalidate() {
+        evict();
+        ThreadLocalContext.get().addAsyncEvent(new WebhookUpdatedAsyncEvent());
+    }
+
+    /**
+     * Evict the subscriptions.
+     */
+    public static void evict() {
+        urlCache.invalidateAll();
+    }
+}
@@ -0,0 +1,253 @@
+package com.sismics.docs.core.util;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.common.util.concurrent.Uninterruptibles;
+import com.sismics.docs.core.constant.Constants;
+import com.sismics.docs.core.dao.UserDao;
+import com.sismics.docs.core.model.jpa.File;
+import com.sismics.docs.core.model.jpa.User;
+import com.sismics.util.EnvironmentUtil;
+import com.sismics.util.mime.MimeType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * ZIP utilities.
+ * The next files are decrypted in the background while the current one is written to the ZIP stream.
+ * Files already compressed are stored as is instead of being compressed again.
+ * ZIP64 extensions are written automatically when the archive needs them.
+ */
+public class ZipUtil {
+    /**
+     * Logger.
+     */
+    private static final Logger log = LoggerFactory.getLogger(ZipUtil.class);
+
+    /**
+     * MIME types already compressed, stored without compression.
+     */
+    private static final Set<String> COMPRESSED_MIME_TYPE_SET = Set.of(
+            MimeType.IMAGE_JPEG, MimeType.IMAGE_PNG, MimeType.IMAGE_GIF,
+            MimeType.APPLICATION_ZIP, MimeType.APPLICATION_PDF,
+            MimeType.OPEN_DOCUMENT_TEXT, MimeType.OFFICE_DOCUMENT, MimeType.OFFICE_PRESENTATION, MimeType.OFFICE_SHEET,
+            MimeType.VIDEO_WEBM, MimeType.VIDEO_MP4);
+
+    /**
+     * Number of threads decrypting the files.
+     */
+    private static final int THREADS = Math.max(EnvironmentUtil.getIntegerEnv(Constants.ZIP_THREADS_ENV, Constants.DEFAULT_ZIP_THREADS), 1);
+
+    /**
+     * Size of the buffer decrypting the files.
+     */
+    private static final int BUFFER_SIZE = 8192;
+
+    /**
+     * Executor decrypting the files, shared by all the exports.
+     */
+    private static final ThreadPoolExecutor executor;
+
+    static {
+        executor = new ThreadPoolExecutor(THREADS, THREADS,
+                1L, TimeUnit.MINUTES,
+                new LinkedBlockingQueue<>(),
+                new ThreadFactoryBuilder().setNameFormat("zip-export-%d").setDaemon(true).build());
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Write files to a ZIP stream.
+     * The files are read from the iterator as the ZIP is written, they don't need to be loaded beforehand.
+     *
+     * @param fileIterator Files to add, in the calling thread transactional context
+     * @param outputStream Output stream to write to, will be closed
+     * @throws IOException e
+     */
+    public static void zipFiles(Iterator<File> fileIterator, OutputStream outputStream) throws IOException {
+        Deque<Future<DecryptedFile>> pendingQueue = new ArrayDeque<>();
+        AtomicBoolean aborted = new AtomicBoolean();
+        Map<String, String> privateKeyMap = new HashMap<>();
+        UserDao userDao = new UserDao();
+
+        try (ZipOutputStream zipOutputStream = new ZipOutputStream(outputStream)) {
+            int index = 0;
+            while (true) {
+                // Decrypt the next files in the background, one more than the number of threads to keep them busy
+                // Each export queues a bounded number of files, concurrent exports share the threads
+                while (pendingQueue.size() <= THREADS && fileIterator.hasNext()) {
+                    File file = fileIterator.next();
+
+                    // Files are encrypted by the creator of them
+                    String privateKey = privateKeyMap.computeIfAbsent(file.getUserId(), userId -> {
+                        User user = userDao.getById(userId);
+                        return user == null ? null : user.getPrivateKey();
+                    });
+                    String name = index + "-" + file.getFullName(Integer.toString(index));
+                    index++;
+                    pendingQueue.add(executor.submit(() -> decrypt(file, name, privateKey, aborted)));
+                }
+
+                Future<DecryptedFile> future = pendingQueue.poll();
+                if (future == null) {
+                    break;
+                }
+                DecryptedFile decryptedFile = getDecryptedFile(future);
+                try {
+                    writeEntry(zipOutputStream, decryptedFile);
+                } finally {
+                    Files.deleteIfExists(decryptedFile.path);
+                }
+            }
+        } finally {
+            // Interrupted export, the running decryptions stop and delete their file
+            // Wait for them so the files decrypted meanwhile are deleted too
+            aborted.set(true);
+            for (Future<DecryptedFile> future : pendingQueue) {
+                try {
+                    Files.deleteIfExists(Uninterruptibles.getUninterruptibly(future).path);
+                } catch (ExecutionException e) {
+                    // Aborted or failed, nothing left to delete
+                } catch (IOException e) {
+                    log.warn("Error deleting a decrypted file", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Decrypt a file to a temporary file.
+     *
+     * @param file File
+     * @param name Name in the ZIP
+     * @param privateKey Private key of the creator of the file
+     * @param aborted True once the export is aborted
+     * @return Decrypted file
+     * @throws Exception e
+     */
+    private static DecryptedFile decrypt(File file, String name, String privateKey, AtomicBoolean aborted) throws Exception {
+        if (aborted.get()) {
+            throw new InterruptedIOException("ZIP export aborted");
+        }
+        Path storedFile = FileUtil.getStoredFile(file);
+        Path path = Files.createTempFile("sismics_docs_zip", null);
+        CRC32 crc = new CRC32();
+        long size = 0;
+        try (InputStream decryptedStream = EncryptionUtil.decryptInputStream(Files.newInputStream(storedFile), FileUtil.getStoredFileKey(file, privateKey));
+             CheckedInputStream checkedStream = new CheckedInputStream(decryptedStream, crc);
+             OutputStream tempOutputStream = Files.newOutputStream(path)) {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int length;
+            while ((length = checkedStream.read(buffer)) != -1) {
+                if (aborted.get()) {
+                    throw new InterruptedIOException("ZIP export aborted");
+                }
+                tempOutputStream.write(buffer, 0, length);
+                size += length;
+            }
+        } catch (Exception e) {
+            Files.deleteIfExists(path);
+            throw e;
+        }
+        return new DecryptedFile(path, name, size, crc.getValue(), COMPRESSED_MIME_TYPE_SET.contains(file.getMimeType()));
+    }
+
+    /**
+     * Wait for a file to be decrypted.
+     *
+     * @param future Decryption result
+     * @return Decrypted file
+     * @throws IOException e
+     */
+    private static DecryptedFile getDecryptedFile(Future<DecryptedFile> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        } catch (ExecutionException e) {
+            throw new IOException("Error decrypting a file", e.getCause());
+        }
+    }
+
+    /**
+     * Add a decrypted file to the ZIP stream.
+     *
+     * @param zipOutputStream ZIP stream
+     * @param decryptedFile Decrypted file
+     * @throws IOException e
+     */
+    private static void writeEntry(ZipOutputStream zipOutputStream, DecryptedFile decryptedFile) throws IOException {
+        ZipEntry zipEntry = new ZipEntry(decryptedFile.name);
+        if (decryptedFile.stored) {
+            // The size and CRC of a stored entry must be known before writing it
+            zipEntry.setMethod(ZipEntry.STORED);
+            zipEntry.setSize(decryptedFile.size);
+            zipEntry.setCompressedSize(decryptedFile.size);
+            zipEntry.setCrc(decryptedFile.crc);
+        }
+        zipOutputStream.putNextEntry(zipEntry);
+        Files.copy(decryptedFile.path, zipOutputStream);
+        zipOutputStream.closeEntry();
+    }
+
+    /**
+     * File decrypted and ready to be added to the ZIP.
+     */
+    private static class DecryptedFile {
+        /**
+         * Temporary file.
+         */
+        private final Path path;
+
+        /**
+         * Name in the ZIP.
+         */
+        private final String name;
+
+        /**
+         * Decrypted size.
+         */
+        private final long size;
+
+        /**
+         * CRC-32 of the decrypted content.
+         */
+        private final long crc;
+
+        /**
+         * True if stored without compression.
+         */
+        private final boolean stored;
+
+        DecryptedFile(Path path, String name, long size, long crc, boolean stored) {
+            this.path = path;
+            this.name = name;
+            this.size = size;
+            this.crc = crc;
+            this.stored = stored;
+        }
+    }
+}
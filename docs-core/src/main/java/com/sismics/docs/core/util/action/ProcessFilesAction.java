@@ -6,7 +6,6 @@ import com.sismics.docs.core.dao.dto.DocumentDto;
 import com.sismics.docs.core.event.FileUpdatedAsyncEvent;
 import com.sismics.docs.core.model.jpa.File;
 import com.sismics.docs.core.model.jpa.User;
-import com.sismics.docs.core.util.DirectoryUtil;
 import com.sismics.docs.core.util.EncryptionUtil;
 import com.sismics.docs.core.util.FileUtil;
 import com.sismics.util.context.ThreadLocalContext;
@@ -40,8 +39,8 @@ public class ProcessFilesAction implements Action {
                 User user = userDao.getById(file.getUserId());
 
                 // Decrypt the file
-                Path storedFile = DirectoryUtil.getStorageDirectory().resolve(file.getId());
-                Path unencryptedFile = EncryptionUtil.decryptFile(storedFile, user.getPrivateKey());
+                Path storedFile = FileUtil.getStoredFile(file);
+                Path unencryptedFile = EncryptionUtil.decryptFile(storedFile, FileUtil.getStoredFileKey(file, user.getPrivateKey()));
 
                 // Start the asynchronous processing
                 FileUtil.startProcessingFile(file.getId());
@@ -49,7 +48,8 @@ public class ProcessFilesAction implements Action {
                 event.setUserId("admin");
                 event.setLanguage(documentDto.getLanguage());
                 event.setFileId(file.getId());
-                event.setUnencryptedFile(unencryptedFile);
+                event.setUnencryptedFile(unencryptedFile)
+                        .setBulk(true);
                 ThreadLocalContext.get().addAsyncEvent(event);
             }
         } catch (Exception e) {
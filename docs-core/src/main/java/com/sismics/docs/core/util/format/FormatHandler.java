@@ -40,6 +40,16 @@ public interface FormatHandler {
      */
     String extractContent(String language, Path file) throws Exception;
 
+    /**
+     * Returns the version of the content extraction.
+     * To be incremented when the extracted content changes, so that cached contents are not reused.
+     *
+     * @return Version
+     */
+    default int getVersion() {
+        return 1;
+    }
+
     /**
      * Append to a PDF.
      *
@@ -50,8 +50,11 @@ public class ImageFormatHandler implements FormatHandler {
             return null;
         }
 
+        FileUtil.getOcrSemaphore().acquire();
         try (InputStream inputStream = Files.newInputStream(file)) {
             return FileUtil.ocrFile(language, ImageIO.read(inputStream));
+        } finally {
+            FileUtil.getOcrSemaphore().release();
         }
     }
 
@@ -1,6 +1,7 @@
 package com.sismics.docs.core.util.format;
 
 import com.google.common.io.Closer;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.sismics.docs.core.util.FileUtil;
 import com.sismics.docs.core.util.ConfigUtil;
 import com.sismics.docs.core.constant.ConfigType;
@@ -18,6 +19,14 @@ import java.awt.image.BufferedImage;
 import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * PDF format handler.
@@ -30,6 +39,19 @@ public class PdfFormatHandler implements FormatHandler {
      */
     private static final Logger log = LoggerFactory.getLogger(PdfFormatHandler.class);
 
+    /**
+     * Executor OCR-izing the pages, shared by all the PDF files.
+     */
+    private static final ThreadPoolExecutor ocrExecutor;
+
+    static {
+        ocrExecutor = new ThreadPoolExecutor(FileUtil.OCR_PAGE_THREADS, FileUtil.OCR_PAGE_THREADS,
+                1L, TimeUnit.MINUTES,
+                new LinkedBlockingQueue<>(),
+                new ThreadFactoryBuilder().setNameFormat("pdf-ocr-%d").setDaemon(true).build());
+        ocrExecutor.allowCoreThreadTimeOut(true);
+    }
+
     @Override
     public boolean accept(String mimeType) {
         return mimeType.equals(MimeType.APPLICATION_PDF);
@@ -56,16 +78,8 @@ public class PdfFormatHandler implements FormatHandler {
 
         // No text content, try to OCR it
         if (language != null && content != null && content.trim().isEmpty() && ConfigUtil.getConfigBooleanValue(ConfigType.OCR_ENABLED, true)) {
-            StringBuilder sb = new StringBuilder();
-            try (InputStream inputStream = Files.newInputStream(file);
-                 PDDocument pdfDocument = PDDocument.load(inputStream)) {
-                PDFRenderer renderer = new PDFRenderer(pdfDocument);
-                for (int pageIndex = 0; pageIndex < pdfDocument.getNumberOfPages(); pageIndex++) {
-                    log.info("OCR page " + (pageIndex + 1) + "/" + pdfDocument.getNumberOfPages() + " of PDF file containing only images");
-                    sb.append(" ");
-                    sb.append(FileUtil.ocrFile(language, renderer.renderImageWithDPI(pageIndex, 300, ImageType.GRAY)));
-                }
-                return sb.toString();
+            try {
+                return ocrPdf(language, file);
             } catch (Exception e) {
                 log.error("Error while OCR-izing the PDF", e);
             }
@@ -74,6 +88,81 @@ public class PdfFormatHandler implements FormatHandler {
         return content;
     }
 
+    /**
+     * OCR-ize all the pages of a PDF file.
+     * Pages are rendered one by one while the previous ones are OCR-ized in parallel,
+     * each rendered page holds an OCR permit shared by all the files until it is OCR-ized.
+     * The remaining pages are skipped as soon as a page fails.
+     *
+     * @param language Language to OCR
+     * @param file PDF file
+     * @return Content extracted, in page order
+     * @throws Exception e
+     */
+    private String ocrPdf(String language, Path file) throws Exception {
+        try (InputStream inputStream = Files.newInputStream(file);
+             PDDocument pdfDocument = PDDocument.load(inputStream)) {
+            PDFRenderer renderer = new PDFRenderer(pdfDocument);
+            int pageCount = pdfDocument.getNumberOfPages();
+            Semaphore ocrSemaphore = FileUtil.getOcrSemaphore();
+            AtomicBoolean failed = new AtomicBoolean();
+            List<Future<String>> pageList = new ArrayList<>(pageCount);
+            try {
+                for (int pageIndex = 0; pageIndex < pageCount && !failed.get(); pageIndex++) {
+                    // Wait for a permit before rendering the page
+                    ocrSemaphore.acquire();
+                    BufferedImage image;
+                    try {
+                        image = renderer.renderImageWithDPI(pageIndex, 300, ImageType.GRAY);
+                    } catch (Exception e) {
+                        ocrSemaphore.release();
+                        throw e;
+                    }
+
+                    int pageNumber = pageIndex + 1;
+                    pageList.add(ocrExecutor.submit(() -> {
+                        // The tasks are never cancelled, the permit is always released here
+                        try {
+                            if (failed.get()) {
+                                return null;
+                            }
+                            log.info("OCR page " + pageNumber + "/" + pageCount + " of PDF file containing only images");
+                            return ocrPage(language, image);
+                        } catch (Exception e) {
+                            failed.set(true);
+                            throw e;
+                        } finally {
+                            ocrSemaphore.release();
+                        }
+                    }));
+                }
+
+                // Reassemble the pages in order
+                StringBuilder sb = new StringBuilder();
+                for (Future<String> page : pageList) {
+                    sb.append(" ");
+                    sb.append(page.get());
+                }
+                return sb.toString();
+            } finally {
+                // Skip the remaining pages if a page has failed or this thread was interrupted
+                failed.set(true);
+            }
+        }
+    }
+
+    /**
+     * OCR-ize a rendered page.
+     *
+     * @param language Language to OCR
+     * @param image Rendered page
+     * @return Content extracted
+     * @throws Exception e
+     */
+    protected String ocrPage(String language, BufferedImage image) throws Exception {
+        return FileUtil.ocrFile(language, image);
+    }
+
     @Override
     public void appendToPdf(Path file, PDDocument doc, boolean fitImageToPage, int margin, MemoryUsageSetting memUsageSettings, Closer closer) throws Exception {
         PDDocument mergeDoc = PDDocument.load(file.toFile(), memUsageSettings);
@@ -40,6 +40,21 @@ public interface IndexingHandler {
      */
     void clearIndex();
 
+    /**
+     * Rebuild the index from the database.
+     * The current index is still searched until the rebuilt index replaces it.
+     *
+     * @throws Exception e
+     */
+    void rebuildIndex() throws Exception;
+
+    /**
+     * Returns the progress of the running or last index rebuild.
+     *
+     * @return Rebuild progress
+     */
+    RebuildProgress getRebuildProgress();
+
     /**
      * Index a list of documents.
      *
@@ -89,6 +104,20 @@ public interface IndexingHandler {
      */
     void deleteDocument(String id);
 
+    /**
+     * Update documents in bulk.
+     *
+     * @param documentList List of documents
+     */
+    void updateDocuments(List<Document> documentList);
+
+    /**
+     * Delete files or documents in bulk.
+     *
+     * @param idList List of IDs
+     */
+    void deleteDocuments(List<String> idList);
+
     /**
      * Create an ACL.
      *
@@ -117,4 +146,34 @@ public interface IndexingHandler {
      * @throws Exception e
      */
     void findByCriteria(PaginatedList<DocumentDto> paginatedList, List<String> suggestionList, DocumentCriteria criteria, SortCriteria sortCriteria) throws Exception;
+
+    /**
+     * Returns the IDs of all the documents matching criteria, without loading them.
+     *
+     * @param criteria Search criteria
+     * @return Document IDs
+     * @throws Exception e
+     */
+    List<String> findIdsByCriteria(DocumentCriteria criteria) throws Exception;
+
+    /**
+     * Suggest search terms completing the last word of a query.
+     *
+     * Only the terms of the documents readable by the targets are suggested.
+     *
+     * @param search Search query
+     * @param targetIdList Target IDs reading the documents
+     * @param limit Maximum number of suggestions
+     * @return Suggested terms
+     * @throws Exception e
+     */
+    List<String> suggest(String search, List<String> targetIdList, int limit) throws Exception;
+
+    /**
+     * Make the changes indexed so far visible to searches without waiting for the next periodic refresh.
+     * The suggestions catch up in the background.
+     *
+     * @throws Exception e
+     */
+    void refresh() throws Exception;
 }
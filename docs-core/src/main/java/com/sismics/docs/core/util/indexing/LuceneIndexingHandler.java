@@ -3,27 +3,37 @@ package com.sismics.docs.core.util.indexing;
 import com.google.common.base.Joiner;
 import com.google.common.base.Strings;
 import com.google.common.collect.Lists;
-import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.sismics.docs.core.constant.ConfigType;
+import com.sismics.docs.core.constant.Constants;
 import com.sismics.docs.core.constant.PermType;
-import com.sismics.docs.core.dao.ConfigDao;
+import com.sismics.docs.core.dao.AclDao;
+import com.sismics.docs.core.dao.DocumentDao;
+import com.sismics.docs.core.dao.FileContentDao;
+import com.sismics.docs.core.dao.FileDao;
 import com.sismics.docs.core.dao.criteria.DocumentCriteria;
 import com.sismics.docs.core.dao.dto.DocumentDto;
 import com.sismics.docs.core.event.RebuildIndexAsyncEvent;
 import com.sismics.docs.core.model.context.AppContext;
-import com.sismics.docs.core.model.jpa.Config;
 import com.sismics.docs.core.model.jpa.Document;
 import com.sismics.docs.core.model.jpa.File;
+import com.sismics.docs.core.util.ConfigUtil;
 import com.sismics.docs.core.util.DirectoryUtil;
 import com.sismics.docs.core.util.SecurityUtil;
+import com.sismics.docs.core.util.TransactionUtil;
+import com.sismics.docs.core.util.jpa.InvalidCursorException;
 import com.sismics.docs.core.util.jpa.PaginatedList;
 import com.sismics.docs.core.util.jpa.PaginatedLists;
 import com.sismics.docs.core.util.jpa.QueryParam;
+import com.sismics.docs.core.util.jpa.QueryUtil;
 import com.sismics.docs.core.util.jpa.SortCriteria;
 import com.sismics.util.ClasspathScanner;
+import com.sismics.util.EnvironmentUtil;
 import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.analysis.standard.StandardAnalyzer;
 import org.apache.lucene.document.Field;
+import org.apache.lucene.document.NumericDocValuesField;
+import org.apache.lucene.document.SortedDocValuesField;
 import org.apache.lucene.document.StringField;
 import org.apache.lucene.document.TextField;
 import org.apache.lucene.index.CheckIndex;
@@ -31,13 +41,27 @@ import org.apache.lucene.index.ConcurrentMergeScheduler;
 import org.apache.lucene.index.DirectoryReader;
 import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.SegmentInfos;
+import org.apache.lucene.index.SortedDocValues;
 import org.apache.lucene.index.Term;
 import org.apache.lucene.queryparser.simple.SimpleQueryParser;
 import org.apache.lucene.search.BooleanClause;
 import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.ControlledRealTimeReopenThread;
+import org.apache.lucene.search.FieldDoc;
 import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
 import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.ScoreMode;
+import org.apache.lucene.search.SearcherManager;
+import org.apache.lucene.search.SimpleCollector;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.SortField;
+import org.apache.lucene.search.TermInSetQuery;
+import org.apache.lucene.search.TermQuery;
 import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.search.TopFieldDocs;
 import org.apache.lucene.search.highlight.Highlighter;
 import org.apache.lucene.search.highlight.QueryScorer;
 import org.apache.lucene.search.highlight.SimpleHTMLEncoder;
@@ -45,28 +69,67 @@ import org.apache.lucene.search.highlight.SimpleHTMLFormatter;
 import org.apache.lucene.search.spell.LuceneDictionary;
 import org.apache.lucene.search.suggest.Lookup;
 import org.apache.lucene.search.suggest.analyzing.FuzzySuggester;
+import org.apache.lucene.store.DataInput;
+import org.apache.lucene.store.DataOutput;
 import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.InputStreamDataInput;
 import org.apache.lucene.store.NIOFSDirectory;
 import org.apache.lucene.store.NoLockFactory;
+import org.apache.lucene.store.OutputStreamDataOutput;
 import org.apache.lucene.store.RAMDirectory;
+import org.apache.lucene.util.BytesRef;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.sql.Timestamp;
 import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collection;
 import java.util.Comparator;
+import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * Lucene indexing handler.
- * Documents and files are indexed in Lucene, but only used for fulltext search.
- * Other search criteria are still using the database.
+ * Documents and files are indexed in Lucene for fulltext search.
+ * When a search only uses criteria stored in the index, it is sorted and paginated by Lucene,
+ * otherwise the other search criteria are still using the database.
+ * The targets allowed to read a document, directly or through its tags, are indexed with it.
+ *
+ * Searches go through a near-real-time searcher refreshed in the background,
+ * and the index is committed periodically instead of after each operation.
+ * If the application is not shut down cleanly, the index is rebuilt from the database on the next start.
+ *
+ * The index is rebuilt into a separate directory while the current index is still searched,
+ * then the rebuilt index becomes the current index at once and the previous directory is deleted.
+ * Indexing operations are applied to both indexes meanwhile.
+ * A rebuild interrupted by a clean shutdown resumes from its last checkpoint on the next start.
  *
  * @author bgamard
  */
@@ -77,21 +140,279 @@ public class LuceneIndexingHandler implements IndexingHandler {
      */
     private static final Logger log = LoggerFactory.getLogger(LuceneIndexingHandler.class);
 
+    /**
+     * Commit user data key storing the index state.
+     */
+    private static final String COMMIT_STATE_KEY = "state";
+
+    /**
+     * Index state while the application is running.
+     */
+    private static final String COMMIT_STATE_OPEN = "open";
+
+    /**
+     * Index state after a clean shutdown.
+     */
+    private static final String COMMIT_STATE_CLOSED = "closed";
+
+    /**
+     * Commit user data key storing the version of the indexed fields.
+     */
+    private static final String COMMIT_VERSION_KEY = "version";
+
+    /**
+     * Version of the indexed fields, the index is rebuilt when it changes.
+     */
+    private static final String INDEX_VERSION = "3";
+
+    /**
+     * Searchable fields of the documents.
+     */
+    private static final List<String> DOCUMENT_SEARCH_FIELD_LIST = Lists.newArrayList("title", "description", "subject",
+            "identifier", "publisher", "format", "source", "type", "coverage", "rights");
+
+    /**
+     * Index fields sorting the documents, by sort column.
+     */
+    private static final Map<Integer, SortField> SORT_FIELD_MAP = Map.of(
+            0, new SortField("id", SortField.Type.STRING),
+            1, new SortField("title_sort", SortField.Type.STRING),
+            3, new SortField("create_date", SortField.Type.LONG),
+            4, new SortField("language", SortField.Type.STRING),
+            8, new SortField("update_date", SortField.Type.LONG));
+
+    /**
+     * Database columns paginating the documents with a cursor, by sort column.
+     */
+    private static final Map<Integer, String> KEYSET_COLUMN_MAP = Map.of(
+            0, "d.DOC_ID_C",
+            1, "d.DOC_TITLE_C",
+            3, "d.DOC_CREATEDATE_D",
+            4, "d.DOC_LANGUAGE_C",
+            8, "d.DOC_UPDATEDATE_D");
+
+    /**
+     * Stored fields needed to highlight a file.
+     */
+    private static final Set<String> HIGHLIGHT_FIELD_SET = Set.of("document_id", "content");
+
+    /**
+     * Number of documents reindexed at once when an ACL changes.
+     */
+    private static final int ACL_REINDEX_BATCH_SIZE = 100;
+
+    /**
+     * Number of matching document IDs filtered at once by the database.
+     */
+    private static final int SEARCH_FILTER_BATCH_SIZE = 10000;
+
+    /**
+     * Delay in seconds between two checks of the suggester freshness.
+     */
+    private static final int SUGGESTER_REFRESH_INTERVAL = 10;
+
+    /**
+     * Number of suggestions returned with the search results.
+     */
+    private static final int SUGGESTION_LIMIT = 10;
+
+    /**
+     * Number of terms looked up for each suggestion, the terms of the documents not readable are skipped.
+     */
+    private static final int SUGGESTION_LOOKUP_FACTOR = 5;
+
+    /**
+     * File name of the stored suggester.
+     */
+    private static final String SUGGESTER_FILE_NAME = "title.fst";
+
+    /**
+     * Commit user data key storing the rebuild phase.
+     */
+    private static final String REBUILD_PHASE_KEY = "rebuild_phase";
+
+    /**
+     * Rebuild phase indexing the documents.
+     */
+    private static final String REBUILD_PHASE_DOCUMENT = "document";
+
+    /**
+     * Rebuild phase indexing the files.
+     */
+    private static final String REBUILD_PHASE_FILE = "file";
+
+    /**
+     * Commit user data key storing the last ID indexed by the rebuild in the current phase.
+     */
+    private static final String REBUILD_LAST_ID_KEY = "rebuild_last_id";
+
+    /**
+     * Commit user data key storing the rebuild start date.
+     */
+    private static final String REBUILD_START_DATE_KEY = "rebuild_start_date";
+
+    /**
+     * Commit user data key storing the number of documents indexed by the rebuild.
+     */
+    private static final String REBUILD_DOCUMENT_COUNT_KEY = "rebuild_document_count";
+
+    /**
+     * Commit user data key storing the number of files indexed by the rebuild.
+     */
+    private static final String REBUILD_FILE_COUNT_KEY = "rebuild_file_count";
+
+    /**
+     * Number of documents read at once by the rebuild.
+     */
+    private static final int REBUILD_DOCUMENT_BATCH_SIZE = 500;
+
+    /**
+     * Number of files read at once by the rebuild.
+     */
+    private static final int REBUILD_FILE_BATCH_SIZE = 100;
+
+    /**
+     * Delay in seconds between two checkpoints of the rebuild.
+     */
+    private static final int REBUILD_CHECKPOINT_INTERVAL = 30;
+
     /**
      * Lucene directory.
      */
     private Directory directory;
 
     /**
-     * Directory reader.
+     * True if the index is stored in files.
+     */
+    private boolean fileStorage;
+
+    /**
+     * Directory of the current index files, null with a RAM index.
      */
-    private DirectoryReader directoryReader;
+    private Path indexPath;
 
     /**
      * Index writer.
      */
     private IndexWriter indexWriter;
 
+    /**
+     * Near-real-time searcher manager.
+     */
+    private volatile SearcherManager searcherManager;
+
+    /**
+     * Background thread refreshing the searcher manager.
+     * Null if the searcher is refreshed after each write.
+     */
+    private ControlledRealTimeReopenThread<IndexSearcher> reopenThread;
+
+    /**
+     * Maximum delay in milliseconds before an indexed change becomes searchable.
+     */
+    private int refreshInterval;
+
+    /**
+     * Executor running the periodic commits.
+     */
+    private ScheduledExecutorService commitExecutor;
+
+    /**
+     * Executor rebuilding the suggester when the index changes.
+     */
+    private ScheduledExecutorService suggesterExecutor;
+
+    /**
+     * Search terms suggester built from the document titles.
+     * Null until built or loaded.
+     */
+    private volatile Lookup suggester;
+
+    /**
+     * Version of the index reader the suggester has been built from.
+     */
+    private volatile long suggesterVersion = -1;
+
+    /**
+     * File storing the suggester, null with a RAM index.
+     */
+    private Path suggesterFile;
+
+    /**
+     * Number of indexing operations since the last commit.
+     */
+    private final AtomicInteger uncommittedCount = new AtomicInteger();
+
+    /**
+     * Number of indexing operations triggering a commit.
+     */
+    private int commitOperations = Constants.DEFAULT_LUCENE_COMMIT_OPERATIONS;
+
+    /**
+     * Lock held by the indexing operations (read) and while the rebuilt index is written or swapped in (write).
+     */
+    private final ReentrantReadWriteLock writerLock = new ReentrantReadWriteLock();
+
+    /**
+     * Lock held by the running rebuild.
+     */
+    private final ReentrantLock rebuildLock = new ReentrantLock();
+
+    /**
+     * Directory of the index being rebuilt.
+     */
+    private Directory rebuildDirectory;
+
+    /**
+     * Writer of the index being rebuilt, null if no rebuild is in progress.
+     */
+    private volatile IndexWriter rebuildWriter;
+
+    /**
+     * Checkpoint of the rebuild to resume, null to start a new rebuild.
+     */
+    private Map<String, String> rebuildCheckpoint;
+
+    /**
+     * IDs indexed or deleted since the rebuild started, the rebuild must not overwrite them.
+     */
+    private final Set<String> rebuildChangedIdSet = ConcurrentHashMap.newKeySet();
+
+    /**
+     * True if the rebuild must stop at the next checkpoint.
+     */
+    private volatile boolean rebuildStopped;
+
+    /**
+     * True while a rebuild is running.
+     */
+    private volatile boolean rebuildRunning;
+
+    /**
+     * Start date of the last rebuild.
+     */
+    private volatile Long rebuildStartDate;
+
+    /**
+     * Number of documents indexed by the last rebuild.
+     */
+    private volatile long rebuildDocumentCount;
+
+    /**
+     * Number of documents to index by the last rebuild.
+     */
+    private volatile long rebuildDocumentTotal;
+
+    /**
+     * Number of files indexed by the last rebuild.
+     */
+    private volatile long rebuildFileCount;
+
+    /**
+     * Number of files to index by the last rebuild.
+     */
+    private volatile long rebuildFileTotal;
+
     @Override
     public boolean accept() {
         // Embedded Lucene can always start
@@ -101,11 +422,19 @@ public class LuceneIndexingHandler implements IndexingHandler {
     @Override
     public void startUp() throws Exception {
         try {
-            initLucene();
+            if (initLucene()) {
+                log.warn("Lucene index is out of date, scheduling a full reindex");
+                RebuildIndexAsyncEvent rebuildIndexAsyncEvent = new RebuildIndexAsyncEvent();
+                AppContext.getInstance().getAsyncEventBus().post(rebuildIndexAsyncEvent);
+            } else if (openRebuildCheckpoint()) {
+                log.info("Resuming the interrupted index rebuild");
+                RebuildIndexAsyncEvent rebuildIndexAsyncEvent = new RebuildIndexAsyncEvent();
+                AppContext.getInstance().getAsyncEventBus().post(rebuildIndexAsyncEvent);
+            }
         } catch (Exception e) {
             // An error occurred initializing Lucene, the index is out of date or broken, delete everything
             log.info("Unable to initialize Lucene, cleaning up the index: " + e.getMessage());
-            Path luceneDirectory = DirectoryUtil.getLuceneDirectory();
+            Path luceneDirectory = indexPath == null ? DirectoryUtil.getLuceneDirectory() : indexPath;
             Files.walk(luceneDirectory)
                     .sorted(Comparator.reverseOrder())
                     .map(Path::toFile)
@@ -116,21 +445,29 @@ public class LuceneIndexingHandler implements IndexingHandler {
             RebuildIndexAsyncEvent rebuildIndexAsyncEvent = new RebuildIndexAsyncEvent();
             AppContext.getInstance().getAsyncEventBus().post(rebuildIndexAsyncEvent);
         }
+
+        startBackgroundTasks();
     }
 
-    private void initLucene() throws Exception {
-        ConfigDao configDao = new ConfigDao();
-        Config luceneStorageConfig = configDao.getById(ConfigType.LUCENE_DIRECTORY_STORAGE);
-        String luceneStorage = luceneStorageConfig == null ? null : luceneStorageConfig.getValue();
+    /**
+     * Open the Lucene index.
+     *
+     * @return True if the index needs to be rebuilt
+     * @throws Exception e
+     */
+    private boolean initLucene() throws Exception {
+        String luceneStorage = ConfigUtil.getConfigValue(ConfigType.LUCENE_DIRECTORY_STORAGE);
 
         // RAM directory storage by default
         if (luceneStorage == null || luceneStorage.equals("RAM")) {
             directory = new RAMDirectory();
             log.info("Using RAM Lucene storage");
         } else if (luceneStorage.equals("FILE")) {
-            Path luceneDirectory = DirectoryUtil.getLuceneDirectory();
-            log.info("Using file Lucene storage: {}", luceneDirectory);
-            directory = new NIOFSDirectory(luceneDirectory, NoLockFactory.INSTANCE);
+            indexPath = readIndexPath();
+            log.info("Using file Lucene storage: {}", indexPath);
+            directory = new NIOFSDirectory(indexPath, NoLockFactory.INSTANCE);
+            fileStorage = true;
+            suggesterFile = DirectoryUtil.getSuggesterDirectory().resolve(SUGGESTER_FILE_NAME);
         }
 
         // Create an index writer
@@ -149,23 +486,145 @@ public class LuceneIndexingHandler implements IndexingHandler {
                 }
             }
         }
+
+        Map<String, String> commitData = new HashMap<>();
+        for (Map.Entry<String, String> entry : indexWriter.getLiveCommitData()) {
+            commitData.put(entry.getKey(), entry.getValue());
+        }
+        boolean rebuild = false;
+        if (COMMIT_STATE_OPEN.equals(commitData.get(COMMIT_STATE_KEY))) {
+            // Operations indexed after the last commit have been lost
+            log.warn("Lucene index was not closed cleanly");
+            rebuild = true;
+        }
+        if (indexWriter.getDocStats().numDocs > 0 && !INDEX_VERSION.equals(commitData.get(COMMIT_VERSION_KEY))) {
+            log.warn("Lucene index version {} is not the current version {}", commitData.get(COMMIT_VERSION_KEY), INDEX_VERSION);
+            rebuild = true;
+        }
+
+        // Mark the index as open until the next clean shutdown
+        setCommitState(COMMIT_STATE_OPEN);
+        indexWriter.commit();
+
+        searcherManager = new SearcherManager(indexWriter, null);
+        if (!rebuild) {
+            loadSuggester();
+        }
+        return rebuild;
+    }
+
+    /**
+     * Set the state and the version stored with the next commits.
+     *
+     * @param state Index state
+     */
+    private void setCommitState(String state) {
+        indexWriter.setLiveCommitData(Map.of(COMMIT_STATE_KEY, state, COMMIT_VERSION_KEY, INDEX_VERSION).entrySet());
+    }
+
+    /**
+     * Start the searcher refresh thread and the periodic commits.
+     */
+    private void startBackgroundTasks() {
+        commitOperations = Math.max(EnvironmentUtil.getIntegerEnv(Constants.LUCENE_COMMIT_OPERATIONS_ENV, Constants.DEFAULT_LUCENE_COMMIT_OPERATIONS), 1);
+        int commitInterval = Math.max(EnvironmentUtil.getIntegerEnv(Constants.LUCENE_COMMIT_INTERVAL_ENV, Constants.DEFAULT_LUCENE_COMMIT_INTERVAL), 1);
+        refreshInterval = EnvironmentUtil.getIntegerEnv(Constants.LUCENE_REFRESH_INTERVAL_ENV, Constants.DEFAULT_LUCENE_REFRESH_INTERVAL);
+
+        if (refreshInterval > 0) {
+            startReopenThread();
+        }
+
+        commitExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+                .setNameFormat("lucene-commit-%d")
+                .setDaemon(true)
+                .build());
+        commitExecutor.scheduleWithFixedDelay(() -> {
+            if (uncommittedCount.get() > 0) {
+                commit();
+            }
+        }, commitInterval, commitInterval, TimeUnit.SECONDS);
+        log.info("Lucene index refreshed every {}ms and committed every {}s or {} operations", refreshInterval, commitInterval, commitOperations);
+
+        suggesterExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+                .setNameFormat("lucene-suggester-%d")
+                .setDaemon(true)
+                .build());
+        suggesterExecutor.scheduleWithFixedDelay(this::buildSuggester, 0, SUGGESTER_REFRESH_INTERVAL, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Start the thread refreshing the searcher manager.
+     */
+    private void startReopenThread() {
+        double maxStaleSec = refreshInterval / 1000.0;
+        reopenThread = new ControlledRealTimeReopenThread<>(indexWriter, searcherManager, maxStaleSec, Math.min(0.1, maxStaleSec));
+        reopenThread.setName("lucene-reopen");
+        reopenThread.setDaemon(true);
+        reopenThread.start();
     }
 
     @Override
     public void shutDown() {
-        if (directoryReader != null) {
+        // Stop the running rebuild at its next checkpoint
+        rebuildStopped = true;
+        try {
+            if (rebuildLock.tryLock(1, TimeUnit.MINUTES)) {
+                rebuildLock.unlock();
+            }
+        } catch (InterruptedException e) {
+            // NOP
+        }
+
+        if (suggesterExecutor != null) {
+            suggesterExecutor.shutdownNow();
             try {
-                directoryReader.close();
-            } catch (IOException e) {
-                log.error("Error closing the index reader", e);
+                suggesterExecutor.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                // NOP
+            }
+        }
+        if (commitExecutor != null) {
+            commitExecutor.shutdown();
+            try {
+                commitExecutor.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                // NOP
             }
         }
-        if (indexWriter != null) {
+        if (reopenThread != null) {
+            reopenThread.close();
+        }
+        if (searcherManager != null) {
             try {
-                indexWriter.close();
+                searcherManager.close();
             } catch (IOException e) {
-                log.error("Error closing the index writer, index may be corrupt", e);
+                log.error("Error closing the index searcher", e);
+            }
+        }
+        // Both writers are closed at once, the rebuilt index must not miss an indexing operation
+        writerLock.writeLock().lock();
+        try {
+            if (rebuildWriter != null) {
+                try {
+                    // The rebuild writer commits on close with its last checkpoint
+                    rebuildWriter.close();
+                    rebuildDirectory.close();
+                } catch (IOException e) {
+                    log.error("Error closing the rebuilt index", e);
+                }
+                rebuildWriter = null;
+            }
+            if (indexWriter != null) {
+                try {
+                    // The writer commits on close, including this clean shutdown marker
+                    setCommitState(COMMIT_STATE_CLOSED);
+                    indexWriter.close();
+                } catch (IOException e) {
+                    log.error("Error closing the index writer, index may be corrupt", e);
+                }
             }
+        } finally {
+            writerLock.writeLock().unlock();
         }
         if (directory != null) {
             try {
@@ -178,48 +637,41 @@ public class LuceneIndexingHandler implements IndexingHandler {
 
     @Override
     public void clearIndex() {
-        handle(IndexWriter::deleteAll);
+        handle(List.of(), IndexWriter::deleteAll);
     }
 
     @Override
     public void createDocuments(List<Document> documentList) {
-        handle(indexWriter -> {
-            for (Document document : documentList) {
-                org.apache.lucene.document.Document luceneDocument = getDocumentFromDocument(document);
-                indexWriter.addDocument(luceneDocument);
-            }
-        });
+        updateDocuments(documentList);
     }
 
     @Override
     public void createFiles(List<File> fileList) {
-        handle(indexWriter -> {
+        List<String> fileIdList = new ArrayList<>();
+        for (File file : fileList) {
+            fileIdList.add(file.getId());
+        }
+        handle(fileIdList, indexWriter -> {
             for (File file : fileList) {
                 org.apache.lucene.document.Document luceneDocument = getDocumentFromFile(file);
-                indexWriter.addDocument(luceneDocument);
+                indexWriter.updateDocument(new Term("id", file.getId()), luceneDocument);
             }
         });
     }
 
     @Override
     public void createDocument(final Document document) {
-        handle(indexWriter -> {
-            org.apache.lucene.document.Document luceneDocument = getDocumentFromDocument(document);
-            indexWriter.addDocument(luceneDocument);
-        });
+        updateDocuments(List.of(document));
     }
 
     @Override
     public void createFile(final File file) {
-        handle(indexWriter -> {
-            org.apache.lucene.document.Document luceneDocument = getDocumentFromFile(file);
-            indexWriter.addDocument(luceneDocument);
-        });
+        updateFile(file);
     }
 
     @Override
     public void updateFile(final File file) {
-        handle(indexWriter -> {
+        handle(List.of(file.getId()), indexWriter -> {
             org.apache.lucene.document.Document luceneDocument = getDocumentFromFile(file);
             indexWriter.updateDocument(new Term("id", file.getId()), luceneDocument);
         });
@@ -227,69 +679,215 @@ public class LuceneIndexingHandler implements IndexingHandler {
 
     @Override
     public void updateDocument(final Document document) {
-        handle(indexWriter -> {
-            org.apache.lucene.document.Document luceneDocument = getDocumentFromDocument(document);
-            indexWriter.updateDocument(new Term("id", document.getId()), luceneDocument);
+        updateDocuments(List.of(document));
+    }
+
+    @Override
+    public void updateDocuments(List<Document> documentList) {
+        List<String> documentIdList = new ArrayList<>();
+        for (Document document : documentList) {
+            documentIdList.add(document.getId());
+        }
+        Map<String, Set<String>> readTargetIdMap = new AclDao().getTargetIdByDocumentId(documentIdList, PermType.READ);
+        handle(documentIdList, indexWriter -> {
+            for (Document document : documentList) {
+                org.apache.lucene.document.Document luceneDocument = getDocumentFromDocument(document, readTargetIdMap.get(document.getId()));
+                indexWriter.updateDocument(new Term("id", document.getId()), luceneDocument);
+            }
         });
     }
 
     @Override
     public void deleteDocument(final String id) {
-        handle(indexWriter -> indexWriter.deleteDocuments(new Term("id", id)));
+        handle(List.of(id), indexWriter -> indexWriter.deleteDocuments(new Term("id", id)));
+    }
+
+    @Override
+    public void deleteDocuments(List<String> idList) {
+        Term[] terms = new Term[idList.size()];
+        for (int i = 0; i < terms.length; i++) {
+            terms[i] = new Term("id", idList.get(i));
+        }
+        handle(idList, indexWriter -> indexWriter.deleteDocuments(terms));
     }
 
     @Override
     public void createAcl(String sourceId, PermType perm, String targetId) {
-        // Lucene does not index ACLs
+        if (perm == PermType.READ) {
+            updateReadTargets(sourceId);
+        }
     }
 
     @Override
     public void deleteAcl(String sourceId, PermType perm, String targetId) {
-        // Lucene does not index ACLs
+        if (perm == PermType.READ) {
+            updateReadTargets(sourceId);
+        }
+    }
+
+    /**
+     * Reindex the documents whose read targets depend on an ACL source.
+     *
+     * @param sourceId ACL source ID, a document or a tag
+     */
+    private void updateReadTargets(String sourceId) {
+        List<Document> documentList = new DocumentDao().findByAclSourceId(sourceId);
+        for (List<Document> documentBatch : Lists.partition(documentList, ACL_REINDEX_BATCH_SIZE)) {
+            updateDocuments(documentBatch);
+        }
+    }
+
+    /**
+     * Returns the targets allowed to read documents.
+     *
+     * @param documentList List of documents
+     * @return Read target IDs by document ID
+     */
+    private Map<String, Set<String>> getReadTargetIdMap(List<Document> documentList) {
+        List<String> documentIdList = new ArrayList<>();
+        for (Document document : documentList) {
+            documentIdList.add(document.getId());
+        }
+        return new AclDao().getTargetIdByDocumentId(documentIdList, PermType.READ);
     }
 
     @Override
     public void findByCriteria(PaginatedList<DocumentDto> paginatedList, List<String> suggestionList, DocumentCriteria criteria, SortCriteria sortCriteria) throws Exception {
-        Map<String, Object> parameterMap = new HashMap<>();
-        List<String> criteriaList = new ArrayList<>();
-        Map<String, String> documentSearchMap = Maps.newHashMap();
-
-        StringBuilder sb = new StringBuilder("select distinct d.DOC_ID_C c0, d.DOC_TITLE_C c1, d.DOC_DESCRIPTION_C c2, d.DOC_CREATEDATE_D c3, d.DOC_LANGUAGE_C c4, d.DOC_IDFILE_C, ");
-        sb.append(" s.count c5, ");
-        sb.append(" rs2.RTP_ID_C c7, rs2.RTP_NAME_C, d.DOC_UPDATEDATE_D c8 ");
-        sb.append(" from T_DOCUMENT d ");
-        sb.append(" left join (SELECT count(s.SHA_ID_C) count, ac.ACL_SOURCEID_C " +
-                "   FROM T_SHARE s, T_ACL ac " +
-                "   WHERE ac.ACL_TARGETID_C = s.SHA_ID_C AND ac.ACL_DELETEDATE_D IS NULL AND " +
-                "         s.SHA_DELETEDATE_D IS NULL group by ac.ACL_SOURCEID_C) s on s.ACL_SOURCEID_C = d.DOC_ID_C ");
-        sb.append(" left join (select rs.*, rs3.idDocument " +
-                "from T_ROUTE_STEP rs " +
-                "join (select r.RTE_IDDOCUMENT_C idDocument, rs.RTP_IDROUTE_C idRoute, min(rs.RTP_ORDER_N) minOrder from T_ROUTE_STEP rs join T_ROUTE r on r.RTE_ID_C = rs.RTP_IDROUTE_C and r.RTE_DELETEDATE_D is null where rs.RTP_DELETEDATE_D is null and rs.RTP_ENDDATE_D is null group by rs.RTP_IDROUTE_C, r.RTE_IDDOCUMENT_C) rs3 on rs.RTP_IDROUTE_C = rs3.idRoute and rs.RTP_ORDER_N = rs3.minOrder " +
-                "where rs.RTP_IDTARGET_C in (:targetIdList)) rs2 on rs2.idDocument = d.DOC_ID_C ");
+        boolean fulltextSearch = !Strings.isNullOrEmpty(criteria.getSimpleSearch()) || !Strings.isNullOrEmpty(criteria.getFullSearch());
+        if (fulltextSearch) {
+            suggestionList.addAll(suggest(criteria.getFullSearch(), criteria.getTargetIdList(), SUGGESTION_LIMIT));
 
-        // Add search criterias
-        if (!SecurityUtil.skipAclCheck(criteria.getTargetIdList())) {
-            // Read permission is enough for searching
-            sb.append(" left join T_ACL a on a.ACL_TARGETID_C in (:targetIdList) and a.ACL_SOURCEID_C = d.DOC_ID_C and a.ACL_PERM_C = 'READ' and a.ACL_DELETEDATE_D is null ");
-            sb.append(" left join T_DOCUMENT_TAG dta on dta.DOT_IDDOCUMENT_C = d.DOC_ID_C and dta.DOT_DELETEDATE_D is null ");
-            sb.append(" left join T_ACL a2 on a2.ACL_TARGETID_C in (:targetIdList) and a2.ACL_SOURCEID_C = dta.DOT_IDTAG_C and a2.ACL_PERM_C = 'READ' and a2.ACL_DELETEDATE_D is null ");
-            criteriaList.add("(a.ACL_ID_C is not null or a2.ACL_ID_C is not null)");
-        }
-        parameterMap.put("targetIdList", criteria.getTargetIdList());
-        if (!Strings.isNullOrEmpty(criteria.getSimpleSearch()) || !Strings.isNullOrEmpty(criteria.getFullSearch())) {
-            documentSearchMap = search(criteria.getSimpleSearch(), criteria.getFullSearch());
-            if (documentSearchMap.isEmpty()) {
-                // If the search doesn't find any document, the request should return nothing
-                documentSearchMap.put(UUID.randomUUID().toString(), null);
+            if (isSearchableInIndex(criteria, sortCriteria)) {
+                // Filter, sort and paginate in the index, only the current page is fetched from the database
+                findByFulltext(paginatedList, criteria, sortCriteria);
+                return;
             }
-            criteriaList.add("d.DOC_ID_C in :documentIdList");
-            parameterMap.put("documentIdList", documentSearchMap.keySet());
+        }
 
-            suggestSearchTerms(criteria.getFullSearch(), suggestionList);
+        List<String> documentIdList = null;
+        if (fulltextSearch) {
+            documentIdList = searchDocumentIds(criteria);
+            if (documentIdList.size() > SEARCH_FILTER_BATCH_SIZE) {
+                // Only send the documents matching all the criteria with the paginated query
+                documentIdList = filterDocumentIds(criteria, documentIdList);
+            }
         }
-        if (criteria.getCreateDateMin() != null) {
-            criteriaList.add("d.DOC_CREATEDATE_D >= :createDateMin");
-            parameterMap.put("createDateMin", criteria.getCreateDateMin());
+        QueryParam queryParam = buildSearchQuery(criteria, documentIdList);
+
+        // Perform the search
+        List<Object[]> l;
+        if (paginatedList.getCursor() == null) {
+            l = PaginatedLists.executePaginatedQuery(paginatedList, queryParam, sortCriteria);
+        } else {
+            if (sortCriteria == null) {
+                sortCriteria = new SortCriteria(null, null);
+            }
+            String column = KEYSET_COLUMN_MAP.get(sortCriteria.getColumn());
+            if (column == null) {
+                throw new InvalidCursorException("Cursor pagination is not supported on this sort column");
+            }
+            String direction = sortCriteria.isAsc() ? "asc" : "desc";
+            Map<String, Object> keysetParameterMap = new HashMap<>();
+            String keysetCriteria = buildKeysetCriteria(paginatedList.getCursor(), sortCriteria, column, keysetParameterMap);
+            l = PaginatedLists.executeKeysetQuery(paginatedList, queryParam, keysetCriteria, keysetParameterMap,
+                    "c" + sortCriteria.getColumn() + " " + direction + ", c0 " + direction);
+        }
+
+        // Assemble results
+        List<DocumentDto> documentDtoList = new ArrayList<>();
+        for (Object[] o : l) {
+            documentDtoList.add(assembleDocumentDto(o));
+        }
+        if (paginatedList.getCursor() != null && !documentDtoList.isEmpty() && documentDtoList.size() >= paginatedList.getLimit()) {
+            paginatedList.setNextCursor(encodeCursor(documentDtoList.get(documentDtoList.size() - 1), sortCriteria));
+        }
+        if (fulltextSearch) {
+            highlight(criteria, documentDtoList);
+        }
+
+        paginatedList.setResultList(documentDtoList);
+    }
+
+    @Override
+    public List<String> findIdsByCriteria(DocumentCriteria criteria) throws Exception {
+        boolean fulltextSearch = !Strings.isNullOrEmpty(criteria.getSimpleSearch()) || !Strings.isNullOrEmpty(criteria.getFullSearch());
+        if (!fulltextSearch) {
+            return findIdsByQuery(buildSearchQuery(criteria, null));
+        }
+
+        List<String> indexIdList = searchDocumentIds(criteria);
+        if (isFilterableInIndex(criteria)) {
+            return indexIdList;
+        }
+        return filterDocumentIds(criteria, indexIdList);
+    }
+
+    /**
+     * Filter the documents matching the fulltext search on the criteria not stored in the index,
+     * a batch of document IDs at a time.
+     *
+     * @param criteria Search criteria
+     * @param indexIdList IDs of the documents matching the fulltext search
+     * @return IDs of the documents matching all the criteria
+     * @throws Exception e
+     */
+    private List<String> filterDocumentIds(DocumentCriteria criteria, List<String> indexIdList) throws Exception {
+        List<String> documentIdList = new ArrayList<>();
+        for (List<String> indexIdBatch : Lists.partition(indexIdList, SEARCH_FILTER_BATCH_SIZE)) {
+            documentIdList.addAll(findIdsByQuery(buildSearchQuery(criteria, indexIdBatch)));
+        }
+        return documentIdList;
+    }
+
+    /**
+     * Returns the document IDs returned by a search query.
+     *
+     * @param queryParam Search query
+     * @return List of document IDs
+     */
+    @SuppressWarnings("unchecked")
+    private List<String> findIdsByQuery(QueryParam queryParam) {
+        List<Object[]> l = QueryUtil.getNativeQuery(queryParam).getResultList();
+        List<String> documentIdList = new ArrayList<>();
+        for (Object[] o : l) {
+            documentIdList.add((String) o[0]);
+        }
+        return documentIdList;
+    }
+
+    /**
+     * Build the query of the documents matching criteria.
+     *
+     * @param criteria Search criteria
+     * @param documentIdList IDs of the documents matching the fulltext search
+     * @return Query
+     * @throws Exception e
+     */
+    private QueryParam buildSearchQuery(DocumentCriteria criteria, Collection<String> documentIdList) throws Exception {
+        boolean fulltextSearch = !Strings.isNullOrEmpty(criteria.getSimpleSearch()) || !Strings.isNullOrEmpty(criteria.getFullSearch());
+        Map<String, Object> parameterMap = new HashMap<>();
+        List<String> criteriaList = new ArrayList<>();
+        StringBuilder sb = buildSelectQuery(criteria, parameterMap);
+
+        // Add search criterias, the fulltext search already checks the permissions
+        if (!fulltextSearch && !SecurityUtil.skipAclCheck(criteria.getTargetIdList())) {
+            // Read permission is enough for searching
+            sb.append(" left join T_ACL a on a.ACL_TARGETID_C in (:targetIdList) and a.ACL_SOURCEID_C = d.DOC_ID_C and a.ACL_PERM_C = 'READ' and a.ACL_DELETEDATE_D is null ");
+            sb.append(" left join T_DOCUMENT_TAG dta on dta.DOT_IDDOCUMENT_C = d.DOC_ID_C and dta.DOT_DELETEDATE_D is null ");
+            sb.append(" left join T_ACL a2 on a2.ACL_TARGETID_C in (:targetIdList) and a2.ACL_SOURCEID_C = dta.DOT_IDTAG_C and a2.ACL_PERM_C = 'READ' and a2.ACL_DELETEDATE_D is null ");
+            criteriaList.add("(a.ACL_ID_C is not null or a2.ACL_ID_C is not null)");
+        }
+        if (fulltextSearch) {
+            if (documentIdList.isEmpty()) {
+                // If the search doesn't find any document, the request should return nothing
+                documentIdList = List.of(UUID.randomUUID().toString());
+            }
+            criteriaList.add("d.DOC_ID_C in :documentIdList");
+            parameterMap.put("documentIdList", documentIdList);
+        }
+        if (criteria.getCreateDateMin() != null) {
+            criteriaList.add("d.DOC_CREATEDATE_D >= :createDateMin");
+            parameterMap.put("createDateMin", criteria.getCreateDateMin());
         }
         if (criteria.getCreateDateMax() != null) {
             criteriaList.add("d.DOC_CREATEDATE_D <= :createDateMax");
@@ -358,125 +956,613 @@ public class LuceneIndexingHandler implements IndexingHandler {
         sb.append(" where ");
         sb.append(Joiner.on(" and ").join(criteriaList));
 
-        // Perform the search
-        QueryParam queryParam = new QueryParam(sb.toString(), parameterMap);
-        List<Object[]> l = PaginatedLists.executePaginatedQuery(paginatedList, queryParam, sortCriteria);
+        return new QueryParam(sb.toString(), parameterMap);
+    }
 
-        // Assemble results
-        List<DocumentDto> documentDtoList = new ArrayList<>();
-        for (Object[] o : l) {
-            int i = 0;
-            DocumentDto documentDto = new DocumentDto();
-            documentDto.setId((String) o[i++]);
-            documentDto.setTitle((String) o[i++]);
-            documentDto.setDescription((String) o[i++]);
-            documentDto.setCreateTimestamp(((Timestamp) o[i++]).getTime());
-            documentDto.setLanguage((String) o[i++]);
-            documentDto.setFileId((String) o[i++]);
-            Number shareCount = (Number) o[i++];
-            documentDto.setShared(shareCount != null && shareCount.intValue() > 0);
-            documentDto.setActiveRoute(o[i++] != null);
-            documentDto.setCurrentStepName((String) o[i++]);
-            documentDto.setUpdateTimestamp(((Timestamp) o[i]).getTime());
-            documentDto.setHighlight(documentSearchMap.get(documentDto.getId()));
-            documentDtoList.add(documentDto);
+    /**
+     * Build the criteria selecting the documents after a cursor.
+     *
+     * @param cursor Cursor returned with the previous page, empty for the first page
+     * @param sortCriteria Sort criteria
+     * @param column Sorted column
+     * @param keysetParameterMap Query parameters (updated by side effects)
+     * @return Criteria, null for the first page
+     * @throws InvalidCursorException e
+     */
+    private String buildKeysetCriteria(String cursor, SortCriteria sortCriteria, String column, Map<String, Object> keysetParameterMap) throws InvalidCursorException {
+        String[] parts = decodeCursor(cursor, sortCriteria);
+        if (parts == null) {
+            return null;
         }
 
-        paginatedList.setResultList(documentDtoList);
+        String operator = sortCriteria.isAsc() ? ">" : "<";
+        keysetParameterMap.put("cursorId", parts[2]);
+        if (sortCriteria.getColumn() == 0) {
+            return "d.DOC_ID_C " + operator + " :cursorId";
+        }
+
+        Object value = parts[3];
+        if (sortCriteria.getColumn() == 3 || sortCriteria.getColumn() == 8) {
+            try {
+                value = new Date(Long.parseLong(parts[3]));
+            } catch (NumberFormatException e) {
+                throw new InvalidCursorException("Invalid cursor");
+            }
+        }
+        keysetParameterMap.put("cursorValue", value);
+        return "(" + column + " " + operator + " :cursorValue or (" + column + " = :cursorValue and d.DOC_ID_C " + operator + " :cursorId))";
+    }
+
+    /**
+     * Build the sort values of the last document of the previous page.
+     *
+     * @param cursor Cursor returned with the previous page, empty for the first page
+     * @param sortCriteria Sort criteria
+     * @param sortField Sorted index field
+     * @return Sort values to search after, null for the first page
+     * @throws InvalidCursorException e
+     */
+    private Object[] buildSearchAfter(String cursor, SortCriteria sortCriteria, SortField sortField) throws InvalidCursorException {
+        String[] parts = decodeCursor(cursor, sortCriteria);
+        if (parts == null) {
+            return null;
+        }
+
+        Object value = new BytesRef(parts[3]);
+        if (sortField.getType() == SortField.Type.LONG) {
+            try {
+                value = Long.parseLong(parts[3]);
+            } catch (NumberFormatException e) {
+                throw new InvalidCursorException("Invalid cursor");
+            }
+        }
+        return new Object[] { value, new BytesRef(parts[2]) };
+    }
+
+    /**
+     * Decode a cursor into the column, direction, document ID and value of the last document of the previous page.
+     *
+     * @param cursor Cursor returned with the previous page, empty for the first page
+     * @param sortCriteria Sort criteria
+     * @return Cursor parts, null for the first page
+     * @throws InvalidCursorException e
+     */
+    private String[] decodeCursor(String cursor, SortCriteria sortCriteria) throws InvalidCursorException {
+        if (cursor.isEmpty()) {
+            return null;
+        }
+
+        String[] parts;
+        try {
+            parts = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split("\\|", 4);
+        } catch (IllegalArgumentException e) {
+            throw new InvalidCursorException("Invalid cursor");
+        }
+        String direction = sortCriteria.isAsc() ? "asc" : "desc";
+        if (parts.length != 4 || !parts[0].equals(String.valueOf(sortCriteria.getColumn())) || !parts[1].equals(direction)) {
+            throw new InvalidCursorException("Invalid cursor, or the sort has changed since the first page");
+        }
+        return parts;
     }
 
     /**
-     * Suggest search terms according to the user query.
+     * Build the cursor of the page following a document.
      *
-     * @param search User search query
-     * @param suggestionList Suggestion of search query (updated by side effects)
+     * @param documentDto Last document of the page
+     * @param sortCriteria Sort criteria
+     * @return Cursor
+     */
+    private String encodeCursor(DocumentDto documentDto, SortCriteria sortCriteria) {
+        Object value;
+        switch (sortCriteria.getColumn()) {
+            case 1:
+                value = documentDto.getTitle();
+                break;
+            case 3:
+                value = documentDto.getCreateTimestamp();
+                break;
+            case 4:
+                value = documentDto.getLanguage();
+                break;
+            case 8:
+                value = documentDto.getUpdateTimestamp();
+                break;
+            default:
+                value = documentDto.getId();
+        }
+        return encodeCursor(sortCriteria, documentDto.getId(), value);
+    }
+
+    /**
+     * Build the cursor of the page following an index position.
+     *
+     * @param fieldDoc Last index position of the page, sorted by a field then by ID
+     * @param sortCriteria Sort criteria
+     * @return Cursor
+     */
+    private String encodeCursor(FieldDoc fieldDoc, SortCriteria sortCriteria) {
+        Object value = fieldDoc.fields[0];
+        if (value instanceof BytesRef) {
+            value = ((BytesRef) value).utf8ToString();
+        }
+        return encodeCursor(sortCriteria, ((BytesRef) fieldDoc.fields[1]).utf8ToString(), value);
+    }
+
+    /**
+     * Build a cursor from the last document of a page.
+     *
+     * @param sortCriteria Sort criteria
+     * @param documentId Document ID
+     * @param value Sorted value
+     * @return Cursor
+     */
+    private String encodeCursor(SortCriteria sortCriteria, String documentId, Object value) {
+        String cursor = sortCriteria.getColumn() + "|" + (sortCriteria.isAsc() ? "asc" : "desc") + "|" + documentId + "|" + value;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(cursor.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Returns true if the criteria can be fully resolved in the index.
+     *
+     * @param criteria Search criteria
+     * @param sortCriteria Sort criteria
+     * @return True if the index can filter, sort and paginate the documents
+     */
+    private boolean isSearchableInIndex(DocumentCriteria criteria, SortCriteria sortCriteria) {
+        return sortCriteria != null
+                && SORT_FIELD_MAP.containsKey(sortCriteria.getColumn())
+                && isFilterableInIndex(criteria);
+    }
+
+    /**
+     * Returns true if all the criteria are stored in the index.
+     *
+     * @param criteria Search criteria
+     * @return True if the index can filter the documents
+     */
+    private boolean isFilterableInIndex(DocumentCriteria criteria) {
+        return criteria.getTitleList().isEmpty()
+                && criteria.getTagIdList().isEmpty()
+                && criteria.getExcludedTagIdList().isEmpty()
+                && (criteria.getShared() == null || !criteria.getShared())
+                && criteria.getMimeType() == null
+                && (criteria.getActiveRoute() == null || !criteria.getActiveRoute());
+    }
+
+    /**
+     * Fulltext search resolved in the index.
+     * Only the documents of the requested page are loaded from the database and highlighted.
+     * In cursor mode, the index searches after the last document of the previous page.
+     *
+     * @param paginatedList List of documents (updated by side effects)
+     * @param criteria Search criteria
+     * @param sortCriteria Sort criteria
      * @throws Exception e
      */
-    private void suggestSearchTerms(String search, List<String> suggestionList) throws Exception {
-        DirectoryReader directoryReader = getDirectoryReader();
-        if (directoryReader == null) {
-            return;
+    private void findByFulltext(PaginatedList<DocumentDto> paginatedList, DocumentCriteria criteria, SortCriteria sortCriteria) throws Exception {
+        SortField sortField = SORT_FIELD_MAP.get(sortCriteria.getColumn());
+        Sort sort = new Sort(new SortField(sortField.getField(), sortField.getType(), !sortCriteria.isAsc()),
+                new SortField("id", SortField.Type.STRING)); // Stable order between pages
+        int offset = paginatedList.getOffset();
+        int limit = paginatedList.getLimit();
+        String cursor = paginatedList.getCursor();
+        Object[] afterFields = cursor == null ? null : buildSearchAfter(cursor, sortCriteria, sortField);
+
+        List<String> pageIdList;
+        IndexSearcher searcher = searcherManager.acquire();
+        try {
+            Query query = buildDocumentQuery(searcher, criteria);
+            if (paginatedList.isCountEnabled()) {
+                paginatedList.setResultCount(searcher.count(query));
+            }
+            if (cursor == null) {
+                // Only collect the top documents up to the requested page
+                TopFieldDocs topDocs = searcher.search(query, Math.max(offset + limit, 1), sort);
+                pageIdList = getDocumentIdList(topDocs);
+                pageIdList = pageIdList.subList(Math.min(offset, pageIdList.size()), pageIdList.size());
+            } else {
+                // Only collect the documents following the cursor, the last one is excluded by the highest doc number
+                TopDocs topDocs = afterFields == null ? searcher.search(query, Math.max(limit, 1), sort)
+                        : searcher.searchAfter(new FieldDoc(searcher.getIndexReader().maxDoc() - 1, Float.NaN, afterFields),
+                                query, Math.max(limit, 1), sort);
+                pageIdList = getDocumentIdList(topDocs);
+                if (limit > 0 && topDocs.scoreDocs.length >= limit) {
+                    paginatedList.setNextCursor(encodeCursor((FieldDoc) topDocs.scoreDocs[topDocs.scoreDocs.length - 1], sortCriteria));
+                }
+            }
+        } finally {
+            searcherManager.release(searcher);
+        }
+
+        List<DocumentDto> documentDtoList = getDocumentDtoList(criteria, pageIdList);
+        highlight(criteria, documentDtoList);
+        paginatedList.setResultList(documentDtoList);
+    }
+
+    /**
+     * Build the select query of the documents list.
+     *
+     * @param criteria Search criteria
+     * @param parameterMap Query parameters (updated by side effects)
+     * @return Query with the joins shared by all searches
+     */
+    private StringBuilder buildSelectQuery(DocumentCriteria criteria, Map<String, Object> parameterMap) {
+        StringBuilder sb = new StringBuilder("select distinct d.DOC_ID_C c0, d.DOC_TITLE_C c1, d.DOC_DESCRIPTION_C c2, d.DOC_CREATEDATE_D c3, d.DOC_LANGUAGE_C c4, d.DOC_IDFILE_C, ");
+        sb.append(" s.count c5, ");
+        sb.append(" rs2.RTP_ID_C c7, rs2.RTP_NAME_C, d.DOC_UPDATEDATE_D c8 ");
+        sb.append(" from T_DOCUMENT d ");
+        sb.append(" left join (SELECT count(s.SHA_ID_C) count, ac.ACL_SOURCEID_C " +
+                "   FROM T_SHARE s, T_ACL ac " +
+                "   WHERE ac.ACL_TARGETID_C = s.SHA_ID_C AND ac.ACL_DELETEDATE_D IS NULL AND " +
+                "         s.SHA_DELETEDATE_D IS NULL group by ac.ACL_SOURCEID_C) s on s.ACL_SOURCEID_C = d.DOC_ID_C ");
+        sb.append(" left join (select rs.*, rs3.idDocument " +
+                "from T_ROUTE_STEP rs " +
+                "join (select r.RTE_IDDOCUMENT_C idDocument, rs.RTP_IDROUTE_C idRoute, min(rs.RTP_ORDER_N) minOrder from T_ROUTE_STEP rs join T_ROUTE r on r.RTE_ID_C = rs.RTP_IDROUTE_C and r.RTE_DELETEDATE_D is null where rs.RTP_DELETEDATE_D is null and rs.RTP_ENDDATE_D is null group by rs.RTP_IDROUTE_C, r.RTE_IDDOCUMENT_C) rs3 on rs.RTP_IDROUTE_C = rs3.idRoute and rs.RTP_ORDER_N = rs3.minOrder " +
+                "where rs.RTP_IDTARGET_C in (:targetIdList)) rs2 on rs2.idDocument = d.DOC_ID_C ");
+        parameterMap.put("targetIdList", criteria.getTargetIdList());
+        return sb;
+    }
+
+    /**
+     * Load documents from the database, in the given order.
+     *
+     * @param criteria Search criteria
+     * @param documentIdList List of document IDs
+     * @return List of documents
+     */
+    @SuppressWarnings("unchecked")
+    private List<DocumentDto> getDocumentDtoList(DocumentCriteria criteria, List<String> documentIdList) {
+        if (documentIdList.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        Map<String, Object> parameterMap = new HashMap<>();
+        StringBuilder sb = buildSelectQuery(criteria, parameterMap);
+        sb.append(" where d.DOC_ID_C in :documentIdList and d.DOC_DELETEDATE_D is null ");
+        parameterMap.put("documentIdList", documentIdList);
+        List<Object[]> l = QueryUtil.getNativeQuery(new QueryParam(sb.toString(), parameterMap)).getResultList();
+
+        Map<String, DocumentDto> documentDtoMap = new HashMap<>();
+        for (Object[] o : l) {
+            DocumentDto documentDto = assembleDocumentDto(o);
+            documentDtoMap.put(documentDto.getId(), documentDto);
+        }
+
+        // Documents deleted since they have been indexed are skipped
+        List<DocumentDto> documentDtoList = new ArrayList<>();
+        for (String documentId : documentIdList) {
+            DocumentDto documentDto = documentDtoMap.get(documentId);
+            if (documentDto != null) {
+                documentDtoList.add(documentDto);
+            }
+        }
+        return documentDtoList;
+    }
+
+    /**
+     * Assemble a document DTO from a row of the select query.
+     *
+     * @param o Row
+     * @return Document DTO
+     */
+    private DocumentDto assembleDocumentDto(Object[] o) {
+        int i = 0;
+        DocumentDto documentDto = new DocumentDto();
+        documentDto.setId((String) o[i++]);
+        documentDto.setTitle((String) o[i++]);
+        documentDto.setDescription((String) o[i++]);
+        documentDto.setCreateTimestamp(((Timestamp) o[i++]).getTime());
+        documentDto.setLanguage((String) o[i++]);
+        documentDto.setFileId((String) o[i++]);
+        Number shareCount = (Number) o[i++];
+        documentDto.setShared(shareCount != null && shareCount.intValue() > 0);
+        documentDto.setActiveRoute(o[i++] != null);
+        documentDto.setCurrentStepName((String) o[i++]);
+        documentDto.setUpdateTimestamp(((Timestamp) o[i]).getTime());
+        return documentDto;
+    }
+
+    /**
+     * Returns the document IDs of the sorted top documents.
+     *
+     * @param topDocs Top documents sorted by a field then by ID
+     * @return List of document IDs
+     */
+    private List<String> getDocumentIdList(TopDocs topDocs) {
+        List<String> documentIdList = new ArrayList<>();
+        for (ScoreDoc scoreDoc : topDocs.scoreDocs) {
+            // The ID is the last sort value, no need to load the stored fields
+            Object[] fields = ((FieldDoc) scoreDoc).fields;
+            documentIdList.add(((BytesRef) fields[fields.length - 1]).utf8ToString());
+        }
+        return documentIdList;
+    }
+
+    @Override
+    public List<String> suggest(String search, List<String> targetIdList, int limit) throws Exception {
+        List<String> suggestionList = new ArrayList<>();
+        Lookup lookup = suggester;
+        if (lookup == null || search == null) {
+            // The suggester is not built yet
+            return suggestionList;
         }
 
-        FuzzySuggester suggester = new FuzzySuggester(directory, "", new StandardAnalyzer());
-        LuceneDictionary dictionary = new LuceneDictionary(directoryReader, "title");
-        suggester.build(dictionary);
         int lastIndex = search.lastIndexOf(' ');
         String suggestQuery = search.substring(Math.max(lastIndex, 0));
-        List<Lookup.LookupResult> lookupResultList = suggester.lookup(suggestQuery, false, 10);
-        for (Lookup.LookupResult lookupResult : lookupResultList) {
-            suggestionList.add(lookupResult.key.toString());
+        Query readQuery = buildReadQuery(targetIdList);
+        if (readQuery == null) {
+            for (Lookup.LookupResult lookupResult : lookup.lookup(suggestQuery, false, limit)) {
+                suggestionList.add(lookupResult.key.toString());
+            }
+            return suggestionList;
+        }
+
+        // The suggester is built from all the titles, keep the terms found in a readable title
+        IndexSearcher searcher = searcherManager.acquire();
+        try {
+            for (Lookup.LookupResult lookupResult : lookup.lookup(suggestQuery, false, limit * SUGGESTION_LOOKUP_FACTOR)) {
+                String term = lookupResult.key.toString();
+                Query query = new BooleanQuery.Builder()
+                        .add(new TermQuery(new Term("title", term)), BooleanClause.Occur.FILTER)
+                        .add(readQuery, BooleanClause.Occur.FILTER)
+                        .build();
+                if (searcher.search(query, 1).scoreDocs.length > 0) {
+                    suggestionList.add(term);
+                    if (suggestionList.size() == limit) {
+                        break;
+                    }
+                }
+            }
+        } finally {
+            searcherManager.release(searcher);
         }
+        return suggestionList;
+    }
+
+    @Override
+    public void refresh() throws Exception {
+        writerLock.readLock().lock();
+        try {
+            searcherManager.maybeRefreshBlocking();
+        } finally {
+            writerLock.readLock().unlock();
+        }
+
+        // The suggester catches up in the background, like after a periodic refresh
+        suggesterExecutor.execute(this::buildSuggester);
     }
 
     /**
-     * Fulltext search in files and documents.
+     * Build the suggester from the document titles if the index has changed since the last build.
+     * The suggester in use is replaced once the new one is ready.
+     */
+    private synchronized void buildSuggester() {
+        try {
+            IndexSearcher searcher = searcherManager.acquire();
+            try {
+                long version = ((DirectoryReader) searcher.getIndexReader()).getVersion();
+                if (version == suggesterVersion) {
+                    return;
+                }
+
+                FuzzySuggester newSuggester = new FuzzySuggester(directory, "suggester", new StandardAnalyzer());
+                newSuggester.build(new LuceneDictionary(searcher.getIndexReader(), "title"));
+                suggester = newSuggester;
+                suggesterVersion = version;
+                log.debug("Suggester built from index version {}", version);
+            } finally {
+                searcherManager.release(searcher);
+            }
+            storeSuggester();
+        } catch (Exception e) {
+            log.error("Error building the suggester", e);
+        }
+    }
+
+    /**
+     * Store the suggester next to the index.
      *
-     * @param simpleSearchQuery Search query on metadatas
-     * @param fullSearchQuery Search query on all fields
-     * @return Map of document IDs as key and highlight as value
+     * @throws IOException e
+     */
+    private void storeSuggester() throws IOException {
+        Lookup lookup = suggester;
+        if (suggesterFile == null || lookup == null) {
+            return;
+        }
+
+        Path tempFile = suggesterFile.resolveSibling(SUGGESTER_FILE_NAME + ".tmp");
+        boolean stored;
+        try (OutputStream outputStream = Files.newOutputStream(tempFile)) {
+            DataOutput output = new OutputStreamDataOutput(outputStream);
+            output.writeLong(suggesterVersion);
+            stored = lookup.store(output);
+        }
+        if (stored) {
+            Files.move(tempFile, suggesterFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } else {
+            // Nothing to store from an empty index
+            Files.delete(tempFile);
+        }
+    }
+
+    /**
+     * Load the stored suggester, it is used until the background build catches up with the index.
+     */
+    private void loadSuggester() {
+        if (suggesterFile == null || !Files.exists(suggesterFile)) {
+            return;
+        }
+
+        try (InputStream inputStream = Files.newInputStream(suggesterFile)) {
+            DataInput input = new InputStreamDataInput(inputStream);
+            long version = input.readLong();
+            FuzzySuggester storedSuggester = new FuzzySuggester(directory, "suggester", new StandardAnalyzer());
+            storedSuggester.load(input);
+            suggester = storedSuggester;
+            suggesterVersion = version;
+        } catch (Exception e) {
+            log.warn("Unable to load the stored suggester, it will be rebuilt", e);
+        }
+    }
+
+    /**
+     * Fulltext search in files and documents, returning all the matching documents.
+     *
+     * @param criteria Search criteria
+     * @return List of matching document IDs
      * @throws Exception e
      */
-    private Map<String, String> search(String simpleSearchQuery, String fullSearchQuery) throws Exception {
-        // The fulltext query searches in all fields
-        String searchQuery = simpleSearchQuery + " " + fullSearchQuery;
+    private List<String> searchDocumentIds(DocumentCriteria criteria) throws Exception {
+        IndexSearcher searcher = searcherManager.acquire();
+        try {
+            DocValuesCollector collector = new DocValuesCollector("id");
+            searcher.search(buildDocumentQuery(searcher, criteria), collector);
+            return collector.getValueSet().stream()
+                    .map(BytesRef::utf8ToString)
+                    .collect(Collectors.toList());
+        } finally {
+            searcherManager.release(searcher);
+        }
+    }
 
-        // Build search query
+    /**
+     * Build the query matching the documents, either on their metadata or on their files.
+     * Criteria stored in the index and read permissions are added as filters.
+     *
+     * @param searcher Index searcher
+     * @param criteria Search criteria
+     * @return Query on documents
+     * @throws Exception e
+     */
+    private Query buildDocumentQuery(IndexSearcher searcher, DocumentCriteria criteria) throws Exception {
+        // The fulltext query searches in all fields
+        String searchQuery = criteria.getSimpleSearch() + " " + criteria.getFullSearch();
         Analyzer analyzer = new StandardAnalyzer();
 
-        // Search on documents and files
-        BooleanQuery query = new BooleanQuery.Builder()
-                .add(buildQueryParser(analyzer, "title").parse(searchQuery), BooleanClause.Occur.SHOULD)
-                .add(buildQueryParser(analyzer, "description").parse(searchQuery), BooleanClause.Occur.SHOULD)
-                .add(buildQueryParser(analyzer, "subject").parse(searchQuery), BooleanClause.Occur.SHOULD)
-                .add(buildQueryParser(analyzer, "identifier").parse(searchQuery), BooleanClause.Occur.SHOULD)
-                .add(buildQueryParser(analyzer, "publisher").parse(searchQuery), BooleanClause.Occur.SHOULD)
-                .add(buildQueryParser(analyzer, "format").parse(searchQuery), BooleanClause.Occur.SHOULD)
-                .add(buildQueryParser(analyzer, "source").parse(searchQuery), BooleanClause.Occur.SHOULD)
-                .add(buildQueryParser(analyzer, "type").parse(searchQuery), BooleanClause.Occur.SHOULD)
-                .add(buildQueryParser(analyzer, "coverage").parse(searchQuery), BooleanClause.Occur.SHOULD)
-                .add(buildQueryParser(analyzer, "rights").parse(searchQuery), BooleanClause.Occur.SHOULD)
+        // Documents having a matching file
+        DocValuesCollector collector = new DocValuesCollector("document_id");
+        searcher.search(buildFileQuery(analyzer, criteria), collector);
+        Set<BytesRef> fileDocumentIdSet = collector.getValueSet();
+
+        // Search on documents metadata
+        BooleanQuery.Builder searchQueryBuilder = new BooleanQuery.Builder();
+        for (String field : DOCUMENT_SEARCH_FIELD_LIST) {
+            searchQueryBuilder.add(buildQueryParser(analyzer, field).parse(searchQuery), BooleanClause.Occur.SHOULD);
+        }
+        if (!fileDocumentIdSet.isEmpty()) {
+            searchQueryBuilder.add(new TermInSetQuery("id", fileDocumentIdSet), BooleanClause.Occur.SHOULD);
+        }
+
+        BooleanQuery.Builder builder = new BooleanQuery.Builder()
+                .add(searchQueryBuilder.build(), BooleanClause.Occur.MUST)
+                .add(new TermQuery(new Term("doctype", "document")), BooleanClause.Occur.FILTER);
+        if (criteria.getCreateDateMin() != null || criteria.getCreateDateMax() != null) {
+            builder.add(NumericDocValuesField.newSlowRangeQuery("create_date",
+                    criteria.getCreateDateMin() == null ? Long.MIN_VALUE : criteria.getCreateDateMin().getTime(),
+                    criteria.getCreateDateMax() == null ? Long.MAX_VALUE : criteria.getCreateDateMax().getTime()), BooleanClause.Occur.FILTER);
+        }
+        if (criteria.getUpdateDateMin() != null || criteria.getUpdateDateMax() != null) {
+            builder.add(NumericDocValuesField.newSlowRangeQuery("update_date",
+                    criteria.getUpdateDateMin() == null ? Long.MIN_VALUE : criteria.getUpdateDateMin().getTime(),
+                    criteria.getUpdateDateMax() == null ? Long.MAX_VALUE : criteria.getUpdateDateMax().getTime()), BooleanClause.Occur.FILTER);
+        }
+        if (criteria.getLanguage() != null) {
+            builder.add(new TermQuery(new Term("language", criteria.getLanguage())), BooleanClause.Occur.FILTER);
+        }
+        if (criteria.getCreatorId() != null) {
+            builder.add(new TermQuery(new Term("creator_id", criteria.getCreatorId())), BooleanClause.Occur.FILTER);
+        }
+        Query readQuery = buildReadQuery(criteria.getTargetIdList());
+        if (readQuery != null) {
+            builder.add(readQuery, BooleanClause.Occur.FILTER);
+        }
+        return builder.build();
+    }
+
+    /**
+     * Build the query matching the documents readable by some targets.
+     * Read permission is enough for searching.
+     *
+     * @param targetIdList Target IDs
+     * @return Query, null if the ACL are not checked
+     */
+    private Query buildReadQuery(List<String> targetIdList) {
+        if (SecurityUtil.skipAclCheck(targetIdList)) {
+            return null;
+        }
+        List<BytesRef> targetIdBytesList = new ArrayList<>();
+        for (String targetId : targetIdList) {
+            targetIdBytesList.add(new BytesRef(targetId));
+        }
+        return new TermInSetQuery("acl_read", targetIdBytesList);
+    }
+
+    /**
+     * Build the query matching the files.
+     *
+     * @param analyzer Analyzer
+     * @param criteria Search criteria
+     * @return Query on files
+     * @throws Exception e
+     */
+    private Query buildFileQuery(Analyzer analyzer, DocumentCriteria criteria) throws Exception {
+        String searchQuery = criteria.getSimpleSearch() + " " + criteria.getFullSearch();
+        return new BooleanQuery.Builder()
                 .add(buildQueryParser(analyzer, "filename").parse(searchQuery), BooleanClause.Occur.SHOULD)
-                .add(buildQueryParser(analyzer, "content").parse(fullSearchQuery), BooleanClause.Occur.SHOULD)
+                .add(buildQueryParser(analyzer, "content").parse(criteria.getFullSearch()), BooleanClause.Occur.SHOULD)
                 .build();
+    }
+
+    /**
+     * Highlight the matching file contents of some documents.
+     *
+     * @param criteria Search criteria
+     * @param documentDtoList List of documents (updated by side effects)
+     * @throws Exception e
+     */
+    private void highlight(DocumentCriteria criteria, List<DocumentDto> documentDtoList) throws Exception {
+        if (documentDtoList.isEmpty()) {
+            return;
+        }
 
-        // Search
-        DirectoryReader directoryReader = getDirectoryReader();
-        Map<String, String> documentMap = Maps.newHashMap();
-        if (directoryReader == null) {
-            // The directory reader is not yet initialized (probably because there is nothing indexed)
-            return documentMap;
+        Analyzer analyzer = new StandardAnalyzer();
+        Query fileQuery = buildFileQuery(analyzer, criteria);
+        List<BytesRef> documentIdList = new ArrayList<>();
+        for (DocumentDto documentDto : documentDtoList) {
+            documentIdList.add(new BytesRef(documentDto.getId()));
         }
-        IndexSearcher searcher = new IndexSearcher(directoryReader);
-        TopDocs topDocs = searcher.search(query, Integer.MAX_VALUE);
-        ScoreDoc[] docs = topDocs.scoreDocs;
+        Query query = new BooleanQuery.Builder()
+                .add(fileQuery, BooleanClause.Occur.MUST)
+                .add(new TermInSetQuery("document_id", documentIdList), BooleanClause.Occur.FILTER)
+                .build();
 
         SimpleHTMLFormatter simpleHTMLFormatter = new SimpleHTMLFormatter("<strong>", "</strong>");
         SimpleHTMLEncoder simpleHTMLEncoder = new SimpleHTMLEncoder();
-        Highlighter highlighter = new Highlighter(simpleHTMLFormatter, simpleHTMLEncoder, new QueryScorer(query));
-
-        // Extract document IDs and highlights
-        for (ScoreDoc doc : docs) {
-            org.apache.lucene.document.Document document = searcher.doc(doc.doc);
-            String type = document.get("doctype");
-            String documentId = null;
-            String highlight = null;
-            if (type.equals("document")) {
-                documentId = document.get("id");
-            } else if (type.equals("file")) {
-                documentId = document.get("document_id");
+        Highlighter highlighter = new Highlighter(simpleHTMLFormatter, simpleHTMLEncoder, new QueryScorer(fileQuery));
+
+        // Keep the best matching file of each document
+        Map<String, String> highlightMap = new HashMap<>();
+        IndexSearcher searcher = searcherManager.acquire();
+        try {
+            TopDocs topDocs = searcher.search(query, Math.max(searcher.count(query), 1));
+            for (ScoreDoc scoreDoc : topDocs.scoreDocs) {
+                org.apache.lucene.document.Document document = searcher.doc(scoreDoc.doc, HIGHLIGHT_FIELD_SET);
+                String documentId = document.get("document_id");
                 String content = document.get("content");
-                if (content != null) {
-                    highlight = highlighter.getBestFragment(analyzer, "content", content);
+                if (content != null && !highlightMap.containsKey(documentId)) {
+                    String highlight = highlighter.getBestFragment(analyzer, "content", content);
+                    if (highlight != null) {
+                        highlightMap.put(documentId, highlight);
+                    }
                 }
             }
-
-            if (documentId != null) {
-                documentMap.put(documentId, highlight);
-            }
+        } finally {
+            searcherManager.release(searcher);
         }
 
-        return documentMap;
+        for (DocumentDto documentDto : documentDtoList) {
+            documentDto.setHighlight(highlightMap.get(documentDto.getId()));
+        }
     }
 
     /**
@@ -496,13 +1582,34 @@ public class LuceneIndexingHandler implements IndexingHandler {
      * Build Lucene document from database document.
      *
      * @param document Document
+     * @param readTargetIdSet Targets allowed to read the document
      * @return Document
      */
-    private org.apache.lucene.document.Document getDocumentFromDocument(Document document) {
+    private org.apache.lucene.document.Document getDocumentFromDocument(Document document, Set<String> readTargetIdSet) {
         org.apache.lucene.document.Document luceneDocument = new org.apache.lucene.document.Document();
         luceneDocument.add(new StringField("id", document.getId(), Field.Store.YES));
+        luceneDocument.add(new SortedDocValuesField("id", new BytesRef(document.getId())));
         luceneDocument.add(new StringField("doctype", "document", Field.Store.YES));
         luceneDocument.add(new TextField("title", document.getTitle(), Field.Store.NO));
+        luceneDocument.add(new SortedDocValuesField("title_sort", new BytesRef(document.getTitle())));
+        if (document.getCreateDate() != null) {
+            luceneDocument.add(new NumericDocValuesField("create_date", document.getCreateDate().getTime()));
+        }
+        if (document.getUpdateDate() != null) {
+            luceneDocument.add(new NumericDocValuesField("update_date", document.getUpdateDate().getTime()));
+        }
+        if (document.getLanguage() != null) {
+            luceneDocument.add(new StringField("language", document.getLanguage(), Field.Store.NO));
+            luceneDocument.add(new SortedDocValuesField("language", new BytesRef(document.getLanguage())));
+        }
+        if (document.getUserId() != null) {
+            luceneDocument.add(new StringField("creator_id", document.getUserId(), Field.Store.NO));
+        }
+        if (readTargetIdSet != null) {
+            for (String targetId : readTargetIdSet) {
+                luceneDocument.add(new StringField("acl_read", targetId, Field.Store.NO));
+            }
+        }
         if (document.getDescription() != null) {
             luceneDocument.add(new TextField("description", document.getDescription(), Field.Store.NO));
         }
@@ -543,12 +1650,14 @@ public class LuceneIndexingHandler implements IndexingHandler {
     private org.apache.lucene.document.Document getDocumentFromFile(File file) {
         org.apache.lucene.document.Document luceneDocument = new org.apache.lucene.document.Document();
         luceneDocument.add(new StringField("id", file.getId(), Field.Store.YES));
+        luceneDocument.add(new SortedDocValuesField("id", new BytesRef(file.getId())));
         luceneDocument.add(new StringField("doctype", "file", Field.Store.YES));
         if (file.getName() != null) {
             luceneDocument.add(new TextField("filename", file.getName(), Field.Store.NO));
         }
         if (file.getDocumentId() != null) {
             luceneDocument.add(new StringField("document_id", file.getDocumentId(), Field.Store.YES));
+            luceneDocument.add(new SortedDocValuesField("document_id", new BytesRef(file.getDocumentId())));
         }
         if (file.getContent() != null) {
             luceneDocument.add(new TextField("content", file.getContent(), Field.Store.YES));
@@ -558,52 +1667,526 @@ public class LuceneIndexingHandler implements IndexingHandler {
     }
 
     /**
-     * Returns a valid directory reader.
-     * Take care of reopening the reader if the index has changed
-     * and closing the previous one.
+     * Encapsulate a process into a Lucene context.
+     * The process is also applied to the index being rebuilt, if any.
+     * The index is committed once enough operations are pending,
+     * otherwise the periodic commit will take care of it.
      *
-     * @return the directoryReader
+     * @param idList IDs indexed or deleted by the runnable
+     * @param runnable Runnable
      */
-    private DirectoryReader getDirectoryReader() {
-        if (directoryReader == null) {
+    private void handle(Collection<String> idList, LuceneRunnable runnable) {
+        writerLock.readLock().lock();
+        try {
             try {
-                if (!DirectoryReader.indexExists(directory)) {
-                    return null;
+                runnable.run(indexWriter);
+            } catch (Exception e) {
+                log.error("Error in running index writing", e);
+            }
+
+            IndexWriter rebuildWriter = this.rebuildWriter;
+            if (rebuildWriter != null) {
+                rebuildChangedIdSet.addAll(idList);
+                try {
+                    runnable.run(rebuildWriter);
+                } catch (Exception e) {
+                    log.error("Error in running rebuilt index writing", e);
                 }
-                directoryReader = DirectoryReader.open(directory);
-            } catch (IOException e) {
-                log.error("Error creating the directory reader", e);
             }
-        } else {
+
+            if (reopenThread == null) {
+                try {
+                    searcherManager.maybeRefreshBlocking();
+                } catch (IOException e) {
+                    log.error("Cannot refresh the index searcher", e);
+                }
+            }
+        } finally {
+            writerLock.readLock().unlock();
+        }
+
+        if (uncommittedCount.addAndGet(Math.max(idList.size(), 1)) >= commitOperations) {
+            commit();
+        }
+    }
+
+    /**
+     * Commit the pending index changes.
+     */
+    private void commit() {
+        writerLock.readLock().lock();
+        try {
+            uncommittedCount.set(0);
+            indexWriter.commit();
+        } catch (IOException e) {
+            log.error("Cannot commit index writer", e);
+        } finally {
+            writerLock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void rebuildIndex() throws Exception {
+        if (!rebuildLock.tryLock()) {
+            log.info("An index rebuild is already running");
+            return;
+        }
+
+        ExecutorService workerExecutor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), new ThreadFactoryBuilder()
+                .setNameFormat("lucene-rebuild-%d")
+                .setDaemon(true)
+                .build());
+        rebuildRunning = true;
+        try {
+            Map<String, String> checkpoint = startRebuild();
+            String phase = checkpoint.get(REBUILD_PHASE_KEY);
+            String lastId = checkpoint.get(REBUILD_LAST_ID_KEY);
+            long checkpointDate = System.currentTimeMillis();
+
+            while (!rebuildStopped) {
+                String phaseLastId = lastId;
+                String batchLastId = REBUILD_PHASE_DOCUMENT.equals(phase) ?
+                        handleRebuildBatch(() -> rebuildDocuments(phaseLastId, workerExecutor)) :
+                        handleRebuildBatch(() -> rebuildFiles(phaseLastId, workerExecutor));
+                if (batchLastId != null) {
+                    lastId = batchLastId;
+                } else if (REBUILD_PHASE_DOCUMENT.equals(phase)) {
+                    phase = REBUILD_PHASE_FILE;
+                    lastId = null;
+                } else {
+                    break;
+                }
+
+                // The checkpoint is persisted with the next commit of the rebuilt index
+                setRebuildCheckpoint(phase, lastId);
+                if (System.currentTimeMillis() - checkpointDate > REBUILD_CHECKPOINT_INTERVAL * 1000L) {
+                    rebuildWriter.commit();
+                    checkpointDate = System.currentTimeMillis();
+                }
+            }
+
+            if (rebuildStopped) {
+                // The rebuilt index is closed with its last checkpoint on shutdown
+                log.info("Index rebuild interrupted after {} documents and {} files", rebuildDocumentCount, rebuildFileCount);
+                return;
+            }
+
+            swapRebuiltIndex();
+            log.info("Index rebuilt with {} documents and {} files", rebuildDocumentCount, rebuildFileCount);
+        } catch (Exception e) {
+            discardRebuiltIndex();
+            throw e;
+        } finally {
+            rebuildRunning = false;
+            workerExecutor.shutdownNow();
+            rebuildLock.unlock();
+        }
+    }
+
+    @Override
+    public RebuildProgress getRebuildProgress() {
+        return new RebuildProgress()
+                .setRunning(rebuildRunning)
+                .setStartDate(rebuildStartDate)
+                .setDocumentCount(rebuildDocumentCount)
+                .setDocumentTotal(rebuildDocumentTotal)
+                .setFileCount(rebuildFileCount)
+                .setFileTotal(rebuildFileTotal);
+    }
+
+    /**
+     * Open the checkpoint of an interrupted rebuild, if any.
+     * A rebuild can only be resumed if both indexes have been closed cleanly.
+     *
+     * @return True if the rebuild must be resumed
+     * @throws Exception e
+     */
+    private boolean openRebuildCheckpoint() throws Exception {
+        if (!fileStorage) {
+            return false;
+        }
+
+        Directory checkpointDirectory = new NIOFSDirectory(getRebuildPath(), NoLockFactory.INSTANCE);
+        Map<String, String> commitData = null;
+        if (DirectoryReader.indexExists(checkpointDirectory)) {
+            commitData = SegmentInfos.readLatestCommit(checkpointDirectory).getUserData();
+        }
+        if (commitData == null || commitData.get(REBUILD_PHASE_KEY) == null || !INDEX_VERSION.equals(commitData.get(COMMIT_VERSION_KEY))) {
+            checkpointDirectory.close();
+            deleteRebuildDirectory();
+            return false;
+        }
+
+        rebuildDirectory = checkpointDirectory;
+        rebuildWriter = new IndexWriter(rebuildDirectory, getRebuildWriterConfig(IndexWriterConfig.OpenMode.APPEND));
+        rebuildCheckpoint = new HashMap<>(commitData);
+        return true;
+    }
+
+    /**
+     * Open the index to rebuild, or resume the interrupted rebuild.
+     *
+     * @return Rebuild checkpoint
+     * @throws Exception e
+     */
+    private Map<String, String> startRebuild() throws Exception {
+        Map<String, String> checkpoint = rebuildCheckpoint;
+        rebuildCheckpoint = null;
+
+        TransactionUtil.handle(() -> {
+            rebuildDocumentTotal = new DocumentDao().getDocumentCount();
+            rebuildFileTotal = new FileDao().getFileCount();
+        });
+
+        if (checkpoint != null) {
+            rebuildStartDate = Long.parseLong(checkpoint.get(REBUILD_START_DATE_KEY));
+            rebuildDocumentCount = Long.parseLong(checkpoint.get(REBUILD_DOCUMENT_COUNT_KEY));
+            rebuildFileCount = Long.parseLong(checkpoint.get(REBUILD_FILE_COUNT_KEY));
+            log.info("Resuming index rebuild after {} documents and {} files", rebuildDocumentCount, rebuildFileCount);
+            return checkpoint;
+        }
+
+        rebuildStartDate = System.currentTimeMillis();
+        rebuildDocumentCount = 0;
+        rebuildFileCount = 0;
+        Directory newRebuildDirectory = fileStorage ?
+                new NIOFSDirectory(getRebuildPath(), NoLockFactory.INSTANCE) : new RAMDirectory();
+        IndexWriter newRebuildWriter = new IndexWriter(newRebuildDirectory, getRebuildWriterConfig(IndexWriterConfig.OpenMode.CREATE));
+
+        // Indexing operations are applied to the rebuilt index from now on
+        writerLock.writeLock().lock();
+        try {
+            rebuildChangedIdSet.clear();
+            rebuildDirectory = newRebuildDirectory;
+            rebuildWriter = newRebuildWriter;
+        } finally {
+            writerLock.writeLock().unlock();
+        }
+        log.info("Rebuilding index with {} documents and {} files", rebuildDocumentTotal, rebuildFileTotal);
+        return setRebuildCheckpoint(REBUILD_PHASE_DOCUMENT, null);
+    }
+
+    /**
+     * Returns the configuration of the rebuild index writer.
+     *
+     * @param openMode Open mode
+     * @return Index writer configuration
+     */
+    private IndexWriterConfig getRebuildWriterConfig(IndexWriterConfig.OpenMode openMode) {
+        IndexWriterConfig config = new IndexWriterConfig(new StandardAnalyzer());
+        config.setOpenMode(openMode);
+        config.setCommitOnClose(true);
+        config.setMergeScheduler(new ConcurrentMergeScheduler());
+        return config;
+    }
+
+    /**
+     * Set the checkpoint stored with the next commits of the rebuilt index.
+     *
+     * @param phase Rebuild phase
+     * @param lastId Last ID indexed in this phase
+     * @return Rebuild checkpoint
+     */
+    private Map<String, String> setRebuildCheckpoint(String phase, String lastId) {
+        Map<String, String> checkpoint = new HashMap<>();
+        checkpoint.put(COMMIT_VERSION_KEY, INDEX_VERSION);
+        checkpoint.put(REBUILD_PHASE_KEY, phase);
+        if (lastId != null) {
+            checkpoint.put(REBUILD_LAST_ID_KEY, lastId);
+        }
+        checkpoint.put(REBUILD_START_DATE_KEY, String.valueOf(rebuildStartDate));
+        checkpoint.put(REBUILD_DOCUMENT_COUNT_KEY, String.valueOf(rebuildDocumentCount));
+        checkpoint.put(REBUILD_FILE_COUNT_KEY, String.valueOf(rebuildFileCount));
+        rebuildWriter.setLiveCommitData(checkpoint.entrySet());
+        return checkpoint;
+    }
+
+    /**
+     * Run a rebuild batch in its own transaction.
+     *
+     * @param batch Rebuild batch
+     * @return Last ID indexed by the batch, null if there is nothing left to index
+     * @throws Exception e
+     */
+    private String handleRebuildBatch(Callable<String> batch) throws Exception {
+        AtomicReference<String> lastId = new AtomicReference<>();
+        AtomicBoolean done = new AtomicBoolean();
+        TransactionUtil.handle(() -> {
             try {
-                DirectoryReader newReader = DirectoryReader.openIfChanged(directoryReader);
-                if (newReader != null) {
-                    directoryReader.close();
-                    directoryReader = newReader;
+                lastId.set(batch.call());
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+            done.set(true);
+        });
+        if (!done.get()) {
+            throw new Exception("Error rebuilding the index, see the previous errors");
+        }
+        return lastId.get();
+    }
+
+    /**
+     * Index the next documents into the rebuilt index.
+     *
+     * @param lastId Last document ID indexed
+     * @param workerExecutor Executor building the Lucene documents
+     * @return Last document ID indexed, null if there is no more documents
+     * @throws Exception e
+     */
+    private String rebuildDocuments(String lastId, ExecutorService workerExecutor) throws Exception {
+        List<Document> documentList = new DocumentDao().findAllAfterId(lastId, REBUILD_DOCUMENT_BATCH_SIZE);
+        if (documentList.isEmpty()) {
+            return null;
+        }
+
+        Map<String, Set<String>> readTargetIdMap = getReadTargetIdMap(documentList);
+        List<Callable<org.apache.lucene.document.Document>> taskList = new ArrayList<>();
+        for (Document document : documentList) {
+            taskList.add(() -> getDocumentFromDocument(document, readTargetIdMap.get(document.getId())));
+        }
+        writeRebuiltDocuments(workerExecutor.invokeAll(taskList));
+        rebuildDocumentCount += documentList.size();
+        return documentList.get(documentList.size() - 1).getId();
+    }
+
+    /**
+     * Index the next files into the rebuilt index.
+     *
+     * @param lastId Last file ID indexed
+     * @param workerExecutor Executor building the Lucene documents
+     * @return Last file ID indexed, null if there is no more files
+     * @throws Exception e
+     */
+    private String rebuildFiles(String lastId, ExecutorService workerExecutor) throws Exception {
+        List<File> fileList = new FileDao().findAllAfterId(lastId, REBUILD_FILE_BATCH_SIZE);
+        if (fileList.isEmpty()) {
+            return null;
+        }
+
+        // The content is stored apart from the files
+        Map<String, String> contentMap = new FileContentDao().getContentMap(
+                fileList.stream().map(File::getId).collect(Collectors.toList()));
+        List<Callable<org.apache.lucene.document.Document>> taskList = new ArrayList<>();
+        for (File file : fileList) {
+            file.setContent(contentMap.get(file.getId()));
+            taskList.add(() -> getDocumentFromFile(file));
+        }
+        writeRebuiltDocuments(workerExecutor.invokeAll(taskList));
+        rebuildFileCount += fileList.size();
+        return fileList.get(fileList.size() - 1).getId();
+    }
+
+    /**
+     * Write Lucene documents into the rebuilt index.
+     * The documents changed by an indexing operation since the rebuild started are skipped,
+     * the rebuilt index already has their latest version.
+     *
+     * @param futureList Lucene documents being built
+     * @throws Exception e
+     */
+    private void writeRebuiltDocuments(List<Future<org.apache.lucene.document.Document>> futureList) throws Exception {
+        List<org.apache.lucene.document.Document> luceneDocumentList = new ArrayList<>();
+        for (Future<org.apache.lucene.document.Document> future : futureList) {
+            luceneDocumentList.add(future.get());
+        }
+
+        writerLock.writeLock().lock();
+        try {
+            for (org.apache.lucene.document.Document luceneDocument : luceneDocumentList) {
+                String id = luceneDocument.get("id");
+                if (!rebuildChangedIdSet.contains(id)) {
+                    rebuildWriter.updateDocument(new Term("id", id), luceneDocument);
                 }
-            } catch (IOException e) {
-                log.error("Error while reopening the directory reader", e);
             }
+        } finally {
+            writerLock.writeLock().unlock();
         }
-        return directoryReader;
     }
 
     /**
-     * Encapsulate a process into a Lucene context.
+     * Replace the current index with the rebuilt index.
+     * The writer, the searcher manager and the directory of the rebuilt index become the current ones at once,
+     * the current index is searched until then and left untouched if the switch fails.
      *
-     * @param runnable Runnable
+     * @throws Exception e
      */
-    private void handle(LuceneRunnable runnable) {
+    private void swapRebuiltIndex() throws Exception {
+        IndexWriter oldIndexWriter;
+        SearcherManager oldSearcherManager;
+        Directory oldDirectory;
+        writerLock.writeLock().lock();
         try {
-            runnable.run(indexWriter);
-        } catch (Exception e) {
-            log.error("Error in running index writing", e);
+            // The rebuilt index is marked open like the current index at startup
+            rebuildWriter.setLiveCommitData(Map.of(COMMIT_STATE_KEY, COMMIT_STATE_OPEN, COMMIT_VERSION_KEY, INDEX_VERSION).entrySet());
+            rebuildWriter.commit();
+            SearcherManager rebuildSearcherManager = new SearcherManager(rebuildWriter, null);
+            Path rebuildPath = null;
+            if (fileStorage) {
+                rebuildPath = getRebuildPath();
+                try {
+                    writeIndexPath(rebuildPath);
+                } catch (IOException e) {
+                    rebuildSearcherManager.close();
+                    throw e;
+                }
+            }
+
+            // The searcher must not be refreshed while the index is replaced
+            boolean reopen = reopenThread != null;
+            if (reopen) {
+                reopenThread.close();
+            }
+
+            oldIndexWriter = indexWriter;
+            oldSearcherManager = searcherManager;
+            oldDirectory = directory;
+            indexWriter = rebuildWriter;
+            searcherManager = rebuildSearcherManager;
+            directory = rebuildDirectory;
+            indexPath = rebuildPath;
+            rebuildWriter = null;
+            rebuildDirectory = null;
+            rebuildChangedIdSet.clear();
+            uncommittedCount.set(0);
+            suggesterVersion = -1;
+
+            if (reopen) {
+                startReopenThread();
+            }
+        } finally {
+            writerLock.writeLock().unlock();
         }
 
+        // The previous index is no longer written, wait for the suggester being built from it
+        synchronized (this) {
+            try {
+                oldSearcherManager.close();
+                oldIndexWriter.rollback();
+                oldDirectory.close();
+            } catch (IOException e) {
+                log.error("Error closing the previous index", e);
+            }
+        }
+        deleteRebuildDirectory();
+    }
+
+    /**
+     * Discard the index being rebuilt.
+     */
+    private void discardRebuiltIndex() {
+        writerLock.writeLock().lock();
         try {
-            indexWriter.commit();
+            if (rebuildWriter != null) {
+                rebuildWriter.rollback();
+                rebuildDirectory.close();
+            }
         } catch (IOException e) {
-            log.error("Cannot commit index writer", e);
+            log.error("Error closing the rebuilt index", e);
+        } finally {
+            rebuildWriter = null;
+            rebuildDirectory = null;
+            rebuildChangedIdSet.clear();
+            writerLock.writeLock().unlock();
+        }
+        deleteRebuildDirectory();
+    }
+
+    /**
+     * Delete the files of the rebuilt index.
+     */
+    private void deleteRebuildDirectory() {
+        if (!fileStorage) {
+            return;
+        }
+        try (Stream<Path> pathStream = Files.walk(getRebuildPath())) {
+            pathStream.sorted(Comparator.reverseOrder())
+                    .map(Path::toFile)
+                    .forEach(java.io.File::delete);
+        } catch (IOException e) {
+            log.error("Error deleting the rebuilt index", e);
+        }
+    }
+
+    /**
+     * Returns the directory of the current index stored in files.
+     *
+     * @return Index directory
+     * @throws IOException e
+     */
+    private static Path readIndexPath() throws IOException {
+        Path activeFile = DirectoryUtil.getLuceneActiveFile();
+        Path rebuildPath = DirectoryUtil.getLuceneRebuildDirectory();
+        if (Files.exists(activeFile) && Files.readString(activeFile).equals(rebuildPath.getFileName().toString())) {
+            return rebuildPath;
+        }
+        return DirectoryUtil.getLuceneDirectory();
+    }
+
+    /**
+     * Store the directory of the current index stored in files.
+     *
+     * @param path Index directory
+     * @throws IOException e
+     */
+    private static void writeIndexPath(Path path) throws IOException {
+        Path activeFile = DirectoryUtil.getLuceneActiveFile();
+        Path tmpFile = activeFile.resolveSibling(activeFile.getFileName() + ".tmp");
+        Files.writeString(tmpFile, path.getFileName().toString());
+        Files.move(tmpFile, activeFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Returns the directory of the index being rebuilt, the one not used by the current index.
+     *
+     * @return Rebuild directory
+     */
+    private Path getRebuildPath() {
+        Path luceneDirectory = DirectoryUtil.getLuceneDirectory();
+        return luceneDirectory.equals(indexPath) ? DirectoryUtil.getLuceneRebuildDirectory() : luceneDirectory;
+    }
+
+    /**
+     * Collect the doc values of a field for all the matching documents.
+     */
+    private static class DocValuesCollector extends SimpleCollector {
+        /**
+         * Field name.
+         */
+        private final String field;
+
+        /**
+         * Collected values.
+         */
+        private final Set<BytesRef> valueSet = new HashSet<>();
+
+        /**
+         * Values of the current segment.
+         */
+        private SortedDocValues values;
+
+        DocValuesCollector(String field) {
+            this.field = field;
+        }
+
+        @Override
+        protected void doSetNextReader(LeafReaderContext context) throws IOException {
+            values = context.reader().getSortedDocValues(field);
+        }
+
+        @Override
+        public void collect(int doc) throws IOException {
+            if (values != null && values.advanceExact(doc)) {
+                valueSet.add(BytesRef.deepCopyOf(values.binaryValue()));
+            }
+        }
+
+        @Override
+        public ScoreMode scoreMode() {
+            return ScoreMode.COMPLETE_NO_SCORES;
+        }
+
+        public Set<BytesRef> getValueSet() {
+            return valueSet;
         }
     }
 
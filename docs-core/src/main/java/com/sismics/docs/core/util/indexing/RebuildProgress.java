@@ -0,0 +1,90 @@
+package com.sismics.docs.core.util.indexing;
+
+/**
+ * Progress of an index rebuild.
+ */
+public class RebuildProgress {
+    /**
+     * True if a rebuild is running.
+     */
+    private boolean running;
+
+    /**
+     * Rebuild start date (timestamp), null if the index has never been rebuilt.
+     */
+    private Long startDate;
+
+    /**
+     * Number of documents indexed.
+     */
+    private long documentCount;
+
+    /**
+     * Number of documents to index.
+     */
+    private long documentTotal;
+
+    /**
+     * Number of files indexed.
+     */
+    private long fileCount;
+
+    /**
+     * Number of files to index.
+     */
+    private long fileTotal;
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    public RebuildProgress setRunning(boolean running) {
+        this.running = running;
+        return this;
+    }
+
+    public Long getStartDate() {
+        return startDate;
+    }
+
+    public RebuildProgress setStartDate(Long startDate) {
+        this.startDate = startDate;
+        return this;
+    }
+
+    public long getDocumentCount() {
+        return documentCount;
+    }
+
+    public RebuildProgress setDocumentCount(long documentCount) {
+        this.documentCount = documentCount;
+        return this;
+    }
+
+    public long getDocumentTotal() {
+        return documentTotal;
+    }
+
+    public RebuildProgress setDocumentTotal(long documentTotal) {
+        this.documentTotal = documentTotal;
+        return this;
+    }
+
+    public long getFileCount() {
+        return fileCount;
+    }
+
+    public RebuildProgress setFileCount(long fileCount) {
+        this.fileCount = fileCount;
+        return this;
+    }
+
+    public long getFileTotal() {
+        return fileTotal;
+    }
+
+    public RebuildProgress setFileTotal(long fileTotal) {
+        this.fileTotal = fileTotal;
+        return this;
+    }
+}
@@ -0,0 +1,17 @@
+package com.sismics.docs.core.util.jpa;
+
+/**
+ * Exception raised when a page cursor can't be used.
+ */
+public class InvalidCursorException extends Exception {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Builds an exception with the provided error message.
+     *
+     * @param message Error message
+     */
+    public InvalidCursorException(String message) {
+        super(message);
+    }
+}
@@ -27,6 +27,21 @@ public class PaginatedList<T> {
      * List of records of the current page.
      */
     private List<T> resultList;
+
+    /**
+     * Continuation token of the previous page, empty for the first page, null to paginate by offset.
+     */
+    private String cursor;
+
+    /**
+     * Continuation token of the next page, null if there is no next page.
+     */
+    private String nextCursor;
+
+    /**
+     * True if the total number of records is counted.
+     */
+    private boolean countEnabled = true;
     
     /**
      * Constructor of PaginatedList.
@@ -92,4 +107,58 @@ public class PaginatedList<T> {
     public int getOffset() {
         return offset;
     }
+
+    /**
+     * Getter of cursor.
+     *
+     * @return cursor
+     */
+    public String getCursor() {
+        return cursor;
+    }
+
+    /**
+     * Setter of cursor.
+     *
+     * @param cursor cursor
+     */
+    public void setCursor(String cursor) {
+        this.cursor = cursor;
+    }
+
+    /**
+     * Getter of nextCursor.
+     *
+     * @return nextCursor
+     */
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    /**
+     * Setter of nextCursor.
+     *
+     * @param nextCursor nextCursor
+     */
+    public void setNextCursor(String nextCursor) {
+        this.nextCursor = nextCursor;
+    }
+
+    /**
+     * Getter of countEnabled.
+     *
+     * @return countEnabled
+     */
+    public boolean isCountEnabled() {
+        return countEnabled;
+    }
+
+    /**
+     * Setter of countEnabled.
+     *
+     * @param countEnabled countEnabled
+     */
+    public void setCountEnabled(boolean countEnabled) {
+        this.countEnabled = countEnabled;
+    }
 }
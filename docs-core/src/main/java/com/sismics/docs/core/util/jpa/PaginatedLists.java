@@ -1,7 +1,9 @@
 package com.sismics.docs.core.util.jpa;
 
 import jakarta.persistence.Query;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Utilities for paginated lists.
@@ -93,7 +95,40 @@ public class PaginatedLists {
      */
     public static <E> List<Object[]> executePaginatedQuery(PaginatedList<E> paginatedList, QueryParam queryParam, SortCriteria sortCriteria) {
         QueryParam sortedQueryParam = QueryUtil.getSortedQueryParam(queryParam, sortCriteria);
-        executeCountQuery(paginatedList, sortedQueryParam);
+        if (paginatedList.isCountEnabled()) {
+            executeCountQuery(paginatedList, sortedQueryParam);
+        }
         return executeResultQuery(paginatedList, sortedQueryParam);
     }
+
+    /**
+     * Executes a paginated request starting after the last record of the previous page (keyset pagination).
+     * The cost of a page doesn't depend on its position, unlike an offset.
+     *
+     * @param paginatedList Paginated list object containing parameters, and into which results are added by side effects
+     * @param queryParam Query parameters, the query must end with a where clause
+     * @param keysetCriteria Criteria selecting the records after the previous page, null for the first page
+     * @param keysetParameterMap Parameters of the keyset criteria
+     * @param orderBy Order of the records, must be unique and consistent with the keyset criteria
+     * @return List of results
+     */
+    @SuppressWarnings("unchecked")
+    public static <E> List<Object[]> executeKeysetQuery(PaginatedList<E> paginatedList, QueryParam queryParam,
+                                                        String keysetCriteria, Map<String, Object> keysetParameterMap, String orderBy) {
+        if (paginatedList.isCountEnabled()) {
+            executeCountQuery(paginatedList, queryParam);
+        }
+
+        StringBuilder sb = new StringBuilder(queryParam.getQueryString());
+        Map<String, Object> parameterMap = new HashMap<>(queryParam.getParameterMap());
+        if (keysetCriteria != null) {
+            sb.append(" and ").append(keysetCriteria);
+            parameterMap.putAll(keysetParameterMap);
+        }
+        sb.append(" order by ").append(orderBy);
+
+        Query q = QueryUtil.getNativeQuery(new QueryParam(sb.toString(), parameterMap));
+        q.setMaxResults(paginatedList.getLimit());
+        return q.getResultList();
+    }
 }
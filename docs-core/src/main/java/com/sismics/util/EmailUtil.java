@@ -4,10 +4,8 @@ import com.google.common.base.Strings;
 import com.google.common.collect.Lists;
 import com.sismics.docs.core.constant.ConfigType;
 import com.sismics.docs.core.constant.Constants;
-import com.sismics.docs.core.dao.ConfigDao;
 import com.sismics.docs.core.dao.dto.UserDto;
 import com.sismics.docs.core.model.context.AppContext;
-import com.sismics.docs.core.model.jpa.Config;
 import com.sismics.docs.core.util.ConfigUtil;
 import freemarker.template.Configuration;
 import freemarker.template.DefaultObjectWrapperBuilder;
@@ -89,7 +87,6 @@ public class EmailUtil {
             // Build email headers
             HtmlEmail email = new HtmlEmail();
             email.setCharset(StandardCharsets.UTF_8.name());
-            ConfigDao configDao = new ConfigDao();
 
             // Hostname
             String envHostname = System.getenv(Constants.SMTP_HOSTNAME_ENV);
@@ -116,10 +113,10 @@ public class EmailUtil {
             String envUsername = System.getenv(Constants.SMTP_USERNAME_ENV);
             String envPassword = System.getenv(Constants.SMTP_PASSWORD_ENV);
             if (Strings.isNullOrEmpty(envUsername) || Strings.isNullOrEmpty(envPassword)) {
-                Config usernameConfig = configDao.getById(ConfigType.SMTP_USERNAME);
-                Config passwordConfig = configDao.getById(ConfigType.SMTP_PASSWORD);
-                if (usernameConfig != null && passwordConfig != null) {
-                    email.setAuthentication(usernameConfig.getValue(), passwordConfig.getValue());
+                String username = ConfigUtil.getConfigValue(ConfigType.SMTP_USERNAME);
+                String password = ConfigUtil.getConfigValue(ConfigType.SMTP_PASSWORD);
+                if (username != null && password != null) {
+                    email.setAuthentication(username, password);
                 }
             } else {
                 email.setAuthentication(envUsername, envPassword);
@@ -129,10 +126,10 @@ public class EmailUtil {
             email.addTo(recipientUser.getEmail(), recipientUser.getUsername());
 
             // Application name
-            Config themeConfig = configDao.getById(ConfigType.THEME);
+            String themeConfig = ConfigUtil.getConfigValue(ConfigType.THEME);
             String appName = "Teedy";
             if (themeConfig != null) {
-                try (JsonReader reader = Json.createReader(new StringReader(themeConfig.getValue()))) {
+                try (JsonReader reader = Json.createReader(new StringReader(themeConfig))) {
                     JsonObject themeJson = reader.readObject();
                     appName = themeJson.getString("name", "Teedy");
                 }
@@ -1,11 +1,19 @@
 package com.sismics.util;
 
+import com.google.common.base.Strings;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 /**
  * Environment properties utilities.
  *
  * @author jtremeaux
  */
 public class EnvironmentUtil {
+    /**
+     * Logger.
+     */
+    private static final Logger log = LoggerFactory.getLogger(EnvironmentUtil.class);
 
     private static String OS = System.getProperty("os.name").toLowerCase();
 
@@ -111,4 +119,39 @@ public class EnvironmentUtil {
     public static void setWebappContext(boolean webappContext) {
         EnvironmentUtil.webappContext = webappContext;
     }
+
+    /**
+     * Returns the integer value of an environment variable.
+     *
+     * @param name Environment variable name
+     * @param defaultValue Default value if the variable is not set or invalid
+     * @return Integer value
+     */
+    public static int getIntegerEnv(String name, int defaultValue) {
+        String value = System.getenv(name);
+        if (Strings.isNullOrEmpty(value)) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            log.warn(name + " needs to be a number. Falling back to " + defaultValue + ".");
+            return defaultValue;
+        }
+    }
+
+    /**
+     * Returns the boolean value of an environment variable.
+     *
+     * @param name Environment variable name
+     * @param defaultValue Default value if the variable is not set
+     * @return Boolean value
+     */
+    public static boolean getBooleanEnv(String name, boolean defaultValue) {
+        String value = System.getenv(name);
+        if (Strings.isNullOrEmpty(value)) {
+            return defaultValue;
+        }
+        return Boolean.parseBoolean(value.trim());
+    }
 }
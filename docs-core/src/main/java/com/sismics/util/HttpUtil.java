@@ -1,6 +1,9 @@
 package com.sismics.util;
 
 import java.text.SimpleDateFormat;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
 import java.util.Date;
 import java.util.Locale;
 
@@ -15,6 +18,12 @@ public class HttpUtil {
      */
     private static final SimpleDateFormat EXPIRES_FORMAT = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss Z", Locale.ENGLISH);
 
+    /**
+     * Format of the HTTP dates.
+     */
+    private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("EEE, dd MMM yyyy HH:mm:ss 'GMT'", Locale.ENGLISH)
+            .withZone(ZoneOffset.UTC);
+
     /**
      * Build an Expires HTTP header.
      *
@@ -24,4 +33,60 @@ public class HttpUtil {
     public static String buildExpiresHeader(long futureTime) {
         return EXPIRES_FORMAT.format(new Date().getTime() + futureTime);
     }
+
+    /**
+     * Build an HTTP date header, like Last-Modified.
+     *
+     * @param time Timestamp
+     * @return Formatted header value
+     */
+    public static String buildDateHeader(long time) {
+        return DATE_FORMAT.format(Instant.ofEpochMilli(time));
+    }
+
+    /**
+     * Check if an If-None-Match HTTP header matches an entity tag (RFC 9110, section 13.1.2).
+     * The header is either "*" or a list of entity tags, compared with the weak comparison function.
+     *
+     * @param ifNoneMatch If-None-Match header value, may be null
+     * @param etag Current entity tag
+     * @return True if the header matches the entity tag
+     */
+    public static boolean matchIfNoneMatch(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null || etag == null) {
+            return false;
+        }
+        if (ifNoneMatch.trim().equals("*")) {
+            return true;
+        }
+
+        String opaqueTag = stripWeakPrefix(etag);
+        int index = 0;
+        while (index < ifNoneMatch.length()) {
+            // Find the next entity tag: [W/] DQUOTE *etagc DQUOTE, commas are allowed inside the quotes
+            int start = ifNoneMatch.indexOf('"', index);
+            if (start == -1) {
+                break;
+            }
+            int end = ifNoneMatch.indexOf('"', start + 1);
+            if (end == -1) {
+                break;
+            }
+            if (ifNoneMatch.substring(start, end + 1).equals(opaqueTag)) {
+                return true;
+            }
+            index = end + 1;
+        }
+        return false;
+    }
+
+    /**
+     * Returns the opaque tag of an entity tag, without its weak indicator.
+     *
+     * @param etag Entity tag
+     * @return Opaque tag
+     */
+    private static String stripWeakPrefix(String etag) {
+        return etag.startsWith("W/") ? etag.substring(2) : etag;
+    }
 }
@@ -2,6 +2,9 @@ package com.sismics.util.context;
 
 import com.google.common.collect.Lists;
 import com.sismics.docs.core.model.context.AppContext;
+import com.sismics.docs.core.util.WebhookUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import jakarta.persistence.EntityManager;
 import java.util.Iterator;
@@ -13,6 +16,11 @@ import java.util.List;
  * @author jtremeaux
  */
 public class ThreadLocalContext {
+    /**
+     * Logger.
+     */
+    private static final Logger log = LoggerFactory.getLogger(ThreadLocalContext.class);
+
     /**
      * ThreadLocal to store the context.
      */
@@ -28,6 +36,11 @@ public class ThreadLocalContext {
      */
     private List<Object> asyncEventList = Lists.newArrayList();
 
+    /**
+     * List of tasks to run once the current transaction is committed.
+     */
+    private List<Runnable> postCommitTaskList = Lists.newArrayList();
+
     /**
      * Private constructor.
      */
@@ -81,13 +94,43 @@ public class ThreadLocalContext {
 
     /**
      * Add an async event to the queue to be fired after the current request.
+     * The webhook deliveries of the event are saved in the current transaction.
      *
      * @param asyncEvent Async event
      */
     public void addAsyncEvent(Object asyncEvent) {
+        if (entityManager != null && entityManager.isOpen()) {
+            WebhookUtil.createDeliveries(asyncEvent);
+        }
         asyncEventList.add(asyncEvent);
     }
 
+    /**
+     * Add a task run by the committing thread once the current transaction is committed.
+     * The task is dropped if the transaction is rolled back.
+     *
+     * @param task Task
+     */
+    public void addPostCommitTask(Runnable task) {
+        postCommitTaskList.add(task);
+    }
+
+    /**
+     * Run all pending post-commit tasks.
+     */
+    public void runAllPostCommitTasks() {
+        Iterator<Runnable> iterator = postCommitTaskList.iterator();
+        while (iterator.hasNext()) {
+            Runnable task = iterator.next();
+            iterator.remove();
+            try {
+                task.run();
+            } catch (Exception e) {
+                log.error("Error running a post-commit task", e);
+            }
+        }
+    }
+
     /**
      * Fire all pending async events.
      */
@@ -109,6 +109,8 @@ public final class EMF {
         props.put("hibernate.connection.initial_pool_size", "1");
         props.put("hibernate.connection.pool_size", databasePoolSize);
         props.put("hibernate.connection.pool_validation_interval", "5");
+        props.put("hibernate.jdbc.batch_size", "50");
+        props.put("hibernate.order_inserts", "true");
         return props;
     }
     
@@ -8,6 +8,11 @@ import org.apache.log4j.Level;
  * @author jtremeaux 
  */
 public class LogEntry {
+    /**
+     * Sequence number in the appender.
+     */
+    private long sequence;
+
     /**
      * Time stamp.
      */
@@ -43,6 +48,24 @@ public class LogEntry {
         this.message = message;
     }
 
+    /**
+     * Constructor of LogEntry.
+     *
+     * @param sequence Sequence number in the appender
+     * @param timestamp Timestamp
+     * @param level Logging level (DEBUG, WARN)...
+     * @param tag Logger name / tag
+     * @param message Message logged
+     */
+    public LogEntry(long sequence, long timestamp, Level level, String tag, String message) {
+        this(timestamp, level, tag, message);
+        this.sequence = sequence;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
     public long getTimestamp() {
         return timestamp;
     }
@@ -1,14 +1,18 @@
 package com.sismics.util.log4j;
 
-import java.util.Iterator;
-import java.util.LinkedList;
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
-import java.util.Queue;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
 
 import org.apache.log4j.AppenderSkeleton;
 import org.apache.log4j.Level;
 import org.apache.log4j.helpers.LogLog;
+import org.apache.log4j.spi.Filter;
 import org.apache.log4j.spi.LoggingEvent;
 
 import com.google.common.collect.Lists;
@@ -16,20 +20,37 @@ import com.sismics.docs.core.util.jpa.PaginatedList;
 
 /**
  * Memory appender for Log4J.
+ * The last log entries are kept in a fixed-size ring buffer, appending never blocks the logging threads.
+ * Entries are also indexed by minimum level and by tag to answer the searches without scanning the whole buffer.
+ * Only the most recently logged tags are indexed, the searches on the other tags scan the level index.
  *
  * @author jtremeaux
  */
 public class MemoryAppender extends AppenderSkeleton {
+    /**
+     * Levels indexed, the index of a level holds the entries of this level and above.
+     */
+    private static final Level[] INDEXED_LEVELS = { Level.TRACE, Level.DEBUG, Level.INFO, Level.WARN, Level.ERROR, Level.FATAL };
+
+    /**
+     * Maximum number of log entries.
+     */
+    private volatile int size = 1000;
 
     /**
-     * Maximum size of the queue.
+     * Maximum number of tags indexed.
      */
-    private int size;
-    
+    private volatile int maxTagCount = 64;
+
     /**
-     * Queue of log entries.
+     * Sequence of the log entries.
      */
-    private final Queue<LogEntry> logQueue = new ConcurrentLinkedQueue<LogEntry>();
+    private final AtomicLong sequence = new AtomicLong();
+
+    /**
+     * Log entries.
+     */
+    private volatile LogBuffer logBuffer = new LogBuffer(size, maxTagCount, sequence);
 
     @Override
     public boolean requiresLayout() {
@@ -44,25 +65,48 @@ public class MemoryAppender extends AppenderSkeleton {
         closed = true;
     }
 
+    /**
+     * Same checks as the parent implementation, without synchronizing the logging threads.
+     *
+     * @param event Event
+     */
     @Override
-    public synchronized void append(LoggingEvent event) {
-        while (logQueue.size() > size) {
-            logQueue.remove();
-        }
+    public void doAppend(LoggingEvent event) {
         if (closed) {
             LogLog.warn("This appender is already closed, cannot append event.");
             return;
         }
-        
-        String loggerName = getLoggerName(event);
+        if (!isAsSevereAsThreshold(event.getLevel())) {
+            return;
+        }
+
+        Filter filter = getFirstFilter();
+        while (filter != null) {
+            switch (filter.decide(event)) {
+                case Filter.DENY:
+                    return;
+                case Filter.ACCEPT:
+                    filter = null;
+                    break;
+                default:
+                    filter = filter.getNext();
+            }
+        }
+
+        append(event);
+    }
 
-        LogEntry logEntry = new LogEntry(System.currentTimeMillis(), event.getLevel(), loggerName, event.getMessage().toString());
-        logQueue.add(logEntry);
+    @Override
+    public void append(LoggingEvent event) {
+        String loggerName = getLoggerName(event);
+        LogEntry logEntry = new LogEntry(sequence.getAndIncrement(), System.currentTimeMillis(),
+                event.getLevel(), loggerName, String.valueOf(event.getMessage()));
+        logBuffer.add(logEntry);
     }
 
     /**
      * Extracts the class name of the logger, without the package name.
-     * 
+     *
      * @param event Event
      * @return Class name
      */
@@ -75,12 +119,16 @@ public class MemoryAppender extends AppenderSkeleton {
     }
 
     /**
-     * Getter of logList.
+     * Returns a snapshot of the log entries, from the oldest to the newest.
      *
-     * @return logList
+     * @return Log entries
      */
-    public Queue<LogEntry> getLogList() {
-        return logQueue;
+    public List<LogEntry> getLogList() {
+        List<LogEntry> logEntryList = new ArrayList<>();
+        long maxSequence = sequence.get();
+        LogBuffer buffer = logBuffer;
+        buffer.entries.forEachNewest(buffer.getMinSequence(maxSequence), maxSequence, logEntryList::add);
+        return Lists.reverse(logEntryList);
     }
 
     /**
@@ -89,41 +137,254 @@ public class MemoryAppender extends AppenderSkeleton {
      * @param size size
      */
     public void setSize(int size) {
-        this.size = size;
+        this.size = Math.max(size, 1);
+        logBuffer = new LogBuffer(this.size, maxTagCount, sequence);
     }
 
     /**
-     * Find some logs.
-     * 
+     * Setter of maxTagCount.
+     *
+     * @param maxTagCount maxTagCount
+     */
+    public void setMaxTagCount(int maxTagCount) {
+        this.maxTagCount = Math.max(maxTagCount, 0);
+        logBuffer = new LogBuffer(size, this.maxTagCount, sequence);
+    }
+
+    /**
+     * Find some logs, from the newest to the oldest.
+     *
      * @param criteria Search criteria
      * @param list Paginated list (modified by side effect)
      */
     public void find(LogCriteria criteria, PaginatedList<LogEntry> list) {
-        List<LogEntry> logEntryList = new LinkedList<LogEntry>();
         final Level minLevel = criteria.getMinLevel();
         final String tag = criteria.getTag();
         final String message = criteria.getMessage();
-        int resultCount = 0;
-        for (Iterator<LogEntry> it = logQueue.iterator(); it.hasNext();) {
-            LogEntry logEntry = it.next();
-            if ((minLevel == null ||  Integer.compare(logEntry.getLevel().toInt(), minLevel.toInt()) >= 0) &&
+        long maxSequence = sequence.get();
+        LogBuffer buffer = logBuffer;
+
+        // Start from the smallest index matching the criteria
+        Ring ring = null;
+        if (tag != null) {
+            ring = buffer.getTagRing(tag, buffer.getMinSequence(maxSequence));
+        }
+        if (ring == null) {
+            ring = buffer.getLevelRing(minLevel);
+        }
+
+        List<LogEntry> logEntryList = new ArrayList<>();
+        int[] resultCount = { 0 };
+        ring.forEachNewest(buffer.getMinSequence(maxSequence), maxSequence, logEntry -> {
+            if ((minLevel == null || logEntry.getLevel().toInt() >= minLevel.toInt()) &&
                     (tag == null || logEntry.getTag().toLowerCase().equals(tag)) &&
                     (message == null || logEntry.getMessage().toLowerCase().contains(message))) {
-                logEntryList.add(logEntry);
-                resultCount++;
+                if (resultCount[0] >= list.getOffset() && logEntryList.size() < list.getLimit()) {
+                    logEntryList.add(logEntry);
+                }
+                resultCount[0]++;
+            }
+        });
+
+        list.setResultCount(resultCount[0]);
+        list.setResultList(logEntryList);
+    }
+
+    /**
+     * Log entries and their indexes.
+     */
+    private static class LogBuffer {
+        /**
+         * All the log entries.
+         */
+        private final Ring entries;
+
+        /**
+         * Log entries by minimum level, in the order of INDEXED_LEVELS.
+         */
+        private final Ring[] levelRings = new Ring[INDEXED_LEVELS.length];
+
+        /**
+         * Log entries by lowercase tag, for the most recently logged tags.
+         */
+        private final Map<String, Ring> tagRings = new ConcurrentHashMap<>();
+
+        /**
+         * Maximum number of log entries.
+         */
+        private final int capacity;
+
+        /**
+         * Maximum number of tags indexed.
+         */
+        private final int maxTagCount;
+
+        /**
+         * Sequence of the log entries.
+         */
+        private final AtomicLong sequence;
+
+        LogBuffer(int capacity, int maxTagCount, AtomicLong sequence) {
+            this.capacity = capacity;
+            this.maxTagCount = maxTagCount;
+            this.sequence = sequence;
+            entries = new Ring(capacity, 0);
+            for (int i = 0; i < levelRings.length; i++) {
+                levelRings[i] = new Ring(capacity, 0);
+            }
+        }
+
+        /**
+         * Add a log entry to the buffer and its indexes.
+         *
+         * @param logEntry Log entry
+         */
+        void add(LogEntry logEntry) {
+            entries.add(logEntry);
+            int level = logEntry.getLevel().toInt();
+            for (int i = 0; i < INDEXED_LEVELS.length && INDEXED_LEVELS[i].toInt() <= level; i++) {
+                levelRings[i].add(logEntry);
+            }
+            String tag = logEntry.getTag().toLowerCase();
+            Ring tagRing = tagRings.get(tag);
+            if (tagRing == null) {
+                tagRing = addTagRing(tag);
+            }
+            if (tagRing != null) {
+                tagRing.add(logEntry);
+            }
+        }
+
+        /**
+         * Index a new tag, in place of the least recently logged tag if too many tags are indexed.
+         * The new index holds the entries logged from now on.
+         *
+         * @param tag Lowercase tag
+         * @return Index, null if no tag is indexed
+         */
+        private Ring addTagRing(String tag) {
+            if (maxTagCount == 0) {
+                return null;
+            }
+            synchronized (tagRings) {
+                Ring tagRing = tagRings.get(tag);
+                if (tagRing != null) {
+                    return tagRing;
+                }
+                if (tagRings.size() >= maxTagCount) {
+                    tagRings.entrySet().stream()
+                            .min(Comparator.comparingLong(entry -> entry.getValue().lastSequence))
+                            .ifPresent(entry -> tagRings.remove(entry.getKey()));
+                }
+                tagRing = new Ring(capacity, sequence.get());
+                tagRings.put(tag, tagRing);
+                return tagRing;
+            }
+        }
+
+        /**
+         * Returns the index of a tag, if it holds all the entries of this tag still in the buffer.
+         *
+         * @param tag Lowercase tag
+         * @param minSequence Sequence of the oldest entry still in the buffer
+         * @return Index, null if the tag is not indexed or indexed too recently
+         */
+        Ring getTagRing(String tag, long minSequence) {
+            Ring tagRing = tagRings.get(tag);
+            if (tagRing == null || tagRing.fromSequence > minSequence) {
+                return null;
+            }
+            return tagRing;
+        }
+
+        /**
+         * Returns the index containing at least all the entries of a minimum level.
+         *
+         * @param minLevel Minimum level, can be null
+         * @return Index
+         */
+        Ring getLevelRing(Level minLevel) {
+            Ring ring = entries;
+            for (int i = 0; minLevel != null && i < INDEXED_LEVELS.length && INDEXED_LEVELS[i].toInt() <= minLevel.toInt(); i++) {
+                ring = levelRings[i];
             }
+            return ring;
         }
-        
-        int fromIndex = logEntryList.size() - list.getOffset() - list.getLimit();
-        if (fromIndex < 0) {
-            fromIndex = 0;
+
+        /**
+         * Returns the sequence of the oldest entry still in the buffer.
+         * Indexes may hold older entries, they are ignored.
+         *
+         * @param maxSequence Sequence of the next entry
+         * @return Minimum sequence
+         */
+        long getMinSequence(long maxSequence) {
+            return maxSequence - capacity;
         }
-        int toIndex = logEntryList.size() - list.getOffset();
-        if (toIndex > logEntryList.size()) {
-            toIndex = logEntryList.size();
+    }
+
+    /**
+     * Fixed-size ring of log entries, lock-free.
+     */
+    private static class Ring {
+        /**
+         * Log entries.
+         */
+        private final AtomicReferenceArray<LogEntry> slots;
+
+        /**
+         * Next position to write.
+         */
+        private final AtomicLong position = new AtomicLong();
+
+        /**
+         * Sequence from which all the entries of this ring are added.
+         */
+        private final long fromSequence;
+
+        /**
+         * Sequence of the last entry added.
+         */
+        private volatile long lastSequence = -1;
+
+        Ring(int capacity, long fromSequence) {
+            slots = new AtomicReferenceArray<>(capacity);
+            this.fromSequence = fromSequence;
+        }
+
+        /**
+         * Add a log entry, overwriting the oldest one if the ring is full.
+         *
+         * @param logEntry Log entry
+         */
+        void add(LogEntry logEntry) {
+            slots.set((int) (position.getAndIncrement() % slots.length()), logEntry);
+            lastSequence = logEntry.getSequence();
+        }
+
+        /**
+         * Visit the log entries from the newest to the oldest.
+         * Entries overwritten during the visit are skipped.
+         *
+         * @param minSequence Minimum sequence of the entries to visit
+         * @param maxSequence Maximum sequence of the entries to visit (exclusive)
+         * @param visitor Visitor
+         */
+        void forEachNewest(long minSequence, long maxSequence, Consumer<LogEntry> visitor) {
+            long end = position.get();
+            long start = Math.max(0, end - slots.length());
+            for (long i = end - 1; i >= start; i--) {
+                LogEntry logEntry = slots.get((int) (i % slots.length()));
+                if (logEntry == null || logEntry.getSequence() >= maxSequence) {
+                    // Not written yet, or overwritten since the visit started
+                    continue;
+                }
+                if (logEntry.getSequence() < minSequence) {
+                    // No more in the buffer
+                    continue;
+                }
+                visitor.accept(logEntry);
+            }
         }
-        List<LogEntry> logEntrySubList = Lists.reverse(logEntryList.subList(fromIndex, toIndex));
-        list.setResultCount(resultCount);
-        list.setResultList(logEntrySubList);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,3 @@
+alter table T_FILE add column FIL_HASH_C varchar(64);
+create index IDX_FIL_HASH_C ON T_FILE (FIL_HASH_C ASC);
+update T_CONFIG set CFG_VALUE_C = '32' where CFG_ID_C = 'DB_VERSION';
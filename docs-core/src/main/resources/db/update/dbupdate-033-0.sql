@@ -0,0 +1,15 @@
+create memory table T_GROUP_CLOSURE ( GCL_IDANCESTOR_C varchar(36) not null, GCL_IDDESCENDANT_C varchar(36) not null, GCL_DEPTH_N int not null, primary key (GCL_IDANCESTOR_C, GCL_IDDESCENDANT_C) );
+create index IDX_GCL_IDDESCENDANT_C on T_GROUP_CLOSURE (GCL_IDDESCENDANT_C ASC);
+create index IDX_UGP_IDUSER_C on T_USER_GROUP (UGP_IDUSER_C ASC);
+insert into T_GROUP_CLOSURE (GCL_IDANCESTOR_C, GCL_IDDESCENDANT_C, GCL_DEPTH_N) select g.GRP_ID_C, g.GRP_ID_C, 0 from T_GROUP g where g.GRP_DELETEDATE_D is null;
+insert into T_GROUP_CLOSURE (GCL_IDANCESTOR_C, GCL_IDDESCENDANT_C, GCL_DEPTH_N) select distinct g.GRP_IDPARENT_C, c.GCL_IDDESCENDANT_C, 1 from T_GROUP_CLOSURE c join T_GROUP g on g.GRP_ID_C = c.GCL_IDANCESTOR_C join T_GROUP gp on gp.GRP_ID_C = g.GRP_IDPARENT_C and gp.GRP_DELETEDATE_D is null where c.GCL_DEPTH_N = 0 and not exists (select 1 from T_GROUP_CLOSURE c2 where c2.GCL_IDANCESTOR_C = g.GRP_IDPARENT_C and c2.GCL_IDDESCENDANT_C = c.GCL_IDDESCENDANT_C);
+insert into T_GROUP_CLOSURE (GCL_IDANCESTOR_C, GCL_IDDESCENDANT_C, GCL_DEPTH_N) select distinct g.GRP_IDPARENT_C, c.GCL_IDDESCENDANT_C, 2 from T_GROUP_CLOSURE c join T_GROUP g on g.GRP_ID_C = c.GCL_IDANCESTOR_C join T_GROUP gp on gp.GRP_ID_C = g.GRP_IDPARENT_C and gp.GRP_DELETEDATE_D is null where c.GCL_DEPTH_N = 1 and not exists (select 1 from T_GROUP_CLOSURE c2 where c2.GCL_IDANCESTOR_C = g.GRP_IDPARENT_C and c2.GCL_IDDESCENDANT_C = c.GCL_IDDESCENDANT_C);
+insert into T_GROUP_CLOSURE (GCL_IDANCESTOR_C, GCL_IDDESCENDANT_C, GCL_DEPTH_N) select distinct g.GRP_IDPARENT_C, c.GCL_IDDESCENDANT_C, 3 from T_GROUP_CLOSURE c join T_GROUP g on g.GRP_ID_C = c.GCL_IDANCESTOR_C join T_GROUP gp on gp.GRP_ID_C = g.GRP_IDPARENT_C and gp.GRP_DELETEDATE_D is null where c.GCL_DEPTH_N = 2 and not exists (select 1 from T_GROUP_CLOSURE c2 where c2.GCL_IDANCESTOR_C = g.GRP_IDPARENT_C and c2.GCL_IDDESCENDANT_C = c.GCL_IDDESCENDANT_C);
+insert into T_GROUP_CLOSURE (GCL_IDANCESTOR_C, GCL_IDDESCENDANT_C, GCL_DEPTH_N) select distinct g.GRP_IDPARENT_C, c.GCL_IDDESCENDANT_C, 4 from T_GROUP_CLOSURE c join T_GROUP g on g.GRP_ID_C = c.GCL_IDANCESTOR_C join T_GROUP gp on gp.GRP_ID_C = g.GRP_IDPARENT_C and gp.GRP_DELETEDATE_D is null where c.GCL_DEPTH_N = 3 and not exists (select 1 from T_GROUP_CLOSURE c2 where c2.GCL_IDANCESTOR_C = g.GRP_IDPARENT_C and c2.GCL_IDDESCENDANT_C = c.GCL_IDDESCENDANT_C);
+insert into T_GROUP_CLOSURE (GCL_IDANCESTOR_C, GCL_IDDESCENDANT_C, GCL_DEPTH_N) select distinct g.GRP_IDPARENT_C, c.GCL_IDDESCENDANT_C, 5 from T_GROUP_CLOSURE c join T_GROUP g on g.GRP_ID_C = c.GCL_IDANCESTOR_C join T_GROUP gp on gp.GRP_ID_C = g.GRP_IDPARENT_C and gp.GRP_DELETEDATE_D is null where c.GCL_DEPTH_N = 4 and not exists (select 1 from T_GROUP_CLOSURE c2 where c2.GCL_IDANCESTOR_C = g.GRP_IDPARENT_C and c2.GCL_IDDESCENDANT_C = c.GCL_IDDESCENDANT_C);
+insert into T_GROUP_CLOSURE (GCL_IDANCESTOR_C, GCL_IDDESCENDANT_C, GCL_DEPTH_N) select distinct g.GRP_IDPARENT_C, c.GCL_IDDESCENDANT_C, 6 from T_GROUP_CLOSURE c join T_GROUP g on g.GRP_ID_C = c.GCL_IDANCESTOR_C join T_GROUP gp on gp.GRP_ID_C = g.GRP_IDPARENT_C and gp.GRP_DELETEDATE_D is null where c.GCL_DEPTH_N = 5 and not exists (select 1 from T_GROUP_CLOSURE c2 where c2.GCL_IDANCESTOR_C = g.GRP_IDPARENT_C and c2.GCL_IDDESCENDANT_C = c.GCL_IDDESCENDANT_C);
+insert into T_GROUP_CLOSURE (GCL_IDANCESTOR_C, GCL_IDDESCENDANT_C, GCL_DEPTH_N) select distinct g.GRP_IDPARENT_C, c.GCL_IDDESCENDANT_C, 7 from T_GROUP_CLOSURE c join T_GROUP g on g.GRP_ID_C = c.GCL_IDANCESTOR_C join T_GROUP gp on gp.GRP_ID_C = g.GRP_IDPARENT_C and gp.GRP_DELETEDATE_D is null where c.GCL_DEPTH_N = 6 and not exists (select 1 from T_GROUP_CLOSURE c2 where c2.GCL_IDANCESTOR_C = g.GRP_IDPARENT_C and c2.GCL_IDDESCENDANT_C = c.GCL_IDDESCENDANT_C);
+insert into T_GROUP_CLOSURE (GCL_IDANCESTOR_C, GCL_IDDESCENDANT_C, GCL_DEPTH_N) select distinct g.GRP_IDPARENT_C, c.GCL_IDDESCENDANT_C, 8 from T_GROUP_CLOSURE c join T_GROUP g on g.GRP_ID_C = c.GCL_IDANCESTOR_C join T_GROUP gp on gp.GRP_ID_C = g.GRP_IDPARENT_C and gp.GRP_DELETEDATE_D is null where c.GCL_DEPTH_N = 7 and not exists (select 1 from T_GROUP_CLOSURE c2 where c2.GCL_IDANCESTOR_C = g.GRP_IDPARENT_C and c2.GCL_IDDESCENDANT_C = c.GCL_IDDESCENDANT_C);
+insert into T_GROUP_CLOSURE (GCL_IDANCESTOR_C, GCL_IDDESCENDANT_C, GCL_DEPTH_N) select distinct g.GRP_IDPARENT_C, c.GCL_IDDESCENDANT_C, 9 from T_GROUP_CLOSURE c join T_GROUP g on g.GRP_ID_C = c.GCL_IDANCESTOR_C join T_GROUP gp on gp.GRP_ID_C = g.GRP_IDPARENT_C and gp.GRP_DELETEDATE_D is null where c.GCL_DEPTH_N = 8 and not exists (select 1 from T_GROUP_CLOSURE c2 where c2.GCL_IDANCESTOR_C = g.GRP_IDPARENT_C and c2.GCL_IDDESCENDANT_C = c.GCL_IDDESCENDANT_C);
+insert into T_GROUP_CLOSURE (GCL_IDANCESTOR_C, GCL_IDDESCENDANT_C, GCL_DEPTH_N) select distinct g.GRP_IDPARENT_C, c.GCL_IDDESCENDANT_C, 10 from T_GROUP_CLOSURE c join T_GROUP g on g.GRP_ID_C = c.GCL_IDANCESTOR_C join T_GROUP gp on gp.GRP_ID_C = g.GRP_IDPARENT_C and gp.GRP_DELETEDATE_D is null where c.GCL_DEPTH_N = 9 and not exists (select 1 from T_GROUP_CLOSURE c2 where c2.GCL_IDANCESTOR_C = g.GRP_IDPARENT_C and c2.GCL_IDDESCENDANT_C = c.GCL_IDDESCENDANT_C);
+update T_CONFIG set CFG_VALUE_C = '33' where CFG_ID_C = 'DB_VERSION';
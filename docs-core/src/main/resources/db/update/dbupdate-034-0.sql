@@ -0,0 +1,3 @@
+create cached table T_WEBHOOK_DELIVERY ( WHD_ID_C varchar(36) not null, WHD_URL_C varchar(1024) not null, WHD_PAYLOAD_C varchar(4000) not null, WHD_ATTEMPT_N int not null, WHD_NEXTATTEMPTDATE_D datetime not null, WHD_CREATEDATE_D datetime not null, primary key (WHD_ID_C) );
+create index IDX_WHD_NEXTATTEMPTDATE_D ON T_WEBHOOK_DELIVERY (WHD_NEXTATTEMPTDATE_D ASC);
+update T_CONFIG set CFG_VALUE_C = '34' where CFG_ID_C = 'DB_VERSION';
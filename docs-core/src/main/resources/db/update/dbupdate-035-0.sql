@@ -0,0 +1,3 @@
+alter table T_FILE add column FIL_BLOBID_C varchar(64);
+create index IDX_FIL_BLOBID_C ON T_FILE (FIL_BLOBID_C ASC);
+update T_CONFIG set CFG_VALUE_C = '35' where CFG_ID_C = 'DB_VERSION';
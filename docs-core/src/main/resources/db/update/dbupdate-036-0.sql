@@ -0,0 +1,4 @@
+create cached table T_FILE_CONTENT ( FIC_IDFILE_C varchar(36) not null, FIC_CONTENT_C longvarchar, primary key (FIC_IDFILE_C) );
+insert into T_FILE_CONTENT (FIC_IDFILE_C, FIC_CONTENT_C) select FIL_ID_C, FIL_CONTENT_C from T_FILE where FIL_CONTENT_C is not null;
+alter table T_FILE drop column FIL_CONTENT_C;
+update T_CONFIG set CFG_VALUE_C = '36' where CFG_ID_C = 'DB_VERSION';
@@ -1,6 +1,7 @@
 package com.sismics.docs.core.dao.jpa;
 
 import com.sismics.docs.BaseTransactionalTest;
+import com.sismics.docs.core.dao.FileContentDao;
 import com.sismics.docs.core.dao.UserDao;
 import com.sismics.docs.core.model.jpa.User;
 import com.sismics.docs.core.util.TransactionUtil;
@@ -8,6 +9,9 @@ import com.sismics.docs.core.util.authentication.InternalAuthenticationHandler;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.util.Arrays;
+import java.util.Map;
+
 /**
  * Tests the persistance layer.
  * 
@@ -34,4 +38,27 @@ public class TestJpa extends BaseTransactionalTest {
         userDao.delete("testJpa", user.getId());
         TransactionUtil.commit();
     }
+
+    @Test
+    public void testFileContent() throws Exception {
+        // Create, read and replace the content of a file
+        FileContentDao fileContentDao = new FileContentDao();
+        fileContentDao.update("file1", "content1");
+        fileContentDao.update("file2", "content2");
+        TransactionUtil.commit();
+        Assert.assertEquals("content1", fileContentDao.getContent("file1"));
+        fileContentDao.update("file1", "content1 updated");
+        TransactionUtil.commit();
+
+        // Read the content of multiple files
+        Map<String, String> contentMap = fileContentDao.getContentMap(Arrays.asList("file1", "file2", "file3"));
+        Assert.assertEquals(2, contentMap.size());
+        Assert.assertEquals("content1 updated", contentMap.get("file1"));
+        Assert.assertEquals("content2", contentMap.get("file2"));
+
+        // Remove the content of a file
+        fileContentDao.update("file2", null);
+        TransactionUtil.commit();
+        Assert.assertNull(fileContentDao.getContent("file2"));
+    }
 }
@@ -1,5 +1,7 @@
 package com.sismics.docs.core.service;
 
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteStreams;
 import com.sismics.docs.BaseTransactionalTest;
 import com.sismics.docs.core.dao.FileDao;
 import com.sismics.docs.core.model.jpa.File;
@@ -7,6 +9,8 @@ import com.sismics.docs.core.model.jpa.User;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.io.InputStream;
+
 public class TestFileSizeService extends BaseTransactionalTest {
 
     @Test
@@ -18,5 +22,9 @@ public class TestFileSizeService extends BaseTransactionalTest {
         FileSizeService fileSizeService = new FileSizeService();
         fileSizeService.processFile(file);
         Assert.assertEquals(fileDao.getFile(file.getId()).getSize(), Long.valueOf(FILE_JPG_SIZE));
+        try (InputStream inputStream = getSystemResourceAsStream(FILE_JPG)) {
+            Assert.assertEquals(Hashing.sha256().hashBytes(ByteStreams.toByteArray(inputStream)).toString(),
+                    fileDao.getFile(file.getId()).getHash());
+        }
     }
 }
@@ -0,0 +1,94 @@
+package com.sismics.docs.core.util;
+
+import com.google.common.collect.Sets;
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteStreams;
+import com.sismics.docs.BaseTransactionalTest;
+import com.sismics.docs.core.dao.FileDao;
+import com.sismics.docs.core.model.jpa.File;
+import org.junit.Assert;
+import org.junit.Test;
+
+import javax.crypto.CipherInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Test of the content-addressed storage.
+ */
+public class TestBlobUtil extends BaseTransactionalTest {
+    @Test
+    public void storeTest() throws Exception {
+        BlobUtil.createSecret();
+        Path unencryptedFile = Paths.get(getResource(FILE_JPG).toURI());
+        String hash = FileUtil.computeHash(unencryptedFile);
+
+        // Identical files share the same blob, named after neither the hash nor its hash
+        String blobId = BlobUtil.store(unencryptedFile, hash);
+        Assert.assertEquals(blobId, BlobUtil.store(unencryptedFile, hash));
+        Assert.assertNotEquals(hash, blobId);
+        Assert.assertNotEquals(Hashing.sha256().hashString(hash, StandardCharsets.UTF_8).toString(), blobId);
+        Path blobFile = BlobUtil.getBlobFile(blobId);
+        Assert.assertTrue(Files.exists(blobFile));
+
+        // The blob is encrypted with a key derived from the content hash, not with the hash itself
+        Assert.assertNotEquals(hash, BlobUtil.getKey(hash));
+        try (InputStream inputStream = EncryptionUtil.decryptInputStream(Files.newInputStream(blobFile), BlobUtil.getKey(hash))) {
+            Assert.assertArrayEquals(Files.readAllBytes(unencryptedFile), ByteStreams.toByteArray(inputStream));
+        }
+        try (InputStream inputStream = EncryptionUtil.decryptInputStream(Files.newInputStream(blobFile), hash)) {
+            Assert.assertFalse(Arrays.equals(Files.readAllBytes(unencryptedFile), ByteStreams.toByteArray(inputStream)));
+        }
+
+        // Recent blobs are kept even if not referenced
+        Assert.assertEquals(0, BlobUtil.clean(Collections.emptySet()));
+        Assert.assertTrue(Files.exists(blobFile));
+
+        // Old referenced blobs are kept
+        Files.setLastModifiedTime(blobFile, FileTime.fromMillis(System.currentTimeMillis() - TimeUnit.HOURS.toMillis(2)));
+        Assert.assertEquals(0, BlobUtil.clean(Sets.newHashSet(blobId)));
+        Assert.assertTrue(Files.exists(blobFile));
+
+        // Old unreferenced blobs are deleted
+        Assert.assertEquals(1, BlobUtil.clean(Collections.emptySet()));
+        Assert.assertFalse(Files.exists(blobFile));
+    }
+
+    @Test
+    public void createSecretTest() throws Exception {
+        // A blob stored before the secret existed, named after the hash of the hash and encrypted with the hash
+        Path unencryptedFile = Paths.get(getResource(FILE_JPG).toURI());
+        String hash = FileUtil.computeHash(unencryptedFile);
+        String oldBlobId = Hashing.sha256().hashString(hash, StandardCharsets.UTF_8).toString();
+        try (InputStream inputStream = new CipherInputStream(Files.newInputStream(unencryptedFile), EncryptionUtil.getEncryptionCipher(hash))) {
+            Files.copy(inputStream, BlobUtil.getBlobFile(oldBlobId), StandardCopyOption.REPLACE_EXISTING);
+        }
+        FileDao fileDao = new FileDao();
+        File file = fileDao.getFile(createFile(createUser("blob_secret"), Files.size(unencryptedFile)).getId());
+        file.setHash(hash);
+        file.setBlobId(oldBlobId);
+
+        // The blob is moved to the secret naming and key
+        BlobUtil.createSecret();
+        Map<String, String> blobHashMap = fileDao.getBlobHashMap();
+        Assert.assertFalse(blobHashMap.containsKey(oldBlobId));
+        String blobId = blobHashMap.entrySet().stream()
+                .filter(entry -> entry.getValue().equals(hash))
+                .map(Map.Entry::getKey)
+                .findFirst().orElseThrow();
+        try (InputStream inputStream = EncryptionUtil.decryptInputStream(Files.newInputStream(BlobUtil.getBlobFile(blobId)), BlobUtil.getKey(hash))) {
+            Assert.assertArrayEquals(Files.readAllBytes(unencryptedFile), ByteStreams.toByteArray(inputStream));
+        }
+        Files.deleteIfExists(BlobUtil.getBlobFile(oldBlobId));
+        Files.deleteIfExists(BlobUtil.getBlobFile(blobId));
+    }
+}
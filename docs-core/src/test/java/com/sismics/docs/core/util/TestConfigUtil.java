@@ -0,0 +1,54 @@
+package com.sismics.docs.core.util;
+
+import com.sismics.docs.BaseTransactionalTest;
+import com.sismics.docs.core.constant.ConfigType;
+import com.sismics.docs.core.dao.ConfigDao;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Test of the configuration cache.
+ */
+public class TestConfigUtil extends BaseTransactionalTest {
+    @Test
+    public void configTest() {
+        // Default values are loaded from the database
+        Assert.assertEquals("eng", ConfigUtil.getConfigStringValue(ConfigType.DEFAULT_LANGUAGE));
+        Assert.assertTrue(ConfigUtil.getConfigBooleanValue(ConfigType.GUEST_LOGIN));
+        Assert.assertEquals("", ConfigUtil.getConfigValue(ConfigType.INBOX_HOSTNAME));
+        Assert.assertNull(ConfigUtil.getConfigValue(ConfigType.LDAP_HOST));
+        try {
+            ConfigUtil.getConfigStringValue(ConfigType.LDAP_HOST);
+            Assert.fail();
+        } catch (IllegalStateException e) {
+            // Undefined parameter
+        }
+
+        // The changes are cached as soon as committed, listeners are notified of the changes only
+        List<String> valueList = new ArrayList<>();
+        Consumer<String> listener = valueList::add;
+        ConfigUtil.addListener(ConfigType.GUEST_LOGIN, listener);
+        ConfigDao configDao = new ConfigDao();
+        configDao.update(ConfigType.GUEST_LOGIN, "false");
+        configDao.update(ConfigType.DEFAULT_LANGUAGE, "fra");
+        Assert.assertTrue(ConfigUtil.getConfigBooleanValue(ConfigType.GUEST_LOGIN));
+        Assert.assertEquals("eng", ConfigUtil.getConfigStringValue(ConfigType.DEFAULT_LANGUAGE));
+        TransactionUtil.commit();
+        Assert.assertFalse(ConfigUtil.getConfigBooleanValue(ConfigType.GUEST_LOGIN));
+        Assert.assertEquals("fra", ConfigUtil.getConfigStringValue(ConfigType.DEFAULT_LANGUAGE));
+        Assert.assertEquals(1, valueList.size());
+        Assert.assertEquals("false", valueList.get(0));
+
+        // Removed listeners are not notified anymore
+        ConfigUtil.removeListener(ConfigType.GUEST_LOGIN, listener);
+        configDao.update(ConfigType.GUEST_LOGIN, "true");
+        configDao.update(ConfigType.DEFAULT_LANGUAGE, "eng");
+        TransactionUtil.commit();
+        Assert.assertTrue(ConfigUtil.getConfigBooleanValue(ConfigType.GUEST_LOGIN));
+        Assert.assertEquals("eng", ConfigUtil.getConfigStringValue(ConfigType.DEFAULT_LANGUAGE));
+        Assert.assertEquals(1, valueList.size());
+    }}
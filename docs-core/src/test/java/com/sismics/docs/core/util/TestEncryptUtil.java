@@ -9,6 +9,9 @@ import org.junit.Test;
 import javax.crypto.Cipher;
 import javax.crypto.CipherInputStream;
 import java.io.InputStream;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
 
 /**
  * Test of the encryption utilities.
@@ -48,4 +51,26 @@ public class TestEncryptUtil extends BaseTest {
         
         Assert.assertEquals(encryptedData.length, assertData.length);
     }
+
+    @Test
+    public void decryptStreamOffsetTest() throws Exception {
+        Path encryptedFile = Paths.get(ClassLoader.getSystemResource("file/" + FILE_PDF_ENCRYPTED).toURI());
+        byte[] assertData = ByteStreams.toByteArray(EncryptionUtil.decryptInputStream(
+                getSystemResourceAsStream(FILE_PDF_ENCRYPTED), "OnceUponATime"));
+        for (int offset : new int[] { 0, 1, 16, 1000, 4099, assertData.length - 1 }) {
+            try (InputStream inputStream = EncryptionUtil.decryptInputStream(encryptedFile, "OnceUponATime", offset)) {
+                byte[] decryptedData = ByteStreams.toByteArray(inputStream);
+                Assert.assertArrayEquals(Arrays.copyOfRange(assertData, offset, assertData.length), decryptedData);
+            }
+        }
+    }
+
+    @Test
+    public void keyCacheTest() throws Exception {
+        long hitCount = EncryptionUtil.getKeyCacheStats().hitCount();
+        Cipher cipher1 = EncryptionUtil.getEncryptionCipher("OnceUponATime");
+        Cipher cipher2 = EncryptionUtil.getEncryptionCipher("OnceUponATime");
+        Assert.assertNotSame(cipher1, cipher2);
+        Assert.assertTrue(EncryptionUtil.getKeyCacheStats().hitCount() > hitCount);
+    }
 }
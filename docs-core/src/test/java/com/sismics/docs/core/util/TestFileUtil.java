@@ -2,7 +2,7 @@ package com.sismics.docs.core.util;
 
 import com.google.common.collect.Lists;
 import com.google.common.io.Resources;
-import com.sismics.BaseTest;
+import com.sismics.docs.BaseTransactionalTest;
 import com.sismics.docs.core.dao.dto.DocumentDto;
 import com.sismics.docs.core.model.jpa.File;
 import com.sismics.docs.core.util.format.*;
@@ -13,18 +13,22 @@ import org.junit.Test;
 
 import java.io.ByteArrayOutputStream;
 import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
 import java.util.Date;
+import java.util.Set;
+import java.util.UUID;
 
 /**
  * Test of the file utilities.
  * 
  * @author bgamard
  */
-public class TestFileUtil extends BaseTest {
+public class TestFileUtil extends BaseTransactionalTest {
     @Test
     public void extractContentOpenDocumentTextTest() throws Exception {
         Path path = Paths.get(getResource(FILE_ODT).toURI());
@@ -55,6 +59,47 @@ public class TestFileUtil extends BaseTest {
         Assert.assertTrue(content.contains("Scaling"));
     }
 
+    @Test
+    public void contentCacheTest() throws Exception {
+        BlobUtil.createSecret();
+        Path path = Paths.get(getResource(FILE_ODT).toURI());
+        FormatHandler formatHandler = FormatHandlerUtil.find(MimeTypeUtil.guessMimeType(path, FILE_ODT));
+        String hash = FileUtil.computeHash(path);
+        Assert.assertEquals(64, hash.length());
+        Assert.assertEquals(hash, FileUtil.computeHash(path));
+
+        // The content is cached by hash, language, OCR setting and handler
+        hash = UUID.randomUUID().toString();
+        Assert.assertNull(ContentCacheUtil.getContent(hash, "eng", true, formatHandler));
+        ContentCacheUtil.putContent(hash, "eng", true, formatHandler, "Lorem ipsum dolor sit amen.");
+        Assert.assertEquals("Lorem ipsum dolor sit amen.", ContentCacheUtil.getContent(hash, "eng", true, formatHandler));
+        Assert.assertNull(ContentCacheUtil.getContent(hash, "fra", true, formatHandler));
+        Assert.assertNull(ContentCacheUtil.getContent(hash, "eng", false, formatHandler));
+        Assert.assertNull(ContentCacheUtil.getContent(hash, "eng", true, new TextPlainFormatHandler()));
+
+        // The cached contents are encrypted and not named after the hash
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(DirectoryUtil.getContentCacheDirectory())) {
+            for (Path cacheFile : stream) {
+                Assert.assertFalse(cacheFile.getFileName().toString().startsWith(hash));
+                Assert.assertFalse(new String(Files.readAllBytes(cacheFile), StandardCharsets.UTF_8).contains("Lorem ipsum"));
+            }
+        }
+
+        // The cached contents are purged with their hash
+        ContentCacheUtil.putContent(hash, "fra", true, formatHandler, "Lorem ipsum dolor sit amen.");
+        ContentCacheUtil.purge(hash);
+        Assert.assertNull(ContentCacheUtil.getContent(hash, "eng", true, formatHandler));
+        Assert.assertNull(ContentCacheUtil.getContent(hash, "fra", true, formatHandler));
+
+        // The cached contents of unused hashes are cleaned
+        String otherHash = UUID.randomUUID().toString();
+        ContentCacheUtil.putContent(hash, "eng", true, formatHandler, "Lorem ipsum dolor sit amen.");
+        ContentCacheUtil.putContent(otherHash, "eng", true, formatHandler, "Lorem ipsum dolor sit amen.");
+        Assert.assertTrue(ContentCacheUtil.clean(Set.of(otherHash)) >= 1);
+        Assert.assertNull(ContentCacheUtil.getContent(hash, "eng", true, formatHandler));
+        Assert.assertEquals("Lorem ipsum dolor sit amen.", ContentCacheUtil.getContent(otherHash, "eng", true, formatHandler));
+    }
+
     @Test
     public void extractContentPdf() throws Exception {
         Path path = Paths.get(getResource(FILE_PDF).toURI());
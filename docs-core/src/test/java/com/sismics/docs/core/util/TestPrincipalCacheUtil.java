@@ -0,0 +1,35 @@
+package com.sismics.docs.core.util;
+
+import com.sismics.docs.BaseTransactionalTest;
+import com.sismics.docs.core.dao.AuthenticationTokenDao;
+import com.sismics.docs.core.model.jpa.AuthenticationToken;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Test of the principal cache.
+ */
+public class TestPrincipalCacheUtil extends BaseTransactionalTest {
+    @Test
+    public void tokenTest() {
+        // Unknown tokens are looked up once
+        long missCount = PrincipalCacheUtil.getCacheStats().missCount();
+        Assert.assertNull(PrincipalCacheUtil.getAuthenticationToken("unknown"));
+        Assert.assertNull(PrincipalCacheUtil.getAuthenticationToken("unknown"));
+        Assert.assertEquals(missCount + 1, PrincipalCacheUtil.getCacheStats().missCount());
+
+        // Evicted unknown tokens are looked up again
+        PrincipalCacheUtil.evict(null, "unknown");
+        Assert.assertNull(PrincipalCacheUtil.getAuthenticationToken("unknown"));
+        Assert.assertEquals(missCount + 2, PrincipalCacheUtil.getCacheStats().missCount());
+
+        // Existing tokens are cached
+        String tokenId = new AuthenticationTokenDao().create(new AuthenticationToken()
+                .setUserId("admin")
+                .setLongLasted(false));
+        Assert.assertEquals("admin", PrincipalCacheUtil.getAuthenticationToken(tokenId).getUserId());
+        long hitCount = PrincipalCacheUtil.getCacheStats().hitCount();
+        Assert.assertEquals("admin", PrincipalCacheUtil.getAuthenticationToken(tokenId).getUserId());
+        Assert.assertEquals(hitCount + 1, PrincipalCacheUtil.getCacheStats().hitCount());
+    }
+}
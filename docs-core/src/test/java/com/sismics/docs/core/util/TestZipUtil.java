@@ -0,0 +1,68 @@
+package com.sismics.docs.core.util;
+
+import com.sismics.docs.BaseTransactionalTest;
+import com.sismics.docs.core.model.jpa.File;
+import com.sismics.docs.core.model.jpa.User;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Test of the ZIP utilities.
+ */
+public class TestZipUtil extends BaseTransactionalTest {
+    @Test
+    public void abortTest() throws Exception {
+        User user = createUser("zip_abort");
+        List<File> fileList = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            fileList.add(createFile(user, 0));
+        }
+
+        // The client stops reading during the first entry
+        OutputStream outputStream = new OutputStream() {
+            private int count;
+
+            @Override
+            public void write(int b) throws IOException {
+                if (++count > 1000) {
+                    throw new IOException("Connection closed");
+                }
+            }
+        };
+        long decryptedFileCount = countDecryptedFiles();
+        try {
+            ZipUtil.zipFiles(fileList.iterator(), outputStream);
+            Assert.fail();
+        } catch (IOException e) {
+            // The export is aborted
+        }
+
+        // No decrypted file is left behind
+        Assert.assertEquals(decryptedFileCount, countDecryptedFiles());
+    }
+
+    /**
+     * Count the decrypted files of the ZIP exports in the temporary directory.
+     *
+     * @return Number of files
+     * @throws IOException e
+     */
+    private long countDecryptedFiles() throws IOException {
+        long count = 0;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(Paths.get(System.getProperty("java.io.tmpdir")), "sismics_docs_zip*")) {
+            for (Path ignored : stream) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
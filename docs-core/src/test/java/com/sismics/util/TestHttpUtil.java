@@ -0,0 +1,22 @@
+package com.sismics.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Test of the HTTP utilities.
+ */
+public class TestHttpUtil {
+    @Test
+    public void testMatchIfNoneMatch() {
+        Assert.assertFalse(HttpUtil.matchIfNoneMatch(null, "\"abc\""));
+        Assert.assertTrue(HttpUtil.matchIfNoneMatch("\"abc\"", "\"abc\""));
+        Assert.assertFalse(HttpUtil.matchIfNoneMatch("\"abcd\"", "\"abc\""));
+        Assert.assertTrue(HttpUtil.matchIfNoneMatch("*", "\"abc\""));
+        Assert.assertTrue(HttpUtil.matchIfNoneMatch("\"xyz\", \"abc\"", "\"abc\""));
+        Assert.assertTrue(HttpUtil.matchIfNoneMatch("W/\"abc\"", "\"abc\""));
+        Assert.assertTrue(HttpUtil.matchIfNoneMatch("\"abc\"", "W/\"abc\""));
+        Assert.assertFalse(HttpUtil.matchIfNoneMatch("\"x,abc\"", "\"abc\""));
+        Assert.assertTrue(HttpUtil.matchIfNoneMatch("\"x,abc\",W/\"abc\"", "\"abc\""));
+    }
+}
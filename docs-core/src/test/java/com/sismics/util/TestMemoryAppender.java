@@ -0,0 +1,88 @@
+package com.sismics.util;
+
+import com.sismics.docs.core.util.jpa.PaginatedList;
+import com.sismics.docs.core.util.jpa.PaginatedLists;
+import com.sismics.util.log4j.LogCriteria;
+import com.sismics.util.log4j.LogEntry;
+import com.sismics.util.log4j.MemoryAppender;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.apache.log4j.spi.LoggingEvent;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Test of the memory appender.
+ */
+public class TestMemoryAppender {
+    @Test
+    public void test() {
+        MemoryAppender appender = new MemoryAppender();
+        appender.setSize(10);
+        Logger loggerA = Logger.getLogger("com.sismics.TagA");
+        Logger loggerB = Logger.getLogger("com.sismics.TagB");
+        for (int i = 0; i < 25; i++) {
+            appender.doAppend(new LoggingEvent(Logger.class.getName(), i % 2 == 0 ? loggerA : loggerB,
+                    i % 5 == 0 ? Level.ERROR : Level.INFO, "message " + i, null));
+        }
+
+        // Only the last entries are kept, from the oldest to the newest
+        Assert.assertEquals(10, appender.getLogList().size());
+        Assert.assertEquals("message 15", appender.getLogList().get(0).getMessage());
+        Assert.assertEquals("message 24", appender.getLogList().get(9).getMessage());
+
+        // Search all, newest first with paging
+        PaginatedList<LogEntry> list = PaginatedLists.create(3, 2);
+        appender.find(new LogCriteria(), list);
+        Assert.assertEquals(10, list.getResultCount());
+        Assert.assertEquals(3, list.getResultList().size());
+        Assert.assertEquals("message 22", list.getResultList().get(0).getMessage());
+        Assert.assertEquals("message 20", list.getResultList().get(2).getMessage());
+
+        // Search by level
+        list = PaginatedLists.create(10, 0);
+        appender.find(new LogCriteria().setMinLevel(Level.WARN), list);
+        Assert.assertEquals(2, list.getResultCount());
+        Assert.assertEquals("message 20", list.getResultList().get(0).getMessage());
+        Assert.assertEquals("message 15", list.getResultList().get(1).getMessage());
+
+        // Search by tag and level, evicted entries are ignored
+        list = PaginatedLists.create(10, 0);
+        appender.find(new LogCriteria().setTag("TagB").setMinLevel(Level.ERROR), list);
+        Assert.assertEquals(1, list.getResultCount());
+        Assert.assertEquals("message 15", list.getResultList().get(0).getMessage());
+
+        // Search by message
+        list = PaginatedLists.create(10, 0);
+        appender.find(new LogCriteria().setMessage("MESSAGE 2"), list);
+        Assert.assertEquals(5, list.getResultCount());
+
+        // Unknown tag
+        list = PaginatedLists.create(10, 0);
+        appender.find(new LogCriteria().setTag("unknown"), list);
+        Assert.assertEquals(0, list.getResultCount());
+        Assert.assertTrue(list.getResultList().isEmpty());
+    }
+
+    @Test
+    public void maxTagCountTest() {
+        MemoryAppender appender = new MemoryAppender();
+        appender.setSize(10);
+        appender.setMaxTagCount(2);
+        for (int i = 0; i < 30; i++) {
+            appender.doAppend(new LoggingEvent(Logger.class.getName(), Logger.getLogger("com.sismics.Tag" + i % 3),
+                    Level.INFO, "message " + i, null));
+        }
+
+        // Tags evicted from the index are still found
+        int[] resultCounts = { 3, 3, 4 };
+        for (int i = 0; i < 3; i++) {
+            PaginatedList<LogEntry> list = PaginatedLists.create(10, 0);
+            appender.find(new LogCriteria().setTag("Tag" + i), list);
+            Assert.assertEquals(resultCounts[i], list.getResultCount());
+            for (LogEntry logEntry : list.getResultList()) {
+                Assert.assertEquals("Tag" + i, logEntry.getTag());
+            }
+        }
+    }
+}
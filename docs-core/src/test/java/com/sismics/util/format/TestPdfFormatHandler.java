@@ -1,11 +1,16 @@
 package com.sismics.util.format;
 
 import com.sismics.BaseTest;
+import com.sismics.docs.core.util.FileUtil;
 import com.sismics.docs.core.util.format.PdfFormatHandler;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Test of {@link PdfFormatHandler}
@@ -25,4 +30,51 @@ public class TestPdfFormatHandler extends BaseTest {
         Assert.assertTrue(content.contains("Grundumsatzmessungen"));
         Assert.assertTrue(content.contains("ermitteln"));
     }
+
+    /**
+     * Test the OCR of the pages in parallel.
+     */
+    @Test
+    public void testOcrPages() throws Exception {
+        Path file = Paths.get(getResource(FILE_PDF_SCANNED).toURI());
+        int permits = FileUtil.getOcrSemaphore().availablePermits();
+
+        // All the pages are OCR-ized, without exceeding the shared permits
+        AtomicInteger runningCount = new AtomicInteger();
+        AtomicInteger maxRunningCount = new AtomicInteger();
+        AtomicInteger pageCount = new AtomicInteger();
+        PdfFormatHandler formatHandler = new PdfFormatHandler() {
+            @Override
+            protected String ocrPage(String language, BufferedImage image) throws Exception {
+                maxRunningCount.accumulateAndGet(runningCount.incrementAndGet(), Math::max);
+                try {
+                    Thread.sleep(100);
+                    return "page" + pageCount.incrementAndGet();
+                } finally {
+                    runningCount.decrementAndGet();
+                }
+            }
+        };
+        String content = formatHandler.extractContent("eng", file);
+        Assert.assertEquals(3, pageCount.get());
+        Assert.assertTrue(content.contains("page1"));
+        Assert.assertTrue(content.contains("page2"));
+        Assert.assertTrue(content.contains("page3"));
+        Assert.assertTrue(maxRunningCount.get() <= permits);
+        Assert.assertEquals(permits, FileUtil.getOcrSemaphore().availablePermits());
+
+        // The remaining pages are skipped after a failure, noticed before the next page is rendered
+        AtomicInteger failedPageCount = new AtomicInteger();
+        formatHandler = new PdfFormatHandler() {
+            @Override
+            protected String ocrPage(String language, BufferedImage image) throws Exception {
+                failedPageCount.incrementAndGet();
+                throw new IOException("OCR error");
+            }
+        };
+        content = formatHandler.extractContent("eng", file);
+        Assert.assertTrue(content.trim().isEmpty());
+        Assert.assertEquals(permits, FileUtil.getOcrSemaphore().availablePermits());
+        Assert.assertEquals(1, failedPageCount.get());
+    }
 }
@@ -0,0 +1,293 @@
+package com.sismics.util.filter;
+
+import com.auth0.jwt.JWT;
+import com.auth0.jwt.algorithms.Algorithm;
+import com.auth0.jwt.exceptions.JWTVerificationException;
+import com.auth0.jwt.interfaces.DecodedJWT;
+import com.auth0.jwt.interfaces.JWTVerifier;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import jakarta.json.Json;
+import jakarta.json.JsonArray;
+import jakarta.json.JsonObject;
+import jakarta.json.JsonReader;
+import jakarta.json.JsonValue;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.security.cert.CertificateFactory;
+import java.security.interfaces.RSAPublicKey;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cache of the signing keys of the accepted JWT issuers, and of the tokens already verified.
+ * The tokens of the other issuers are rejected without fetching anything.
+ * The keys of an issuer are fetched from its JWKS endpoint once, then refreshed in the background when they are older than the TTL.
+ * A token signed by an unknown key triggers an immediate refresh, at most once per refresh interval per issuer.
+ * A verified token is trusted until it expires without being verified again.
+ */
+public class JwksCache {
+    /**
+     * Logger.
+     */
+    private static final Logger log = LoggerFactory.getLogger(JwksCache.class);
+
+    /**
+     * Maximum number of verified tokens cached.
+     */
+    private static final int MAX_TOKEN_COUNT = 10000;
+
+    /**
+     * HTTP client.
+     */
+    private final OkHttpClient client;
+
+    /**
+     * Time in milliseconds before the keys of an issuer are refreshed.
+     */
+    private final long ttl;
+
+    /**
+     * Minimum time in milliseconds between two fetches of the keys of an issuer.
+     */
+    private final long minRefreshInterval;
+
+    /**
+     * Signing keys by accepted issuer.
+     */
+    private final Map<String, IssuerKeys> issuerMap;
+
+    /**
+     * Expiration date of the verified tokens, by token hash.
+     */
+    private final Cache<String, Long> tokenCache = CacheBuilder.newBuilder()
+            .maximumSize(MAX_TOKEN_COUNT)
+            .build();
+
+    /**
+     * Executor refreshing the keys in the background.
+     */
+    private final ExecutorService refreshExecutor = Executors.newSingleThreadExecutor(
+            new ThreadFactoryBuilder().setNameFormat("jwks-refresh-%d").setDaemon(true).build());
+
+    /**
+     * Number of JWKS fetches.
+     */
+    private final AtomicLong fetchCount = new AtomicLong();
+
+    /**
+     * Constructor.
+     *
+     * @param client HTTP client
+     * @param issuerSet Accepted issuers
+     * @param ttl Time in milliseconds before the keys of an issuer are refreshed
+     * @param minRefreshInterval Minimum time in milliseconds between two fetches of the keys of an issuer
+     */
+    public JwksCache(OkHttpClient client, Set<String> issuerSet, long ttl, long minRefreshInterval) {
+        this.client = client;
+        ImmutableMap.Builder<String, IssuerKeys> issuerMapBuilder = ImmutableMap.builder();
+        for (String issuer : issuerSet) {
+            issuerMapBuilder.put(issuer, new IssuerKeys());
+        }
+        this.issuerMap = issuerMapBuilder.build();
+        this.ttl = ttl;
+        this.minRefreshInterval = minRefreshInterval;
+    }
+
+    /**
+     * Verify a token against the keys of its issuer, if accepted.
+     *
+     * @param jwt Decoded token
+     * @param token Raw token
+     * @return True if the token is valid
+     */
+    public boolean verify(DecodedJWT jwt, String token) {
+        IssuerKeys issuerKeys = jwt.getIssuer() == null ? null : issuerMap.get(jwt.getIssuer());
+        if (issuerKeys == null) {
+            log.debug("Invalid token, issuer not accepted: " + jwt.getIssuer());
+            return false;
+        }
+
+        String tokenHash = Hashing.sha256().hashString(token, StandardCharsets.UTF_8).toString();
+        Long expirationDate = tokenCache.getIfPresent(tokenHash);
+        if (expirationDate != null) {
+            if (expirationDate > System.currentTimeMillis()) {
+                return true;
+            }
+            tokenCache.invalidate(tokenHash);
+        }
+
+        JWTVerifier verifier = getVerifier(jwt.getIssuer(), issuerKeys, jwt.getKeyId());
+        if (verifier == null) {
+            log.debug("Invalid token, unknown key: " + jwt.getKeyId());
+            return false;
+        }
+        try {
+            verifier.verify(token);
+        } catch (JWTVerificationException e) {
+            log.debug("Invalid token: " + e.getMessage());
+            return false;
+        }
+
+        // Tokens without expiration are verified each time
+        if (jwt.getExpiresAt() != null) {
+            tokenCache.put(tokenHash, jwt.getExpiresAt().getTime());
+        }
+        return true;
+    }
+
+    /**
+     * Returns the number of JWKS fetches.
+     *
+     * @return Fetch count
+     */
+    public long getFetchCount() {
+        return fetchCount.get();
+    }
+
+    /**
+     * Returns the verifier of a signing key.
+     *
+     * @param issuer Accepted issuer
+     * @param issuerKeys Keys of the issuer
+     * @param keyId Key ID
+     * @return Verifier or null if the key is unknown
+     */
+    private JWTVerifier getVerifier(String issuer, IssuerKeys issuerKeys, String keyId) {
+        if (keyId == null) {
+            return null;
+        }
+
+        JWTVerifier verifier = issuerKeys.verifierMap.get(keyId);
+        if (verifier == null) {
+            // Unknown key, the issuer may have rotated its keys
+            synchronized (issuerKeys) {
+                verifier = issuerKeys.verifierMap.get(keyId);
+                if (verifier == null && System.currentTimeMillis() - issuerKeys.fetchAttemptDate >= minRefreshInterval) {
+                    refresh(issuer, issuerKeys);
+                    verifier = issuerKeys.verifierMap.get(keyId);
+                }
+            }
+        } else if (System.currentTimeMillis() - issuerKeys.fetchDate >= ttl
+                && issuerKeys.refreshing.compareAndSet(false, true)) {
+            // The keys are still used while being refreshed
+            refreshExecutor.execute(() -> {
+                try {
+                    synchronized (issuerKeys) {
+                        refresh(issuer, issuerKeys);
+                    }
+                } finally {
+                    issuerKeys.refreshing.set(false);
+                }
+            });
+        }
+        return verifier;
+    }
+
+    /**
+     * Fetch the keys of an issuer, the previous keys are kept if the issuer can't be reached.
+     *
+     * @param issuer Issuer
+     * @param issuerKeys Keys of the issuer
+     */
+    private void refresh(String issuer, IssuerKeys issuerKeys) {
+        issuerKeys.fetchAttemptDate = System.currentTimeMillis();
+        Map<String, JWTVerifier> verifierMap = fetchVerifiers(issuer);
+        if (verifierMap != null) {
+            issuerKeys.verifierMap = verifierMap;
+            issuerKeys.fetchDate = issuerKeys.fetchAttemptDate;
+        }
+    }
+
+    /**
+     * Fetch the JWKS of an issuer and build a verifier for each key.
+     *
+     * @param issuer Issuer
+     * @return Verifiers by key ID, null if the issuer can't be reached
+     */
+    private Map<String, JWTVerifier> fetchVerifiers(String issuer) {
+        String jwtIssuerCerts = issuer + "/protocol/openid-connect/certs";
+        Request request = new Request.Builder()
+                .url(jwtIssuerCerts)
+                .get()
+                .build();
+        fetchCount.incrementAndGet();
+        try (Response response = client.newCall(request).execute()) {
+            log.info("Called the jwt issuer at: " + jwtIssuerCerts + " - " + response.code());
+            if (!response.isSuccessful() || response.body() == null) {
+                return null;
+            }
+
+            JsonArray keys;
+            try (Reader reader = response.body().charStream();
+                 JsonReader jsonReader = Json.createReader(reader)) {
+                JsonObject jwks = jsonReader.readObject();
+                keys = jwks.getJsonArray("keys");
+            }
+
+            Map<String, JWTVerifier> verifierMap = new HashMap<>();
+            CertificateFactory certificateFactory = CertificateFactory.getInstance("X.509");
+            for (JsonValue key : keys) {
+                JsonObject jsonKey = key.asJsonObject();
+                JsonArray x5c = jsonKey.getJsonArray("x5c");
+                if (!jsonKey.containsKey("kid") || x5c == null || x5c.isEmpty()) {
+                    continue;
+                }
+                try {
+                    byte[] decode = Base64.getDecoder().decode(x5c.getString(0));
+                    RSAPublicKey publicKey = (RSAPublicKey) certificateFactory
+                            .generateCertificate(new ByteArrayInputStream(decode)).getPublicKey();
+                    verifierMap.put(jsonKey.getString("kid"), JWT.require(Algorithm.RSA256(publicKey, null)).build());
+                } catch (Exception e) {
+                    log.warn("Unable to read the key " + jsonKey.getString("kid") + " of the jwt issuer at: " + jwtIssuerCerts, e);
+                }
+            }
+            return verifierMap;
+        } catch (Exception e) {
+            log.error("Error calling the jwt issuer at: " + jwtIssuerCerts, e);
+            return null;
+        }
+    }
+
+    /**
+     * Signing keys of an issuer.
+     */
+    private static class IssuerKeys {
+        /**
+         * Verifiers by key ID.
+         */
+        private volatile Map<String, JWTVerifier> verifierMap = Collections.emptyMap();
+
+        /**
+         * Date of the last successful fetch.
+         */
+        private volatile long fetchDate;
+
+        /**
+         * Date of the last fetch attempt.
+         */
+        private volatile long fetchAttemptDate;
+
+        /**
+         * True while the keys are refreshed in the background.
+         */
+        private final AtomicBoolean refreshing = new AtomicBoolean();
+    }
+}
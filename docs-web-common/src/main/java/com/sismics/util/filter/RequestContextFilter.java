@@ -118,6 +118,7 @@ public class RequestContextFilter implements Filter {
                 if (statusClass == 2 || statusClass == 3) {
                     try {
                         em.getTransaction().commit();
+                        context.runAllPostCommitTasks();
                     } catch (Exception e) {
                         log.error("Error during commit", e);
                         r.sendError(500);
@@ -1,12 +1,8 @@
 package com.sismics.util.filter;
 
-import com.google.common.collect.Sets;
 import com.sismics.docs.core.constant.Constants;
-import com.sismics.docs.core.dao.GroupDao;
-import com.sismics.docs.core.dao.RoleBaseFunctionDao;
-import com.sismics.docs.core.dao.criteria.GroupCriteria;
-import com.sismics.docs.core.dao.dto.GroupDto;
 import com.sismics.docs.core.model.jpa.User;
+import com.sismics.docs.core.util.PrincipalCacheUtil;
 import com.sismics.security.AnonymousPrincipal;
 import com.sismics.security.UserPrincipal;
 import org.joda.time.DateTimeZone;
@@ -16,9 +12,6 @@ import org.slf4j.LoggerFactory;
 import jakarta.servlet.*;
 import jakarta.servlet.http.HttpServletRequest;
 import java.io.IOException;
-import java.util.HashSet;
-import java.util.List;
-import java.util.Set;
 
 /**
  * An abstract security filter for user authentication, that injects corresponding users into the request.
@@ -73,26 +66,10 @@ public abstract class SecurityFilter implements Filter {
     private void injectAuthenticatedUser(HttpServletRequest request, User user) {
         UserPrincipal userPrincipal = new UserPrincipal(user.getId(), user.getUsername());
 
-        // Add groups
-        GroupDao groupDao = new GroupDao();
-        Set<String> groupRoleIdSet = new HashSet<>();
-        List<GroupDto> groupDtoList = groupDao.findByCriteria(new GroupCriteria()
-                .setUserId(user.getId())
-                .setRecursive(true), null);
-        Set<String> groupIdSet = Sets.newHashSet();
-        for (GroupDto groupDto : groupDtoList) {
-            groupIdSet.add(groupDto.getId());
-            if (groupDto.getRoleId() != null) {
-                groupRoleIdSet.add(groupDto.getRoleId());
-            }
-        }
-        userPrincipal.setGroupIdSet(groupIdSet);
-
-        // Add base functions
-        groupRoleIdSet.add(user.getRoleId());
-        RoleBaseFunctionDao userBaseFunction = new RoleBaseFunctionDao();
-        Set<String> baseFunctionSet = userBaseFunction.findByRoleId(groupRoleIdSet);
-        userPrincipal.setBaseFunctionSet(baseFunctionSet);
+        // Add groups and base functions
+        PrincipalCacheUtil.Grants grants = PrincipalCacheUtil.getGrants(user.getId());
+        userPrincipal.setGroupIdSet(grants.getGroupIdSet());
+        userPrincipal.setBaseFunctionSet(grants.getBaseFunctionSet());
 
         // Add email
         userPrincipal.setEmail(user.getEmail());
@@ -1,9 +1,9 @@
 package com.sismics.util.filter;
 
 import com.sismics.docs.core.dao.AuthenticationTokenDao;
-import com.sismics.docs.core.dao.UserDao;
 import com.sismics.docs.core.model.jpa.AuthenticationToken;
 import com.sismics.docs.core.model.jpa.User;
+import com.sismics.docs.core.util.PrincipalCacheUtil;
 
 import jakarta.servlet.http.Cookie;
 import jakarta.servlet.http.HttpServletRequest;
@@ -94,7 +94,7 @@ public class TokenBasedSecurityFilter extends SecurityFilter {
 
         // Get the corresponding server token
         AuthenticationTokenDao authTokenDao = new AuthenticationTokenDao();
-        AuthenticationToken authToken = authTokenDao.get(authTokenId);
+        AuthenticationToken authToken = PrincipalCacheUtil.getAuthenticationToken(authTokenId);
         if (authToken == null) {
             return null;
         }
@@ -104,6 +104,6 @@ public class TokenBasedSecurityFilter extends SecurityFilter {
             return null;
         }
 
-        return new UserDao().getById(authToken.getUserId());
+        return PrincipalCacheUtil.getUser(authToken.getUserId());
     }
 }
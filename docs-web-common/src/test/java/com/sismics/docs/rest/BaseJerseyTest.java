@@ -1,5 +1,6 @@
 package com.sismics.docs.rest;
 
+import com.sismics.docs.core.model.context.AppContext;
 import com.sismics.docs.rest.util.ClientUtil;
 import com.sismics.util.filter.HeaderBasedSecurityFilter;
 import com.sismics.util.filter.RequestContextFilter;
@@ -141,6 +142,15 @@ public abstract class BaseJerseyTest extends JerseyTest {
         return os.toString();
     }
 
+    /**
+     * Wait for the indexed changes to be searchable.
+     *
+     * @throws Exception e
+     */
+    protected void refreshIndex() throws Exception {
+        AppContext.getInstance().getIndexingHandler().refresh();
+    }
+
     @Override
     @After
     public void tearDown() throws Exception {
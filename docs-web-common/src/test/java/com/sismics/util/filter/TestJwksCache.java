@@ -0,0 +1,194 @@
+package com.sismics.util.filter;
+
+import com.auth0.jwt.JWT;
+import com.auth0.jwt.algorithms.Algorithm;
+import com.sun.net.httpserver.HttpServer;
+import okhttp3.OkHttpClient;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.KeyStore;
+import java.security.cert.Certificate;
+import java.security.interfaces.RSAPrivateKey;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Test of the JWKS cache against a stub issuer.
+ */
+public class TestJwksCache {
+    /**
+     * Stub issuer.
+     */
+    private HttpServer server;
+
+    /**
+     * Issuer URL.
+     */
+    private String issuer;
+
+    /**
+     * JWKS served by the issuer.
+     */
+    private volatile String jwks = "{\"keys\":[]}";
+
+    @Before
+    public void setUp() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/realms/test/protocol/openid-connect/certs", exchange -> {
+            byte[] body = jwks.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream outputStream = exchange.getResponseBody()) {
+                outputStream.write(body);
+            }
+        });
+        server.start();
+        issuer = "http://127.0.0.1:" + server.getAddress().getPort() + "/realms/test";
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    @Test
+    public void testVerify() throws Exception {
+        KeyStore keyStore1 = generateKeyStore();
+        KeyStore keyStore2 = generateKeyStore();
+        jwks = "{\"keys\":[" + getJwk("key1", keyStore1) + "]}";
+        JwksCache jwksCache = new JwksCache(new OkHttpClient(), Collections.singleton(issuer), TimeUnit.HOURS.toMillis(1), TimeUnit.HOURS.toMillis(1));
+
+        // The keys are fetched once
+        String token1 = createToken("key1", keyStore1, "user1");
+        Assert.assertTrue(jwksCache.verify(JWT.decode(token1), token1));
+        Assert.assertTrue(jwksCache.verify(JWT.decode(token1), token1));
+        String token2 = createToken("key1", keyStore1, "user2");
+        Assert.assertTrue(jwksCache.verify(JWT.decode(token2), token2));
+        Assert.assertEquals(1, jwksCache.getFetchCount());
+
+        // A token signed by another key with the same key ID is rejected
+        String forgedToken = createToken("key1", keyStore2, "user1");
+        Assert.assertFalse(jwksCache.verify(JWT.decode(forgedToken), forgedToken));
+        Assert.assertEquals(1, jwksCache.getFetchCount());
+
+        // Unknown keys don't refresh the keys more than once per refresh interval
+        String token3 = createToken("key2", keyStore2, "user3");
+        Assert.assertFalse(jwksCache.verify(JWT.decode(token3), token3));
+        Assert.assertFalse(jwksCache.verify(JWT.decode(token3), token3));
+        Assert.assertEquals(1, jwksCache.getFetchCount());
+
+        // Tokens of the other issuers are rejected without fetching their keys
+        String otherToken = JWT.create()
+                .withIssuer(issuer + "-other")
+                .withKeyId("key1")
+                .withExpiresAt(new Date(System.currentTimeMillis() + TimeUnit.HOURS.toMillis(1)))
+                .sign(Algorithm.RSA256(null, (RSAPrivateKey) keyStore1.getKey("test", "password".toCharArray())));
+        Assert.assertFalse(jwksCache.verify(JWT.decode(otherToken), otherToken));
+        Assert.assertEquals(1, jwksCache.getFetchCount());
+
+        // Expired tokens are rejected
+        String expiredToken = JWT.create()
+                .withIssuer(issuer)
+                .withKeyId("key1")
+                .withExpiresAt(new Date(System.currentTimeMillis() - 60000))
+                .sign(Algorithm.RSA256(null, (RSAPrivateKey) keyStore1.getKey("test", "password".toCharArray())));
+        Assert.assertFalse(jwksCache.verify(JWT.decode(expiredToken), expiredToken));
+    }
+
+    @Test
+    public void testRotation() throws Exception {
+        KeyStore keyStore1 = generateKeyStore();
+        KeyStore keyStore2 = generateKeyStore();
+        jwks = "{\"keys\":[" + getJwk("key1", keyStore1) + "]}";
+        JwksCache jwksCache = new JwksCache(new OkHttpClient(), Collections.singleton(issuer), TimeUnit.HOURS.toMillis(1), 0);
+
+        String token1 = createToken("key1", keyStore1, "user1");
+        Assert.assertTrue(jwksCache.verify(JWT.decode(token1), token1));
+
+        // The issuer rotates its keys, a token signed by the new key refreshes the keys
+        jwks = "{\"keys\":[" + getJwk("key1", keyStore1) + "," + getJwk("key2", keyStore2) + "]}";
+        String token2 = createToken("key2", keyStore2, "user2");
+        Assert.assertTrue(jwksCache.verify(JWT.decode(token2), token2));
+        Assert.assertEquals(2, jwksCache.getFetchCount());
+
+        // Keys past their TTL are still used while being refreshed in the background
+        jwksCache = new JwksCache(new OkHttpClient(), Collections.singleton(issuer), 0, TimeUnit.HOURS.toMillis(1));
+        Assert.assertTrue(jwksCache.verify(JWT.decode(token1), token1));
+        String token3 = createToken("key1", keyStore1, "user3");
+        Assert.assertTrue(jwksCache.verify(JWT.decode(token3), token3));
+        for (int i = 0; i < 50 && jwksCache.getFetchCount() < 2; i++) {
+            Thread.sleep(100);
+        }
+        Assert.assertEquals(2, jwksCache.getFetchCount());
+    }
+
+    /**
+     * Create a token valid for an hour.
+     *
+     * @param keyId Key ID
+     * @param keyStore Key store holding the signing key
+     * @param username Username
+     * @return Token
+     */
+    private String createToken(String keyId, KeyStore keyStore, String username) throws Exception {
+        return JWT.create()
+                .withIssuer(issuer)
+                .withKeyId(keyId)
+                .withClaim("preferred_username", username)
+                .withExpiresAt(new Date(System.currentTimeMillis() + TimeUnit.HOURS.toMillis(1)))
+                .sign(Algorithm.RSA256(null, (RSAPrivateKey) keyStore.getKey("test", "password".toCharArray())));
+    }
+
+    /**
+     * Returns the JWK of a key.
+     *
+     * @param keyId Key ID
+     * @param keyStore Key store holding the certificate
+     * @return JWK
+     */
+    private String getJwk(String keyId, KeyStore keyStore) throws Exception {
+        Certificate certificate = keyStore.getCertificate("test");
+        return "{\"kid\":\"" + keyId + "\",\"kty\":\"RSA\",\"alg\":\"RS256\",\"use\":\"sig\",\"x5c\":[\""
+                + Base64.getEncoder().encodeToString(certificate.getEncoded()) + "\"]}";
+    }
+
+    /**
+     * Generate a key pair with a self-signed certificate.
+     *
+     * @return Key store
+     */
+    private KeyStore generateKeyStore() throws Exception {
+        Path directory = Files.createTempDirectory("jwks");
+        Path keyStoreFile = directory.resolve("test.p12");
+        try {
+            Process process = new ProcessBuilder(
+                    Path.of(System.getProperty("java.home"), "bin", "keytool").toString(),
+                    "-genkeypair", "-alias", "test", "-keyalg", "RSA", "-keysize", "2048", "-validity", "1",
+                    "-dname", "CN=test", "-storetype", "PKCS12", "-keystore", keyStoreFile.toString(),
+                    "-storepass", "password", "-keypass", "password")
+                    .redirectErrorStream(true)
+                    .start();
+            process.getInputStream().transferTo(OutputStream.nullOutputStream());
+            Assert.assertEquals(0, process.waitFor());
+
+            KeyStore keyStore = KeyStore.getInstance("PKCS12");
+            try (var inputStream = Files.newInputStream(keyStoreFile)) {
+                keyStore.load(inputStream, "password".toCharArray());
+            }
+            return keyStore;
+        } finally {
+            Files.deleteIfExists(keyStoreFile);
+            Files.delete(directory);
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package com.sismics.docs.rest.resource;
 
 import com.google.common.base.Strings;
+import com.google.common.cache.CacheStats;
 import com.sismics.docs.core.constant.ConfigType;
 import com.sismics.docs.core.constant.Constants;
 import com.sismics.docs.core.dao.ConfigDao;
@@ -9,11 +10,21 @@ import com.sismics.docs.core.dao.FileDao;
 import com.sismics.docs.core.dao.UserDao;
 import com.sismics.docs.core.event.RebuildIndexAsyncEvent;
 import com.sismics.docs.core.model.context.AppContext;
+import com.sismics.docs.core.service.FileProcessingService;
+import com.sismics.docs.core.service.FileSizeService;
+import com.sismics.docs.core.service.WebhookService;
 import com.sismics.docs.core.model.jpa.Config;
 import com.sismics.docs.core.model.jpa.File;
 import com.sismics.docs.core.service.InboxService;
+import com.sismics.docs.core.util.BlobUtil;
 import com.sismics.docs.core.util.ConfigUtil;
+import com.sismics.docs.core.util.ContentCacheUtil;
 import com.sismics.docs.core.util.DirectoryUtil;
+import com.sismics.docs.core.util.DocumentCacheUtil;
+import com.sismics.docs.core.util.EncryptionUtil;
+import com.sismics.docs.core.util.PdfCacheUtil;
+import com.sismics.docs.core.util.PrincipalCacheUtil;
+import com.sismics.docs.core.util.indexing.RebuildProgress;
 import com.sismics.docs.core.util.jpa.PaginatedList;
 import com.sismics.docs.core.util.jpa.PaginatedLists;
 import com.sismics.docs.rest.constant.BaseFunction;
@@ -114,6 +125,72 @@ public class AppResource extends BaseResource {
         return Response.ok().entity(response.build()).build();
     }
 
+    /**
+     * Returns the metrics of the caches and of the background processing.
+     *
+     * @api {get} /app/metrics Get application metrics
+     * @apiName GetAppMetrics
+     * @apiGroup App
+     * @apiSuccess {Number} key_cache_hit_rate Ratio of the file keys served from the cache
+     * @apiSuccess {Number} key_derivation_time Average time to derive a file key (in milliseconds)
+     * @apiSuccess {Number} principal_cache_hit_rate Ratio of the authentications served from the cache
+     * @apiSuccess {Number} principal_cache_miss_count Number of authentications loaded from the database
+     * @apiSuccess {Number} document_cache_hit_rate Ratio of the documents served from the cache
+     * @apiSuccess {Number} document_cache_miss_count Number of documents loaded from the database
+     * @apiSuccess {Number} processing_file_count Number of files waiting to be processed or being processed
+     * @apiSuccess {Number} thumbnail_time Average time to generate the thumbnails of a file (in milliseconds)
+     * @apiSuccess {Number} content_extraction_time Average time to extract the content of a file (in milliseconds)
+     * @apiSuccess {Number} webhook_pending_count Number of webhook events waiting in the outbox
+     * @apiSuccess {Number} webhook_delivery_count Number of webhook events delivered
+     * @apiSuccess {Number} webhook_delivery_time Average time to deliver a webhook event (in milliseconds)
+     * @apiSuccess {Number} webhook_failure_count Number of failed webhook calls
+     * @apiSuccess {Number} pdf_cache_hit_count Number of PDF exports served from the cache
+     * @apiSuccess {Number} pdf_cache_miss_count Number of PDF exports generated
+     * @apiSuccess {Number} file_size_total_count Number of files without a stored size or hash at startup, -1 until counted
+     * @apiSuccess {Number} file_size_processed_count Number of files without a stored size or hash processed since startup
+     * @apiError (client) ForbiddenError Access denied
+     * @apiPermission admin
+     * @apiVersion 1.12.0
+     *
+     * @return Response
+     */
+    @GET
+    @Path("metrics")
+    public Response metrics() {
+        if (!authenticate()) {
+            throw new ForbiddenClientException();
+        }
+        checkBaseFunction(BaseFunction.ADMIN);
+
+        CacheStats keyCacheStats = EncryptionUtil.getKeyCacheStats();
+        CacheStats principalCacheStats = PrincipalCacheUtil.getCacheStats();
+        CacheStats documentCacheStats = DocumentCacheUtil.getCacheStats();
+        FileProcessingService fileProcessingService = AppContext.getInstance().getFileProcessingService();
+        WebhookService webhookService = AppContext.getInstance().getWebhookService();
+        FileSizeService fileSizeService = AppContext.getInstance().getFileSizeService();
+
+        JsonObjectBuilder response = Json.createObjectBuilder()
+                .add("key_cache_hit_rate", keyCacheStats.hitRate())
+                .add("key_derivation_time", keyCacheStats.averageLoadPenalty() / 1000000.0)
+                .add("principal_cache_hit_rate", principalCacheStats.hitRate())
+                .add("principal_cache_miss_count", principalCacheStats.missCount())
+                .add("document_cache_hit_rate", documentCacheStats.hitRate())
+                .add("document_cache_miss_count", documentCacheStats.missCount())
+                .add("processing_file_count", fileProcessingService.getPendingCount())
+                .add("thumbnail_time", fileProcessingService.getThumbnailStats().getAverageTime())
+                .add("content_extraction_time", fileProcessingService.getContentStats().getAverageTime())
+                .add("webhook_pending_count", webhookService.getPendingCount())
+                .add("webhook_delivery_count", webhookService.getDeliveryStats().getCount())
+                .add("webhook_delivery_time", webhookService.getDeliveryStats().getAverageTime())
+                .add("webhook_failure_count", webhookService.getFailureCount())
+                .add("pdf_cache_hit_count", PdfCacheUtil.getHitCount())
+                .add("pdf_cache_miss_count", PdfCacheUtil.getMissCount())
+                .add("file_size_total_count", fileSizeService.getTotalCount())
+                .add("file_size_processed_count", fileSizeService.getProcessedCount());
+
+        return Response.ok().entity(response.build()).build();
+    }
+
     /**
      * Enable/disable guest login.
      *
@@ -602,7 +679,45 @@ public class AppResource extends BaseResource {
     }
 
     /**
-     * Destroy and rebuild the search index.
+     * Get the progress of the search index rebuild.
+     *
+     * @api {get} /app/batch/reindex Get the progress of the search index rebuild
+     * @apiName GetAppBatchReindex
+     * @apiGroup App
+     * @apiSuccess {Boolean} running True if the search index is being rebuilt
+     * @apiSuccess {Number} start_date Start date of the last rebuild (timestamp)
+     * @apiSuccess {Number} document_count Number of documents indexed
+     * @apiSuccess {Number} document_total Number of documents to index
+     * @apiSuccess {Number} file_count Number of files indexed
+     * @apiSuccess {Number} file_total Number of files to index
+     * @apiError (client) ForbiddenError Access denied
+     * @apiPermission admin
+     * @apiVersion 1.12.0
+     *
+     * @return Response
+     */
+    @GET
+    @Path("batch/reindex")
+    public Response getBatchReindex() {
+        if (!authenticate()) {
+            throw new ForbiddenClientException();
+        }
+        checkBaseFunction(BaseFunction.ADMIN);
+
+        RebuildProgress rebuildProgress = AppContext.getInstance().getIndexingHandler().getRebuildProgress();
+        JsonObjectBuilder response = Json.createObjectBuilder()
+                .add("running", rebuildProgress.isRunning())
+                .add("start_date", JsonUtil.nullable(rebuildProgress.getStartDate()))
+                .add("document_count", rebuildProgress.getDocumentCount())
+                .add("document_total", rebuildProgress.getDocumentTotal())
+                .add("file_count", rebuildProgress.getFileCount())
+                .add("file_total", rebuildProgress.getFileTotal());
+        return Response.ok().entity(response.build()).build();
+    }
+
+    /**
+     * Rebuild the search index.
+     * The current index is still searched until the rebuild is done.
      *
      * @api {post} /app/batch/reindex Rebuild the search index
      * @apiName PostAppBatchReindex
@@ -673,6 +788,20 @@ public class AppResource extends BaseResource {
                     Files.delete(storedFile);
                 }
             }
+
+            // Delete the shared blobs no longer referenced by any file
+            Map<String, Long> blobReferenceCountMap = fileDao.getBlobReferenceCountMap();
+            log.info("Checking blobs, {} are referenced", blobReferenceCountMap.size());
+            log.info("Deleting {} orphan blobs", BlobUtil.clean(blobReferenceCountMap.keySet()));
+
+            // Delete the extracted contents no longer used by any file
+            Set<String> hashSet = new HashSet<>();
+            for (File file : fileList) {
+                if (file.getHash() != null) {
+                    hashSet.add(file.getHash());
+                }
+            }
+            log.info("Deleting {} orphan extracted contents", ContentCacheUtil.clean(hashSet));
         } catch (IOException e) {
             throw new ServerException("FileError", "Error deleting orphan files", e);
         }
@@ -1,16 +1,18 @@
 package com.sismics.docs.rest.resource;
 
+import com.google.common.base.Strings;
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteStreams;
 import com.google.common.collect.Lists;
+import com.sismics.docs.core.constant.AclTargetType;
 import com.sismics.docs.core.constant.AclType;
 import com.sismics.docs.core.constant.ConfigType;
 import com.sismics.docs.core.constant.Constants;
 import com.sismics.docs.core.constant.PermType;
 import com.sismics.docs.core.dao.AclDao;
-import com.sismics.docs.core.dao.ContributorDao;
 import com.sismics.docs.core.dao.DocumentDao;
 import com.sismics.docs.core.dao.FileDao;
 import com.sismics.docs.core.dao.RelationDao;
-import com.sismics.docs.core.dao.RouteStepDao;
 import com.sismics.docs.core.dao.TagDao;
 import com.sismics.docs.core.dao.UserDao;
 import com.sismics.docs.core.dao.criteria.DocumentCriteria;
@@ -21,19 +23,28 @@ import com.sismics.docs.core.dao.dto.DocumentDto;
 import com.sismics.docs.core.dao.dto.RelationDto;
 import com.sismics.docs.core.dao.dto.RouteStepDto;
 import com.sismics.docs.core.dao.dto.TagDto;
+import com.sismics.docs.core.event.AclCreatedAsyncEvent;
+import com.sismics.docs.core.event.AclDeletedAsyncEvent;
+import com.sismics.docs.core.event.AclEvent;
 import com.sismics.docs.core.event.DocumentCreatedAsyncEvent;
 import com.sismics.docs.core.event.DocumentDeletedAsyncEvent;
 import com.sismics.docs.core.event.DocumentUpdatedAsyncEvent;
+import com.sismics.docs.core.event.DocumentsDeletedAsyncEvent;
+import com.sismics.docs.core.event.DocumentsUpdatedAsyncEvent;
 import com.sismics.docs.core.event.FileDeletedAsyncEvent;
 import com.sismics.docs.core.model.context.AppContext;
 import com.sismics.docs.core.model.jpa.Document;
 import com.sismics.docs.core.model.jpa.File;
 import com.sismics.docs.core.model.jpa.User;
 import com.sismics.docs.core.util.ConfigUtil;
+import com.sismics.docs.core.util.DocumentCacheUtil;
+import com.sismics.docs.core.util.DocumentHydrator;
 import com.sismics.docs.core.util.DocumentUtil;
 import com.sismics.docs.core.util.FileUtil;
 import com.sismics.docs.core.util.MetadataUtil;
-import com.sismics.docs.core.util.PdfUtil;
+import com.sismics.docs.core.util.PdfCacheUtil;
+import com.sismics.docs.core.util.SecurityUtil;
+import com.sismics.docs.core.util.jpa.InvalidCursorException;
 import com.sismics.docs.core.util.jpa.PaginatedList;
 import com.sismics.docs.core.util.jpa.PaginatedLists;
 import com.sismics.docs.core.util.jpa.SortCriteria;
@@ -41,10 +52,10 @@ import com.sismics.docs.rest.util.DocumentSearchCriteriaUtil;
 import com.sismics.rest.exception.ClientException;
 import com.sismics.rest.exception.ForbiddenClientException;
 import com.sismics.rest.exception.ServerException;
-import com.sismics.rest.util.AclUtil;
 import com.sismics.rest.util.RestUtil;
 import com.sismics.rest.util.ValidationUtil;
 import com.sismics.util.EmailUtil;
+import com.sismics.util.HttpUtil;
 import com.sismics.util.JsonUtil;
 import com.sismics.util.context.ThreadLocalContext;
 import com.sismics.util.mime.MimeType;
@@ -62,9 +73,9 @@ import jakarta.ws.rs.PUT;
 import jakarta.ws.rs.Path;
 import jakarta.ws.rs.PathParam;
 import jakarta.ws.rs.QueryParam;
+import jakarta.ws.rs.core.HttpHeaders;
 import jakarta.ws.rs.core.Response;
 import jakarta.ws.rs.core.StreamingOutput;
-import org.apache.commons.collections4.CollectionUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.glassfish.jersey.media.multipart.FormDataBodyPart;
 import org.glassfish.jersey.media.multipart.FormDataParam;
@@ -75,19 +86,20 @@ import javax.mail.Session;
 import javax.mail.internet.MimeMessage;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.StandardCopyOption;
 import java.text.MessageFormat;
 import java.util.ArrayList;
-import java.util.Collection;
-import java.util.Collections;
 import java.util.Date;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
+import java.util.TreeSet;
 import java.util.UUID;
+import java.util.stream.Collectors;
 
 /**
  * Document REST resources.
@@ -96,6 +108,15 @@ import java.util.UUID;
  */
 @Path("/document")
 public class DocumentResource extends BaseResource {
+    /**
+     * Number of documents modified by each query of a bulk operation.
+     */
+    private static final int BULK_CHUNK_SIZE = 500;
+
+    /**
+     * Maximum number of documents selected by a bulk operation, all modified in a single transaction.
+     */
+    private static final int BULK_MAX_SIZE = 10000;
 
     /**
      * Returns a document.
@@ -106,6 +127,7 @@ public class DocumentResource extends BaseResource {
      * @apiParam {String} id Document ID
      * @apiParam {String} [share] Share ID
      * @apiParam {Boolean} [files] If true includes files information
+     * @apiHeader {String} [If-None-Match] Return 304 Not Modified if the document still has this ETag
      * @apiSuccess {String} id ID
      * @apiSuccess {String} title Title
      * @apiSuccess {String} description Description
@@ -170,6 +192,7 @@ public class DocumentResource extends BaseResource {
      *
      * @param documentId Document ID
      * @param shareId Share ID
+     * @param files Include files
      * @return Response
      */
     @GET
@@ -180,12 +203,27 @@ public class DocumentResource extends BaseResource {
             @QueryParam("files") Boolean files) {
         authenticate();
 
-        DocumentDao documentDao = new DocumentDao();
-        DocumentDto documentDto = documentDao.getDocument(documentId, PermType.READ, getTargetIdList(shareId));
-        if (documentDto == null) {
+        // The cached document is shared by all users, permissions are checked against its ACLs
+        List<String> targetIdList = getTargetIdList(shareId);
+        DocumentCacheUtil.CachedDocument cachedDocument = DocumentCacheUtil.get(documentId);
+        if (cachedDocument == null || !cachedDocument.checkPermission(PermType.READ, targetIdList)) {
             throw new NotFoundException();
         }
 
+        // The response depends on the cached data and on the targets reading it, no need to build it if already seen
+        List<String> userTargetIdList = getTargetIdList(null);
+        String etag = "\"" + Hashing.sha256().hashString(cachedDocument.getVersion()
+                + ":" + principal.isAnonymous() + ":" + (Boolean.TRUE == files)
+                + ":" + new TreeSet<>(targetIdList) + ":" + new TreeSet<>(userTargetIdList), StandardCharsets.UTF_8) + "\"";
+        if (HttpUtil.matchIfNoneMatch(request.getHeader(HttpHeaders.IF_NONE_MATCH), etag)) {
+            return Response.notModified()
+                    .header(HttpHeaders.ETAG, etag)
+                    .header(HttpHeaders.CACHE_CONTROL, "private")
+                    .header(HttpHeaders.VARY, HttpHeaders.COOKIE + ", " + HttpHeaders.AUTHORIZATION)
+                    .build();
+        }
+
+        DocumentDto documentDto = cachedDocument.getDocumentDto();
         JsonObjectBuilder document = createDocumentObjectBuilder(documentDto)
                 .add("creator", documentDto.getCreator())
                 .add("coverage", JsonUtil.nullable(documentDto.getCoverage()))
@@ -204,26 +242,28 @@ public class DocumentResource extends BaseResource {
             document.add("tags", Json.createArrayBuilder());
         } else {
             // Add tags visible by the current user on this document
-            TagDao tagDao = new TagDao();
-            tagDtoList = tagDao.findByCriteria(
-                    new TagCriteria()
-                            .setTargetIdList(getTargetIdList(null)) // No tags for shares
-                            .setDocumentId(documentId),
-                    new SortCriteria(1, true));
+            tagDtoList = cachedDocument.getTagList(userTargetIdList); // No tags for shares
             document.add("tags", createTagsArrayBuilder(tagDtoList));
         }
 
         // Add ACL
-        AclUtil.addAcls(document, documentId, getTargetIdList(shareId));
+        JsonArrayBuilder aclList = Json.createArrayBuilder();
+        for (AclDto aclDto : cachedDocument.getAclList(AclType.USER)) {
+            aclList.add(Json.createObjectBuilder()
+                    .add("perm", aclDto.getPerm().name())
+                    .add("id", aclDto.getTargetId())
+                    .add("name", JsonUtil.nullable(aclDto.getTargetName()))
+                    .add("type", aclDto.getTargetType()));
+        }
+        document.add("acls", aclList)
+                .add("writable", cachedDocument.checkPermission(PermType.WRITE, targetIdList));
 
         // Add computed ACL
         if (tagDtoList != null) {
-            JsonArrayBuilder aclList = Json.createArrayBuilder();
+            JsonArrayBuilder inheritedAclList = Json.createArrayBuilder();
             for (TagDto tagDto : tagDtoList) {
-                AclDao aclDao = new AclDao();
-                List<AclDto> aclDtoList = aclDao.getBySourceId(tagDto.getId(), AclType.USER);
-                for (AclDto aclDto : aclDtoList) {
-                    aclList.add(Json.createObjectBuilder()
+                for (AclDto aclDto : cachedDocument.getTagAclList(tagDto.getId(), AclType.USER)) {
+                    inheritedAclList.add(Json.createObjectBuilder()
                             .add("perm", aclDto.getPerm().name())
                             .add("source_id", tagDto.getId())
                             .add("source_name", tagDto.getName())
@@ -233,14 +273,12 @@ public class DocumentResource extends BaseResource {
                             .add("type", aclDto.getTargetType()));
                 }
             }
-            document.add("inherited_acls", aclList);
+            document.add("inherited_acls", inheritedAclList);
         }
 
         // Add contributors
-        ContributorDao contributorDao = new ContributorDao();
-        List<ContributorDto> contributorDtoList = contributorDao.getByDocumentId(documentId);
         JsonArrayBuilder contributorList = Json.createArrayBuilder();
-        for (ContributorDto contributorDto : contributorDtoList) {
+        for (ContributorDto contributorDto : cachedDocument.getContributorList()) {
             contributorList.add(Json.createObjectBuilder()
                     .add("username", contributorDto.getUsername())
                     .add("email", contributorDto.getEmail()));
@@ -248,10 +286,8 @@ public class DocumentResource extends BaseResource {
         document.add("contributors", contributorList);
 
         // Add relations
-        RelationDao relationDao = new RelationDao();
-        List<RelationDto> relationDtoList = relationDao.getByDocumentId(documentId);
         JsonArrayBuilder relationList = Json.createArrayBuilder();
-        for (RelationDto relationDto : relationDtoList) {
+        for (RelationDto relationDto : cachedDocument.getRelationList()) {
             relationList.add(Json.createObjectBuilder()
                     .add("id", relationDto.getId())
                     .add("title", relationDto.getTitle())
@@ -260,30 +296,32 @@ public class DocumentResource extends BaseResource {
         document.add("relations", relationList);
 
         // Add current route step
-        RouteStepDto routeStepDto = new RouteStepDao().getCurrentStep(documentId);
+        RouteStepDto routeStepDto = cachedDocument.getRouteStep();
         if (routeStepDto != null && !principal.isAnonymous()) {
             JsonObjectBuilder step = routeStepDto.toJson();
-            step.add("transitionable", getTargetIdList(null).contains(routeStepDto.getTargetId()));
+            step.add("transitionable", userTargetIdList.contains(routeStepDto.getTargetId()));
             document.add("route_step", step);
         }
 
         // Add custom metadata
-        MetadataUtil.addMetadata(document, documentId);
+        document.add("metadata", cachedDocument.getMetadata());
 
         // Add files
         if (Boolean.TRUE == files) {
-            FileDao fileDao = new FileDao();
-            List<File> fileList = fileDao.getByDocumentsIds(Collections.singleton(documentId));
-
             JsonArrayBuilder filesArrayBuilder = Json.createArrayBuilder();
-            for (File fileDb : fileList) {
+            for (File fileDb : cachedDocument.getFileList()) {
                 filesArrayBuilder.add(RestUtil.fileToJsonObjectBuilder(fileDb));
             }
 
             document.add("files", filesArrayBuilder);
         }
 
-        return Response.ok().entity(document.build()).build();
+        return Response.ok()
+                .header(HttpHeaders.ETAG, etag)
+                .header(HttpHeaders.CACHE_CONTROL, "private")
+                .header(HttpHeaders.VARY, HttpHeaders.COOKIE + ", " + HttpHeaders.AUTHORIZATION)
+                .entity(document.build())
+                .build();
     }
 
     /**
@@ -341,12 +379,20 @@ public class DocumentResource extends BaseResource {
             file.setPrivateKey(user.getPrivateKey());
         }
 
-        // Convert to PDF
+        // Get the cached export, generated in the background if needed
+        // It is encrypted with the private key of the document creator
+        User creator = userDao.getById(documentDao.getById(documentId).getUserId());
+        final InputStream pdfInputStream;
+        try {
+            pdfInputStream = PdfCacheUtil.getPdf(documentDto, fileList, Boolean.TRUE.equals(fitImageToPage),
+                    Boolean.TRUE.equals(metadata), margin, creator.getPrivateKey());
+        } catch (Exception e) {
+            throw new ServerException("PdfError", "Error generating the PDF export", e);
+        }
+
         StreamingOutput stream = outputStream -> {
-            try {
-                PdfUtil.convertToPdf(documentDto, fileList, fitImageToPage, metadata, margin, outputStream);
-            } catch (Exception e) {
-                throw new IOException(e);
+            try (InputStream inputStream = pdfInputStream) {
+                ByteStreams.copy(inputStream, outputStream);
             }
         };
 
@@ -369,6 +415,8 @@ public class DocumentResource extends BaseResource {
      * @apiParam {Boolean} [asc] If <code>true</code> sorts in ascending order
      * @apiParam {String} [search] Search query (see "Document search syntax" on the top of the page for explanations) when the input is entered by a human.
      * @apiParam {Boolean} [files] If <code>true</code> includes files information
+     * @apiParam {String} [cursor] Paginate with a cursor instead of an offset, empty for the first page then the <code>next_cursor</code> of the previous page, can't be used with <code>offset</code>
+     * @apiParam {Boolean} [count] If <code>false</code> the total number of documents is not counted (default is <code>true</code>)
      *
      * @apiParam {String} [search[after]] The document must have been created after or at the value moment, accepted format is <code>yyyy-MM-dd</code>
      * @apiParam {String} [search[before]] The document must have been created before or at the value moment, accepted format is <code>yyyy-MM-dd</code>
@@ -385,7 +433,8 @@ public class DocumentResource extends BaseResource {
      * @apiParam {String} [search[ubefore]] The document must have been updated before or at the value moment, accepted format is <code>yyyy-MM-dd</code>
      * @apiParam {String} [search[workflow]] If the value is <code>me</code> the document must have an active route, for other values the criteria is ignored
      *
-     * @apiSuccess {Number} total Total number of documents
+     * @apiSuccess {Number} total Total number of documents, unless <code>count</code> is <code>false</code>
+     * @apiSuccess {String} next_cursor Cursor of the next page, in cursor mode only, null on the last page
      * @apiSuccess {Object[]} documents List of documents
      * @apiSuccess {String} documents.id ID
      * @apiSuccess {String} documents.highlight Search highlight (for fulltext search)
@@ -412,6 +461,7 @@ public class DocumentResource extends BaseResource {
      * @apiSuccess {String[]} suggestions List of search suggestions
      *
      * @apiError (client) ForbiddenError Access denied
+     * @apiError (client) ValidationError Invalid cursor, or cursor used with an offset
      * @apiError (server) SearchError Error searching in documents
      * @apiPermission user
      * @apiVersion 1.5.0
@@ -422,6 +472,8 @@ public class DocumentResource extends BaseResource {
      * @param asc Sorting
      * @param search Search query
      * @param files Files list
+     * @param cursor Page cursor
+     * @param count Count the documents
      * @return Response
      */
     @GET
@@ -433,6 +485,8 @@ public class DocumentResource extends BaseResource {
             @QueryParam("asc") Boolean asc,
             @QueryParam("search") String search,
             @QueryParam("files") Boolean files,
+            @QueryParam("cursor") String cursor,
+            @QueryParam("count") Boolean count,
 
             @QueryParam("search[after]") String searchCreatedAfter,
             @QueryParam("search[before]") String searchCreatedBefore,
@@ -452,12 +506,17 @@ public class DocumentResource extends BaseResource {
         if (!authenticate()) {
             throw new ForbiddenClientException();
         }
+        if (cursor != null && offset != null) {
+            throw new ClientException("ValidationError", "The offset can't be used with a cursor");
+        }
 
         JsonObjectBuilder response = Json.createObjectBuilder();
         JsonArrayBuilder documents = Json.createArrayBuilder();
 
         TagDao tagDao = new TagDao();
         PaginatedList<DocumentDto> paginatedList = PaginatedLists.create(limit, offset);
+        paginatedList.setCursor(cursor);
+        paginatedList.setCountEnabled(count == null || count);
         List<String> suggestionList = Lists.newArrayList();
         SortCriteria sortCriteria = new SortCriteria(sortColumn, asc);
 
@@ -485,47 +544,35 @@ public class DocumentResource extends BaseResource {
         documentCriteria.setTargetIdList(getTargetIdList(null));
         try {
             AppContext.getInstance().getIndexingHandler().findByCriteria(paginatedList, suggestionList, documentCriteria, sortCriteria);
+        } catch (InvalidCursorException e) {
+            throw new ClientException("ValidationError", e.getMessage());
         } catch (Exception e) {
             throw new ServerException("SearchError", "Error searching in documents", e);
         }
 
-        // Find the files of the documents
-        Iterable<String> documentsIds = CollectionUtils.collect(paginatedList.getResultList(), DocumentDto::getId);
-        FileDao fileDao = new FileDao();
-        List<File> filesList = null;
-        Map<String, Long> filesCountByDocument = null;
+        // Find the tags accessible by the current user and the files of all the documents of the page
+        List<String> documentIdList = paginatedList.getResultList().stream()
+                .map(DocumentDto::getId)
+                .collect(Collectors.toList());
+        DocumentHydrator hydrator = new DocumentHydrator(documentIdList)
+                .fetchTags(getTargetIdList(null));
         if (Boolean.TRUE == files) {
-            filesList = fileDao.getByDocumentsIds(documentsIds);
+            hydrator.fetchFiles();
         } else {
-            filesCountByDocument = fileDao.countByDocumentsIds(documentsIds);
+            hydrator.fetchFileCounts();
         }
 
         for (DocumentDto documentDto : paginatedList.getResultList()) {
-            // Get tags accessible by the current user on this document
-            List<TagDto> tagDtoList = tagDao.findByCriteria(new TagCriteria()
-                    .setTargetIdList(getTargetIdList(null))
-                    .setDocumentId(documentDto.getId()), new SortCriteria(1, true));
-
-            Long filesCount;
-            Collection<File> filesOfDocument = null;
-            if (Boolean.TRUE == files) {
-                // Find files matching the document
-                filesOfDocument = CollectionUtils.select(filesList, file -> file.getDocumentId().equals(documentDto.getId()));
-                filesCount = (long) filesOfDocument.size();
-            } else {
-                filesCount = filesCountByDocument.getOrDefault(documentDto.getId(), 0L);
-            }
-
             JsonObjectBuilder documentObjectBuilder = createDocumentObjectBuilder(documentDto)
                     .add("active_route", documentDto.isActiveRoute())
                     .add("current_step_name", JsonUtil.nullable(documentDto.getCurrentStepName()))
                     .add("highlight", JsonUtil.nullable(documentDto.getHighlight()))
-                    .add("file_count", filesCount)
-                    .add("tags", createTagsArrayBuilder(tagDtoList));
+                    .add("file_count", hydrator.getFileCount(documentDto.getId()))
+                    .add("tags", createTagsArrayBuilder(hydrator.getTagList(documentDto.getId())));
 
             if (Boolean.TRUE == files) {
                 JsonArrayBuilder filesArrayBuilder = Json.createArrayBuilder();
-                for (File fileDb : filesOfDocument) {
+                for (File fileDb : hydrator.getFileList(documentDto.getId())) {
                     filesArrayBuilder.add(RestUtil.fileToJsonObjectBuilder(fileDb));
                 }
                 documentObjectBuilder.add("files", filesArrayBuilder);
@@ -538,8 +585,13 @@ public class DocumentResource extends BaseResource {
             suggestions.add(suggestion);
         }
 
-        response.add("total", paginatedList.getResultCount())
-                .add("documents", documents)
+        if (paginatedList.isCountEnabled()) {
+            response.add("total", paginatedList.getResultCount());
+        }
+        if (paginatedList.getCursor() != null) {
+            response.add("next_cursor", JsonUtil.nullable(paginatedList.getNextCursor()));
+        }
+        response.add("documents", documents)
                 .add("suggestions", suggestions);
 
         return Response.ok().entity(response.build()).build();
@@ -560,6 +612,8 @@ public class DocumentResource extends BaseResource {
      * @param asc        Sorting
      * @param search     Search query
      * @param files      Files list
+     * @param cursor     Page cursor
+     * @param count      Count the documents
      * @return Response
      */
     @POST
@@ -571,6 +625,8 @@ public class DocumentResource extends BaseResource {
             @FormParam("asc") Boolean asc,
             @FormParam("search") String search,
             @FormParam("files") Boolean files,
+            @FormParam("cursor") String cursor,
+            @FormParam("count") Boolean count,
             @FormParam("search[after]") String searchCreatedAfter,
             @FormParam("search[before]") String searchCreatedBefore,
             @FormParam("search[by]") String searchBy,
@@ -593,6 +649,8 @@ public class DocumentResource extends BaseResource {
                 asc,
                 search,
                 files,
+                cursor,
+                count,
                 searchCreatedAfter,
                 searchCreatedBefore,
                 searchBy,
@@ -610,6 +668,53 @@ public class DocumentResource extends BaseResource {
         );
     }
 
+    /**
+     * Suggest search terms to complete a search query.
+     *
+     * @api {get} /document/suggest Get search suggestions
+     * @apiDescription Lightweight autocomplete, only the words of the readable document titles are suggested
+     * @apiName GetDocumentSuggest
+     * @apiGroup Document
+     * @apiParam {String} search Search query, the last word is completed
+     * @apiParam {Number} [limit] Maximum number of suggestions (default is <code>10</code>)
+     * @apiSuccess {String[]} suggestions List of search suggestions
+     * @apiError (client) ForbiddenError Access denied
+     * @apiError (server) SearchError Error searching in documents
+     * @apiPermission user
+     * @apiVersion 1.12.0
+     *
+     * @param search Search query
+     * @param limit Maximum number of suggestions
+     * @return Response
+     */
+    @GET
+    @Path("suggest")
+    public Response suggest(
+            @QueryParam("search") String search,
+            @QueryParam("limit") Integer limit) {
+        if (!authenticate()) {
+            throw new ForbiddenClientException();
+        }
+
+        if (limit == null || limit <= 0) {
+            limit = 10;
+        }
+        List<String> suggestionList;
+        try {
+            suggestionList = AppContext.getInstance().getIndexingHandler().suggest(Strings.nullToEmpty(search), getTargetIdList(null), Math.min(limit, 100));
+        } catch (Exception e) {
+            throw new ServerException("SearchError", "Error searching in documents", e);
+        }
+
+        JsonArrayBuilder suggestions = Json.createArrayBuilder();
+        for (String suggestion : suggestionList) {
+            suggestions.add(suggestion);
+        }
+        JsonObjectBuilder response = Json.createObjectBuilder()
+                .add("suggestions", suggestions);
+        return Response.ok().entity(response.build()).build();
+    }
+
     /**
      * Creates a new document.
      *
@@ -1013,6 +1118,7 @@ public class DocumentResource extends BaseResource {
             fileDeletedAsyncEvent.setUserId(principal.getId());
             fileDeletedAsyncEvent.setFileId(file.getId());
             fileDeletedAsyncEvent.setFileSize(file.getSize());
+            fileDeletedAsyncEvent.setFileHash(file.getHash());
             ThreadLocalContext.get().addAsyncEvent(fileDeletedAsyncEvent);
         }
 
@@ -1028,6 +1134,296 @@ public class DocumentResource extends BaseResource {
         return Response.ok().entity(response.build()).build();
     }
 
+    /**
+     * Add or remove tags on documents in bulk.
+     *
+     * @api {post} /document/bulk/tag Add or remove tags on documents
+     * @apiDescription The documents are selected by ID or by a search query, only the writable documents are modified.
+     * All the documents are modified in a single transaction, at most 10000 documents can be selected.
+     * @apiName PostDocumentBulkTag
+     * @apiGroup Document
+     * @apiParam {String[]} [id] Document IDs
+     * @apiParam {String} [search] Search query, used if no ID is specified
+     * @apiParam {String[]} [tags] Tag IDs to add
+     * @apiParam {String[]} [remove_tags] Tag IDs to remove
+     * @apiSuccess {String} status Status OK
+     * @apiSuccess {Number} count Number of documents modified
+     * @apiError (client) ForbiddenError Access denied
+     * @apiError (client) ValidationError Validation error
+     * @apiError (client) TagNotFound Tag not found
+     * @apiError (server) SearchError Error searching in documents
+     * @apiPermission user
+     * @apiVersion 1.12.0
+     *
+     * @param idList Document IDs
+     * @param search Search query
+     * @param tagList Tag IDs to add
+     * @param removedTagList Tag IDs to remove
+     * @return Response
+     */
+    @POST
+    @Path("bulk/tag")
+    public Response bulkTag(
+            @FormParam("id") List<String> idList,
+            @FormParam("search") String search,
+            @FormParam("tags") List<String> tagList,
+            @FormParam("remove_tags") List<String> removedTagList) {
+        if (!authenticate()) {
+            throw new ForbiddenClientException();
+        }
+
+        // Validate input
+        Set<String> tagIdSet = tagList == null ? new HashSet<>() : validateTagList(tagList);
+        Set<String> removedTagIdSet = removedTagList == null ? new HashSet<>() : validateTagList(removedTagList);
+        if (tagIdSet.isEmpty() && removedTagIdSet.isEmpty()) {
+            throw new ClientException("ValidationError", "tags or remove_tags is required");
+        }
+        List<String> documentIdList = getBulkDocumentIdList(idList, search);
+
+        // Update the tags by chunks
+        TagDao tagDao = new TagDao();
+        for (List<String> chunk : Lists.partition(documentIdList, BULK_CHUNK_SIZE)) {
+            tagDao.removeTagList(chunk, removedTagIdSet);
+            tagDao.addTagList(chunk, tagIdSet);
+        }
+
+        // Raise a single documents updated event
+        raiseDocumentsUpdatedEvent(documentIdList);
+
+        return createBulkResponse(documentIdList);
+    }
+
+    /**
+     * Add or remove an ACL on documents in bulk.
+     *
+     * @api {post} /document/bulk/acl Add or remove an ACL on documents
+     * @apiDescription The documents are selected by ID or by a search query, only the writable documents are modified.
+     * All the documents are modified in a single transaction, at most 10000 documents can be selected.
+     * The ACL of the creator of a document is never removed.
+     * @apiName PostDocumentBulkAcl
+     * @apiGroup Document
+     * @apiParam {String[]} [id] Document IDs
+     * @apiParam {String} [search] Search query, used if no ID is specified
+     * @apiParam {String="READ","WRITE"} perm Permission
+     * @apiParam {String} target Target name
+     * @apiParam {String="USER","GROUP","SHARE"} type Target type
+     * @apiParam {Boolean} [revoke] If <code>true</code> the ACL is removed instead of added
+     * @apiSuccess {String} status Status OK
+     * @apiSuccess {Number} count Number of documents modified
+     * @apiError (client) ForbiddenError Access denied
+     * @apiError (client) ValidationError Validation error
+     * @apiError (client) InvalidTarget This target does not exist
+     * @apiError (server) SearchError Error searching in documents
+     * @apiPermission user
+     * @apiVersion 1.12.0
+     *
+     * @param idList Document IDs
+     * @param search Search query
+     * @param permStr Permission
+     * @param targetName Target name
+     * @param typeStr Target type
+     * @param revoke Remove the ACL
+     * @return Response
+     */
+    @POST
+    @Path("bulk/acl")
+    public Response bulkAcl(
+            @FormParam("id") List<String> idList,
+            @FormParam("search") String search,
+            @FormParam("perm") String permStr,
+            @FormParam("target") String targetName,
+            @FormParam("type") String typeStr,
+            @FormParam("revoke") Boolean revoke) {
+        if (!authenticate()) {
+            throw new ForbiddenClientException();
+        }
+
+        // Validate input
+        permStr = ValidationUtil.validateLength(permStr, "perm", 1, 30, false);
+        typeStr = ValidationUtil.validateLength(typeStr, "type", 1, 10, false);
+        PermType perm;
+        try {
+            perm = PermType.valueOf(permStr);
+        } catch (IllegalArgumentException e) {
+            throw new ClientException("ValidationError", permStr + " is not a valid permission");
+        }
+        AclTargetType type;
+        try {
+            type = AclTargetType.valueOf(typeStr);
+        } catch (IllegalArgumentException e) {
+            throw new ClientException("ValidationError", typeStr + " is not a valid ACL target type");
+        }
+        targetName = ValidationUtil.validateLength(targetName, "target", 1, 50, false);
+        String targetId = SecurityUtil.getTargetIdFromName(targetName, type);
+        if (targetId == null) {
+            throw new ClientException("InvalidTarget", MessageFormat.format("This target does not exist: {0}", targetName));
+        }
+        List<String> documentIdList = getBulkDocumentIdList(idList, search);
+
+        // Update the ACLs by chunks, as user ACLs like the ACL resource
+        AclDao aclDao = new AclDao();
+        DocumentDao documentDao = new DocumentDao();
+        List<String> updatedDocumentIdList = new ArrayList<>();
+        for (List<String> chunk : Lists.partition(documentIdList, BULK_CHUNK_SIZE)) {
+            if (Boolean.TRUE.equals(revoke)) {
+                // Cannot delete R/W on a document if the target is the creator
+                List<String> revokedIdList = new ArrayList<>();
+                for (Document document : documentDao.getByIdList(chunk)) {
+                    if (!document.getUserId().equals(targetId)) {
+                        revokedIdList.add(document.getId());
+                    }
+                }
+                updatedDocumentIdList.addAll(aclDao.delete(revokedIdList, perm, targetId, principal.getId(), AclType.USER));
+            } else {
+                updatedDocumentIdList.addAll(aclDao.create(chunk, perm, targetId, AclType.USER, principal.getId()));
+            }
+        }
+
+        // Raise an ACL created or deleted event for each document, like the ACL resource
+        for (String documentId : updatedDocumentIdList) {
+            AclEvent event = Boolean.TRUE.equals(revoke) ? new AclDeletedAsyncEvent() : new AclCreatedAsyncEvent();
+            event.setUserId(principal.getId());
+            event.setSourceId(documentId);
+            event.setPerm(perm);
+            event.setTargetId(targetId);
+            ThreadLocalContext.get().addAsyncEvent(event);
+        }
+
+        return createBulkResponse(updatedDocumentIdList);
+    }
+
+    /**
+     * Deletes documents in bulk.
+     *
+     * @api {post} /document/bulk/delete Delete documents
+     * @apiDescription The documents are selected by ID or by a search query, only the writable documents are deleted.
+     * All the documents are deleted in a single transaction, at most 10000 documents can be selected.
+     * @apiName PostDocumentBulkDelete
+     * @apiGroup Document
+     * @apiParam {String[]} [id] Document IDs
+     * @apiParam {String} [search] Search query, used if no ID is specified
+     * @apiSuccess {String} status Status OK
+     * @apiSuccess {Number} count Number of documents deleted
+     * @apiError (client) ForbiddenError Access denied
+     * @apiError (client) ValidationError Validation error
+     * @apiError (server) SearchError Error searching in documents
+     * @apiPermission user
+     * @apiVersion 1.12.0
+     *
+     * @param idList Document IDs
+     * @param search Search query
+     * @return Response
+     */
+    @POST
+    @Path("bulk/delete")
+    public Response bulkDelete(
+            @FormParam("id") List<String> idList,
+            @FormParam("search") String search) {
+        if (!authenticate()) {
+            throw new ForbiddenClientException();
+        }
+
+        List<String> documentIdList = getBulkDocumentIdList(idList, search);
+
+        // Delete the documents by chunks
+        DocumentDao documentDao = new DocumentDao();
+        FileDao fileDao = new FileDao();
+        for (List<String> chunk : Lists.partition(documentIdList, BULK_CHUNK_SIZE)) {
+            List<File> fileList = fileDao.getByDocumentsIds(chunk);
+            documentDao.delete(chunk, principal.getId());
+
+            for (File file : fileList) {
+                // Raise file deleted event
+                FileDeletedAsyncEvent fileDeletedAsyncEvent = new FileDeletedAsyncEvent();
+                fileDeletedAsyncEvent.setUserId(principal.getId());
+                fileDeletedAsyncEvent.setFileId(file.getId());
+                fileDeletedAsyncEvent.setFileSize(file.getSize());
+                fileDeletedAsyncEvent.setFileHash(file.getHash());
+                ThreadLocalContext.get().addAsyncEvent(fileDeletedAsyncEvent);
+            }
+        }
+
+        // Raise a single documents deleted event
+        if (!documentIdList.isEmpty()) {
+            DocumentsDeletedAsyncEvent documentsDeletedAsyncEvent = new DocumentsDeletedAsyncEvent();
+            documentsDeletedAsyncEvent.setUserId(principal.getId());
+            documentsDeletedAsyncEvent.setDocumentIdList(documentIdList);
+            ThreadLocalContext.get().addAsyncEvent(documentsDeletedAsyncEvent);
+        }
+
+        return createBulkResponse(documentIdList);
+    }
+
+    /**
+     * Returns the documents of a bulk operation writable by the current user.
+     * Selecting more than BULK_MAX_SIZE documents is refused.
+     *
+     * @param idList Document IDs
+     * @param search Search query, used if no ID is specified
+     * @return Writable document IDs
+     */
+    private List<String> getBulkDocumentIdList(List<String> idList, String search) {
+        Set<String> documentIdSet = new LinkedHashSet<>();
+        if (idList != null && !idList.isEmpty()) {
+            documentIdSet.addAll(idList);
+        } else if (!Strings.isNullOrEmpty(search)) {
+            // Run the search once, only the IDs are needed
+            List<TagDto> allTagDtoList = new TagDao().findByCriteria(new TagCriteria().setTargetIdList(getTargetIdList(null)), null);
+            DocumentCriteria documentCriteria = DocumentSearchCriteriaUtil.parseSearchQuery(search, allTagDtoList);
+            documentCriteria.setTargetIdList(getTargetIdList(null));
+            try {
+                documentIdSet.addAll(AppContext.getInstance().getIndexingHandler().findIdsByCriteria(documentCriteria));
+            } catch (Exception e) {
+                throw new ServerException("SearchError", "Error searching in documents", e);
+            }
+        } else {
+            throw new ClientException("ValidationError", "id or search is required");
+        }
+        if (documentIdSet.size() > BULK_MAX_SIZE) {
+            throw new ClientException("ValidationError", MessageFormat.format("Too many documents selected, the maximum is {0}", BULK_MAX_SIZE));
+        }
+
+        // Keep only the writable documents
+        AclDao aclDao = new AclDao();
+        List<String> documentIdList = new ArrayList<>();
+        for (List<String> chunk : Lists.partition(new ArrayList<>(documentIdSet), BULK_CHUNK_SIZE)) {
+            Set<String> writableIdSet = aclDao.getAccessibleSourceIdSet(chunk, PermType.WRITE, getTargetIdList(null));
+            for (String documentId : chunk) {
+                if (writableIdSet.contains(documentId)) {
+                    documentIdList.add(documentId);
+                }
+            }
+        }
+        return documentIdList;
+    }
+
+    /**
+     * Raise a single event for documents updated in bulk.
+     *
+     * @param documentIdList Document IDs
+     */
+    private void raiseDocumentsUpdatedEvent(List<String> documentIdList) {
+        if (!documentIdList.isEmpty()) {
+            DocumentsUpdatedAsyncEvent documentsUpdatedAsyncEvent = new DocumentsUpdatedAsyncEvent();
+            documentsUpdatedAsyncEvent.setUserId(principal.getId());
+            documentsUpdatedAsyncEvent.setDocumentIdList(documentIdList);
+            ThreadLocalContext.get().addAsyncEvent(documentsUpdatedAsyncEvent);
+        }
+    }
+
+    /**
+     * Returns the response of a bulk operation.
+     *
+     * @param documentIdList Modified document IDs
+     * @return Response
+     */
+    private Response createBulkResponse(List<String> documentIdList) {
+        JsonObjectBuilder response = Json.createObjectBuilder()
+                .add("status", "ok")
+                .add("count", documentIdList.size());
+        return Response.ok().entity(response.build()).build();
+    }
+
     /**
      * Update tags list on a document.
      *
@@ -1036,21 +1432,30 @@ public class DocumentResource extends BaseResource {
      */
     private void updateTagList(String documentId, List<String> tagList) {
         if (tagList != null) {
-            TagDao tagDao = new TagDao();
-            Set<String> tagSet = new HashSet<>();
-            Set<String> tagIdSet = new HashSet<>();
-            List<TagDto> tagDtoList = tagDao.findByCriteria(new TagCriteria().setTargetIdList(getTargetIdList(null)), null);
-            for (TagDto tagDto : tagDtoList) {
-                tagIdSet.add(tagDto.getId());
-            }
-            for (String tagId : tagList) {
-                if (!tagIdSet.contains(tagId)) {
-                    throw new ClientException("TagNotFound", MessageFormat.format("Tag not found: {0}", tagId));
-                }
-                tagSet.add(tagId);
+            new TagDao().updateTagList(documentId, validateTagList(tagList));
+        }
+    }
+
+    /**
+     * Validate that the tags are accessible to the current user.
+     *
+     * @param tagList Tag ID list
+     * @return Tag ID set
+     */
+    private Set<String> validateTagList(List<String> tagList) {
+        Set<String> tagSet = new HashSet<>();
+        Set<String> tagIdSet = new HashSet<>();
+        List<TagDto> tagDtoList = new TagDao().findByCriteria(new TagCriteria().setTargetIdList(getTargetIdList(null)), null);
+        for (TagDto tagDto : tagDtoList) {
+            tagIdSet.add(tagDto.getId());
+        }
+        for (String tagId : tagList) {
+            if (!tagIdSet.contains(tagId)) {
+                throw new ClientException("TagNotFound", MessageFormat.format("Tag not found: {0}", tagId));
             }
-            tagDao.updateTagList(documentId, tagSet);
+            tagSet.add(tagId);
         }
+        return tagSet;
     }
 
     /**
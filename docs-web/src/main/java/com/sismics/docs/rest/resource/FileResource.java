@@ -1,14 +1,20 @@
 package com.sismics.docs.rest.resource;
 
 import com.google.common.base.Strings;
+import com.google.common.collect.AbstractIterator;
 import com.google.common.collect.Lists;
 import com.google.common.io.ByteStreams;
 import com.sismics.docs.core.constant.PermType;
 import com.sismics.docs.core.dao.AclDao;
 import com.sismics.docs.core.dao.DocumentDao;
+import com.sismics.docs.core.dao.FileContentDao;
 import com.sismics.docs.core.dao.FileDao;
+import com.sismics.docs.core.dao.TagDao;
 import com.sismics.docs.core.dao.UserDao;
+import com.sismics.docs.core.dao.criteria.DocumentCriteria;
+import com.sismics.docs.core.dao.criteria.TagCriteria;
 import com.sismics.docs.core.dao.dto.DocumentDto;
+import com.sismics.docs.core.dao.dto.TagDto;
 import com.sismics.docs.core.event.DocumentUpdatedAsyncEvent;
 import com.sismics.docs.core.event.FileDeletedAsyncEvent;
 import com.sismics.docs.core.event.FileUpdatedAsyncEvent;
@@ -16,8 +22,15 @@ import com.sismics.docs.core.model.context.AppContext;
 import com.sismics.docs.core.model.jpa.File;
 import com.sismics.docs.core.model.jpa.User;
 import com.sismics.docs.core.util.DirectoryUtil;
+import com.sismics.docs.core.util.DocumentCacheUtil;
+import com.sismics.docs.core.util.DocumentHydrator;
 import com.sismics.docs.core.util.EncryptionUtil;
 import com.sismics.docs.core.util.FileUtil;
+import com.sismics.docs.core.util.ZipUtil;
+import com.sismics.docs.core.util.jpa.PaginatedList;
+import com.sismics.docs.core.util.jpa.PaginatedLists;
+import com.sismics.docs.core.util.jpa.SortCriteria;
+import com.sismics.docs.rest.util.DocumentSearchCriteriaUtil;
 import com.sismics.rest.exception.ClientException;
 import com.sismics.rest.exception.ForbiddenClientException;
 import com.sismics.rest.exception.ServerException;
@@ -48,9 +61,10 @@ import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
 import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipOutputStream;
 
 /**
  * File REST resources.
@@ -80,6 +94,7 @@ public class FileResource extends BaseResource {
      * @apiError (server) ErrorGuessMime Error guessing mime type
      * @apiError (client) QuotaReached Quota limit reached
      * @apiError (server) FileError Error adding a file
+     * @apiError (server) ProcessingQueueFull Too many files waiting to be processed, retry later (503)
      * @apiPermission user
      * @apiVersion 1.5.0
      *
@@ -100,6 +115,17 @@ public class FileResource extends BaseResource {
         // Validate input data
         ValidationUtil.validateRequired(fileBodyPart, "file");
 
+        // Refuse the upload while the processing pipeline is saturated
+        if (AppContext.getInstance().getFileProcessingService().isFull()) {
+            JsonObjectBuilder response = Json.createObjectBuilder()
+                    .add("type", "ProcessingQueueFull")
+                    .add("message", "Too many files waiting to be processed, retry later");
+            return Response.status(Status.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, 30)
+                    .entity(response.build())
+                    .build();
+        }
+
         // Get the document
         DocumentDto documentDto = null;
         if (Strings.isNullOrEmpty(documentId)) {
@@ -198,8 +224,8 @@ public class FileResource extends BaseResource {
         
         // Raise a new file updated event and document updated event (it wasn't sent during file creation)
         try {
-            java.nio.file.Path storedFile = DirectoryUtil.getStorageDirectory().resolve(id);
-            java.nio.file.Path unencryptedFile = EncryptionUtil.decryptFile(storedFile, user.getPrivateKey());
+            java.nio.file.Path storedFile = FileUtil.getStoredFile(file);
+            java.nio.file.Path unencryptedFile = EncryptionUtil.decryptFile(storedFile, FileUtil.getStoredFileKey(file, user.getPrivateKey()));
             FileUtil.startProcessingFile(id);
             FileUpdatedAsyncEvent fileUpdatedAsyncEvent = new FileUpdatedAsyncEvent();
             fileUpdatedAsyncEvent.setUserId(principal.getId());
@@ -306,8 +332,8 @@ public class FileResource extends BaseResource {
 
         // Start the processing asynchronously
         try {
-            java.nio.file.Path storedFile = DirectoryUtil.getStorageDirectory().resolve(id);
-            java.nio.file.Path unencryptedFile = EncryptionUtil.decryptFile(storedFile, user.getPrivateKey());
+            java.nio.file.Path storedFile = FileUtil.getStoredFile(file);
+            java.nio.file.Path unencryptedFile = EncryptionUtil.decryptFile(storedFile, FileUtil.getStoredFileKey(file, user.getPrivateKey()));
             FileUtil.startProcessingFile(id);
             FileUpdatedAsyncEvent event = new FileUpdatedAsyncEvent();
             event.setUserId(principal.getId());
@@ -371,6 +397,7 @@ public class FileResource extends BaseResource {
                 file.setOrder(order);
             }
         }
+        DocumentCacheUtil.invalidate(documentId);
 
         // Raise a document updated event
         DocumentUpdatedAsyncEvent event = new DocumentUpdatedAsyncEvent();
@@ -401,6 +428,7 @@ public class FileResource extends BaseResource {
      * @apiSuccess {String} files.document_id Document ID
      * @apiSuccess {String} files.create_date Create date (timestamp)
      * @apiSuccess {String} files.size File size (in bytes)
+     * @apiSuccess {String} files.hash SHA-256 hash of the file content, null if not computed yet
      * @apiError (client) ForbiddenError Access denied
      * @apiError (client) NotFound Document not found
      * @apiError (server) FileError Unable to get the size of a file
@@ -452,6 +480,7 @@ public class FileResource extends BaseResource {
      * @apiSuccess {String} files.version Zero-based version number
      * @apiSuccess {String} files.mimetype MIME type
      * @apiSuccess {String} files.create_date Create date (timestamp)
+     * @apiSuccess {String} files.hash SHA-256 hash of the file content, null if not computed yet
      * @apiError (client) ForbiddenError Access denied
      * @apiError (client) NotFound File not found
      * @apiPermission user
@@ -482,7 +511,8 @@ public class FileResource extends BaseResource {
                     .add("name", JsonUtil.nullable(fileDb.getName()))
                     .add("version", fileDb.getVersion())
                     .add("mimetype", fileDb.getMimeType())
-                    .add("create_date", fileDb.getCreateDate().getTime()));
+                    .add("create_date", fileDb.getCreateDate().getTime())
+                    .add("hash", JsonUtil.nullable(fileDb.getHash())));
         }
 
         JsonObjectBuilder response = Json.createObjectBuilder()
@@ -526,6 +556,7 @@ public class FileResource extends BaseResource {
         fileDeletedAsyncEvent.setUserId(principal.getId());
         fileDeletedAsyncEvent.setFileId(file.getId());
         fileDeletedAsyncEvent.setFileSize(file.getSize());
+        fileDeletedAsyncEvent.setFileHash(file.getHash());
         ThreadLocalContext.get().addAsyncEvent(fileDeletedAsyncEvent);
         
         if (file.getDocumentId() != null) {
@@ -551,8 +582,11 @@ public class FileResource extends BaseResource {
      * @apiParam {String} id File ID
      * @apiParam {String} share Share ID
      * @apiParam {String="web","thumb","content"} [size] Size variation
-     * @apiSuccess {Object} file The file data is the whole response
+     * @apiHeader {String} [Range] Single byte range to return (bytes=start-end)
+     * @apiHeader {String} [If-Range] Only return the range if the file has this ETag or last modification date
+     * @apiSuccess {Object} file The file data, or the requested range of it (status 206)
      * @apiError (client) SizeError Size must be web or thumb
+     * @apiError (client) RangeNotSatisfiable The requested range is outside the file (status 416)
      * @apiError (client) ForbiddenError Access denied or document not visible
      * @apiError (client) NotFound File not found
      * @apiError (server) ServiceUnavailable Error reading the file
@@ -585,7 +619,7 @@ public class FileResource extends BaseResource {
         boolean decrypt;
         if (size != null) {
             if (size.equals("content")) {
-                return Response.ok(Strings.nullToEmpty(file.getContent()))
+                return Response.ok(Strings.nullToEmpty(new FileContentDao().getContent(file.getId())))
                         .header(HttpHeaders.CONTENT_TYPE, "text/plain; charset=utf-8")
                         .build();
             }
@@ -603,23 +637,65 @@ public class FileResource extends BaseResource {
                 decrypt = false;
             }
         } else {
-            storedFile = DirectoryUtil.getStorageDirectory().resolve(fileId);
+            storedFile = FileUtil.getStoredFile(file);
             mimeType = file.getMimeType();
             decrypt = true; // Original files are encrypted
         }
         
-        // Stream the output and decrypt it if necessary
-        StreamingOutput stream;
-        
         // A file is always encrypted by the creator of it
         User user = userDao.getById(file.getUserId());
-        
-        // Write the decrypted file to the output
+
+        // Files never change once stored, they are identified by their ID and storage date
+        long length;
+        long lastModified;
+        try {
+            length = Files.size(storedFile);
+            lastModified = Files.getLastModifiedTime(storedFile).toMillis() / 1000 * 1000;
+        } catch (IOException e) {
+            return Response.status(Status.SERVICE_UNAVAILABLE).build();
+        }
+        String etag = "\"" + storedFile.getFileName() + "-" + lastModified + "\"";
+        long ifModifiedSince;
+        try {
+            ifModifiedSince = request.getDateHeader(HttpHeaders.IF_MODIFIED_SINCE);
+        } catch (IllegalArgumentException e) {
+            ifModifiedSince = -1;
+        }
+        if (etag.equals(request.getHeader(HttpHeaders.IF_NONE_MATCH))
+                || request.getHeader(HttpHeaders.IF_NONE_MATCH) == null && ifModifiedSince >= lastModified) {
+            return Response.notModified()
+                    .header(HttpHeaders.ETAG, etag)
+                    .build();
+        }
+
+        // Serve the requested range if the client still has the same version of the file
+        long[] range = null;
+        String ifRange = request.getHeader("If-Range");
+        if (ifRange == null || ifRange.equals(etag) || ifRange.equals(HttpUtil.buildDateHeader(lastModified))) {
+            range = parseRange(request.getHeader("Range"), length);
+            if (range != null && range.length == 0) {
+                return Response.status(Status.REQUESTED_RANGE_NOT_SATISFIABLE)
+                        .header("Content-Range", "bytes */" + length)
+                        .build();
+            }
+        }
+        long start = range == null ? 0 : range[0];
+        long count = range == null ? length : range[1] - range[0] + 1;
+
+        // Stream the output and decrypt it if necessary, starting at the requested offset
+        StreamingOutput stream;
         try {
-            InputStream fileInputStream = Files.newInputStream(storedFile);
-            final InputStream responseInputStream = decrypt ?
-                    EncryptionUtil.decryptInputStream(fileInputStream, user.getPrivateKey()) : fileInputStream;
-                    
+            InputStream fileInputStream;
+            if (decrypt) {
+                // Thumbnails are always encrypted by the creator, originals may be in a shared blob
+                String privateKey = size == null ? FileUtil.getStoredFileKey(file, user.getPrivateKey()) : user.getPrivateKey();
+                fileInputStream = EncryptionUtil.decryptInputStream(storedFile, privateKey, start);
+            } else {
+                fileInputStream = Files.newInputStream(storedFile);
+                ByteStreams.skipFully(fileInputStream, start);
+            }
+            final InputStream responseInputStream = ByteStreams.limit(fileInputStream, count);
+
             stream = outputStream -> {
                 try {
                     ByteStreams.copy(responseInputStream, outputStream);
@@ -636,13 +712,20 @@ public class FileResource extends BaseResource {
             return Response.status(Status.SERVICE_UNAVAILABLE).build();
         }
 
-        Response.ResponseBuilder builder = Response.ok(stream)
+        Response.ResponseBuilder builder = (range == null ? Response.ok(stream) : Response.status(Status.PARTIAL_CONTENT).entity(stream))
                 .header(HttpHeaders.CONTENT_DISPOSITION, "inline; filename=\"" + file.getFullName("data") + "\"")
-                .header(HttpHeaders.CONTENT_TYPE, mimeType);
+                .header(HttpHeaders.CONTENT_TYPE, mimeType)
+                .header(HttpHeaders.CONTENT_LENGTH, count)
+                .header("Accept-Ranges", "bytes");
+        if (range != null) {
+            builder.header("Content-Range", "bytes " + range[0] + "-" + range[1] + "/" + length);
+        }
         if (decrypt) {
             // Cache real files
             builder.header(HttpHeaders.CACHE_CONTROL, "private")
-                    .header(HttpHeaders.EXPIRES, HttpUtil.buildExpiresHeader(3_600_000L * 24L * 365L));
+                    .header(HttpHeaders.EXPIRES, HttpUtil.buildExpiresHeader(3_600_000L * 24L * 365L))
+                    .header(HttpHeaders.ETAG, etag)
+                    .header(HttpHeaders.LAST_MODIFIED, HttpUtil.buildDateHeader(lastModified));
         } else {
             // Do not cache the temporary thumbnail
             builder.header(HttpHeaders.CACHE_CONTROL, "no-store, must-revalidate")
@@ -651,6 +734,48 @@ public class FileResource extends BaseResource {
         return builder.build();
     }
 
+    /**
+     * Parse a Range header.
+     * Only a single byte range is supported, the whole file is sent otherwise.
+     *
+     * @param rangeHeader Range header
+     * @param length File length
+     * @return First and last byte of the range, null to send the whole file, empty if the range is not satisfiable
+     */
+    private long[] parseRange(String rangeHeader, long length) {
+        if (rangeHeader == null || !rangeHeader.startsWith("bytes=") || rangeHeader.contains(",")) {
+            return null;
+        }
+
+        String[] bounds = rangeHeader.substring("bytes=".length()).trim().split("-", -1);
+        if (bounds.length != 2) {
+            return null;
+        }
+        long start;
+        long end;
+        try {
+            if (bounds[0].isEmpty()) {
+                // Suffix range: last N bytes
+                long suffixLength = Long.parseLong(bounds[1]);
+                start = Math.max(length - suffixLength, 0);
+                end = length - 1;
+                if (suffixLength == 0) {
+                    return new long[0];
+                }
+            } else {
+                start = Long.parseLong(bounds[0]);
+                end = bounds[1].isEmpty() ? length - 1 : Math.min(Long.parseLong(bounds[1]), length - 1);
+            }
+        } catch (NumberFormatException e) {
+            return null;
+        }
+
+        if (start >= length || start > end) {
+            return new long[0];
+        }
+        return new long[] { start, end };
+    }
+
     /**
      * Returns all files from a document, zipped.
      *
@@ -695,59 +820,50 @@ public class FileResource extends BaseResource {
      * Returns a list of files, zipped
      *
      * @api {post} /file/zip Returns a list of files, zipped
+     * @apiDescription The files can also be selected by a search query, the files of all the documents found are exported.
      * @apiName GetFilesZip
      * @apiGroup File
-     * @apiParam {String[]} files IDs
+     * @apiParam {String[]} [files] IDs
+     * @apiParam {String} [search] Search query (see "Document search syntax"), used if no file ID is specified
      * @apiSuccess {Object} file The ZIP file is the whole response
      * @apiError (client) NotFoundException Files not found
+     * @apiError (client) ValidationError Validation error
      * @apiError (server) InternalServerError Error creating the ZIP file
      * @apiPermission none
      * @apiVersion 1.11.0
      *
      * @param filesIdsList Files IDs
+     * @param search Search query
      * @return Response
      */
     @POST
     @Path("zip")
     @Produces({MediaType.APPLICATION_OCTET_STREAM, MediaType.TEXT_PLAIN})
     public Response zip(
-            @FormParam("files") List<String> filesIdsList) {
+            @FormParam("files") List<String> filesIdsList,
+            @FormParam("search") String search) {
         authenticate();
+        if ((filesIdsList == null || filesIdsList.isEmpty()) && !Strings.isNullOrEmpty(search)) {
+            // Export the search results, the files are fetched page by page while the ZIP is written
+            List<TagDto> allTagDtoList = new TagDao().findByCriteria(new TagCriteria().setTargetIdList(getTargetIdList(null)), null);
+            DocumentCriteria documentCriteria = DocumentSearchCriteriaUtil.parseSearchQuery(search, allTagDtoList);
+            documentCriteria.setTargetIdList(getTargetIdList(null));
+            return sendZippedFiles("documents", () -> new SearchFileIterator(documentCriteria));
+        }
         List<File> fileList = findFiles(filesIdsList);
         return sendZippedFiles("files", fileList);
     }
 
     /**
      * Sent the content of a list of files.
+     *
+     * @param zipFileName ZIP file name, without extension
+     * @param files Files
+     * @return Response
      */
-    private Response sendZippedFiles(String zipFileName, List<File> fileList) {
-        final UserDao userDao = new UserDao();
-
+    private Response sendZippedFiles(String zipFileName, Iterable<File> files) {
         // Create the ZIP stream
-        StreamingOutput stream = outputStream -> {
-            try (ZipOutputStream zipOutputStream = new ZipOutputStream(outputStream)) {
-                // Add each file to the ZIP stream
-                int index = 0;
-                for (File file : fileList) {
-                    java.nio.file.Path storedfile = DirectoryUtil.getStorageDirectory().resolve(file.getId());
-                    InputStream fileInputStream = Files.newInputStream(storedfile);
-
-                    // Add the decrypted file to the ZIP stream
-                    // Files are encrypted by the creator of them
-                    User user = userDao.getById(file.getUserId());
-                    try (InputStream decryptedStream = EncryptionUtil.decryptInputStream(fileInputStream, user.getPrivateKey())) {
-                        ZipEntry zipEntry = new ZipEntry(index + "-" + file.getFullName(Integer.toString(index)));
-                        zipOutputStream.putNextEntry(zipEntry);
-                        ByteStreams.copy(decryptedStream, zipOutputStream);
-                        zipOutputStream.closeEntry();
-                    } catch (Exception e) {
-                        throw new WebApplicationException(e);
-                    }
-                    index++;
-                }
-            }
-            outputStream.close();
-        };
+        StreamingOutput stream = outputStream -> ZipUtil.zipFiles(files.iterator(), outputStream);
         
         // Write to the output
         return Response.ok(stream)
@@ -756,6 +872,70 @@ public class FileResource extends BaseResource {
                 .build();
     }
 
+    /**
+     * Iterates over the files of the documents found by a search, fetching the documents page by page.
+     */
+    private static class SearchFileIterator extends AbstractIterator<File> {
+        /**
+         * Search criteria.
+         */
+        private final DocumentCriteria documentCriteria;
+
+        /**
+         * Cursor of the next page of documents, null after the last page.
+         */
+        private String cursor = "";
+
+        /**
+         * Files of the current page of documents.
+         */
+        private Iterator<File> pageIterator = Collections.emptyIterator();
+
+        SearchFileIterator(DocumentCriteria documentCriteria) {
+            this.documentCriteria = documentCriteria;
+        }
+
+        @Override
+        protected File computeNext() {
+            while (!pageIterator.hasNext()) {
+                if (cursor == null) {
+                    return endOfData();
+                }
+                pageIterator = nextPage().iterator();
+            }
+            return pageIterator.next();
+        }
+
+        /**
+         * Fetch the files of the next page of documents.
+         *
+         * @return Files, grouped by document in the search order
+         */
+        private List<File> nextPage() {
+            // Largest page allowed, without counting the results
+            PaginatedList<DocumentDto> paginatedList = PaginatedLists.create(Integer.MAX_VALUE, null);
+            paginatedList.setCursor(cursor);
+            paginatedList.setCountEnabled(false);
+            try {
+                AppContext.getInstance().getIndexingHandler().findByCriteria(paginatedList, new ArrayList<>(), documentCriteria, new SortCriteria(3, false));
+            } catch (Exception e) {
+                throw new WebApplicationException(e);
+            }
+            cursor = paginatedList.getNextCursor();
+
+            List<String> documentIdList = new ArrayList<>();
+            for (DocumentDto documentDto : paginatedList.getResultList()) {
+                documentIdList.add(documentDto.getId());
+            }
+            DocumentHydrator hydrator = new DocumentHydrator(documentIdList).fetchFiles();
+            List<File> fileList = new ArrayList<>();
+            for (String documentId : documentIdList) {
+                fileList.addAll(hydrator.getFileList(documentId));
+            }
+            return fileList;
+        }
+    }
+
     /**
      * Find a file with access rights checking.
      *
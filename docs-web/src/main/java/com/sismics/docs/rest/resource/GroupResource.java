@@ -108,6 +108,7 @@ public class GroupResource extends BaseResource {
      * @apiError (client) ValidationError Validation error
      * @apiError (client) GroupAlreadyExists This group already exists
      * @apiError (client) ParentGroupNotFound Parent group not found
+     * @apiError (client) ParentGroupCycle The parent group is a descendant of the group
      * @apiError (client) NotFound Group not found
      * @apiPermission admin
      * @apiVersion 1.5.0
@@ -149,6 +150,11 @@ public class GroupResource extends BaseResource {
                 throw new ClientException("ParentGroupNotFound", MessageFormat.format("This group does not exists: {0}", parentName));
             }
             parentId = parentGroup.getId();
+
+            // A group cannot be moved under itself or one of its descendants
+            if (groupDao.getDescendantIdList(group.getId()).contains(parentId)) {
+                throw new ClientException("ParentGroupCycle", MessageFormat.format("This group is a descendant of {0}: {1}", groupName, parentName));
+            }
         }
 
         // Check that this group is not used in any workflow in case of renaming
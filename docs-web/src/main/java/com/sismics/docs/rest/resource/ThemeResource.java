@@ -4,7 +4,7 @@ import com.google.common.base.Strings;
 import com.google.common.io.ByteStreams;
 import com.sismics.docs.core.constant.ConfigType;
 import com.sismics.docs.core.dao.ConfigDao;
-import com.sismics.docs.core.model.jpa.Config;
+import com.sismics.docs.core.util.ConfigUtil;
 import com.sismics.docs.core.util.DirectoryUtil;
 import com.sismics.docs.rest.constant.BaseFunction;
 import com.sismics.rest.exception.ClientException;
@@ -247,13 +247,12 @@ public class ThemeResource extends BaseResource {
      * @return Theme configuration
      */
     private JsonObject getThemeConfig() {
-        ConfigDao configDao = new ConfigDao();
-        Config themeConfig = configDao.getById(ConfigType.THEME);
+        String themeConfig = ConfigUtil.getConfigValue(ConfigType.THEME);
         if (themeConfig == null) {
             return Json.createObjectBuilder().build();
         }
 
-        try (JsonReader reader = Json.createReader(new StringReader(themeConfig.getValue()))) {
+        try (JsonReader reader = Json.createReader(new StringReader(themeConfig))) {
             return reader.readObject();
         }
     }
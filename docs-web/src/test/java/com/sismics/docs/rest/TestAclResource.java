@@ -269,7 +269,7 @@ public class TestAclResource extends BaseJerseyTest {
     }
 
     @Test
-    public void testAclTags() {
+    public void testAclTags() throws Exception {
         // Login acltag1
         clientUtil.createUser("acltag1");
         String acltag1Token = clientUtil.login("acltag1");
@@ -325,6 +325,15 @@ public class TestAclResource extends BaseJerseyTest {
         JsonArray documents = json.getJsonArray("documents");
         Assert.assertEquals(0, documents.size());
 
+        // acltag2 cannot find any document
+        refreshIndex();
+        json = target().path("/document/list")
+                .queryParam("search", "super")
+                .request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, acltag2Token)
+                .get(JsonObject.class);
+        Assert.assertEquals(0, json.getJsonArray("documents").size());
+
         // acltag2 cannot edit tag1
         response = target().path("/tag/" + tag1Id).request()
                 .cookie(TokenBasedSecurityFilter.COOKIE_NAME, acltag2Token)
@@ -406,6 +415,17 @@ public class TestAclResource extends BaseJerseyTest {
         documents = json.getJsonArray("documents");
         Assert.assertEquals(1, documents.size());
 
+        // acltag2 can find document1 through tag1
+        refreshIndex();
+        json = target().path("/document/list")
+                .queryParam("search", "super")
+                .request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, acltag2Token)
+                .get(JsonObject.class);
+        documents = json.getJsonArray("documents");
+        Assert.assertEquals(1, documents.size());
+        Assert.assertEquals(document1Id, documents.getJsonObject(0).getString("id"));
+
         // Add an ACL WRITE for acltag2 with acltag1 on tag1
         target().path("/acl").request()
                 .cookie(TokenBasedSecurityFilter.COOKIE_NAME, acltag1Token)
@@ -449,5 +469,19 @@ public class TestAclResource extends BaseJerseyTest {
                         .param("title", "My super document 1")
                         .param("tags", tag1Id)
                         .param("language", "eng")), JsonObject.class);
+
+        // Delete tag1 with acltag1
+        target().path("/tag/" + tag1Id).request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, acltag1Token)
+                .delete(JsonObject.class);
+
+        // acltag2 cannot find document1 anymore
+        refreshIndex();
+        json = target().path("/document/list")
+                .queryParam("search", "super")
+                .request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, acltag2Token)
+                .get(JsonObject.class);
+        Assert.assertEquals(0, json.getJsonArray("documents").size());
     }
 }
\ No newline at end of file
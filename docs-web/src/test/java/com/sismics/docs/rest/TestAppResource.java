@@ -62,13 +62,36 @@ public class TestAppResource extends BaseJerseyTest {
         Assert.assertEquals("eng", json.getString("default_language"));
         Assert.assertTrue(json.containsKey("global_storage_current"));
         Assert.assertTrue(json.getJsonNumber("active_user_count").longValue() > 0);
+        Assert.assertFalse(json.containsKey("processing_file_count"));
+
+        // The metrics are restricted to administrators
+        Response response = target().path("/app/metrics").request()
+                .get();
+        Assert.assertEquals(Status.FORBIDDEN, Status.fromStatusCode(response.getStatus()));
+
+        // Check the application metrics
+        json = target().path("/app/metrics").request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, adminToken)
+                .get(JsonObject.class);
+        Assert.assertEquals(0, json.getJsonNumber("processing_file_count").intValue());
+        Assert.assertNotNull(json.getJsonNumber("content_extraction_time"));
+        Assert.assertNotNull(json.getJsonNumber("principal_cache_hit_rate"));
 
         // Rebuild Lucene index
-        Response response = target().path("/app/batch/reindex").request()
+        response = target().path("/app/batch/reindex").request()
                 .cookie(TokenBasedSecurityFilter.COOKIE_NAME, adminToken)
                 .post(Entity.form(new Form()));
         Assert.assertEquals(Status.OK, Status.fromStatusCode(response.getStatus()));
 
+        // Check the reindex progress
+        json = target().path("/app/batch/reindex").request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, adminToken)
+                .get(JsonObject.class);
+        Assert.assertFalse(json.getBoolean("running"));
+        Assert.assertNotNull(json.getJsonNumber("start_date"));
+        Assert.assertEquals(json.getJsonNumber("document_total").longValue(), json.getJsonNumber("document_count").longValue());
+        Assert.assertEquals(json.getJsonNumber("file_total").longValue(), json.getJsonNumber("file_count").longValue());
+
         // Clean storage
         response = target().path("/app/batch/clean_storage").request()
                 .cookie(TokenBasedSecurityFilter.COOKIE_NAME, adminToken)
@@ -278,9 +301,11 @@ public class TestAppResource extends BaseJerseyTest {
 
     /**
      * Test inbox scanning.
+     *
+     * @throws Exception e
      */
     @Test
-    public void testInbox() {
+    public void testInbox() throws Exception {
         // Login admin
         String adminToken = adminToken();
 
@@ -358,6 +383,7 @@ public class TestAppResource extends BaseJerseyTest {
         AppContext.getInstance().getInboxService().syncInbox();
 
         // Search for added documents
+        refreshIndex();
         json = target().path("/document/list")
                 .queryParam("search", "tag:Inbox full:content")
                 .request()
@@ -378,6 +404,7 @@ public class TestAppResource extends BaseJerseyTest {
         AppContext.getInstance().getInboxService().syncInbox();
 
         // Search for added documents
+        refreshIndex();
         json = target().path("/document/list")
                 .queryParam("search", "tag:Inbox full:content")
                 .request()
@@ -20,6 +20,8 @@ import jakarta.ws.rs.core.Response;
 import jakarta.ws.rs.core.Response.Status;
 import java.io.InputStream;
 import java.util.Date;
+import java.util.HashSet;
+import java.util.Set;
 
 /**
  * Exhaustive test of the document resource.
@@ -172,6 +174,7 @@ public class TestDocumentResource extends BaseJerseyTest {
         Assert.assertEquals(2, documents.size());
 
         // Check highlights
+        refreshIndex();
         json = target().path("/document/list")
                 .queryParam("search", "full:uranium full:einstein")
                 .request()
@@ -189,6 +192,14 @@ public class TestDocumentResource extends BaseJerseyTest {
         String suggestion = json.getJsonArray("suggestions").getString(0);
         Assert.assertEquals("document", suggestion);
 
+        // Check suggestions without searching documents
+        json = target().path("/document/suggest")
+                .queryParam("search", "super docu")
+                .request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, document1Token)
+                .get(JsonObject.class);
+        Assert.assertEquals("document", json.getJsonArray("suggestions").getString(0));
+
         // Search documents
         Assert.assertEquals(1, searchDocuments("full:uranium full:einstein", document1Token));
         Assert.assertEquals(2, searchDocuments("tit*", document1Token));
@@ -335,6 +346,7 @@ public class TestDocumentResource extends BaseJerseyTest {
         Assert.assertTrue(pdfBytes.length > 0);
 
         // Search documents by query
+        refreshIndex();
         json = target().path("/document/list")
                 .queryParam("search", "new")
                 .request()
@@ -438,8 +450,10 @@ public class TestDocumentResource extends BaseJerseyTest {
      * @param query Search query
      * @param token Authentication token
      * @return Number of documents found
+     * @throws Exception e
      */
-    private int searchDocuments(String query, String token) {
+    private int searchDocuments(String query, String token) throws Exception {
+        refreshIndex();
         JsonObject json = target().path("/document/list")
                 .queryParam("search", query)
                 .request()
@@ -466,6 +480,7 @@ public class TestDocumentResource extends BaseJerseyTest {
         String file1Id = clientUtil.addFileToDocument(FILE_DOCUMENT_ODT, documentOdtToken, document1Id);
 
         // Search documents by query in full content
+        refreshIndex();
         JsonObject json = target().path("/document/list")
                 .queryParam("search", "full:ipsum")
                 .request()
@@ -496,6 +511,39 @@ public class TestDocumentResource extends BaseJerseyTest {
         is = (InputStream) response.getEntity();
         byte[] pdfBytes = ByteStreams.toByteArray(is);
         Assert.assertTrue(pdfBytes.length > 0);
+        json = target().path("/app/metrics").request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, adminToken())
+                .get(JsonObject.class);
+        long pdfCacheHitCount = json.getJsonNumber("pdf_cache_hit_count").longValue();
+
+        // Export the document again, served from the cache
+        response = target().path("/document/" + document1Id + "/pdf")
+                .queryParam("margin", "10")
+                .queryParam("metadata", "true")
+                .queryParam("fitimagetopage", "true")
+                .request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, documentOdtToken)
+                .get();
+        Assert.assertEquals(Status.OK, Status.fromStatusCode(response.getStatus()));
+        is = (InputStream) response.getEntity();
+        Assert.assertArrayEquals(pdfBytes, ByteStreams.toByteArray(is));
+        json = target().path("/app/metrics").request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, adminToken())
+                .get(JsonObject.class);
+        Assert.assertEquals(pdfCacheHitCount + 1, json.getJsonNumber("pdf_cache_hit_count").longValue());
+        long pdfCacheMissCount = json.getJsonNumber("pdf_cache_miss_count").longValue();
+
+        // Export the document with other options, generated again
+        response = target().path("/document/" + document1Id + "/pdf")
+                .queryParam("margin", "0")
+                .request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, documentOdtToken)
+                .get();
+        Assert.assertEquals(Status.OK, Status.fromStatusCode(response.getStatus()));
+        json = target().path("/app/metrics").request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, adminToken())
+                .get(JsonObject.class);
+        Assert.assertEquals(pdfCacheMissCount + 1, json.getJsonNumber("pdf_cache_miss_count").longValue());
     }
     
     /**
@@ -516,6 +564,7 @@ public class TestDocumentResource extends BaseJerseyTest {
         String file1Id = clientUtil.addFileToDocument(FILE_DOCUMENT_DOCX, documentDocxToken, document1Id);
 
         // Search documents by query in full content
+        refreshIndex();
         JsonObject json = target().path("/document/list")
                 .queryParam("search", "full:dolor")
                 .request()
@@ -566,6 +615,7 @@ public class TestDocumentResource extends BaseJerseyTest {
         String file1Id = clientUtil.addFileToDocument(FILE_WIKIPEDIA_PDF, documentPdfToken, document1Id);
 
         // Search documents by query in full content
+        refreshIndex();
         JsonObject json = target().path("/document/list")
                 .queryParam("search", "full:vrandecic")
                 .request()
@@ -616,6 +666,7 @@ public class TestDocumentResource extends BaseJerseyTest {
         String file1Id = clientUtil.addFileToDocument(FILE_DOCUMENT_TXT, documentPlainToken, document1Id);
 
         // Search documents by query in full content
+        refreshIndex();
         JsonObject json = target().path("/document/list")
                 .queryParam("search", "full:love")
                 .request()
@@ -676,6 +727,7 @@ public class TestDocumentResource extends BaseJerseyTest {
         String file1Id = clientUtil.addFileToDocument(FILE_VIDEO_WEBM, documentVideoToken, document1Id);
 
         // Search documents by query in full content
+        refreshIndex();
         JsonObject json = target().path("/document/list")
                 .queryParam("search", "full:vp9")
                 .request()
@@ -726,6 +778,7 @@ public class TestDocumentResource extends BaseJerseyTest {
         String file1Id = clientUtil.addFileToDocument(FILE_APACHE_PPTX, documentPptxToken, document1Id);
 
         // Search documents by query in full content
+        refreshIndex();
         JsonObject json = target().path("/document/list")
                 .queryParam("search", "full:scaling")
                 .request()
@@ -999,4 +1052,376 @@ public class TestDocumentResource extends BaseJerseyTest {
         Assert.assertEquals("BOOLEAN", meta.getString("type"));
         Assert.assertTrue(meta.getBoolean("value"));
     }
+
+    /**
+     * Test the cursor pagination of the documents list.
+     *
+     * @throws Exception e
+     */
+    @Test
+    public void testCursorPagination() throws Exception {
+        // Login document_cursor
+        clientUtil.createUser("document_cursor");
+        String documentCursorToken = clientUtil.login("document_cursor");
+
+        // Create 5 documents with the same title
+        Set<String> documentIdSet = new HashSet<>();
+        for (int i = 0; i < 5; i++) {
+            documentIdSet.add(clientUtil.createDocument(documentCursorToken));
+        }
+
+        // Browse by ID, title then creation date, 2 documents per page, from the database then from the index
+        refreshIndex();
+        for (String search : new String[] { "", "description" }) {
+            for (int sortColumn : new int[] { 0, 1, 3 }) {
+                Set<String> pageIdSet = new HashSet<>();
+                String cursor = "";
+                int pageCount = 0;
+                while (cursor != null) {
+                    JsonObject json = target().path("/document/list")
+                            .queryParam("limit", 2)
+                            .queryParam("sort_column", sortColumn)
+                            .queryParam("asc", sortColumn != 3)
+                            .queryParam("search", search)
+                            .queryParam("cursor", cursor)
+                            .queryParam("count", pageCount == 0)
+                            .request()
+                            .cookie(TokenBasedSecurityFilter.COOKIE_NAME, documentCursorToken)
+                            .get(JsonObject.class);
+                    if (pageCount == 0) {
+                        Assert.assertEquals(5, json.getInt("total"));
+                    } else {
+                        Assert.assertFalse(json.containsKey("total"));
+                    }
+                    for (JsonObject document : json.getJsonArray("documents").getValuesAs(JsonObject.class)) {
+                        Assert.assertTrue(pageIdSet.add(document.getString("id")));
+                    }
+                    cursor = json.isNull("next_cursor") ? null : json.getString("next_cursor");
+                    pageCount++;
+                }
+                Assert.assertEquals(3, pageCount);
+                Assert.assertEquals(documentIdSet, pageIdSet);
+            }
+        }
+
+        // Invalid cursor
+        Response response = target().path("/document/list")
+                .queryParam("cursor", "invalid")
+                .request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, documentCursorToken)
+                .get();
+        Assert.assertEquals(Status.BAD_REQUEST, Status.fromStatusCode(response.getStatus()));
+        Assert.assertEquals("ValidationError", response.readEntity(JsonObject.class).getString("type"));
+
+        // Cursor with an offset
+        response = target().path("/document/list")
+                .queryParam("cursor", "")
+                .queryParam("offset", 2)
+                .request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, documentCursorToken)
+                .get();
+        Assert.assertEquals(Status.BAD_REQUEST, Status.fromStatusCode(response.getStatus()));
+        Assert.assertEquals("ValidationError", response.readEntity(JsonObject.class).getString("type"));
+    }
+
+    /**
+     * Test the bulk operations on documents.
+     *
+     * @throws Exception e
+     */
+    @Test
+    public void testBulk() throws Exception {
+        // Login bulk1 and bulk2
+        clientUtil.createUser("bulk1");
+        String bulk1Token = clientUtil.login("bulk1");
+        clientUtil.createUser("bulk2");
+        String bulk2Token = clientUtil.login("bulk2");
+
+        // Create 3 documents with bulk1 and 1 with bulk2
+        String document1Id = clientUtil.createDocument(bulk1Token);
+        String document2Id = clientUtil.createDocument(bulk1Token);
+        clientUtil.createDocument(bulk1Token);
+        String document4Id = clientUtil.createDocument(bulk2Token);
+
+        // Create a tag with bulk1
+        JsonObject json = target().path("/tag").request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, bulk1Token)
+                .put(Entity.form(new Form()
+                        .param("name", "BulkTag")
+                        .param("color", "#ff0000")), JsonObject.class);
+        String tagId = json.getString("id");
+
+        // Tag 2 documents by ID, the document of bulk2 is not writable
+        json = target().path("/document/bulk/tag").request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, bulk1Token)
+                .post(Entity.form(new Form()
+                        .param("id", document1Id)
+                        .param("id", document2Id)
+                        .param("id", document4Id)
+                        .param("tags", tagId)), JsonObject.class);
+        Assert.assertEquals(2, json.getInt("count"));
+        Assert.assertEquals(2, searchDocuments("tag:BulkTag", bulk1Token));
+
+        // Tag all the documents by search, twice
+        for (int i = 0; i < 2; i++) {
+            json = target().path("/document/bulk/tag").request()
+                    .cookie(TokenBasedSecurityFilter.COOKIE_NAME, bulk1Token)
+                    .post(Entity.form(new Form()
+                            .param("search", "lang:eng")
+                            .param("tags", tagId)), JsonObject.class);
+            Assert.assertEquals(3, json.getInt("count"));
+        }
+        Assert.assertEquals(3, searchDocuments("tag:BulkTag", bulk1Token));
+
+        // Remove the tag from the first document
+        json = target().path("/document/bulk/tag").request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, bulk1Token)
+                .post(Entity.form(new Form()
+                        .param("id", document1Id)
+                        .param("remove_tags", tagId)), JsonObject.class);
+        Assert.assertEquals(1, json.getInt("count"));
+        Assert.assertEquals(2, searchDocuments("tag:BulkTag", bulk1Token));
+
+        // Share the tagged documents with bulk2
+        Assert.assertEquals(1, searchDocuments("", bulk2Token));
+        json = target().path("/document/bulk/acl").request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, bulk1Token)
+                .post(Entity.form(new Form()
+                        .param("search", "tag:BulkTag")
+                        .param("perm", "READ")
+                        .param("target", "bulk2")
+                        .param("type", "USER")), JsonObject.class);
+        Assert.assertEquals(2, json.getInt("count"));
+        Assert.assertEquals(3, searchDocuments("", bulk2Token));
+        Assert.assertEquals(3, searchDocuments("full:description", bulk2Token)); // Read targets updated in the index
+
+        // The tags of the documents are listed only if readable
+        for (String token : new String[] { bulk1Token, bulk2Token }) {
+            json = target().path("/document/list").request()
+                    .cookie(TokenBasedSecurityFilter.COOKIE_NAME, token)
+                    .get(JsonObject.class);
+            JsonArray documents = json.getJsonArray("documents");
+            int taggedCount = 0;
+            for (int i = 0; i < documents.size(); i++) {
+                JsonArray tags = documents.getJsonObject(i).getJsonArray("tags");
+                if (!tags.isEmpty()) {
+                    Assert.assertEquals(1, tags.size());
+                    Assert.assertEquals("BulkTag", tags.getJsonObject(0).getString("name"));
+                    taggedCount++;
+                }
+            }
+            Assert.assertEquals(token.equals(bulk1Token) ? 2 : 0, taggedCount);
+        }
+
+        // Revoke the ACL
+        json = target().path("/document/bulk/acl").request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, bulk1Token)
+                .post(Entity.form(new Form()
+                        .param("search", "tag:BulkTag")
+                        .param("perm", "READ")
+                        .param("target", "bulk2")
+                        .param("type", "USER")
+                        .param("revoke", "true")), JsonObject.class);
+        Assert.assertEquals(2, json.getInt("count"));
+        Assert.assertEquals(1, searchDocuments("", bulk2Token));
+        Assert.assertEquals(1, searchDocuments("full:description", bulk2Token));
+
+        // Nothing selected
+        Response response = target().path("/document/bulk/delete").request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, bulk1Token)
+                .post(Entity.form(new Form()));
+        Assert.assertEquals(Status.BAD_REQUEST, Status.fromStatusCode(response.getStatus()));
+
+        // Invalid permission
+        response = target().path("/document/bulk/acl").request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, bulk1Token)
+                .post(Entity.form(new Form()
+                        .param("search", "tag:BulkTag")
+                        .param("perm", "DELETE")
+                        .param("target", "bulk2")
+                        .param("type", "USER")));
+        Assert.assertEquals(Status.BAD_REQUEST, Status.fromStatusCode(response.getStatus()));
+        Assert.assertEquals("ValidationError", response.readEntity(JsonObject.class).getString("type"));
+
+        // Too many documents selected
+        Form form = new Form();
+        for (int i = 0; i <= 10000; i++) {
+            form.param("id", Integer.toString(i));
+        }
+        response = target().path("/document/bulk/delete").request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, bulk1Token)
+                .post(Entity.form(form));
+        Assert.assertEquals(Status.BAD_REQUEST, Status.fromStatusCode(response.getStatus()));
+        Assert.assertEquals("ValidationError", response.readEntity(JsonObject.class).getString("type"));
+
+        // Delete all the documents of bulk1
+        json = target().path("/document/bulk/delete").request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, bulk1Token)
+                .post(Entity.form(new Form()
+                        .param("search", "lang:eng")), JsonObject.class);
+        Assert.assertEquals(3, json.getInt("count"));
+        Assert.assertEquals(0, searchDocuments("", bulk1Token));
+        Assert.assertEquals(1, searchDocuments("", bulk2Token));
+    }
+
+    /**
+     * Test the search suggestions.
+     *
+     * @throws Exception e
+     */
+    @Test
+    public void testSuggest() throws Exception {
+        // Login suggest1 and suggest2
+        clientUtil.createUser("suggest1");
+        String suggest1Token = clientUtil.login("suggest1");
+        clientUtil.createUser("suggest2");
+        String suggest2Token = clientUtil.login("suggest2");
+
+        // Create a document with suggest1
+        target().path("/document").request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, suggest1Token)
+                .put(Entity.form(new Form()
+                        .param("title", "Quixotic merger")
+                        .param("language", "eng")), JsonObject.class);
+
+        // The suggester is built in the background
+        refreshIndex();
+        JsonArray suggestions = null;
+        for (int i = 0; i < 60; i++) {
+            suggestions = target().path("/document/suggest")
+                    .queryParam("search", "quixo")
+                    .request()
+                    .cookie(TokenBasedSecurityFilter.COOKIE_NAME, suggest1Token)
+                    .get(JsonObject.class)
+                    .getJsonArray("suggestions");
+            if (!suggestions.isEmpty()) {
+                break;
+            }
+            Thread.sleep(500);
+        }
+        Assert.assertEquals(1, suggestions.size());
+        Assert.assertEquals("quixotic", suggestions.getString(0));
+
+        // The words of the documents not readable are not suggested
+        JsonObject json = target().path("/document/suggest")
+                .queryParam("search", "quixo")
+                .request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, suggest2Token)
+                .get(JsonObject.class);
+        Assert.assertTrue(json.getJsonArray("suggestions").isEmpty());
+    }
+
+    /**
+     * Test the cache of the documents and the ETags.
+     */
+    @Test
+    public void testDocumentCache() {
+        // Login cache1 and cache2
+        clientUtil.createUser("cache1");
+        String cache1Token = clientUtil.login("cache1");
+        clientUtil.createUser("cache2");
+        String cache2Token = clientUtil.login("cache2");
+
+        // Create a tagged document with cache1
+        JsonObject json = target().path("/tag").request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, cache1Token)
+                .put(Entity.form(new Form()
+                        .param("name", "CacheTag")
+                        .param("color", "#00ff00")), JsonObject.class);
+        String tagId = json.getString("id");
+        json = target().path("/document").request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, cache1Token)
+                .put(Entity.form(new Form()
+                        .param("title", "Cache 1")
+                        .param("tags", tagId)
+                        .param("language", "eng")), JsonObject.class);
+        String documentId = json.getString("id");
+
+        // Get the document with cache1
+        Response response = target().path("/document/" + documentId).request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, cache1Token)
+                .get();
+        Assert.assertEquals(Status.OK, Status.fromStatusCode(response.getStatus()));
+        String etag1 = response.getHeaderString("ETag");
+        Assert.assertNotNull(etag1);
+        json = response.readEntity(JsonObject.class);
+        Assert.assertEquals(1, json.getJsonArray("tags").size());
+        Assert.assertTrue(json.getBoolean("writable"));
+
+        // The document has not changed
+        response = target().path("/document/" + documentId).request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, cache1Token)
+                .header("If-None-Match", etag1)
+                .get();
+        Assert.assertEquals(Status.NOT_MODIFIED, Status.fromStatusCode(response.getStatus()));
+        Assert.assertEquals(etag1, response.getHeaderString("ETag"));
+        Assert.assertTrue(response.getHeaderString("Cache-Control").contains("private"));
+
+        // The ETag is found in a list of weak ETags
+        response = target().path("/document/" + documentId).request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, cache1Token)
+                .header("If-None-Match", "W/\"other\", W/" + etag1)
+                .get();
+        Assert.assertEquals(Status.NOT_MODIFIED, Status.fromStatusCode(response.getStatus()));
+
+        // The response with the files has its own ETag
+        response = target().path("/document/" + documentId)
+                .queryParam("files", true)
+                .request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, cache1Token)
+                .header("If-None-Match", etag1)
+                .get();
+        Assert.assertEquals(Status.OK, Status.fromStatusCode(response.getStatus()));
+        Assert.assertNotEquals(etag1, response.getHeaderString("ETag"));
+
+        // cache2 can't read the document
+        response = target().path("/document/" + documentId).request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, cache2Token)
+                .get();
+        Assert.assertEquals(Status.NOT_FOUND, Status.fromStatusCode(response.getStatus()));
+
+        // Share the tag with cache2, the document is readable through its tag
+        json = target().path("/acl").request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, cache1Token)
+                .put(Entity.form(new Form()
+                        .param("source", tagId)
+                        .param("perm", "READ")
+                        .param("target", "cache2")
+                        .param("type", "USER")), JsonObject.class);
+        String cache2Id = json.getString("id");
+        response = target().path("/document/" + documentId).request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, cache2Token)
+                .get();
+        Assert.assertEquals(Status.OK, Status.fromStatusCode(response.getStatus()));
+        Assert.assertNotEquals(etag1, response.getHeaderString("ETag"));
+        json = response.readEntity(JsonObject.class);
+        Assert.assertEquals(1, json.getJsonArray("tags").size());
+        Assert.assertFalse(json.getBoolean("writable"));
+        Assert.assertTrue(json.getJsonArray("inherited_acls").size() > 0);
+
+        // Update the document, the change is visible immediately
+        target().path("/document/" + documentId).request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, cache1Token)
+                .post(Entity.form(new Form()
+                        .param("title", "Cache 2")
+                        .param("tags", tagId)
+                        .param("language", "eng")), JsonObject.class);
+        response = target().path("/document/" + documentId).request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, cache1Token)
+                .header("If-None-Match", etag1)
+                .get();
+        Assert.assertEquals(Status.OK, Status.fromStatusCode(response.getStatus()));
+        Assert.assertNotEquals(etag1, response.getHeaderString("ETag"));
+        json = response.readEntity(JsonObject.class);
+        Assert.assertEquals("Cache 2", json.getString("title"));
+
+        // Unshare the tag, cache2 can't read the document anymore
+        target().path("/acl/" + tagId + "/READ/" + cache2Id).request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, cache1Token)
+                .delete(JsonObject.class);
+        response = target().path("/document/" + documentId).request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, cache2Token)
+                .get();
+        Assert.assertEquals(Status.NOT_FOUND, Status.fromStatusCode(response.getStatus()));
+    }
 }
@@ -1,5 +1,6 @@
 package com.sismics.docs.rest;
 
+import com.google.common.hash.Hashing;
 import com.google.common.io.ByteStreams;
 import com.google.common.io.Resources;
 import com.sismics.docs.core.util.DirectoryUtil;
@@ -16,13 +17,16 @@ import jakarta.json.JsonArray;
 import jakarta.json.JsonObject;
 import jakarta.ws.rs.client.Entity;
 import jakarta.ws.rs.core.Form;
+import jakarta.ws.rs.core.HttpHeaders;
 import jakarta.ws.rs.core.MediaType;
 import jakarta.ws.rs.core.Response;
 import jakarta.ws.rs.core.Response.Status;
 import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.Arrays;
 import java.util.Date;
+import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
 
 /**
@@ -58,7 +62,54 @@ public class TestFileResource extends BaseJerseyTest {
         InputStream is = (InputStream) response.getEntity();
         byte[] fileBytes = ByteStreams.toByteArray(is);
         Assert.assertTrue(fileBytes.length > 0);
-        
+        String etag = response.getHeaderString(HttpHeaders.ETAG);
+        Assert.assertNotNull(etag);
+        Assert.assertEquals("bytes", response.getHeaderString("Accept-Ranges"));
+
+        // Get a range of the file data
+        response = target().path("/file/" + file1Id + "/data").request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, file1Token)
+                .header("Range", "bytes=1000-1999")
+                .get();
+        Assert.assertEquals(Status.PARTIAL_CONTENT, Status.fromStatusCode(response.getStatus()));
+        Assert.assertEquals("bytes 1000-1999/" + fileBytes.length, response.getHeaderString("Content-Range"));
+        is = (InputStream) response.getEntity();
+        Assert.assertArrayEquals(Arrays.copyOfRange(fileBytes, 1000, 2000), ByteStreams.toByteArray(is));
+
+        // Get the end of the file data
+        response = target().path("/file/" + file1Id + "/data").request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, file1Token)
+                .header("Range", "bytes=-10")
+                .header("If-Range", etag)
+                .get();
+        Assert.assertEquals(Status.PARTIAL_CONTENT, Status.fromStatusCode(response.getStatus()));
+        is = (InputStream) response.getEntity();
+        Assert.assertArrayEquals(Arrays.copyOfRange(fileBytes, fileBytes.length - 10, fileBytes.length), ByteStreams.toByteArray(is));
+
+        // The whole file is sent if it has changed
+        response = target().path("/file/" + file1Id + "/data").request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, file1Token)
+                .header("Range", "bytes=-10")
+                .header("If-Range", "\"other\"")
+                .get();
+        Assert.assertEquals(Status.OK, Status.fromStatusCode(response.getStatus()));
+        is = (InputStream) response.getEntity();
+        Assert.assertEquals(fileBytes.length, ByteStreams.toByteArray(is).length);
+
+        // Get a range outside of the file
+        response = target().path("/file/" + file1Id + "/data").request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, file1Token)
+                .header("Range", "bytes=" + fileBytes.length + "-")
+                .get();
+        Assert.assertEquals(Status.REQUESTED_RANGE_NOT_SATISFIABLE, Status.fromStatusCode(response.getStatus()));
+
+        // Revalidate the file data
+        response = target().path("/file/" + file1Id + "/data").request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, file1Token)
+                .header(HttpHeaders.IF_NONE_MATCH, etag)
+                .get();
+        Assert.assertEquals(Status.NOT_MODIFIED, Status.fromStatusCode(response.getStatus()));
+
         // Get the thumbnail data
         response = target().path("/file/" + file1Id + "/data")
                 .queryParam("size", "thumb")
@@ -106,9 +157,12 @@ public class TestFileResource extends BaseJerseyTest {
         Assert.assertEquals("image/jpeg", files.getJsonObject(0).getString("mimetype"));
         Assert.assertEquals(0, files.getJsonObject(0).getInt("version"));
         Assert.assertEquals(FILE_PIA_00452_JPG_SIZE, files.getJsonObject(0).getJsonNumber("size").longValue());
+        Assert.assertEquals(Hashing.sha256().hashBytes(Resources.toByteArray(Resources.getResource(FILE_PIA_00452_JPG))).toString(),
+                files.getJsonObject(0).getString("hash"));
         Assert.assertEquals(file2Id, files.getJsonObject(1).getString("id"));
         Assert.assertEquals("PIA00452.jpg", files.getJsonObject(1).getString("name"));
         Assert.assertEquals(0, files.getJsonObject(1).getInt("version"));
+        Assert.assertEquals(files.getJsonObject(0).getString("hash"), files.getJsonObject(1).getString("hash"));
 
         // Rename a file
         target().path("file/" + file1Id)
@@ -275,7 +329,10 @@ public class TestFileResource extends BaseJerseyTest {
         Assert.assertEquals(Status.OK, Status.fromStatusCode(response.getStatus()));
         InputStream is = (InputStream) response.getEntity();
         ZipInputStream zipInputStream = new ZipInputStream(is);
-        Assert.assertEquals(zipInputStream.getNextEntry().getName(), "0-PIA00452.jpg");
+        ZipEntry zipEntry = zipInputStream.getNextEntry();
+        Assert.assertEquals(zipEntry.getName(), "0-PIA00452.jpg");
+        Assert.assertEquals(ZipEntry.STORED, zipEntry.getMethod()); // Already compressed
+        Assert.assertEquals(163510, ByteStreams.toByteArray(zipInputStream).length);
         Assert.assertNull(zipInputStream.getNextEntry());
 
         // Fail if we don't have access to the document
@@ -305,6 +362,19 @@ public class TestFileResource extends BaseJerseyTest {
         Assert.assertNotNull(zipInputStream.getNextEntry().getName());
         Assert.assertNull(zipInputStream.getNextEntry());
         
+        // Get a ZIP from the files of the documents found by a search
+        response = target().path("/file/zip")
+                .request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, file1Token)
+                .post(Entity.form(new Form()
+                        .param("search", "lang:eng")));
+        Assert.assertEquals(Status.OK, Status.fromStatusCode(response.getStatus()));
+        is = (InputStream) response.getEntity();
+        zipInputStream = new ZipInputStream(is);
+        Assert.assertEquals("0-Einstein-Roosevelt-letter.png", zipInputStream.getNextEntry().getName());
+        Assert.assertEquals("1-PIA00452.jpg", zipInputStream.getNextEntry().getName());
+        Assert.assertNull(zipInputStream.getNextEntry());
+
         // Fail if we don't have access to the files
         response = target().path("/file/zip")
                 .request()
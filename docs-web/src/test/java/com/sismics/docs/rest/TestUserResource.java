@@ -284,6 +284,13 @@ public class TestUserResource extends BaseJerseyTest {
         json = response.readEntity(JsonObject.class);
         Assert.assertEquals("ForbiddenError", json.getString("type"));
 
+        // User admin_user1 is authenticated
+        String adminUser1Token = clientUtil.login("admin_user1");
+        json = target().path("/user").request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, adminUser1Token)
+                .get(JsonObject.class);
+        Assert.assertFalse(json.getBoolean("anonymous"));
+
         // User admin disable admin_user1
         json = target().path("/user/admin_user1").request()
                 .cookie(TokenBasedSecurityFilter.COOKIE_NAME, adminToken)
@@ -291,6 +298,12 @@ public class TestUserResource extends BaseJerseyTest {
                         .param("disabled", "true")), JsonObject.class);
         Assert.assertEquals("ok", json.getString("status"));
 
+        // The session of admin_user1 is not valid anymore
+        json = target().path("/user").request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, adminUser1Token)
+                .get(JsonObject.class);
+        Assert.assertTrue(json.getBoolean("anonymous"));
+
         // User admin_user1 tries to authenticate
         response = target().path("/user/login").request()
                 .post(Entity.form(new Form()
@@ -11,7 +11,6 @@ import jakarta.ws.rs.client.Entity;
 import jakarta.ws.rs.core.Form;
 import java.util.Date;
 
-
 /**
  * Test the webhook resource.
  * 
@@ -59,6 +58,15 @@ public class TestWebhookResource extends BaseJerseyTest {
         Assert.assertEquals("DOCUMENT_CREATED", payload.getString("event"));
         Assert.assertEquals(document1Id, payload.getString("id"));
 
+        // Check the webhook metrics
+        json = target().path("/app/metrics").request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, adminToken)
+                .get(JsonObject.class);
+        Assert.assertTrue(json.getJsonNumber("webhook_delivery_count").longValue() > 0);
+        Assert.assertNotNull(json.getJsonNumber("webhook_delivery_time"));
+        Assert.assertEquals(0, json.getJsonNumber("webhook_pending_count").longValue());
+        long failureCount = json.getJsonNumber("webhook_failure_count").longValue();
+
         // Get all webhooks
         json = target().path("/webhook")
                 .request()
@@ -85,6 +93,46 @@ public class TestWebhookResource extends BaseJerseyTest {
         webhooks = json.getJsonArray("webhooks");
         Assert.assertEquals(0, webhooks.size());
 
+        // Create a failing webhook
+        target().path("/webhook").request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, adminToken)
+                .put(Entity.form(new Form()
+                        .param("event", "DOCUMENT_CREATED")
+                        .param("url", "http://localhost:" + getPort() + "/docs/thirdpartywebhook/error")), JsonObject.class);
+
+        // Create a document
+        json = target().path("/document").request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, webhook1Token)
+                .put(Entity.form(new Form()
+                        .param("title", "Webhook document 2")
+                        .param("language", "eng")
+                        .param("create_date", Long.toString(new Date().getTime()))), JsonObject.class);
+        Assert.assertNotNull(json.getString("id"));
+
+        // The failed call is kept to be retried
+        json = target().path("/app/metrics").request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, adminToken)
+                .get(JsonObject.class);
+        Assert.assertEquals(failureCount + 1, json.getJsonNumber("webhook_failure_count").longValue());
+        Assert.assertEquals(1, json.getJsonNumber("webhook_pending_count").longValue());
+
+        // Delete the failing webhook
+        json = target().path("/webhook")
+                .request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, adminToken)
+                .get(JsonObject.class);
+        webhooks = json.getJsonArray("webhooks");
+        Assert.assertEquals(1, webhooks.size());
+        target().path("/webhook/" + webhooks.getJsonObject(0).getString("id")).request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, adminToken)
+                .delete(JsonObject.class);
+
+        // The deliveries to the deleted webhook are dropped
+        json = target().path("/app/metrics").request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, adminToken)
+                .get(JsonObject.class);
+        Assert.assertEquals(0, json.getJsonNumber("webhook_pending_count").longValue());
+
         // Deletes webhook1
         target().path("/user/webhook1").request()
                 .cookie(TokenBasedSecurityFilter.COOKIE_NAME, adminToken)
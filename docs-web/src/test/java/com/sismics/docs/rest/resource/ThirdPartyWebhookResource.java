@@ -31,6 +31,18 @@ public class ThirdPartyWebhookResource extends BaseResource {
         return Response.ok().build();
     }
 
+    /**
+     * Failing webhook.
+     *
+     * @return Response
+     */
+    @POST
+    @Path("error")
+    @Consumes(MediaType.APPLICATION_JSON)
+    public Response error(JsonObject request) {
+        return Response.serverError().build();
+    }
+
     public static JsonObject getLastPayload() {
         return lastPayload;
     }